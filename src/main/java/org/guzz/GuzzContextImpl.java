@@ -259,6 +259,10 @@ public class GuzzContextImpl implements GuzzContext{
 		transactionManager = TransactionManagerFactory.buildTransactionFactory(objectMappingManager, compiledSQLManager, 
 				compiledSQLBuilder,
 				this.debugService, dbGroupManager, tranSessionLocator) ;
+		
+		if(transactionManager instanceof ContextLifeCycle){
+			this.registerContextLifeCycle((ContextLifeCycle) transactionManager) ;
+		}
 				
 		Service sus = new SlowUpdateServiceProxy((SlowUpdateServiceImpl) ServiceManagerImpl.createNewService(this, configServer, new ServiceInfo(Service.FAMOUSE_SERVICE.SLOW_UPDATE, "guzzSlowUpdate", SlowUpdateServiceImpl.class))) ;
 
@@ -53,5 +53,11 @@ public @interface Column {
      * (Optional) The data type of the column. <br/>eg:string, int, varchar, {@link TranBlob}
      */
     String type() default "" ;
+    
+    /**
+     * (Optional) For lazy properties, the max count of objects fetched by the same query to load the property for in one statement.
+     * <br/>0 means loading the property one object at a time.
+     */
+    int batchSize() default 0 ;
 
 }
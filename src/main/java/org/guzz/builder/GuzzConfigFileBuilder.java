@@ -50,6 +50,7 @@ import org.guzz.orm.mapping.ObjectMappingUtil;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
 import org.guzz.orm.mapping.ResultMapBasedObjectMapping;
 import org.guzz.orm.rdms.TableColumn;
+import org.guzz.orm.se.QueryResultCache;
 import org.guzz.orm.sql.CompiledSQL;
 import org.guzz.orm.sql.CompiledSQLBuilder;
 import org.guzz.orm.sql.TemplatedCompiledSQL;
@@ -288,6 +289,7 @@ public class GuzzConfigFileBuilder {
 			String masterName = e.attributeValue("masterDBConfigName") ;
 			String slaveName = e.attributeValue("slaveDBConfigName") ;
 			String dialectName = e.attributeValue("dialectName") ;
+			String statementCacheSize = e.attributeValue("statementCacheSize") ;
 			
 			if(StringUtil.isEmpty(groupName)){
 				db.setGroupName("default") ;
@@ -313,6 +315,7 @@ public class GuzzConfigFileBuilder {
 			}
 				
 			db.setDialect(dt) ;
+			db.setStatementCacheSize(StringUtil.toInt(statementCacheSize, 0)) ;
 			
 			dbGroups.addLast(db) ;
 		}
@@ -396,6 +399,7 @@ public class GuzzConfigFileBuilder {
 			
 			try{
 				POJOBasedObjectMapping map = HbmXMLBuilder.parseHbmStream(gf, m_dbgroup, null, m_name, d_cls, i_cls, r.getInputStream()) ;
+				configQueryResultCache(map, e) ;
 				mappings.addLast(map) ;
 			}finally{
 				CloseUtil.close(r) ;
@@ -530,12 +534,29 @@ public class GuzzConfigFileBuilder {
 			}
 			
 			POJOBasedObjectMapping map = JPA2AnnotationsBuilder.parseDomainClass(gf, m_dbgroup, m_name, Class.forName(m_class)) ;
+			configQueryResultCache(map, e) ;
 			mappings.addLast(map) ;
 		}
 		
         return mappings;
 	}
 	
+	/**
+	 * Enable the query result cache if queryCacheSize is set for the business.
+	 * <pre>
+	 * &lt;business name="user" file="classpath:..." queryCacheSize="100" queryCacheTTL="60" /&gt;
+	 * </pre>
+	 * queryCacheTTL is in seconds, 0 means never expire unless the business is written.
+	 */
+	protected void configQueryResultCache(POJOBasedObjectMapping map, Element e){
+		int size = StringUtil.toInt(e.attributeValue("queryCacheSize"), 0) ;
+		if(size <= 0) return ;
+		
+		int ttl = StringUtil.toInt(e.attributeValue("queryCacheTTL"), 0) ;
+		
+		map.getBusiness().setQueryResultCache(new QueryResultCache(size, ttl * 1000L)) ;
+	}
+	
 	public List listGlobalORMs() throws IOException, ClassNotFoundException{
 		List ls = this.rootDoc.selectNodes("orm") ;
 		
@@ -29,6 +29,7 @@ import org.dom4j.Element;
 import org.dom4j.Visitor;
 import org.dom4j.VisitorSupport;
 import org.dom4j.io.SAXReader;
+import org.guzz.ContextLifeCycle;
 import org.guzz.GuzzContextImpl;
 import org.guzz.connection.DBGroup;
 import org.guzz.exception.GuzzException;
@@ -280,6 +281,7 @@ public class HbmXMLBuilder {
 					String nullValue = e.attributeValue("null") ;
 					String lazy = e.attributeValue("lazy") ;
 					String loader = e.attributeValue("loader") ;
+					int batchSize = StringUtil.toInt(e.attributeValue("batch-size"), 0) ;
 					
 					boolean insertIt = StringUtil.toBoolean(e.attributeValue("insert"), true) ;
 					boolean updateIt = StringUtil.toBoolean(e.attributeValue("update"), true) ;
@@ -306,6 +308,7 @@ public class HbmXMLBuilder {
 					col.setAllowInsert(insertIt) ;
 					col.setAllowUpdate(updateIt) ;
 					col.setLazy("true".equalsIgnoreCase(lazy)) ;
+					col.setLazyBatchSize(batchSize) ;
 					
 					st.addColumn(col) ;
 				}
@@ -348,8 +351,10 @@ public class HbmXMLBuilder {
 			((Configurable) ig).configure(dbGroup.getDialect(), map, p) ;						
 		}
 		
-		//register callback for GuzzContext's full starting.
-		if(ig instanceof GuzzContextAware){
+		//register callback for GuzzContext's full starting, and for the shutdown if needed.
+		if(ig instanceof ContextLifeCycle){
+			gf.registerContextLifeCycle((ContextLifeCycle) ig) ;
+		}else if(ig instanceof GuzzContextAware){
 			gf.registerContextStartedAware((GuzzContextAware) ig) ;
 		}
 		
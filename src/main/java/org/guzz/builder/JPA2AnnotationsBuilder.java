@@ -38,6 +38,7 @@ import javax.persistence.Transient;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.guzz.ContextLifeCycle;
 import org.guzz.GuzzContextImpl;
 import org.guzz.annotations.GenericGenerator;
 import org.guzz.annotations.GenericGenerators;
@@ -367,8 +368,10 @@ public class JPA2AnnotationsBuilder {
 			((Configurable) ig).configure(dbGroup.getDialect(), map, idProperties) ;						
 		}
 		
-		//register callback for GuzzContext's full starting.
-		if(ig instanceof GuzzContextAware){
+		//register callback for GuzzContext's full starting, and for the shutdown if needed.
+		if(ig instanceof ContextLifeCycle){
+			gf.registerContextLifeCycle((ContextLifeCycle) ig) ;
+		}else if(ig instanceof GuzzContextAware){
 			gf.registerContextStartedAware((GuzzContextAware) ig) ;
 		}
 		
@@ -386,6 +389,7 @@ public class JPA2AnnotationsBuilder {
 		String column = pc == null ? null : pc.name() ;
 		boolean lazy = pb == null ? false : pb.fetch() == FetchType.LAZY ;
 		Class loader = gc == null ? null : gc.loader() ;
+		int batchSize = gc == null ? 0 : gc.batchSize() ;
 		
 		if(dataType.isEnum()){
 			EnumType etype = EnumType.ORDINAL ;
@@ -425,6 +429,7 @@ public class JPA2AnnotationsBuilder {
 			col.setAllowInsert(insertIt) ;
 			col.setAllowUpdate(updateIt) ;
 			col.setLazy(lazy) ;
+			col.setLazyBatchSize(batchSize) ;
 			
 			st.addColumn(col) ;
 		}catch(DataTypeException dte){
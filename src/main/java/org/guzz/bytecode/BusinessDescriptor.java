@@ -17,6 +17,9 @@
 package org.guzz.bytecode;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.guzz.lang.NullValue;
 import org.guzz.orm.Business;
@@ -55,6 +58,8 @@ public class BusinessDescriptor {
 	//Map<setMethod().getName(), index in lazyProps>
 	private HashMap setLazyPropsMap = new HashMap() ;	
 	
+	private int maxLazyBatchSize ;
+	
 	public BusinessDescriptor(TransactionManager transactionManager, Business business){
 		this.transactionManager = transactionManager ;
 		this.business = business ;
@@ -88,6 +93,24 @@ public class BusinessDescriptor {
 		LazyColumn lc = new LazyColumn(transactionManager, business.getTable(), business.getName(), wrapper, orm) ;
 		
 		props.put(wrapper.getReadMethod(orm.tableColumn.getPropName()).getName(), lc) ;
+		
+		if(lc.isBatchLoadEnable() && lc.getBatchSize() > this.maxLazyBatchSize){
+			this.maxLazyBatchSize = lc.getBatchSize() ;
+		}
+	}
+	
+	/**
+	 * Is any lazy property configured to be loaded in batch? If true, objects fetched by the same query should be put into {@link LazyFetchGroup}s.
+	 */
+	public boolean isBatchLazyLoadEnable(){
+		return this.maxLazyBatchSize > 1 ;
+	}
+	
+	/**
+	 * The max batch-size of all lazy properties. A {@link LazyFetchGroup} needs no more members than this.
+	 */
+	public int getMaxLazyBatchSize(){
+		return this.maxLazyBatchSize ;
 	}
 	
 	public LazyColumn match(String propName){
@@ -142,6 +165,13 @@ public class BusinessDescriptor {
 		private ColumnORM orm ;
 		private Table table ;
 		private BeanWrapper wrap ;
+		private String businessName ;
+		
+		/**max objects to load in one statement. less than 2 means batch loading is disabled.*/
+		private int batchSize ;
+		
+		/**sqls for batch loading. the index is the count of primary keys in the sql.*/
+		private CompiledSQL[] sqlsForBatchLoad ;
 		
 		private TransactionManager tm ;
 		
@@ -154,9 +184,33 @@ public class BusinessDescriptor {
 			String sql = "select " + orm.tableColumn.getColNameForSQL() + " from " + MarkedSQL.TABLE_START_TAG_IN_MARKED_SQL + businessName + " where " + table.getPKColumn().getColNameForSQL() + "=:id" ;
 			sqlForLoadLazy = tm.getCompiledSQLBuilder().buildCompiledSQL(businessName, sql) ;
 			sqlForLoadLazy.addParamPropMapping("id", table.getPKColumn().getPropName()) ;
+			
+			this.businessName = businessName ;
+			
+			//user-defined loaders load the data by themselves.
+			if(orm.columnDataLoader == null && orm.tableColumn.getLazyBatchSize() > 1){
+				this.batchSize = orm.tableColumn.getLazyBatchSize() ;
+				this.sqlsForBatchLoad = new CompiledSQL[this.batchSize + 1] ;
+			}
+		}
+		
+		public boolean isBatchLoadEnable(){
+			return this.batchSize > 1 ;
+		}
+		
+		public int getBatchSize(){
+			return this.batchSize ;
 		}
 		
 		public Object loadProperty(Object fetchedObject){
+			return loadProperty(fetchedObject, null) ;
+		}
+		
+		/**
+		 * Load the lazy property. If @param fetchGroup is not null, the property is loaded for up to batch-size
+		 * unloaded objects of the group in one statement.
+		 */
+		public Object loadProperty(Object fetchedObject, LazyFetchGroup fetchGroup){
 			String propToLoad = orm.tableColumn.getPropName() ;
 			Object value = wrap.getValueUnderProxy(fetchedObject, propToLoad) ;
 			
@@ -172,6 +226,8 @@ public class BusinessDescriptor {
 			//load the value from db
 			if(orm.columnDataLoader != null){
 				value = orm.columnDataLoader.loadLazyData(fetchedObject) ;
+			}else if(fetchGroup != null && isBatchLoadEnable() && fetchGroup.size() > 1){
+				return batchLoadProperty(fetchedObject, fetchGroup) ;
 			}else{
 				Object pkValue = wrap.getValue(fetchedObject, table.getPKPropName()) ;
 				
@@ -189,6 +245,91 @@ public class BusinessDescriptor {
 			return value ;
 		}
 		
+		protected Object batchLoadProperty(Object fetchedObject, LazyFetchGroup fetchGroup){
+			final String propToLoad = orm.tableColumn.getPropName() ;
+			String pkProp = table.getPKPropName() ;
+			
+			//collect unloaded siblings. fetchedObject comes first.
+			Object[] objsToLoad = new Object[this.batchSize] ;
+			int count = fetchGroup.collectMembersFrom(fetchedObject, new LazyFetchGroup.MemberFilter(){
+				public boolean accept(Object member) {
+					return wrap.getValueUnderProxy(member, propToLoad) == null ;
+				}
+			}, objsToLoad) ;
+			
+			if(count == 0){
+				//fetchedObject isn't a member of the group.
+				return loadProperty(fetchedObject, null) ;
+			}
+			
+			HashMap params = new HashMap() ;
+			for(int i = 0 ; i < count ; i++){
+				params.put("guzz_pk" + i, wrap.getValue(objsToLoad[i], pkProp)) ;
+			}
+			
+			ReadonlyTranSession session = tm.openDelayReadTran() ;
+			List rows ;
+			try{
+				rows = session.list(getSQLForBatchLoad(count).bind(params)) ;
+			}finally{
+				session.close() ;
+			}
+			
+			//Map<pk, value>
+			HashMap values = new HashMap() ;
+			for(Iterator it = rows.iterator() ; it.hasNext() ; ){
+				Map row = (Map) it.next() ;
+				values.put(row.get(pkProp), row.get(propToLoad)) ;
+			}
+			
+			//set to cache
+			for(int i = 0 ; i < count ; i++){
+				wrap.setValueUnderProxy(objsToLoad[i], propToLoad, values.get(params.get("guzz_pk" + i))) ;
+			}
+			
+			return values.get(params.get("guzz_pk0")) ;
+		}
+		
+		protected CompiledSQL getSQLForBatchLoad(int pkCount){
+			CompiledSQL cs = this.sqlsForBatchLoad[pkCount] ;
+			
+			if(cs == null){
+				String pkCol = table.getPKColumn().getColNameForSQL() ;
+				
+				StringBuffer sb = new StringBuffer(64 + pkCount * 12) ;
+				sb.append("select ")
+				  .append(pkCol)
+				  .append(", ")
+				  .append(orm.tableColumn.getColNameForSQL())
+				  .append(" from ")
+				  .append(MarkedSQL.TABLE_START_TAG_IN_MARKED_SQL)
+				  .append(this.businessName)
+				  .append(" where ")
+				  .append(pkCol)
+				  .append(" in (") ;
+				
+				for(int i = 0 ; i < pkCount ; i++){
+					if(i > 0){
+						sb.append(", ") ;
+					}
+					
+					sb.append(":guzz_pk").append(i) ;
+				}
+				
+				sb.append(")") ;
+				
+				cs = tm.getCompiledSQLBuilder().buildCompiledSQL(this.businessName, sb.toString()) ;
+				for(int i = 0 ; i < pkCount ; i++){
+					cs.addParamPropMapping("guzz_pk" + i, table.getPKPropName()) ;
+				}
+				cs.setResultClass(HashMap.class) ;
+				
+				this.sqlsForBatchLoad[pkCount] = cs ;
+			}
+			
+			return cs ;
+		}
+		
 		/**
 		 * 从主数据库读取，不进行缓存。供写操作使用。属性读取后，不会自动set到 @param fetchedObject 中。
 		 * <p/>
@@ -47,6 +47,13 @@ public class CglibProxyFactory implements ProxyFactory{
 		
 		return (GuzzProxy) e.create() ;
 	}
+	
+	public void attachFetchGroup(GuzzProxy proxy, LazyFetchGroup group) {
+		LazyCallback callback = (LazyCallback) ((Factory) proxy).getCallback(0) ;
+		callback.fetchGroup = group ;
+		
+		group.addMember(proxy) ;
+	}
 
 	static class LazyCallback implements MethodInterceptor{
 		private BusinessDescriptor descriptor ;
@@ -56,6 +63,9 @@ public class CglibProxyFactory implements ProxyFactory{
 		
 		private boolean recordingPropChange = true ;
 		
+		/**objects fetched with this one. null if lazy properties are loaded one by one.*/
+		private LazyFetchGroup fetchGroup ;
+		
 		/**
 		 * dynamic update时，忽略对lazy属性的更新(lazy属性的更新包含在dynamic-update中)。
 		 */
@@ -167,7 +177,7 @@ public class CglibProxyFactory implements ProxyFactory{
 			
 			if(lc != null){
 				//do lazy loading
-				return lc.loadProperty(obj) ;
+				return lc.loadProperty(obj, this.fetchGroup) ;
 			}
 			
 			if(this.recordingPropChange){
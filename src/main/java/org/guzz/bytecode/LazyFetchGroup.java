@@ -0,0 +1,77 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.bytecode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * 
+ * Objects fetched by the same query. 
+ * When a lazy property with batch-size configured is first read on one member, 
+ * the property is loaded for the member and its unloaded siblings in one statement.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class LazyFetchGroup {
+	
+	private final ArrayList members = new ArrayList() ;
+	
+	/**member >> Integer index in members*/
+	private final IdentityHashMap indexes = new IdentityHashMap() ;
+	
+	public synchronized void addMember(Object proxy){
+		this.indexes.put(proxy, new Integer(this.members.size())) ;
+		this.members.add(proxy) ;
+	}
+	
+	public synchronized int size(){
+		return this.members.size() ;
+	}
+	
+	/**
+	 * Collect members accepted by the filter into @param out, starting with @param member and continuing in fetched order(wrapped around),
+	 * until out is full or all members are checked.
+	 * 
+	 * @return count of members collected. 0 if @param member doesn't belong to this group.
+	 */
+	public synchronized int collectMembersFrom(Object member, MemberFilter filter, Object[] out){
+		Integer start = (Integer) this.indexes.get(member) ;
+		
+		if(start == null) return 0 ;
+		
+		int size = this.members.size() ;
+		int count = 0 ;
+		
+		for(int i = 0 ; i < size && count < out.length ; i++){
+			Object m = this.members.get((start.intValue() + i) % size) ;
+			
+			if(filter.accept(m)){
+				out[count++] = m ;
+			}
+		}
+		
+		return count ;
+	}
+	
+	public static interface MemberFilter{
+		
+		public boolean accept(Object member) ;
+		
+	}
+
+}
@@ -27,5 +27,12 @@ import org.guzz.pojo.GuzzProxy;
 public interface ProxyFactory {
 	
 	public GuzzProxy proxy(BusinessDescriptor descriptor) ;
+	
+	/**
+	 * Register the proxy into a {@link LazyFetchGroup} to batch-load lazy properties with its siblings.
+	 * 
+	 * @param proxy proxy created by this factory
+	 */
+	public void attachFetchGroup(GuzzProxy proxy, LazyFetchGroup group) ;
 
 }
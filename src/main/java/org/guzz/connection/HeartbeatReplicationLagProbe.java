@@ -0,0 +1,147 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.connection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.guzz.util.CloseUtil;
+import org.guzz.util.PropertyUtil;
+import org.guzz.util.StringUtil;
+
+/**
+ * 
+ * Measure the replication lag with a heartbeat table.
+ * <p/>
+ * On every measurement, the current time is written to the heartbeat row in the master database, 
+ * and then read back from the slave database. The lag is the time past since the heartbeat read from the slave was written.
+ * As the heartbeat is written and read in the same machine, clocks of the database servers don't matter.
+ * Each slave machine measured separately gets its own heartbeat write, so the lag of one slave is never hidden by another.
+ * <p/>
+ * The heartbeat table must be created in the master database and replicated to the slaves:
+ * <pre>
+ * create table guzz_heartbeat(id int not null primary key, beat_time bigint not null)
+ * </pre>
+ * Properties supported: heartbeatTable(default guzz_heartbeat), heartbeatId(default 1. Use different ids when many applications share the table.)
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class HeartbeatReplicationLagProbe implements ReplicationLagProbe {
+	
+	public static final String DEFAULT_TABLE_NAME = "guzz_heartbeat" ;
+	
+	private String updateSQL ;
+	
+	private String insertSQL ;
+	
+	private String selectSQL ;
+	
+	private int heartbeatId = 1 ;
+
+	public void configure(Properties props) {
+		String tableName = PropertyUtil.getString(props, "heartbeatTable", DEFAULT_TABLE_NAME) ;
+		this.heartbeatId = StringUtil.toInt(props.getProperty("heartbeatId"), 1) ;
+		
+		this.updateSQL = "update " + tableName + " set beat_time = ? where id = ?" ;
+		this.insertSQL = "insert into " + tableName + "(beat_time, id) values(?, ?)" ;
+		this.selectSQL = "select beat_time from " + tableName + " where id = ?" ;
+	}
+
+	public long measureLag(PhysicsDBGroup group) throws Exception {
+		long now = System.currentTimeMillis() ;
+		
+		writeHeartbeat(group, now) ;
+		
+		return toLag(readHeartbeat(group.getSlaveDB().getConnection())) ;
+	}
+	
+	public long measureLag(PhysicsDBGroup group, DataSource slave) throws Exception {
+		long now = System.currentTimeMillis() ;
+		
+		writeHeartbeat(group, now) ;
+		
+		return toLag(readHeartbeat(slave.getConnection())) ;
+	}
+	
+	protected long toLag(long lastBeat){
+		if(lastBeat < 0){
+			//not replicated yet.
+			return Long.MAX_VALUE ;
+		}
+		
+		return Math.max(0, System.currentTimeMillis() - lastBeat) ;
+	}
+	
+	protected void writeHeartbeat(PhysicsDBGroup group, long time) throws SQLException{
+		Connection conn = group.getMasterDB().getConnection() ;
+		PreparedStatement pstm = null ;
+		
+		try{
+			pstm = conn.prepareStatement(updateSQL) ;
+			pstm.setLong(1, time) ;
+			pstm.setInt(2, heartbeatId) ;
+			
+			if(pstm.executeUpdate() == 0){
+				CloseUtil.close(pstm) ;
+				
+				pstm = conn.prepareStatement(insertSQL) ;
+				pstm.setLong(1, time) ;
+				pstm.setInt(2, heartbeatId) ;
+				pstm.executeUpdate() ;
+			}
+			
+			if(!conn.getAutoCommit()){
+				conn.commit() ;
+			}
+		}finally{
+			CloseUtil.close(pstm) ;
+			CloseUtil.close(conn) ;
+		}
+	}
+	
+	/**
+	 * Read the heartbeat from the slave, and close the connection.
+	 * 
+	 * @return -1 if the heartbeat is not found in the slave.
+	 */
+	protected long readHeartbeat(Connection conn) throws SQLException{
+		PreparedStatement pstm = null ;
+		ResultSet rs = null ;
+		
+		try{
+			pstm = conn.prepareStatement(selectSQL) ;
+			pstm.setInt(1, heartbeatId) ;
+			rs = pstm.executeQuery() ;
+			
+			if(rs.next()){
+				return rs.getLong(1) ;
+			}
+			
+			return -1 ;
+		}finally{
+			CloseUtil.close(rs) ;
+			CloseUtil.close(pstm) ;
+			CloseUtil.close(conn) ;
+		}
+	}
+
+}
@@ -29,6 +29,16 @@ public class PhysicsDBGroup extends DBGroup {
 	private DatabaseService masterDB ;
 	
 	private DatabaseService slaveDB ;
+	
+	/**replication lag of the slave measured in milliseconds. -1 means unknown.*/
+	private volatile long measuredLatency = -1 ;
+	
+	private volatile long latencyMeasuredTime ;
+	
+	/**max count of PreparedStatements cached for each opened connection. 0 to disable the cache.*/
+	private int statementCacheSize ;
+	
+	private final StatementCacheStats statementCacheStats = new StatementCacheStats() ;
 
 	public DatabaseService getMasterDB() {
 		return masterDB;
@@ -46,6 +56,49 @@ public class PhysicsDBGroup extends DBGroup {
 		this.slaveDB = slaveDB;
 	}
 
+	/**
+	 * How stale the slave database may be in milliseconds, or -1 if the replication lag is not measured.
+	 * <p/>
+	 * The slave had all data written before (measuredTime - measuredLag), so the result is the last measured lag plus the time past since the measurement.
+	 * 
+	 * @see org.guzz.service.db.ReplicationLagMonitor
+	 */
+	public long getLatency() {
+		long lag = this.measuredLatency ;
+		
+		if(lag < 0){
+			return -1 ;
+		}
+		
+		long staleness = lag + (System.currentTimeMillis() - this.latencyMeasuredTime) ;
+		
+		//overflow
+		return staleness < 0 ? Long.MAX_VALUE : staleness ;
+	}
+	
+	/**
+	 * Record the replication lag measured just now. -1 to mark it as unknown.
+	 */
+	public void updateLatency(long lagInMillis) {
+		this.latencyMeasuredTime = System.currentTimeMillis() ;
+		this.measuredLatency = lagInMillis ;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * hits/misses/evictions of the PreparedStatement caches of all connections opened for this group.
+	 */
+	public StatementCacheStats getStatementCacheStats() {
+		return statementCacheStats;
+	}
+
 	public PhysicsDBGroup getPhysicsDBGroup(Object tableCondition) {
 		return this ;
 	}
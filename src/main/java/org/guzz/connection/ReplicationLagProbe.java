@@ -0,0 +1,54 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.connection;
+
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+/**
+ * 
+ * Measure how far the slave database of a {@link PhysicsDBGroup} is behind its master.
+ *
+ * @see HeartbeatReplicationLagProbe
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface ReplicationLagProbe {
+	
+	/**
+	 * init the probe with the properties of the monitor service.
+	 */
+	public void configure(Properties props) ;
+	
+	/**
+	 * Measure the current replication lag.
+	 * 
+	 * @param group the database group having both master and slave databases.
+	 * @return the lag in milliseconds.
+	 */
+	public long measureLag(PhysicsDBGroup group) throws Exception ;
+	
+	/**
+	 * Measure the current replication lag of one slave machine of the group.
+	 * 
+	 * @param group the database group
+	 * @param slave the DataSource of the slave machine to measure, bypassing the load balancing of the slave service.
+	 * @return the lag in milliseconds.
+	 */
+	public long measureLag(PhysicsDBGroup group, DataSource slave) throws Exception ;
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.connection;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Counters of the prepared statement caches opened for one {@link PhysicsDBGroup}.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class StatementCacheStats {
+	
+	private final AtomicLong hits = new AtomicLong() ;
+	
+	private final AtomicLong misses = new AtomicLong() ;
+	
+	private final AtomicLong evictions = new AtomicLong() ;
+	
+	public void hit(){
+		hits.incrementAndGet() ;
+	}
+	
+	public void miss(){
+		misses.incrementAndGet() ;
+	}
+	
+	public void evict(){
+		evictions.incrementAndGet() ;
+	}
+
+	/**
+	 * Count of statements reused from the cache.
+	 */
+	public long getHits() {
+		return hits.get() ;
+	}
+
+	/**
+	 * Count of statements prepared from the connection because they were not in the cache.
+	 */
+	public long getMisses() {
+		return misses.get() ;
+	}
+
+	/**
+	 * Count of cached statements closed to keep the cache under its size.
+	 */
+	public long getEvictions() {
+		return evictions.get() ;
+	}
+	
+	public void reset(){
+		hits.set(0) ;
+		misses.set(0) ;
+		evictions.set(0) ;
+	}
+	
+	public String toString(){
+		return "hits:" + getHits() + ", misses:" + getMisses() + ", evictions:" + getEvictions() ;
+	}
+
+}
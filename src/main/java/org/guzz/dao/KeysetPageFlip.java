@@ -0,0 +1,76 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.dao;
+
+import java.util.List;
+
+/**
+ * 
+ * {@link PageFlip} of keyset(seek) pagination. Pages are located by opaque cursors instead of page numbers.
+ * <p/>
+ * Pass {@link #getNextCursor()} to {@link org.guzz.orm.se.SearchExpression#seekAfter(String)} for the next page, 
+ * and {@link #getPreviousCursor()} to {@link org.guzz.orm.se.SearchExpression#seekBefore(String)} for the previous page.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class KeysetPageFlip extends PageFlip {
+	
+	private String nextCursor ;
+	
+	private String previousCursor ;
+	
+	private boolean hasNextPage ;
+	
+	private boolean hasPreviousPage ;
+	
+	public KeysetPageFlip(){}
+	
+	/**
+	 * @param totalCount total count. 0 if not computed.
+	 * @param pageSize page size
+	 * @param elements data of the this page
+	 * @param previousCursor cursor of the first element. null if elements is empty.
+	 * @param nextCursor cursor of the last element. null if elements is empty.
+	 * @param hasPreviousPage is there any record before this page?
+	 * @param hasNextPage is there any record after this page?
+	 */
+	public void setKeysetResult(int totalCount, int pageSize, List elements, String previousCursor, String nextCursor, boolean hasPreviousPage, boolean hasNextPage){
+		setResult(totalCount, 1, pageSize, elements) ;
+		
+		this.previousCursor = previousCursor ;
+		this.nextCursor = nextCursor ;
+		this.hasPreviousPage = hasPreviousPage ;
+		this.hasNextPage = hasNextPage ;
+	}
+
+	public boolean isHasNextPage() {
+		return hasNextPage ;
+	}
+
+	public boolean isHasPreviousPage() {
+		return hasPreviousPage ;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public String getPreviousCursor() {
+		return previousCursor;
+	}
+
+}
@@ -17,10 +17,13 @@
 package org.guzz.dialect;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -65,6 +68,29 @@ public abstract class AbstractDialect implements Dialect {
 	
 	protected final Map sqlTypes = new HashMap() ;
 	
+	/**colType to its parsed {@link ResolvedType}.*/
+	private final ConcurrentHashMap resolvedTypes = new ConcurrentHashMap() ;
+	
+	/**colType to the shared SQLDataType instance.*/
+	private final ConcurrentHashMap sharedTypes = new ConcurrentHashMap() ;
+	
+	/**lower-cased type name to the type class, for case-insensitive lookups. Rebuilt after new types are registered.*/
+	private volatile Map lowerCaseTypes ;
+	
+	static class ResolvedType{
+		public final String typeName ;
+		
+		public final Class type ;
+		
+		public final String param ;
+		
+		public ResolvedType(String typeName, Class type, String param){
+			this.typeName = typeName ;
+			this.type = type ;
+			this.param = param ;
+		}
+	}
+	
 	public AbstractDialect(){
 		regSystemTypes() ;
 	}
@@ -154,6 +180,10 @@ public abstract class AbstractDialect implements Dialect {
 	
 	public void registerUserDefinedTypes(String typeName, Class dataType){
 		sqlTypes.put(typeName, dataType) ;
+		
+		this.lowerCaseTypes = null ;
+		this.resolvedTypes.clear() ;
+		this.sharedTypes.clear() ;
 	}
 
 	/**
@@ -161,6 +191,55 @@ public abstract class AbstractDialect implements Dialect {
 	 * @return 用于处理@param数据类型的处理类，如果不支持抛出异常@link DataTypeException。
 	 */
 	public SQLDataType getDataType(String colType){
+		ResolvedType rt = (ResolvedType) this.resolvedTypes.get(colType) ;
+		
+		if(rt == null){
+			rt = resolveType(colType) ;
+			this.resolvedTypes.put(colType, rt) ;
+		}
+		
+		Class type = rt.type ;
+		SQLDataType typeInstance ;
+		try {
+			typeInstance = (SQLDataType) type.newInstance() ;
+		} catch (InstantiationException e) {
+			throw new DataTypeException("unable to instance type class[" + type.getName() + "] for type:[" + rt.typeName + "].") ;
+		} catch (IllegalAccessException e) {
+			throw new DataTypeException("unable to instance type class[" + type.getName() + "] for type:[" + rt.typeName + "].") ;
+		}
+		
+		if(typeInstance instanceof DialectAware){
+			((DialectAware) typeInstance).setDialect(this) ;
+		}
+		
+		if(typeInstance instanceof ParameteredType){
+			((ParameteredType) typeInstance).setParameter(rt.param) ;
+		}else if(rt.param != null){
+			log.warn("data type class[" + type.getName() + "] for type:[" + rt.typeName + "] doesn't support parameterization. parameter:[" + rt.param + "] is ignored.") ;
+		}
+		
+		return typeInstance ;
+	}
+	
+	public SQLDataType getSharedDataType(String colType){
+		SQLDataType type = (SQLDataType) this.sharedTypes.get(colType) ;
+		
+		if(type == null){
+			type = getDataType(colType) ;
+			
+			SQLDataType old = (SQLDataType) this.sharedTypes.putIfAbsent(colType, type) ;
+			if(old != null){
+				type = old ;
+			}
+		}
+		
+		return type ;
+	}
+	
+	/**
+	 * Parse "type(length)|parameter" and find the type class. The type name is case-insensitive if no exact match is found.
+	 */
+	protected ResolvedType resolveType(String colType){
 		String param = null ;
 		int pos = colType.indexOf('|') ;
 		
@@ -176,39 +255,28 @@ public abstract class AbstractDialect implements Dialect {
 		Class type = (Class) sqlTypes.get(colType) ;
 		
 		if(type == null){
-			Iterator i = this.sqlTypes.entrySet().iterator() ;
-			while(i.hasNext()){
-				Map.Entry e = (Entry) i.next() ;
-				if(colType.equalsIgnoreCase((String) e.getKey())){
-					type = (Class) e.getValue() ;
+			Map lowerCaseTypes = this.lowerCaseTypes ;
+			
+			if(lowerCaseTypes == null){
+				lowerCaseTypes = new HashMap() ;
+				
+				Iterator i = this.sqlTypes.entrySet().iterator() ;
+				while(i.hasNext()){
+					Map.Entry e = (Entry) i.next() ;
+					lowerCaseTypes.put(((String) e.getKey()).toLowerCase(), e.getValue()) ;
 				}
+				
+				this.lowerCaseTypes = lowerCaseTypes ;
 			}
+			
+			type = (Class) lowerCaseTypes.get(colType.toLowerCase()) ;
 		}
 		
-		if(type != null){
-			SQLDataType typeInstance ;
-			try {
-				typeInstance = (SQLDataType) type.newInstance() ;
-			} catch (InstantiationException e) {
-				throw new DataTypeException("unable to instance type class[" + type.getName() + "] for type:[" + colType + "].") ;
-			} catch (IllegalAccessException e) {
-				throw new DataTypeException("unable to instance type class[" + type.getName() + "] for type:[" + colType + "].") ;
-			}
-			
-			if(typeInstance instanceof DialectAware){
-				((DialectAware) typeInstance).setDialect(this) ;
-			}
-			
-			if(typeInstance instanceof ParameteredType){
-				((ParameteredType) typeInstance).setParameter(param) ;
-			}else if(param != null){
-				log.warn("data type class[" + type.getName() + "] for type:[" + colType + "] doesn't support parameterization. parameter:[" + param + "] is ignored.") ;
-			}
-			
-			return typeInstance ;
-		}else{
+		if(type == null){
 			throw new DataTypeException("column type[" + colType + "] is not supported.") ;
 		}
+		
+		return new ResolvedType(colType, type, param) ;
 	}
 
 	public String getForUpdateNoWaitString(String sql) {
@@ -223,4 +291,42 @@ public abstract class AbstractDialect implements Dialect {
 		return true ;
 	}
 	
+	public boolean supportsMultiRowInsert(){
+		return false ;
+	}
+	
+	/**
+	 * @return 100
+	 */
+	public int getMaxRowsPerInsert(){
+		return 100 ;
+	}
+	
+	/**
+	 * @return 2000
+	 */
+	public int getMaxBindParameters(){
+		return 2000 ;
+	}
+	
+	public int getMultiRowInsertKeysMode(){
+		return MULTI_ROW_KEYS_NONE ;
+	}
+	
+	public int getFetchSizeForStreaming(int fetchSize){
+		return fetchSize ;
+	}
+	
+	public boolean supportsRowValueComparison(){
+		return false ;
+	}
+	
+	public String getEstimatedCountSQL(String countSQL){
+		return null ;
+	}
+	
+	public long readEstimatedCount(ResultSet rs) throws SQLException{
+		return -1 ;
+	}
+	
 }
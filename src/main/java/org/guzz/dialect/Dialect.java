@@ -16,6 +16,9 @@
  */
 package org.guzz.dialect;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 import org.guzz.orm.type.SQLDataType;
 
 /**
@@ -32,6 +35,14 @@ public interface Dialect {
 	 */
 	public SQLDataType getDataType(String colType) ;
 	
+	/**
+	 * Return the cached {@link SQLDataType} instance for @param colType, shared by all callers.
+	 * <br>The returned instance must not be modified(eg: {@link SQLDataType#setNullToValue(Object)}), use {@link #getDataType(String)} to get a private one.
+	 * 
+	 * @param colType eg: varchar, bigint, int, org.guzz.xxx.POJO
+	 */
+	public SQLDataType getSharedDataType(String colType) ;
+	
 	public void registerUserDefinedTypes(String typeName, Class dataType) ;
 	
 	/**
@@ -83,5 +94,60 @@ public interface Dialect {
 	 */
 	public int getDefaultBatchSize() ;
 	
+	/**
+	 * Does the database support inserting many rows in one statement, as: insert into t(a, b) values(?, ?), (?, ?) ?
+	 */
+	public boolean supportsMultiRowInsert() ;
+	
+	/**
+	 * Max rows in one multi-row insert statement.
+	 */
+	public int getMaxRowsPerInsert() ;
+	
+	/**
+	 * Max bind parameters(the ?s) allowed in one sql statement.
+	 */
+	public int getMaxBindParameters() ;
+	
+	/**{@link java.sql.Statement#getGeneratedKeys()} of a multi-row insert can't be used to read back the keys.*/
+	public static final int MULTI_ROW_KEYS_NONE = 0 ;
+	
+	/**{@link java.sql.Statement#getGeneratedKeys()} of a multi-row insert returns one key for each row in the inserting order.*/
+	public static final int MULTI_ROW_KEYS_ALL = 1 ;
+	
+	/**
+	 * How the auto-increment keys of a multi-row insert are reported by {@link java.sql.Statement#getGeneratedKeys()}. 
+	 * Objects with auto-increment keys are inserted by the jdbc batch if the keys can't be read back.
+	 * 
+	 * @return {@link #MULTI_ROW_KEYS_NONE} or {@link #MULTI_ROW_KEYS_ALL}
+	 */
+	public int getMultiRowInsertKeysMode() ;
+	
+	/**
+	 * The value passed to {@link java.sql.Statement#setFetchSize(int)} when streaming a large ResultSet row by row.
+	 * 
+	 * @param fetchSize the fetch size asked by the user.
+	 */
+	public int getFetchSizeForStreaming(int fetchSize) ;
+	
+	/**
+	 * Does the database support comparing row values, as: where (a, b) > (?, ?) ?
+	 */
+	public boolean supportsRowValueComparison() ;
+	
+	/**
+	 * The sql asking the query planner how many rows @param countSQL will count, without executing it. eg: explain select count(*) ...
+	 * 
+	 * @return null if the database doesn't give row estimates.
+	 */
+	public String getEstimatedCountSQL(String countSQL) ;
+	
+	/**
+	 * Read the estimated row count from the ResultSet of {@link #getEstimatedCountSQL(String)}.
+	 * 
+	 * @return -1 if unknown.
+	 */
+	public long readEstimatedCount(ResultSet rs) throws SQLException ;
+	
 	
 }
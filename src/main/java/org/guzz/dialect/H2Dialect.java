@@ -101,5 +101,37 @@ public class H2Dialect extends AbstractDialect {
 	public int getDefaultBatchSize(){
 		return 128 ;
 	}
-
+	
+	public boolean supportsMultiRowInsert(){
+		return true ;
+	}
+	
+	/**
+	 * @return 1000
+	 */
+	public int getMaxRowsPerInsert(){
+		return 1000 ;
+	}
+	
+	/**
+	 * @return 65535
+	 */
+	public int getMaxBindParameters(){
+		return 65535 ;
+	}
+	
+	/**
+	 * H2 returns the identity of the last inserted row only. 
+	 * The other keys can't be told from it: the increment may not be 1, and inserts of other sessions may interleave in the MULTI_THREADED mode.
+	 * 
+	 * @return {@link #MULTI_ROW_KEYS_NONE}
+	 */
+	public int getMultiRowInsertKeysMode(){
+		return MULTI_ROW_KEYS_NONE ;
+	}
+	
+	public boolean supportsRowValueComparison(){
+		return true ;
+	}
+	
 }
@@ -88,5 +88,23 @@ public class MSSQLDialect extends AbstractDialect {
 	public int getDefaultBatchSize(){
 		return 500 ;
 	}
+	
+	/**
+	 * A table value constructor accepts at most 1000 rows.
+	 * 
+	 * @return 1000
+	 */
+	public int getMaxRowsPerInsert(){
+		return 1000 ;
+	}
+	
+	/**
+	 * A request accepts at most 2100 parameters.
+	 * 
+	 * @return 2100
+	 */
+	public int getMaxBindParameters(){
+		return 2100 ;
+	}
 
 }
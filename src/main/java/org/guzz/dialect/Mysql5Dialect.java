@@ -16,6 +16,9 @@
  */
 package org.guzz.dialect;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 /**
  * 
  * 
@@ -88,4 +91,77 @@ public class Mysql5Dialect extends AbstractDialect {
 		return 1024 ;
 	}
 	
+	public boolean supportsMultiRowInsert(){
+		return true ;
+	}
+	
+	/**
+	 * Rows are limited by max_allowed_packet only.
+	 * 
+	 * @return 1000
+	 */
+	public int getMaxRowsPerInsert(){
+		return 1000 ;
+	}
+	
+	/**
+	 * The placeholders of a server side prepared statement are limited to 65535.
+	 * 
+	 * @return 65535
+	 */
+	public int getMaxBindParameters(){
+		return 65535 ;
+	}
+	
+	/**
+	 * Connector/J computes keys for all rows from LAST_INSERT_ID() and auto_increment_increment.
+	 */
+	public int getMultiRowInsertKeysMode(){
+		return MULTI_ROW_KEYS_ALL ;
+	}
+	
+	/**
+	 * Mysql's driver reads the whole ResultSet into memory unless the fetch size is Integer.MIN_VALUE.
+	 * 
+	 * @return Integer.MIN_VALUE
+	 */
+	public int getFetchSizeForStreaming(int fetchSize){
+		return Integer.MIN_VALUE ;
+	}
+	
+	public boolean supportsRowValueComparison(){
+		return true ;
+	}
+	
+	public String getEstimatedCountSQL(String countSQL){
+		return "explain " + countSQL ;
+	}
+	
+	/**
+	 * Multiply the "rows" column of all tables in the plan, capped at Integer.MAX_VALUE.
+	 * 
+	 * @return -1 if the plan is empty, or any table has no row estimate.
+	 */
+	public long readEstimatedCount(ResultSet rs) throws SQLException{
+		long count = -1 ;
+		
+		while(rs.next()){
+			long rows = rs.getLong("rows") ;
+			
+			if(rs.wasNull()){
+				return -1 ;
+			}
+			
+			if(count < 0){
+				count = rows ;
+			}else if(rows > 0 && count > Integer.MAX_VALUE / rows){
+				count = Integer.MAX_VALUE ;
+			}else{
+				count = count * rows ;
+			}
+		}
+		
+		return count < 0 ? -1 : Math.min(count, Integer.MAX_VALUE) ;
+	}
+	
 }
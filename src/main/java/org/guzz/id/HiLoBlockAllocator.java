@@ -0,0 +1,310 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.id;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.guzz.transaction.WriteTranSession;
+
+/**
+ * 
+ * Allocate hi/lo ids in blocks for the hilo generators.
+ * <p>
+ * Each target (the physical database group and the table or sequence storing the hi value) keeps its own block.
+ * Ids inside a block are allocated with a CAS on an {@link AtomicLong}, and the next block is fetched in a background thread
+ * once the given percent of the current block is used, so the inserting threads rarely wait for the hi value.
+ * If the current block runs out while the prefetching is on the way, the inserting threads wait for it to keep ids in order;
+ * if the prefetching failed or is disabled, the hi value is fetched in the calling thread.
+ * </p>
+ * For a hi value <code>hival</code>, the block contains ids from <code>hival * (maxLo + 1)</code> to <code>hival * (maxLo + 1) + maxLo</code>, 
+ * except that 0 is skipped.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class HiLoBlockAllocator {
+	private static final Log log = LogFactory.getLog(HiLoBlockAllocator.class) ;
+	
+	private static final long EXHAUSTED = Long.MIN_VALUE ;
+	
+	/**
+	 * Fetch a new hi value from the database.
+	 */
+	public static interface HiValueFetcher{
+		
+		/**
+		 * Fetch the next hi value.
+		 * 
+		 * @param session the session of the inserting thread. null if called in the prefetch thread.
+		 */
+		public long nextHiValue(WriteTranSession session, Object tableCondition) ;
+		
+	}
+	
+	private final int blockSize ;
+	
+	/**prefetch the next block when the id at this offset of the block is allocated. -1 means no prefetch.*/
+	private final int prefetchOffset ;
+	
+	private final HiValueFetcher fetcher ;
+	
+	/**target key >> Target*/
+	private final ConcurrentHashMap targets = new ConcurrentHashMap() ;
+	
+	/**guarded by this. created on the first prefetching.*/
+	private ExecutorService prefetchExecutor ;
+	
+	/**guarded by this*/
+	private boolean shutdown ;
+	
+	/**
+	 * @param maxLo the max lo value, must be positive.
+	 * @param prefetchPercent prefetch the next block when so many percents of the current block is used. 0 or 100 means no prefetch.
+	 * @param fetcher the hi value fetcher
+	 */
+	public HiLoBlockAllocator(int maxLo, int prefetchPercent, HiValueFetcher fetcher){
+		if(maxLo < 1){
+			throw new IllegalArgumentException("maxLo must be positive. maxLo is:" + maxLo) ;
+		}
+		
+		this.blockSize = maxLo + 1 ;
+		this.fetcher = fetcher ;
+		
+		if(prefetchPercent <= 0 || prefetchPercent >= 100){
+			this.prefetchOffset = -1 ;
+		}else{
+			this.prefetchOffset = Math.max(1, (int) ((long) blockSize * prefetchPercent / 100)) ;
+		}
+	}
+	
+	/**
+	 * Allocate the next id for the target.
+	 * 
+	 * @param targetKey the resolved physical database group and table(or sequence) storing the hi value.
+	 * @param session the session inserting the object
+	 * @param tableCondition tableCondition to fetch the hi value with
+	 */
+	public long next(Object targetKey, WriteTranSession session, Object tableCondition){
+		Target t = getTarget(targetKey) ;
+		
+		while(true){
+			Block b = (Block) t.current.get() ;
+			
+			if(b != null){
+				long id = b.allocate() ;
+				
+				if(id != EXHAUSTED){
+					if(id == b.prefetchMark){
+						t.prefetch(tableCondition) ;
+					}
+					
+					return id ;
+				}
+			}
+			
+			t.switchBlock(b, session, tableCondition) ;
+		}
+	}
+	
+	/**
+	 * The count of targets having blocks.
+	 */
+	public int getTargetsCount(){
+		return this.targets.size() ;
+	}
+	
+	protected Target getTarget(Object targetKey){
+		Target t = (Target) this.targets.get(targetKey) ;
+		
+		if(t == null){
+			t = new Target(targetKey) ;
+			Target old = (Target) this.targets.putIfAbsent(targetKey, t) ;
+			
+			if(old != null){
+				t = old ;
+			}
+		}
+		
+		return t ;
+	}
+	
+	protected Block fetchBlock(WriteTranSession session, Object tableCondition){
+		long hival = this.fetcher.nextHiValue(session, tableCondition) ;
+		
+		if(log.isDebugEnabled()){
+			log.debug("new hi value: " + hival) ;
+		}
+		
+		return new Block(hival) ;
+	}
+	
+	/**
+	 * Stop the prefetch threads. Blocks are fetched in the inserting threads after the shutdown.
+	 */
+	public synchronized void shutdown(){
+		this.shutdown = true ;
+		
+		if(prefetchExecutor != null){
+			prefetchExecutor.shutdown() ;
+			prefetchExecutor = null ;
+		}
+	}
+	
+	/**
+	 * @throws RejectedExecutionException if the allocator is shutdown.
+	 */
+	protected synchronized ExecutorService getPrefetchExecutor(){
+		if(shutdown){
+			throw new RejectedExecutionException("allocator is shutdown.") ;
+		}
+		
+		if(prefetchExecutor == null){
+			prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory(){
+				private final AtomicInteger seq = new AtomicInteger() ;
+				
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "guzz-hilo-prefetch-" + seq.incrementAndGet()) ;
+					t.setDaemon(true) ;
+					
+					return t ;
+				}
+			}) ;
+		}
+		
+		return prefetchExecutor ;
+	}
+	
+	class Block{
+		final long end ;
+		
+		final long prefetchMark ;
+		
+		final AtomicLong cursor ;
+		
+		Block(long hival){
+			long base = hival * blockSize ;
+			long start = (hival == 0) ? 1 : base ;
+			
+			this.end = base + blockSize ;
+			this.cursor = new AtomicLong(start) ;
+			this.prefetchMark = (prefetchOffset < 0) ? EXHAUSTED : Math.max(start, base + prefetchOffset) ;
+		}
+		
+		/**
+		 * @return the allocated id, or {@link HiLoBlockAllocator#EXHAUSTED} if the block is used up.
+		 */
+		long allocate(){
+			while(true){
+				long id = cursor.get() ;
+				
+				if(id >= end){
+					return EXHAUSTED ;
+				}
+				
+				if(cursor.compareAndSet(id, id + 1)){
+					return id ;
+				}
+			}
+		}
+	}
+	
+	class Target{
+		final Object key ;
+		
+		final AtomicReference current = new AtomicReference() ;
+		
+		/**guarded by this*/
+		private boolean prefetching ;
+		
+		/**guarded by this*/
+		private Block prefetched ;
+		
+		Target(Object key){
+			this.key = key ;
+		}
+		
+		void prefetch(final Object tableCondition){
+			synchronized(this){
+				if(prefetching || prefetched != null){
+					return ;
+				}
+				
+				prefetching = true ;
+			}
+			
+			try{
+				getPrefetchExecutor().execute(new Runnable(){
+					public void run() {
+						Block b = null ;
+						
+						try{
+							b = fetchBlock(null, tableCondition) ;
+						}catch(Throwable e){
+							//the block will be fetched in the inserting thread.
+							log.warn("fail to prefetch the hi value for:" + key, e) ;
+						}finally{
+							synchronized(Target.this){
+								prefetched = b ;
+								prefetching = false ;
+								Target.this.notifyAll() ;
+							}
+						}
+					}
+				}) ;
+			}catch(RejectedExecutionException e){
+				synchronized(this){
+					prefetching = false ;
+				}
+			}
+		}
+		
+		synchronized void switchBlock(Block exhausted, WriteTranSession session, Object tableCondition){
+			if(current.get() != exhausted){
+				//switched by another thread.
+				return ;
+			}
+			
+			//the prefetching is on the way. wait for it to keep the blocks in order.
+			while(prefetching){
+				try {
+					this.wait() ;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt() ;
+					break ;
+				}
+			}
+			
+			Block b = prefetched ;
+			prefetched = null ;
+			
+			if(b == null){
+				b = fetchBlock(session, tableCondition) ;
+			}
+			
+			current.set(b) ;
+		}
+	}
+
+}
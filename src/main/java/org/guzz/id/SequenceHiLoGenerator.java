@@ -19,12 +19,16 @@ package org.guzz.id;
 import java.io.Serializable;
 import java.util.Properties;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import org.guzz.ContextLifeCycle;
+import org.guzz.GuzzContext;
+import org.guzz.connection.DBGroup;
 import org.guzz.dialect.Dialect;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
+import org.guzz.transaction.TransactionManager;
 import org.guzz.transaction.WriteTranSession;
+import org.guzz.util.PropertyUtil;
 import org.guzz.util.StringUtil;
+import org.guzz.web.context.GuzzContextAware;
 
 
 /**
@@ -37,21 +41,39 @@ import org.guzz.util.StringUtil;
  * If sequences are not available, <tt>TableHiLoGenerator</tt> might be an
  * alternative.<br>
  * <br>
- * Mapping parameters supported: sequence, max_lo, db_group.
+ * Ids are allocated in blocks kept separately for each physical database group the tableCondition routes to.
+ * When <tt>prefetch_percent</tt>(default 80) percents of the current block is used, the next hi value is fetched
+ * in background with a new connection; if it is not ready in time, the hi value is fetched with the inserting session as before.<br>
+ * <br>
+ * Mapping parameters supported: sequence, max_lo, db_group, prefetch_percent.
  *
  * @see TableHiLoGenerator
  */
-public class SequenceHiLoGenerator extends SequenceIdGenerator {
-	private static final Log log = LogFactory.getLog(SequenceHiLoGenerator.class);
+public class SequenceHiLoGenerator extends SequenceIdGenerator implements GuzzContextAware, ContextLifeCycle {
 	
 	public static final String MAX_LO = "max_lo";
 	
+	/**
+	 * The prefetch_percent parameter. 0 to disable prefetching.
+	 */
+	public static final String PREFETCH_PERCENT = "prefetch_percent";
+	
 	private int maxLo;
-	private int lo;
-	private long hi;
 	
 	private Class returnType ;
 	
+	private POJOBasedObjectMapping mapping ;
+	
+	private String dbGroup ;
+	
+	private String sequenceName ;
+	
+	private GuzzContext guzzContext ;
+	
+	private TransactionManager tm ;
+	
+	private HiLoBlockAllocator allocator ;
+	
 	public Serializable preInsert(WriteTranSession session, Object domainObject, Object tableCondition) {
 		Serializable value = generate(session, tableCondition) ;
 		
@@ -67,12 +89,24 @@ public class SequenceHiLoGenerator extends SequenceIdGenerator {
 	public void configure(Dialect dialect, POJOBasedObjectMapping mapping, Properties params) {
 		super.configure(dialect, mapping, params) ;
 		
+		this.mapping = mapping ;
+		this.dbGroup = PropertyUtil.getString(params, DATABASE_GROUP_NAME, null) ;
+		this.sequenceName = PropertyUtil.getString(params, PARAM_SEQUENCE, DEFAULT_SEQUENCE_NAME) ;
 		this.maxLo = StringUtil.toInt(params.getProperty(MAX_LO), 9) ;
-		lo = maxLo + 1; // so we "clock over" on the first invocation
 		this.returnType = pkDataType.getDataType() ;
+		
+		if(maxLo > 0){
+			int prefetchPercent = StringUtil.toInt(params.getProperty(PREFETCH_PERCENT), 80) ;
+			
+			this.allocator = new HiLoBlockAllocator(maxLo, prefetchPercent, new HiLoBlockAllocator.HiValueFetcher(){
+				public long nextHiValue(WriteTranSession session, Object tableCondition) {
+					return fetchHiValue(session, tableCondition) ;
+				}
+			}) ;
+		}
 	}
 
-	public synchronized Number generate(WriteTranSession session, Object tableCondition) {
+	public Number generate(WriteTranSession session, Object tableCondition) {
 		if (maxLo < 1) {
 			//keep the behavior consistent even for boundary usages
 			Number n = (Number) super.nextSequenceValue(session, tableCondition) ;
@@ -84,19 +118,50 @@ public class SequenceHiLoGenerator extends SequenceIdGenerator {
 			return IdentifierGeneratorFactory.createNumber(n.longValue(), this.returnType) ;
 		}
 		
-		if (lo > maxLo){
-			Number n =  (Number) super.nextSequenceValue(session, tableCondition) ;
-			
-			long hival = n.longValue() ;
-			lo = (hival == 0) ? 1 : 0;
-			hi = hival * ( maxLo+1 );
-			
-			if ( log.isDebugEnabled() ){
-				log.debug("new hi value: " + hival);
-			}
+		long id = this.allocator.next(getTargetKey(tableCondition), session, tableCondition) ;
+		
+		return IdentifierGeneratorFactory.createNumber(id, this.returnType) ;
+	}
+	
+	/**
+	 * The physical database group and the sequence for the tableCondition.
+	 */
+	protected String getTargetKey(Object tableCondition){
+		DBGroup group = (this.dbGroup == null) ? this.mapping.getDbGroup() : this.guzzContext.getDBGroup(this.dbGroup) ;
+		
+		return group.getPhysicsGroupName(tableCondition) + ":" + this.sequenceName ;
+	}
+	
+	protected long fetchHiValue(WriteTranSession session, Object tableCondition){
+		if(session != null){
+			return ((Number) super.nextSequenceValue(session, tableCondition)).longValue() ;
 		}
 		
-		return IdentifierGeneratorFactory.createNumber(hi + lo++, this.returnType) ;
+		//prefetch in a new connection.
+		session = this.tm.openRWTran(true) ;
+		
+		try{
+			return ((Number) super.nextSequenceValue(session, tableCondition)).longValue() ;
+		}finally{
+			session.close() ;
+		}
+	}
+
+	public void setGuzzContext(GuzzContext guzzContext) {
+		this.guzzContext = guzzContext ;
+		this.tm = guzzContext.getTransactionManager() ;
+	}
+
+	public void startup() {
+	}
+
+	/**
+	 * Stop the prefetch threads of the allocator.
+	 */
+	public void shutdown() {
+		if(this.allocator != null){
+			this.allocator.shutdown() ;
+		}
 	}
 
 }
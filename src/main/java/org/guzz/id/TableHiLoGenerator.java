@@ -19,9 +19,9 @@ package org.guzz.id;
 import java.io.Serializable;
 import java.util.Properties;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import org.guzz.ContextLifeCycle;
 import org.guzz.GuzzContext;
+import org.guzz.connection.DBGroup;
 import org.guzz.dialect.Dialect;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
 import org.guzz.transaction.TransactionManager;
@@ -39,31 +39,52 @@ import org.guzz.util.StringUtil;
  * case a <tt>SequenceHiLoGenerator</tt> would be a better choice (where
  * supported).<br>
  * <br>
- * Mapping parameters supported: table, column, db_group, max_lo
+ * Ids are allocated in blocks kept separately for each physical database group the tableCondition routes to,
+ * and the next block is prefetched in background when <tt>prefetch_percent</tt>(default 80) percents of the current block is used.<br>
+ * <br>
+ * Mapping parameters supported: table, column, db_group, max_lo, prefetch_percent
  *
  * @see SequenceHiLoGenerator
  */
-public class TableHiLoGenerator extends TableGenerator {
-	private static final Log log = LogFactory.getLog(TableHiLoGenerator.class);
+public class TableHiLoGenerator extends TableGenerator implements ContextLifeCycle {
 	
 	/**
 	 * The max_lo parameter
 	 */
 	public static final String MAX_LO = "max_lo";
 	
+	/**
+	 * The prefetch_percent parameter. 0 to disable prefetching.
+	 */
+	public static final String PREFETCH_PERCENT = "prefetch_percent";
+	
+	private GuzzContext guzzContext ;
+	
 	private TransactionManager tm ;
 
-	private long hi;
-	private int lo;
 	private int maxLo;
 	private Class returnType ;
+	
+	private POJOBasedObjectMapping mapping ;
+	
+	private HiLoBlockAllocator allocator ;
 
 	public void configure(Dialect dialect, POJOBasedObjectMapping mapping, Properties params) {
 		super.configure(dialect, mapping, params) ;
 		
+		this.mapping = mapping ;
 		this.maxLo = StringUtil.toInt(params.getProperty(MAX_LO), Short.MAX_VALUE) ;
-		lo = maxLo + 1; // so we "clock over" on the first invocation
 		this.returnType = pkColumn.getSqlDataType().getDataType() ;
+		
+		if(maxLo > 0){
+			int prefetchPercent = StringUtil.toInt(params.getProperty(PREFETCH_PERCENT), 80) ;
+			
+			this.allocator = new HiLoBlockAllocator(maxLo, prefetchPercent, new HiLoBlockAllocator.HiValueFetcher(){
+				public long nextHiValue(WriteTranSession session, Object tableCondition) {
+					return fetchHiValue(tableCondition) ;
+				}
+			}) ;
+		}
 	}
 
 	public Serializable preInsert(WriteTranSession session, Object domainObject, Object tableCondition) {
@@ -74,7 +95,7 @@ public class TableHiLoGenerator extends TableGenerator {
 		return (Serializable) value ;
 	}
 	
-	public synchronized Number generate(Object tableCondition) {
+	public Number generate(Object tableCondition) {
 		if (maxLo < 1) {
 			//open a new transaction.
 			WriteTranSession session = this.tm.openRWTran(true) ;
@@ -93,30 +114,46 @@ public class TableHiLoGenerator extends TableGenerator {
 			}
 		}
 		
-		if (lo > maxLo){
-			//open a new transaction.
-			WriteTranSession session = this.tm.openRWTran(true) ;
-			
-			try{
-				Number n = super.nextValueInTable(session, tableCondition) ;
-				
-				int hival = n.intValue() ;
-				lo = (hival == 0) ? 1 : 0;
-				hi = hival * ( maxLo+1 );
-				
-				if ( log.isDebugEnabled() ){
-					log.debug("new hi value: " + hival);
-				}
-			}finally{
-				session.close() ;
-			}
-		}
+		long id = this.allocator.next(getTargetKey(tableCondition), null, tableCondition) ;
+		
+		return IdentifierGeneratorFactory.createNumber(id, this.returnType) ;
+	}
+	
+	/**
+	 * The physical database group and the table storing the hi value for the tableCondition.
+	 */
+	protected String getTargetKey(Object tableCondition){
+		DBGroup group = (this.dbGroup == null) ? this.mapping.getDbGroup() : this.guzzContext.getDBGroup(this.dbGroup) ;
 		
-		return IdentifierGeneratorFactory.createNumber(hi + lo++, this.returnType) ;
+		return group.getPhysicsGroupName(tableCondition) + ":" + this.tableName ;
+	}
+	
+	protected long fetchHiValue(Object tableCondition){
+		//open a new transaction.
+		WriteTranSession session = this.tm.openRWTran(true) ;
+		
+		try{
+			return super.nextValueInTable(session, tableCondition).longValue() ;
+		}finally{
+			session.close() ;
+		}
 	}
 
 	public void setGuzzContext(GuzzContext guzzContext) {
+		this.guzzContext = guzzContext ;
 		this.tm = guzzContext.getTransactionManager() ;
 	}
+
+	public void startup() {
+	}
+
+	/**
+	 * Stop the prefetch threads of the allocator.
+	 */
+	public void shutdown() {
+		if(this.allocator != null){
+			this.allocator.shutdown() ;
+		}
+	}
 	
 }
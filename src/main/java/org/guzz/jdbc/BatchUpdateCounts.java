@@ -0,0 +1,96 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.jdbc;
+
+
+/**
+ * 
+ * Update counts of one statement executed by {@link UnitOfWorkBatcher}.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class BatchUpdateCounts {
+	
+	public static final String INSERT = "insert" ;
+	
+	public static final String UPDATE = "update" ;
+	
+	public static final String DELETE = "delete" ;
+	
+	private final String operation ;
+	
+	private final Class domainClass ;
+	
+	private final Object tableCondition ;
+	
+	private final String sql ;
+	
+	private final int[] updateCounts ;
+	
+	public BatchUpdateCounts(String operation, Class domainClass, Object tableCondition, String sql, int[] updateCounts){
+		this.operation = operation ;
+		this.domainClass = domainClass ;
+		this.tableCondition = tableCondition ;
+		this.sql = sql ;
+		this.updateCounts = updateCounts ;
+	}
+	
+	/**
+	 * Sum of the update counts. {@link java.sql.Statement#SUCCESS_NO_INFO} is counted as 1 row.
+	 */
+	public int getTotalRows(){
+		int total = 0 ;
+		
+		for(int i = 0 ; i < updateCounts.length ; i++){
+			if(updateCounts[i] > 0){
+				total += updateCounts[i] ;
+			}else if(updateCounts[i] == java.sql.Statement.SUCCESS_NO_INFO){
+				total++ ;
+			}
+		}
+		
+		return total ;
+	}
+
+	/**
+	 * @return {@link #INSERT}, {@link #UPDATE} or {@link #DELETE}
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	public Class getDomainClass() {
+		return domainClass;
+	}
+
+	public Object getTableCondition() {
+		return tableCondition;
+	}
+
+	public String getSQL() {
+		return sql;
+	}
+
+	public int[] getUpdateCounts() {
+		return updateCounts;
+	}
+	
+	public String toString(){
+		return operation + " " + domainClass.getName() + ", rows:" + updateCounts.length + ", sql:" + sql ;
+	}
+
+}
@@ -94,7 +94,7 @@ public class JDBCTemplateImpl implements JDBCTemplate{
 			
 			rs = pstm.executeQuery() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -130,7 +130,7 @@ public class JDBCTemplateImpl implements JDBCTemplate{
 			
 			rs = st.executeQuery(sql) ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -181,7 +181,7 @@ public class JDBCTemplateImpl implements JDBCTemplate{
 
 			int affectedRows = pstm.executeUpdate() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -225,7 +225,7 @@ public class JDBCTemplateImpl implements JDBCTemplate{
 			
 			int affectedRows = pstm.executeUpdate() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -272,7 +272,7 @@ public class JDBCTemplateImpl implements JDBCTemplate{
 			
 			int affectedRows = pstm.executeUpdate() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -310,7 +310,7 @@ public class JDBCTemplateImpl implements JDBCTemplate{
 			
 			int affectedRows = st.executeUpdate(sql) ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
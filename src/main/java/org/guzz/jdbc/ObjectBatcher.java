@@ -56,4 +56,19 @@ public interface ObjectBatcher extends Batcher {
 
 	public void setTableCondition(Object tableCondition) ;
 	
+	/**
+	 * Insert the objects with multi-row statements(insert into t(...) values(...), (...), ...) when executing the batch, 
+	 * if the database supports(see {@link org.guzz.dialect.Dialect#supportsMultiRowInsert()}). Otherwise, the normal jdbc batch is used.
+	 * <p>
+	 * Rows of one statement are limited by {@link org.guzz.dialect.Dialect#getMaxRowsPerInsert()} and {@link org.guzz.dialect.Dialect#getMaxBindParameters()}.
+	 * Auto-increment keys are read back and assigned to the inserted objects in order, 
+	 * if the dialect reports them(see {@link org.guzz.dialect.Dialect#getMultiRowInsertKeysMode()}); 
+	 * if not, objects with auto-increment keys are inserted by the normal jdbc batch, and the keys are not assigned.
+	 * </p>
+	 * <p>
+	 * Call this method before invoking {@link #insert(Object)}. Default is false.
+	 * </p>
+	 */
+	public void setMultiRowInsert(boolean multiRowInsert) ;
+	
 }
@@ -18,21 +18,27 @@ package org.guzz.jdbc;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 
 import org.guzz.Guzz;
 import org.guzz.connection.DBGroup;
 import org.guzz.dialect.Dialect;
 import org.guzz.exception.DaoException;
+import org.guzz.id.AutoIncrementIdGenerator;
 import org.guzz.id.IdentifierGenerator;
 import org.guzz.lang.NullValue;
 import org.guzz.orm.ObjectMapping;
+import org.guzz.orm.rdms.TableColumn;
 import org.guzz.orm.sql.BindedCompiledSQL;
 import org.guzz.orm.sql.CompiledSQL;
 import org.guzz.orm.sql.CompiledSQLManager;
 import org.guzz.orm.sql.NormalCompiledSQL;
 import org.guzz.service.core.DebugService;
 import org.guzz.transaction.WriteTranSessionImpl;
+import org.guzz.util.CloseUtil;
 import org.guzz.util.javabean.BeanWrapper;
 
 /**
@@ -53,6 +59,7 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 	//inited in the construct method to protect add/delete/update passing wrong instances.
 	private BeanWrapper bw ;
 	private String[] props ;
+	private int[] propSlots ;
 
 	private Class domainCls ;
 	
@@ -60,9 +67,38 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 	
 	private NormalCompiledSQL runtimeCS ;
 	
+	private ObjectMapping mapping ;
+	
 	private String rawSQL ;
 	
 	private volatile int objectsCountInBatch ;
+	
+	private boolean multiRowInsert ;
+	
+	/**multi-row insert is requested and supported by the sql and the database.*/
+	private boolean useMultiRow ;
+	
+	private Connection conn ;
+	
+	/**insert into t(a, b) values*/
+	private String multiRowPrefix ;
+	
+	/**(?, ?)*/
+	private String multiRowValues ;
+	
+	/**BindedCompiledSQLs waiting for the multi-row insert.*/
+	private ArrayList pendingRows ;
+	
+	/**max rows in one multi-row insert statement, limited by the dialect's rows and bind parameters.*/
+	private int rowsPerInsert ;
+	
+	/**read back the auto-increment keys of the multi-row insert, and assign them to {@link #pendingObjects}.*/
+	private boolean readGeneratedKeys ;
+	
+	/**domain objects of {@link #pendingRows}, only kept when {@link #readGeneratedKeys} is true.*/
+	private ArrayList pendingObjects ;
+	
+	private TableColumn pkColumn ;
 
 	/**
 	 * add:1
@@ -113,17 +149,53 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		this.runtimeCS = bsql.getCompiledSQLToRun() ;
 		
 		ObjectMapping mapping  = runtimeCS.getMapping() ;
+		this.mapping = mapping ;
 		this.bw = mapping.getBeanWrapper() ;
 		this.props = runtimeCS.getOrderedParams() ;
+		this.propSlots = new int[props.length] ;
+		for(int i = 0 ; i < props.length ; i++){
+			this.propSlots[i] = bw.getPropertyIndex(props[i]) ;
+		}
 		
 		DBGroup dbGroup = mapping.getDbGroup() ;
 		this.dialect = dbGroup.getDialect() ;
 		this.setDefaultBatchSize(this.dialect.getDefaultBatchSize()) ;
 		
-		Connection conn = this.sessionImpl.getConnection(dbGroup, bsql.getTableCondition()) ;
+		this.conn = this.sessionImpl.getConnection(dbGroup, bsql.getTableCondition()) ;
 
 		this.rawSQL = bsql.getSQLToRun() ;
 		this.objectsCountInBatch = 0 ;
+		this.useMultiRow = false ;
+		this.readGeneratedKeys = false ;
+		
+		boolean autoIncrement = mapping.getTable().getIdentifierGenerator() instanceof AutoIncrementIdGenerator ;
+		
+		//the keys of a multi-row insert can't be read back in the database, use the jdbc batch.
+		if(operation == 1 && this.multiRowInsert && this.dialect.supportsMultiRowInsert() 
+				&& !(autoIncrement && this.dialect.getMultiRowInsertKeysMode() == Dialect.MULTI_ROW_KEYS_NONE)){
+			this.useMultiRow = splitInsertSQL(rawSQL) ;
+			
+			if(this.useMultiRow){
+				if(this.pendingRows == null){
+					this.pendingRows = new ArrayList() ;
+				}
+				
+				int maxRowsByParams = props.length == 0 ? Integer.MAX_VALUE : this.dialect.getMaxBindParameters() / props.length ;
+				this.rowsPerInsert = Math.max(1, Math.min(this.dialect.getMaxRowsPerInsert(), maxRowsByParams)) ;
+				
+				if(autoIncrement){
+					this.pkColumn = mapping.getTable().getPKColumn() ;
+					this.readGeneratedKeys = this.pkColumn != null ;
+					
+					if(this.readGeneratedKeys && this.pendingObjects == null){
+						this.pendingObjects = new ArrayList() ;
+					}
+				}
+				
+				//statements are prepared on executing.
+				return ;
+			}
+		}
 		
 		try {
 			this.ps = conn.prepareStatement(rawSQL) ;
@@ -153,20 +225,27 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		ig.preInsert(this.sessionImpl, domainObject, this.tableCondition) ;
 
 		for(int i = 0 ; i < props.length ; i++){
-			Object value = bw.getValue(domainObject, props[i]) ;
-			bsql.bind(props[i], value) ;
+			bsql.bind(props[i], readProp(domainObject, i)) ;
 		}
 
-		try {
-			bsql.prepareNamedParams(dialect, ps) ;
-			this.ps.addBatch() ;
-		} catch (SQLException e) {
-			throw new DaoException("error execute add. param type is:" + domainObject.getClass(), e) ;
+		if(this.useMultiRow){
+			this.pendingRows.add(bsql) ;
+			
+			if(this.readGeneratedKeys){
+				this.pendingObjects.add(domainObject) ;
+			}
+		}else{
+			try {
+				bsql.prepareNamedParams(dialect, ps) ;
+				this.ps.addBatch() ;
+			} catch (SQLException e) {
+				throw new DaoException("error execute add. param type is:" + domainObject.getClass(), e) ;
+			}
 		}
 		
 		objectsCountInBatch++ ;
 
-		//POST ID is not supported
+		//POST ID is not supported, except the auto-increment keys read back by the multi-row insert.
 //		if(pk == null){
 //			pk = ig.postInsert(this, domainObject) ;
 //		}else{
@@ -191,8 +270,7 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		BindedCompiledSQL bsql = runtimeCS.bindNoParams() ;
 
 		for(int i = 0 ; i < props.length ; i++){
-			Object value = bw.getValue(domainObject, props[i]) ;
-			bsql.bind(props[i], value) ;
+			bsql.bind(props[i], readProp(domainObject, i)) ;
 		}
 
 		try {
@@ -222,8 +300,7 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		BindedCompiledSQL bsql = runtimeCS.bindNoParams() ;
 
 		for(int i = 0 ; i < props.length ; i++){
-			Object value = bw.getValue(domainObject, props[i]) ;
-			bsql.bind(props[i], value) ;
+			bsql.bind(props[i], readProp(domainObject, i)) ;
 		}
 
 		try {
@@ -236,16 +313,183 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		objectsCountInBatch++ ;
 	}
 
+	protected Object readProp(Object domainObject, int propIndex){
+		int slot = this.propSlots[propIndex] ;
+		
+		if(slot < 0){
+			return bw.getValue(domainObject, props[propIndex]) ;
+		}
+		
+		return bw.getValue(domainObject, slot) ;
+	}
+
+	/**
+	 * Split the insert sql to "insert into t(a, b) values" and "(?, ?)".
+	 * 
+	 * @return false if the sql is not in the expected form.
+	 */
+	protected boolean splitInsertSQL(String sql){
+		int pos = sql.toLowerCase().lastIndexOf(" values") ;
+		if(pos < 0) return false ;
+		
+		String prefix = sql.substring(0, pos + 7) ;
+		String values = sql.substring(pos + 7).trim() ;
+		
+		if(!values.startsWith("(") || !values.endsWith(")")){
+			return false ;
+		}
+		
+		int paramCount = 0 ;
+		for(int i = 0 ; i < values.length() ; i++){
+			if(values.charAt(i) == '?') paramCount++ ;
+		}
+		
+		if(paramCount != this.props.length){
+			return false ;
+		}
+		
+		this.multiRowPrefix = prefix ;
+		this.multiRowValues = values ;
+		
+		return true ;
+	}
+	
+	protected String buildMultiRowSQL(int rows){
+		StringBuffer sb = new StringBuffer(multiRowPrefix.length() + (multiRowValues.length() + 2) * rows) ;
+		sb.append(multiRowPrefix).append(' ') ;
+		
+		for(int i = 0 ; i < rows ; i++){
+			if(i > 0){
+				sb.append(", ") ;
+			}
+			
+			sb.append(multiRowValues) ;
+		}
+		
+		return sb.toString() ;
+	}
+	
+	protected int[] executeMultiRowInsert(){
+		int total = this.pendingRows.size() ;
+		int[] affectedRows = new int[total] ;
+		PreparedStatement fullPS = null ;
+		
+		try{
+			for(int start = 0 ; start < total ; start += rowsPerInsert){
+				int rows = Math.min(rowsPerInsert, total - start) ;
+				PreparedStatement m_ps = null ;
+				
+				if(rows == rowsPerInsert){
+					if(fullPS == null){
+						fullPS = prepareMultiRowStatement(rows) ;
+					}
+					
+					m_ps = fullPS ;
+				}else{
+					m_ps = prepareMultiRowStatement(rows) ;
+				}
+				
+				try{
+					for(int i = 0 ; i < rows ; i++){
+						BindedCompiledSQL bsql = (BindedCompiledSQL) this.pendingRows.get(start + i) ;
+						bsql.setBindStartIndex(i * props.length + 1) ;
+						bsql.prepareNamedParams(dialect, m_ps) ;
+					}
+					
+					int count = m_ps.executeUpdate() ;
+					
+					for(int i = 0 ; i < rows ; i++){
+						affectedRows[start + i] = count == rows ? 1 : Statement.SUCCESS_NO_INFO ;
+					}
+					
+					if(this.readGeneratedKeys){
+						assignGeneratedKeys(m_ps, start, rows) ;
+					}
+				}finally{
+					if(m_ps != fullPS){
+						CloseUtil.close(m_ps) ;
+					}
+				}
+			}
+		}catch(SQLException e){
+			throw new DaoException("error execute multi-row insert. CompiledSQL is:" + runtimeCS, e) ;
+		}finally{
+			CloseUtil.close(fullPS) ;
+			
+			//executed rows are removed from the batch as PreparedStatement#executeBatch() does.
+			this.pendingRows.clear() ;
+			
+			if(this.pendingObjects != null){
+				this.pendingObjects.clear() ;
+			}
+		}
+		
+		return affectedRows ;
+	}
+	
+	protected PreparedStatement prepareMultiRowStatement(int rows) throws SQLException{
+		String sql = buildMultiRowSQL(rows) ;
+		PreparedStatement m_ps ;
+		
+		if(this.readGeneratedKeys){
+			m_ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) ;
+		}else{
+			m_ps = conn.prepareStatement(sql) ;
+		}
+		
+		sessionImpl.applyQueryTimeout(m_ps) ;
+		
+		return m_ps ;
+	}
+	
+	/**
+	 * Read the auto-increment keys of the executed multi-row insert, and set them to the domain objects in the inserting order.
+	 * 
+	 * @param start index of the first row in {@link #pendingObjects}
+	 * @param rows rows inserted by the statement
+	 */
+	protected void assignGeneratedKeys(PreparedStatement m_ps, int start, int rows) throws SQLException{
+		ResultSet rs = m_ps.getGeneratedKeys() ;
+		ArrayList keys = new ArrayList(rows) ;
+		
+		try{
+			while(rs.next()){
+				keys.add(pkColumn.getSqlDataType().getSQLValue(rs, 1)) ;
+			}
+		}finally{
+			CloseUtil.close(rs) ;
+		}
+		
+		String pkProp = pkColumn.getPropName() ;
+		
+		//never guess the keys.
+		if(keys.size() != rows){
+			throw new DaoException("unexpected generated keys. expected:" + rows + ", returned:" + keys.size() + ". CompiledSQL is:" + runtimeCS) ;
+		}
+		
+		for(int i = 0 ; i < rows ; i++){
+			bw.setValue(this.pendingObjects.get(start + i), pkProp, keys.get(i)) ;
+		}
+	}
+
 	public void clearBatch() {
 		//not initialized.
 		if(mark == 0){
 			return ;
 		}
 		
-		try {
-			ps.clearBatch() ;
-		} catch (SQLException e) {
-			throw new DaoException("error execute clearBatch. CompiledSQL is:" + runtimeCS, e) ;
+		if(this.useMultiRow){
+			this.pendingRows.clear() ;
+			
+			if(this.pendingObjects != null){
+				this.pendingObjects.clear() ;
+			}
+		}else{
+			try {
+				ps.clearBatch() ;
+			} catch (SQLException e) {
+				throw new DaoException("error execute clearBatch. CompiledSQL is:" + runtimeCS, e) ;
+			}
 		}
 		
 		this.mark = 0 ;
@@ -271,9 +515,10 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		}
 		
 		try {
-			int[] affectedRows = ps.executeBatch() ;
+			int[] affectedRows = this.useMultiRow ? executeMultiRowInsert() : ps.executeBatch() ;
+			this.sessionImpl.invalidateQueryResultCache(this.mapping) ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -291,6 +536,13 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 	public PreparedStatement getPreparedStatement(){
 		return ps ;
 	}
+	
+	/**
+	 * the sql of the batch, null if the batch is not started.
+	 */
+	public String getRawSQL(){
+		return rawSQL ;
+	}
 
 	public Object getTableCondition() {
 		return tableCondition;
@@ -304,4 +556,12 @@ public class ObjectBatcherImpl extends AbstractBatcher implements ObjectBatcher
 		this.tableCondition = tableCondition == null ? NullValue.instance : tableCondition;
 	}
 
+	public void setMultiRowInsert(boolean multiRowInsert) {
+		if(mark != 0){
+			throw new DaoException("batch has already been started. Call setMultiRowInsert before invoking insert method.") ;
+		}
+		
+		this.multiRowInsert = multiRowInsert;
+	}
+
 }
@@ -118,7 +118,7 @@ public class SQLBatcherImpl extends AbstractBatcher implements SQLBatcher {
 		try {
 			int[] affectedRows = ps.executeBatch() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
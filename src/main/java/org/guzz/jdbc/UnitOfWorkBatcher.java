@@ -0,0 +1,81 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.jdbc;
+
+
+/**
+ * 
+ * Batcher to perform the inserts/updates/deletes of many domain classes and table conditions as one unit of work.
+ * <p>
+ * Objects are grouped by (operation, domain class, table condition), that is one sql on one connection, and each group is sent as one jdbc batch.
+ * On executing, all inserts are flushed first, then updates, then deletes.
+ * Within an operation, groups are flushed in the order they are first called, unless {@link #setFlushOrder(Class[])} is set:
+ * inserts and updates follow the order from parents to children, and deletes follow the reverse order from children to parents.
+ * </p>
+ * <p>
+ * The auto executing is counted on the total objects of all groups, and flushes all the groups in the order above.
+ * </p>
+ *
+ * @see ObjectBatcher
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface UnitOfWorkBatcher extends Batcher {
+	
+	/**
+	 * add a object to the insert batch of its domain class, using {@link org.guzz.Guzz#getTableCondition()} as the table condition.
+	 * 
+	 * @see ObjectBatcher#insert(Object)
+	 */
+	public void insert(Object domainObject) ;
+	
+	public void insert(Object domainObject, Object tableCondition) ;
+	
+	public void update(Object domainObject) ;
+	
+	public void update(Object domainObject, Object tableCondition) ;
+	
+	public void delete(Object domainObject) ;
+	
+	public void delete(Object domainObject, Object tableCondition) ;
+	
+	/**
+	 * Execute the batches of all groups in the flush order, and clear them.
+	 * 
+	 * @return update counts of each executed statement in the flush order.
+	 */
+	public BatchUpdateCounts[] flush() ;
+	
+	/**
+	 * Same as {@link #flush()}, and return the update counts of all statements in one array in the flush order.
+	 */
+	public int[] executeBatch() ;
+	
+	/**
+	 * Domain classes from parents to children. Classes not in the list are flushed after the listed ones for inserts and updates, 
+	 * and before them for deletes.
+	 * <p>Call this method before adding objects.</p>
+	 * 
+	 * @param parentsFirst null to flush in the calling order.
+	 */
+	public void setFlushOrder(Class[] parentsFirst) ;
+	
+	/**
+	 * @see ObjectBatcher#setMultiRowInsert(boolean)
+	 */
+	public void setMultiRowInsert(boolean multiRowInsert) ;
+
+}
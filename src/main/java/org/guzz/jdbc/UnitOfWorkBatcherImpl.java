@@ -0,0 +1,294 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.guzz.Guzz;
+import org.guzz.exception.DaoException;
+import org.guzz.lang.NullValue;
+import org.guzz.transaction.WriteTranSessionImpl;
+import org.guzz.util.CloseUtil;
+
+/**
+ *
+ * {@link UnitOfWorkBatcher} delegating each (operation, domain class, table condition) group to an {@link ObjectBatcherImpl}.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class UnitOfWorkBatcherImpl extends AbstractBatcher implements UnitOfWorkBatcher {
+	private WriteTranSessionImpl sessionImpl ;
+	
+	private static final String[] operations = new String[]{BatchUpdateCounts.INSERT, BatchUpdateCounts.UPDATE, BatchUpdateCounts.DELETE} ;
+	
+	/**GroupKey -> Group, in the calling order.*/
+	private final LinkedHashMap groups = new LinkedHashMap() ;
+	
+	/**batchers of the cleared groups, reused by new groups.*/
+	private final LinkedList idleBatchers = new LinkedList() ;
+	
+	/**domain class -> Integer(position from parents to children)*/
+	private Map flushOrder ;
+	
+	private boolean multiRowInsert ;
+	
+	private int objectsCountInBatch ;
+	
+	public UnitOfWorkBatcherImpl(WriteTranSessionImpl sessionImpl){
+		super(512) ;
+		
+		this.sessionImpl = sessionImpl ;
+	}
+	
+	public void insert(Object domainObject) {
+		insert(domainObject, Guzz.getTableCondition()) ;
+	}
+
+	public void insert(Object domainObject, Object tableCondition) {
+		add(0, domainObject, tableCondition) ;
+	}
+
+	public void update(Object domainObject) {
+		update(domainObject, Guzz.getTableCondition()) ;
+	}
+
+	public void update(Object domainObject, Object tableCondition) {
+		add(1, domainObject, tableCondition) ;
+	}
+
+	public void delete(Object domainObject) {
+		delete(domainObject, Guzz.getTableCondition()) ;
+	}
+
+	public void delete(Object domainObject, Object tableCondition) {
+		add(2, domainObject, tableCondition) ;
+	}
+	
+	protected void add(int operation, Object domainObject, Object tableCondition){
+		checkAndAutoExecuteBatch(this.objectsCountInBatch) ;
+		
+		if(tableCondition == null){
+			tableCondition = NullValue.instance ;
+		}
+		
+		Class domainClass = this.sessionImpl.getRealDomainClass(domainObject) ;
+		GroupKey key = new GroupKey(operation, domainClass, tableCondition) ;
+		Group g = (Group) this.groups.get(key) ;
+		
+		if(g == null){
+			ObjectBatcherImpl b = this.idleBatchers.isEmpty() ? createObjectBatcher() : (ObjectBatcherImpl) this.idleBatchers.removeFirst() ;
+			b.setAutoExecuteUpdate(false) ;
+			b.setTableCondition(tableCondition) ;
+			b.setMultiRowInsert(operation == 0 && this.multiRowInsert) ;
+			
+			g = new Group(key, b, this.groups.size()) ;
+			this.groups.put(key, g) ;
+		}
+		
+		if(operation == 0){
+			g.batcher.insert(domainObject) ;
+		}else if(operation == 1){
+			g.batcher.update(domainObject) ;
+		}else{
+			g.batcher.delete(domainObject) ;
+		}
+		
+		this.objectsCountInBatch++ ;
+	}
+	
+	/**
+	 * Create a batcher for a group when no cleared batcher is left to reuse. 
+	 * The batcher is registered to the session to release its statement on closing.
+	 */
+	protected ObjectBatcherImpl createObjectBatcher(){
+		return (ObjectBatcherImpl) this.sessionImpl.createObjectBatcher() ;
+	}
+	
+	/**
+	 * Groups in the flush order: inserts, updates, then deletes. 
+	 * Inserts and updates follow {@link #flushOrder} from parents to children, deletes from children to parents. Ties are in the calling order.
+	 */
+	protected List getGroupsInFlushOrder(){
+		ArrayList list = new ArrayList(this.groups.values()) ;
+		
+		if(list.size() > 1){
+			Collections.sort(list, new Comparator(){
+				public int compare(Object o1, Object o2) {
+					Group g1 = (Group) o1 ;
+					Group g2 = (Group) o2 ;
+					
+					if(g1.key.operation != g2.key.operation){
+						return g1.key.operation - g2.key.operation ;
+					}
+					
+					int r1 = classRank(g1.key) ;
+					int r2 = classRank(g2.key) ;
+					if(r1 != r2){
+						return r1 < r2 ? -1 : 1 ;
+					}
+					
+					return g1.callOrder - g2.callOrder ;
+				}
+			}) ;
+		}
+		
+		return list ;
+	}
+	
+	protected int classRank(GroupKey key){
+		if(this.flushOrder == null) return 0 ;
+		
+		Integer pos = (Integer) this.flushOrder.get(key.domainClass) ;
+		
+		if(key.operation == 2){
+			//children first, unlisted ones before all.
+			return pos == null ? Integer.MIN_VALUE : -pos.intValue() ;
+		}
+		
+		//parents first, unlisted ones after all.
+		return pos == null ? Integer.MAX_VALUE : pos.intValue() ;
+	}
+
+	public BatchUpdateCounts[] flush() {
+		List list = getGroupsInFlushOrder() ;
+		BatchUpdateCounts[] results = new BatchUpdateCounts[list.size()] ;
+		
+		try{
+			for(int i = 0 ; i < list.size() ; i++){
+				Group g = (Group) list.get(i) ;
+				
+				int[] counts = g.batcher.executeBatch() ;
+				results[i] = new BatchUpdateCounts(operations[g.key.operation], g.key.domainClass, g.key.tableCondition, g.batcher.getRawSQL(), counts) ;
+			}
+		}finally{
+			//executed or not, the objects are removed as PreparedStatement#executeBatch() does. The transaction should be rolled back on errors.
+			clearBatch() ;
+		}
+		
+		return results ;
+	}
+
+	public int[] executeBatch() {
+		BatchUpdateCounts[] results = flush() ;
+		
+		int total = 0 ;
+		for(int i = 0 ; i < results.length ; i++){
+			total += results[i].getUpdateCounts().length ;
+		}
+		
+		int[] counts = new int[total] ;
+		int pos = 0 ;
+		for(int i = 0 ; i < results.length ; i++){
+			int[] c = results[i].getUpdateCounts() ;
+			System.arraycopy(c, 0, counts, pos, c.length) ;
+			pos += c.length ;
+		}
+		
+		return counts ;
+	}
+
+	public void clearBatch() {
+		Iterator i = this.groups.values().iterator() ;
+		
+		while(i.hasNext()){
+			ObjectBatcherImpl b = ((Group) i.next()).batcher ;
+			
+			try{
+				b.clearBatch() ;
+				
+				//the statement is prepared again for the next group.
+				this.idleBatchers.add(b) ;
+			}finally{
+				CloseUtil.close(b.getPreparedStatement()) ;
+			}
+		}
+		
+		this.groups.clear() ;
+		this.objectsCountInBatch = 0 ;
+	}
+
+	public void setFlushOrder(Class[] parentsFirst) {
+		if(!this.groups.isEmpty()){
+			throw new DaoException("batch has already been started. Call setFlushOrder before adding objects.") ;
+		}
+		
+		if(parentsFirst == null){
+			this.flushOrder = null ;
+			return ;
+		}
+		
+		HashMap m = new HashMap() ;
+		for(int i = 0 ; i < parentsFirst.length ; i++){
+			m.put(parentsFirst[i], new Integer(i)) ;
+		}
+		
+		this.flushOrder = m ;
+	}
+
+	public void setMultiRowInsert(boolean multiRowInsert) {
+		if(!this.groups.isEmpty()){
+			throw new DaoException("batch has already been started. Call setMultiRowInsert before adding objects.") ;
+		}
+		
+		this.multiRowInsert = multiRowInsert ;
+	}
+	
+	static class GroupKey {
+		final int operation ;
+		final Class domainClass ;
+		final Object tableCondition ;
+		
+		GroupKey(int operation, Class domainClass, Object tableCondition){
+			this.operation = operation ;
+			this.domainClass = domainClass ;
+			this.tableCondition = tableCondition ;
+		}
+
+		public int hashCode() {
+			return (operation * 31 + domainClass.hashCode()) * 31 + tableCondition.hashCode() ;
+		}
+
+		public boolean equals(Object obj) {
+			if(!(obj instanceof GroupKey)) return false ;
+			
+			GroupKey k = (GroupKey) obj ;
+			
+			return operation == k.operation && domainClass == k.domainClass && tableCondition.equals(k.tableCondition) ;
+		}
+	}
+	
+	static class Group {
+		final GroupKey key ;
+		final ObjectBatcherImpl batcher ;
+		final int callOrder ;
+		
+		Group(GroupKey key, ObjectBatcherImpl batcher, int callOrder){
+			this.key = key ;
+			this.batcher = batcher ;
+			this.callOrder = callOrder ;
+		}
+	}
+
+}
@@ -42,6 +42,8 @@ public abstract class AbstractCustomTableView extends BeanWrapper implements Cus
 	protected JavaBeanWrapper basicBeanWrapper ;
 	
 	protected String configuredTableName ;
+	
+	private volatile int layoutVersion ;
 
 	public void setConfiguredTableName(String tableName) {
 		this.configuredTableName = tableName ;
@@ -65,6 +67,26 @@ public abstract class AbstractCustomTableView extends BeanWrapper implements Cus
 		return newMap ;
 	}
 	
+	/**
+	 * The version of the runtime table layouts. CompiledSQLs compiled for the old version will be re-compiled on next use.
+	 * 
+	 * @see #notifyLayoutChanged()
+	 */
+	public int getLayoutVersion() {
+		return layoutVersion;
+	}
+	
+	/**
+	 * Notify that the special properties(columns) of some tableConditions have changed.
+	 * <p>
+	 * Subclasses should call this method after dropping their own cached runtime mappings, 
+	 * so the CompiledSQLs cached for the old layouts are discarded too.
+	 * </p>
+	 */
+	public synchronized void notifyLayoutChanged(){
+		this.layoutVersion++ ;
+	}
+	
 	/**
 	 * Init the special mapping for the giving tableCondition. Called by {@link #createRuntimeObjectMapping(Object)}.
 	 * <p>
@@ -172,6 +194,25 @@ public abstract class AbstractCustomTableView extends BeanWrapper implements Cus
 		return getCustomPropertyValueUnderProxy(beanInstance, propName) ;
 	}
 
+	/**
+	 * Only properties declared in the domain class(with both read and write methods) own a slot. 
+	 */
+	public int getPropertyIndex(String propName) {
+		if(this.basicBeanWrapper.hasReadMethod(propName) && this.basicBeanWrapper.hasWriteMethod(propName)){
+			return this.basicBeanWrapper.getPropertyIndex(propName) ;
+		}
+		
+		return -1 ;
+	}
+
+	public Object getValue(Object beanInstance, int propIndex) {
+		return this.basicBeanWrapper.getValue(beanInstance, propIndex) ;
+	}
+
+	public void setValue(Object beanInstance, int propIndex, Object value) {
+		this.basicBeanWrapper.setValue(beanInstance, propIndex, value) ;
+	}
+
 	public Method getWriteMethod(String propName) {
 		if(this.basicBeanWrapper.hasWriteMethod(propName)){
 			return this.basicBeanWrapper.getWriteMethod(propName) ;
@@ -17,6 +17,7 @@
 package org.guzz.orm;
 
 import org.guzz.orm.rdms.Table;
+import org.guzz.orm.se.QueryResultCache;
 import org.guzz.util.StringUtil;
 import org.guzz.util.javabean.BeanWrapper;
 import org.guzz.util.javabean.JavaBeanWrapper;
@@ -52,6 +53,9 @@ public class Business {
 	
 	private Table table ;
 	
+	/**null if query results of this business are not cached.*/
+	private QueryResultCache queryResultCache ;
+	
 	public Business(String name, String dbGroup){
 		this.name = name ;
 		if(StringUtil.isEmpty(dbGroup)){
@@ -117,10 +121,19 @@ public class Business {
 		b.interpret = this.interpret ;
 		b.mapping = this.mapping ;
 		b.table = this.table ;
+		b.queryResultCache = this.queryResultCache ;
 		
 		return b ;
 	}
 
+	public QueryResultCache getQueryResultCache() {
+		return queryResultCache;
+	}
+
+	public void setQueryResultCache(QueryResultCache queryResultCache) {
+		this.queryResultCache = queryResultCache;
+	}
+
 	public JavaBeanWrapper getConfiguredBeanWrapper() {
 		return configuredBeanWrapper;
 	}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.orm;
+
+/**
+ * 
+ * A {@link ShadowTableView}, {@link CustomTableView} or {@link org.guzz.connection.VirtualDBView} that knows all the shards it may route to.
+ * <p>
+ * Implement it to let queries without a table condition scan all the shards,
+ * see {@link org.guzz.transaction.ShardedQueryExecutor}.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface TableConditionEnumerable {
+	
+	/**
+	 * Return one table condition for each shard. Two conditions must not be routed to the same table of the same database.
+	 */
+	public Object[] getAllTableConditions() ;
+
+}
@@ -16,6 +16,9 @@
  */
 package org.guzz.orm.mapping;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.guzz.connection.DBGroup;
 import org.guzz.dialect.Dialect;
 import org.guzz.exception.DataTypeException;
@@ -25,6 +28,7 @@ import org.guzz.orm.ObjectMapping;
 import org.guzz.orm.rdms.Table;
 import org.guzz.orm.rdms.TableColumn;
 import org.guzz.orm.type.SQLDataType;
+import org.guzz.util.javabean.BeanWrapper;
 
 /**
  * 
@@ -40,6 +44,11 @@ public abstract class AbstractObjectMapping implements ObjectMapping {
 	
 	protected final Table table ;
 	
+	/**
+	 * BeanWrappers of the resultClass passed in queries. Creating a BeanWrapper is expensive, so we cache them.
+	 */
+	private final Map resultClassWrappers = new ConcurrentHashMap() ;
+	
 	protected AbstractObjectMapping(DBGroup dbGroup, Table table){
 		this.dbGroup = dbGroup ;
 		this.dialect = dbGroup.getDialect() ;
@@ -124,6 +133,17 @@ public abstract class AbstractObjectMapping implements ObjectMapping {
 //		return col.getPropName() ;
 //	}	
 	
+	protected BeanWrapper getResultClassBeanWrapper(Class resultClass){
+		BeanWrapper bw = (BeanWrapper) this.resultClassWrappers.get(resultClass) ;
+		
+		if(bw == null){
+			bw = BeanWrapper.createPOJOWrapper(resultClass) ;
+			this.resultClassWrappers.put(resultClass, bw) ;
+		}
+		
+		return bw ;
+	}
+	
 	public Table getTable(){
 		return table ;
 	}
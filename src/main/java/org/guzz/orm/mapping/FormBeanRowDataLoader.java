@@ -26,6 +26,7 @@ import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.guzz.Guzz;
+import org.guzz.orm.ColumnORM;
 import org.guzz.orm.CustomTableView;
 import org.guzz.orm.ObjectMapping;
 import org.guzz.orm.rdms.TableColumn;
@@ -55,8 +56,6 @@ public final class FormBeanRowDataLoader implements RowDataLoader {
 
 	private final JavaBeanWrapper beanWrapper ;
 
-	private final Map cachedDataTypes ;
-	
 	private final ObjectMapping colsMapping ;
 	
 	private final CustomTableView customTableView ;
@@ -109,7 +108,6 @@ public final class FormBeanRowDataLoader implements RowDataLoader {
 		
 		if(!this.isMap){
 			this.beanWrapper = BeanWrapper.createPOJOWrapper(beanCls) ;
-			cachedDataTypes = new HashMap() ;
 			this.writableProps = new HashMap() ;
 			
 			List beanProps = this.beanWrapper.getAllWritabeProps() ;
@@ -119,36 +117,39 @@ public final class FormBeanRowDataLoader implements RowDataLoader {
 			}
 		}else{
 			this.beanWrapper = null ;
-			this.cachedDataTypes = null ;
 			this.writableProps = null ;
 		}
  	}
 
 	public Object rs2Object(ObjectMapping mapping, ResultSet rs) throws SQLException {
+		return createRowMappingPlan(mapping, rs).rs2Object(rs) ;
+	}
+	
+	/**
+	 * Resolve how to map each column of the {@link ResultSet} once. The returned plan can be used for all rows of the @param rs.
+	 */
+	public RowMappingPlan createRowMappingPlan(ObjectMapping mapping, ResultSet rs) throws SQLException {
 		ResultSetMetaData meta = rs.getMetaData() ;
 		int count = meta.getColumnCount() ;
 		
-		Object obj = BeanCreator.newBeanInstance(this.beanCls) ;
-		
 		if(this.customTableView != null){
 			mapping = this.customTableView.getRuntimeObjectMapping(Guzz.getTableCondition()) ;
 		}else if(this.colsMapping != null){
 			mapping = this.colsMapping ;
 		}
 		
+		FormBeanRowMappingPlan plan = new FormBeanRowMappingPlan(count) ;
+		
 		if(isMap){
 			for(int i = 1 ; i <= count ; i++){
 				String colName = meta.getColumnLabel(i) ;
 				TableColumn tc = mapping.getTable().getColumnByColNameInRS(colName) ;
-				Object value = null ;
 				
 				if(tc != null){
-					value = tc.getOrm().loadResult(rs, obj, i) ;
+					plan.addColumn(i, tc.getPropName(), -1, tc.getOrm(), null) ;
 				}else{
-					value = rs.getObject(i) ;
+					plan.addColumn(i, colName, -1, null, null) ;
 				}
-				
-				((Map) obj).put(tc == null ? colName : tc.getPropName(), value) ;
 			}
 		}else{
 			for(int i = 1 ; i <= count ; i++){
@@ -156,23 +157,18 @@ public final class FormBeanRowDataLoader implements RowDataLoader {
 				TableColumn tc = mapping.getTable().getColumnByColNameInRS(colName) ;
 				
 				String propName = null ;
-				Object value = null ;
+				ColumnORM orm = null ;
+				SQLDataType type = null ;
 				
 				if(tc != null){
 					propName = tc.getPropName() ;
-					value = tc.getOrm().loadResult(rs, obj, i) ;
+					orm = tc.getOrm() ;
 				}else{
 					propName = (String) this.writableProps.get(colName.toLowerCase()) ;
 					
-					SQLDataType type = (SQLDataType) cachedDataTypes.get(propName) ;
-					
-					if(type != null){
-						value = type.getSQLValue(rs, i) ;
-					}else{
+					if(propName != null){
 						String propType = this.beanWrapper.getPropertyTypeName(propName) ;
 						type = mapping.getDbGroup().getDialect().getDataType(propType) ;
-						value = type.getSQLValue(rs, i) ;
-						cachedDataTypes.put(propName, type) ;
 					}
 				}
 				
@@ -183,11 +179,70 @@ public final class FormBeanRowDataLoader implements RowDataLoader {
 					continue ;
 				}
 				
-				this.beanWrapper.setValue(obj, propName, value) ;
+				plan.addColumn(i, propName, this.beanWrapper.getPropertyIndex(propName), orm, type) ;
 			}
 		}
 		
-		return obj ;
+		return plan ;
+	}
+	
+	class FormBeanRowMappingPlan implements RowMappingPlan{
+		private int size ;
+		
+		private final int[] rsIndexes ;
+		
+		private final String[] keys ;
+		
+		private final int[] slots ;
+		
+		private final ColumnORM[] orms ;
+		
+		private final SQLDataType[] types ;
+		
+		public FormBeanRowMappingPlan(int columnCount){
+			this.rsIndexes = new int[columnCount] ;
+			this.keys = new String[columnCount] ;
+			this.slots = new int[columnCount] ;
+			this.orms = new ColumnORM[columnCount] ;
+			this.types = new SQLDataType[columnCount] ;
+		}
+		
+		public void addColumn(int rsIndex, String key, int slot, ColumnORM orm, SQLDataType type){
+			this.rsIndexes[size] = rsIndex ;
+			this.keys[size] = key ;
+			this.slots[size] = slot ;
+			this.orms[size] = orm ;
+			this.types[size] = type ;
+			
+			size++ ;
+		}
+
+		public Object rs2Object(ResultSet rs) throws SQLException {
+			Object obj = BeanCreator.newBeanInstance(beanCls) ;
+			
+			for(int k = 0 ; k < size ; k++){
+				int i = rsIndexes[k] ;
+				Object value ;
+				
+				if(orms[k] != null){
+					value = orms[k].loadResult(rs, obj, i) ;
+				}else if(types[k] != null){
+					value = types[k].getSQLValue(rs, i) ;
+				}else{
+					value = rs.getObject(i) ;
+				}
+				
+				if(isMap){
+					((Map) obj).put(keys[k], value) ;
+				}else if(slots[k] >= 0){
+					beanWrapper.setValue(obj, slots[k], value) ;
+				}else{
+					beanWrapper.setValue(obj, keys[k], value) ;
+				}
+			}
+			
+			return obj ;
+		}
 	}
 	
 	public Class getBeanCls() {
@@ -16,6 +16,9 @@
  */
 package org.guzz.orm.mapping;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 import org.guzz.GuzzContext;
 import org.guzz.connection.DBGroup;
 import org.guzz.exception.GuzzException;
@@ -130,5 +133,35 @@ public abstract class ObjectMappingUtil {
 	public static void addTableColumn(ObjectMapping mapping, TableColumn column){
 		mapping.getTable().addColumn(column) ;
 	}
+	
+	/**
+	 * Create a {@link RowMappingPlan} to map all rows of the {@link ResultSet}.
+	 * 
+	 * @param mapping the ObjectMapping of the query.
+	 * @param loader the RowDataLoader of the query. null if not set.
+	 * @param rs the queried ResultSet.
+	 * @param resultClass the resultClass of the query. null if not set.
+	 */
+	public static RowMappingPlan createRowMappingPlan(final ObjectMapping mapping, final RowDataLoader loader, ResultSet rs, final Class resultClass) throws SQLException{
+		if(loader == null){
+			if(mapping instanceof POJOBasedObjectMapping){
+				return ((POJOBasedObjectMapping) mapping).createRowMappingPlan(rs, resultClass) ;
+			}
+			
+			return new RowMappingPlan(){
+				public Object rs2Object(ResultSet rs) throws SQLException {
+					return mapping.rs2Object(rs, resultClass) ;
+				}
+			} ;
+		}else if(loader instanceof FormBeanRowDataLoader){
+			return ((FormBeanRowDataLoader) loader).createRowMappingPlan(mapping, rs) ;
+		}
+		
+		return new RowMappingPlan(){
+			public Object rs2Object(ResultSet rs) throws SQLException {
+				return loader.rs2Object(mapping, rs) ;
+			}
+		} ;
+	}
 
 }
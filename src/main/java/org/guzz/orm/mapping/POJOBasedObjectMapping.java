@@ -19,6 +19,9 @@ package org.guzz.orm.mapping;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +29,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.guzz.GuzzContextImpl;
 import org.guzz.bytecode.BusinessDescriptor;
+import org.guzz.bytecode.LazyFetchGroup;
 import org.guzz.bytecode.ProxyFactory;
 import org.guzz.connection.DBGroup;
 import org.guzz.orm.Business;
@@ -97,25 +101,35 @@ public final class POJOBasedObjectMapping extends AbstractObjectMapping{
 	/**将当前@rs行的记录转换成Object对象并返回
 	 * @throws SQLException */
 	public Object rs2Object(ResultSet rs, Class resultClass) throws SQLException{
-		boolean isMap = false ;
+		return createRowMappingPlan(rs, resultClass).rs2Object(rs) ;
+	}
+	
+	/**
+	 * 根据@rs的ResultSetMetaData计算每一列的映射方式。同一个ResultSet的所有行共用一个RowMappingPlan。
+	 * 
+	 * @param rs The queried {@link ResultSet}.
+	 * @param resultClass The resultClass to be mapped. Use the configured domain-class if this parameter is null.
+	 */
+	public RowMappingPlan createRowMappingPlan(ResultSet rs, Class resultClass) throws SQLException{
+		Class instanceClass = resultClass == null ? this.business.getDomainClass() : resultClass ;
+		boolean isMap = Map.class.isAssignableFrom(instanceClass) ;
 		BeanWrapper bw = this.beanWrapper ;
 		
-		Object instance = resultClass == null ? proxyDomainObject() : BeanCreator.newBeanInstance(resultClass) ;
-		
-		if(instance instanceof Map){
-			isMap = true ;
-		}else{
-			bw = resultClass == null ? this.beanWrapper : BeanWrapper.createPOJOWrapper(resultClass) ;
-		}
-		
-		if(instance instanceof GuzzProxy){
-			((GuzzProxy) instance).markReading() ;
+		if(!isMap){
+			bw = resultClass == null ? this.beanWrapper : getResultClassBeanWrapper(resultClass) ;
 		}
 		
 		Table t = getTable() ;
 		ResultSetMetaData  meta = rs.getMetaData() ;
 		int count = meta.getColumnCount() ;
 		
+		POJORowMappingPlan plan = new POJORowMappingPlan(resultClass, isMap, bw, count) ;
+		
+		//objects fetched from the same ResultSet load their lazy properties in batch.
+		if(resultClass == null && t.hasLazy() && getBusinessDescriptor().isBatchLazyLoadEnable()){
+			plan.fetchGroupSize = getBusinessDescriptor().getMaxLazyBatchSize() ;
+		}
+		
 		for(int i = 1 ; i <= count ; i++){
 			String colName = meta.getColumnLabel(i) ;
 			TableColumn col = t.getColumnByColNameInRS(colName) ;
@@ -123,52 +137,194 @@ public final class POJOBasedObjectMapping extends AbstractObjectMapping{
 			
 			if(orm != null){
 				//进行映射。
-				Object value = orm.loadResult(rs, instance, i) ;
-				
-				if(isMap){
-					((Map) instance).put(col.getPropName(), value) ;
-				}else{
-					bw.setValue(instance, col.getPropName(), value) ;
-				}
+				plan.addColumn(i, col.getPropName(), orm, null) ;
 			}else if(resultClass != null){
 				//如果设置了resultClass，尽可能多的赋值给resultClass；如果某个属性resultClass不接受，直接报错！
 				//原则：指定resultClass后，resultClass不允许忽略任何结果集。【这是IBatis的策略，直接借用】
-				
-				Object value = rs.getObject(i) ;
+				plan.addColumn(i, colName, null, null) ;
+			}else{
+				//有时SQL中有一些计算出的字段，数据库中没有这个字段，但Bean中有这个字段. -by 波波
+				String propName = getPropName(colName, bw);
 				
 				if(isMap){
-					((Map) instance).put(colName, value) ;
+					plan.addColumn(i, propName == null ? colName : propName, null, null) ;
+				}else if (propName != null) {
+					String typeName = bw.getPropertyTypeName(propName);
+					SQLDataType sqlType = getDbGroup().getDialect().getDataType(typeName);
+					
+					plan.addColumn(i, propName, null, sqlType) ;
+				} else {
+					//TODO: business忽略某些结果集。在debug模式下，DebugService发出警告！
+					if(log.isDebugEnabled()){
+						log.debug("warning:ignore ResultSet column:[" + colName + "] in POJOBasedObjectMapping for business:[" + this.business.getName() + "].") ;
+					}
+				}
+			}
+		}
+		
+		return plan ;
+	}
+	
+	class POJORowMappingPlan implements RowMappingPlan{
+		private final Class resultClass ;
+		
+		private final boolean isMap ;
+		
+		private final BeanWrapper bw ;
+		
+		private int size ;
+		
+		/**column index in the ResultSet*/
+		private final int[] rsIndexes ;
+		
+		/**property name in the bean, or the key in the map*/
+		private final String[] keys ;
+		
+		/**slot of the property in the bean wrapper, -1 if not supported*/
+		private final int[] slots ;
+		
+		/**load the column with ColumnORM if not null*/
+		private final ColumnORM[] orms ;
+		
+		/**load the column with SQLDataType if not null. Both orms[i] and types[i] is null means ResultSet.getObject(i).*/
+		private final SQLDataType[] types ;
+		
+		/**max members of a fetch group. 0 means batch lazy loading is disabled.*/
+		private int fetchGroupSize ;
+		
+		/**
+		 * group of the latest proxies created by this plan. A new group is started when it is full, 
+		 * so streamed rows won't be held by their siblings.
+		 */
+		private LazyFetchGroup fetchGroup ;
+		
+		public POJORowMappingPlan(Class resultClass, boolean isMap, BeanWrapper bw, int columnCount){
+			this.resultClass = resultClass ;
+			this.isMap = isMap ;
+			this.bw = bw ;
+			this.rsIndexes = new int[columnCount] ;
+			this.keys = new String[columnCount] ;
+			this.slots = new int[columnCount] ;
+			this.orms = new ColumnORM[columnCount] ;
+			this.types = new SQLDataType[columnCount] ;
+		}
+		
+		public void addColumn(int rsIndex, String key, ColumnORM orm, SQLDataType type){
+			this.rsIndexes[size] = rsIndex ;
+			this.keys[size] = key ;
+			this.slots[size] = isMap ? -1 : bw.getPropertyIndex(key) ;
+			this.orms[size] = orm ;
+			this.types[size] = type ;
+			
+			size++ ;
+		}
+		
+		public Object rs2Object(ResultSet rs) throws SQLException {
+			Object instance = resultClass == null ? proxyDomainObject() : BeanCreator.newBeanInstance(resultClass) ;
+			
+			if(instance instanceof GuzzProxy){
+				((GuzzProxy) instance).markReading() ;
+			}
+			
+			for(int k = 0 ; k < size ; k++){
+				int i = rsIndexes[k] ;
+				Object value ;
+				
+				if(orms[k] != null){
+					value = orms[k].loadResult(rs, instance, i) ;
+				}else if(types[k] != null){
+					value = types[k].getSQLValue(rs, i) ;
 				}else{
-					bw.setValue(instance, colName, value) ;
+					value = rs.getObject(i) ;
 				}
-			}else{
-				//有时SQL中有一些计算出的字段，数据库中没有这个字段，但Bean中有这个字段. -by 波波
-				String propName = getPropName(colName, bw);
 				
 				if(isMap){
-					((Map) instance).put(propName == null ? colName : propName, rs.getObject(i)) ;
+					((Map) instance).put(keys[k], value) ;
+				}else if(slots[k] >= 0){
+					bw.setValue(instance, slots[k], value) ;
 				}else{
-					if (propName != null) {
-						String typeName = bw.getPropertyTypeName(propName);
-						SQLDataType sqlType = getDbGroup().getDialect().getDataType(typeName);
-						Object value = sqlType.getSQLValue(rs, i);
-						
-						bw.setValue(instance, propName, value) ;
-					} else {
-						//TODO: business忽略某些结果集。在debug模式下，DebugService发出警告！
-						if(log.isDebugEnabled()){
-							log.debug("warning:ignore ResultSet column:[" + colName + "] in POJOBasedObjectMapping for business:[" + this.business.getName() + "].") ;
-						}
+					bw.setValue(instance, keys[k], value) ;
+				}
+			}
+			
+			if(instance instanceof GuzzProxy){
+				((GuzzProxy) instance).unmarkReading() ;
+				
+				if(fetchGroupSize > 0){
+					if(fetchGroup == null || fetchGroup.size() >= fetchGroupSize){
+						fetchGroup = new LazyFetchGroup() ;
 					}
+					
+					proxyFactory.attachFetchGroup((GuzzProxy) instance, fetchGroup) ;
+				}
+			}
+			
+			return instance ;
+		}
+	}
+	
+	/**
+	 * Copy the domain objects loaded by this mapping property by property, so that callers of a shared(cached) query result don't share mutable instances.
+	 * <p>
+	 * Only the properties loaded with the row are copied, mutable Date and byte[] values are cloned. 
+	 * Lazy properties are not touched, the copies load them on their own, in batch if enabled.
+	 * </p>
+	 */
+	public List copyLoadedObjects(List objects){
+		LinkedList copies = new LinkedList() ;
+		BusinessDescriptor bd = getBusinessDescriptor() ;
+		int fetchGroupSize = (getTable().hasLazy() && bd.isBatchLazyLoadEnable()) ? bd.getMaxLazyBatchSize() : 0 ;
+		LazyFetchGroup fetchGroup = null ;
+		
+		Iterator i = objects.iterator() ;
+		while(i.hasNext()){
+			Object copy = copyLoadedObject(i.next()) ;
+			
+			if(fetchGroupSize > 0 && copy instanceof GuzzProxy){
+				if(fetchGroup == null || fetchGroup.size() >= fetchGroupSize){
+					fetchGroup = new LazyFetchGroup() ;
 				}
+				
+				proxyFactory.attachFetchGroup((GuzzProxy) copy, fetchGroup) ;
+			}
+			
+			copies.addLast(copy) ;
+		}
+		
+		return copies ;
+	}
+	
+	protected Object copyLoadedObject(Object obj){
+		if(!this.business.getDomainClass().isInstance(obj)){
+			//not loaded by this mapping.
+			return obj ;
+		}
+		
+		Object copy = proxyDomainObject() ;
+		TableColumn[] cols = getTable().getColumnsForSelect() ;
+		
+		if(copy instanceof GuzzProxy){
+			((GuzzProxy) copy).markReading() ;
+		}
+		
+		for(int i = 0 ; i < cols.length ; i++){
+			String propName = cols[i].getPropName() ;
+			Object value = this.beanWrapper.getValueUnderProxy(obj, propName) ;
+			
+			if(value instanceof Date){
+				value = ((Date) value).clone() ;
+			}else if(value instanceof byte[]){
+				value = ((byte[]) value).clone() ;
 			}
+			
+			this.beanWrapper.setValue(copy, propName, value) ;
 		}
 		
-		if(instance instanceof GuzzProxy){
-			((GuzzProxy) instance).unmarkReading() ;
+		if(copy instanceof GuzzProxy){
+			((GuzzProxy) copy).unmarkReading() ;
 		}
 		
-		return instance ;
+		return copy ;
 	}
 	
 	protected String getPropName(String colName, BeanWrapper bw) {
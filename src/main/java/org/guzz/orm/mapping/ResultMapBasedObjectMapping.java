@@ -76,7 +76,7 @@ public final class ResultMapBasedObjectMapping extends AbstractObjectMapping {
 		if(instance instanceof Map){
 			isMap = true ;
 		}else{
-			bw = resultClass == null ? this.beanWrapper : BeanWrapper.createPOJOWrapper(resultClass) ;
+			bw = resultClass == null ? this.beanWrapper : getResultClassBeanWrapper(resultClass) ;
 		}
 		
 		TableColumn[] cols = getTable().getColumnsForSelect() ;
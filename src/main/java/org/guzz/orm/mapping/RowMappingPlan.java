@@ -0,0 +1,43 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.orm.mapping;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ *
+ * How to map each row of one {@link ResultSet}.
+ * <p>
+ * The plan is resolved from the {@link ResultSetMetaData} once, and then reused for all rows of the same ResultSet,
+ * so the per-row mapping only walks the precomputed columns.
+ * </p>
+ *
+ * @see ObjectMappingUtil#createRowMappingPlan(org.guzz.orm.ObjectMapping, RowDataLoader, ResultSet, Class)
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface RowMappingPlan {
+
+	/**
+	 * Map the current row of the {@link ResultSet} to a java object.
+	 *
+	 * @param rs The ResultSet that the plan was created for, in the right position for read.
+	 */
+	public Object rs2Object(ResultSet rs) throws SQLException ;
+
+}
@@ -49,6 +49,8 @@ public class TableColumn {
 	private String nullValue ;
 	
 	private boolean lazy = false ;
+	
+	private int lazyBatchSize = 0 ;
 		
 	private ColumnORM orm ;
 	
@@ -113,6 +115,18 @@ public class TableColumn {
 		this.lazy = lazy;
 	}
 
+	/**
+	 * Max count of objects fetched by the same query to load this lazy property for in one statement. 
+	 * Less than 2 means loading the property one object at a time.
+	 */
+	public int getLazyBatchSize() {
+		return lazyBatchSize;
+	}
+
+	public void setLazyBatchSize(int lazyBatchSize) {
+		this.lazyBatchSize = lazyBatchSize;
+	}
+
 	public ColumnDataLoader getDataLoader() {
 		return orm.columnDataLoader;
 	}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.orm.se;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.guzz.exception.DaoException;
+import org.guzz.util.javabean.BeanWrapper;
+
+/**
+ * 
+ * Position of a row in a keyset(seek) pagination: values of the order-by properties (the primary key as the last one) of the row.
+ * <p/>
+ * A cursor is passed to web pages as an opaque token by {@link #toToken()}, and restored by {@link #parse(String)}. 
+ * The token only carries plain values (strings, numbers, booleans and dates), no java serialization is involved.
+ *
+ * @see SearchExpression#seekAfter(String)
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class KeysetCursor {
+	
+	private static final String CHARSET = "UTF-8" ;
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray() ;
+	
+	private final Object[] values ;
+	
+	public KeysetCursor(Object[] values){
+		this.values = values ;
+	}
+	
+	/**
+	 * Create the cursor of a fetched row.
+	 * 
+	 * @param row the domain object, or a Map if the row is loaded as a map.
+	 * @param propNames properties of the keyset
+	 * @param wrapper BeanWrapper to read the properties of the domain object.
+	 * @exception DaoException any property of the row is null. Null values cannot be compared in the keyset condition.
+	 */
+	public static KeysetCursor forRow(Object row, String[] propNames, BeanWrapper wrapper){
+		Object[] values = new Object[propNames.length] ;
+		
+		for(int i = 0 ; i < propNames.length ; i++){
+			if(row instanceof Map){
+				values[i] = ((Map) row).get(propNames[i]) ;
+			}else{
+				values[i] = wrapper.getValue(row, propNames[i]) ;
+			}
+			
+			if(values[i] == null){
+				throw new DaoException("property [" + propNames[i] + "] is null, and cannot be used in a keyset cursor. order keyset pages by not-null columns.") ;
+			}
+		}
+		
+		return new KeysetCursor(values) ;
+	}
+	
+	public Object[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * Encode the cursor as a url-safe string.
+	 */
+	public String toToken(){
+		StringBuffer sb = new StringBuffer(32) ;
+		
+		for(int i = 0 ; i < values.length ; i++){
+			Object v = values[i] ;
+			char type ;
+			String s ;
+			
+			if(v == null){
+				type = 'N' ; s = "" ;
+			}else if(v instanceof String){
+				type = 'S' ; s = (String) v ;
+			}else if(v instanceof Integer){
+				type = 'I' ; s = v.toString() ;
+			}else if(v instanceof Long){
+				type = 'L' ; s = v.toString() ;
+			}else if(v instanceof Short){
+				type = 'H' ; s = v.toString() ;
+			}else if(v instanceof Byte){
+				type = 'B' ; s = v.toString() ;
+			}else if(v instanceof Double){
+				type = 'D' ; s = v.toString() ;
+			}else if(v instanceof Float){
+				type = 'F' ; s = v.toString() ;
+			}else if(v instanceof BigDecimal){
+				type = 'M' ; s = v.toString() ;
+			}else if(v instanceof BigInteger){
+				type = 'G' ; s = v.toString() ;
+			}else if(v instanceof Boolean){
+				type = 'Z' ; s = v.toString() ;
+			}else if(v instanceof java.sql.Timestamp){
+				java.sql.Timestamp ts = (java.sql.Timestamp) v ;
+				type = 'T' ; s = ts.getTime() + "." + ts.getNanos() ;
+			}else if(v instanceof java.sql.Date){
+				type = 'd' ; s = String.valueOf(((java.util.Date) v).getTime()) ;
+			}else if(v instanceof java.sql.Time){
+				type = 't' ; s = String.valueOf(((java.util.Date) v).getTime()) ;
+			}else if(v instanceof java.util.Date){
+				type = 'U' ; s = String.valueOf(((java.util.Date) v).getTime()) ;
+			}else{
+				throw new DaoException("value type [" + v.getClass() + "] is not supported in keyset cursors.") ;
+			}
+			
+			sb.append(type).append(s.length()).append(':').append(s) ;
+		}
+		
+		byte[] bytes ;
+		try {
+			bytes = sb.toString().getBytes(CHARSET) ;
+		} catch (UnsupportedEncodingException e) {
+			throw new DaoException(e) ;
+		}
+		
+		char[] token = new char[bytes.length * 2] ;
+		for(int i = 0 ; i < bytes.length ; i++){
+			token[2 * i] = HEX[(bytes[i] >> 4) & 0x0F] ;
+			token[2 * i + 1] = HEX[bytes[i] & 0x0F] ;
+		}
+		
+		return new String(token) ;
+	}
+	
+	/**
+	 * Restore the cursor from the token created by {@link #toToken()}.
+	 * 
+	 * @exception DaoException the token is malformed.
+	 */
+	public static KeysetCursor parse(String token){
+		if(token == null || token.length() % 2 != 0){
+			throw new DaoException("illegal keyset cursor:" + token) ;
+		}
+		
+		String s ;
+		
+		try{
+			byte[] bytes = new byte[token.length() / 2] ;
+			for(int i = 0 ; i < bytes.length ; i++){
+				bytes[i] = (byte) Integer.parseInt(token.substring(2 * i, 2 * i + 2), 16) ;
+			}
+			
+			s = new String(bytes, CHARSET) ;
+		}catch(NumberFormatException e){
+			throw new DaoException("illegal keyset cursor:" + token, e) ;
+		}catch (UnsupportedEncodingException e) {
+			throw new DaoException(e) ;
+		}
+		
+		LinkedList values = new LinkedList() ;
+		int pos = 0 ;
+		
+		try{
+			while(pos < s.length()){
+				char type = s.charAt(pos) ;
+				int colon = s.indexOf(':', pos) ;
+				int len = Integer.parseInt(s.substring(pos + 1, colon)) ;
+				String v = s.substring(colon + 1, colon + 1 + len) ;
+				pos = colon + 1 + len ;
+				
+				values.addLast(toValue(type, v)) ;
+			}
+		}catch(RuntimeException e){
+			throw new DaoException("illegal keyset cursor:" + token, e) ;
+		}
+		
+		return new KeysetCursor(values.toArray()) ;
+	}
+	
+	protected static Object toValue(char type, String v){
+		switch(type){
+		case 'N': return null ;
+		case 'S': return v ;
+		case 'I': return Integer.valueOf(v) ;
+		case 'L': return Long.valueOf(v) ;
+		case 'H': return Short.valueOf(v) ;
+		case 'B': return Byte.valueOf(v) ;
+		case 'D': return Double.valueOf(v) ;
+		case 'F': return Float.valueOf(v) ;
+		case 'M': return new BigDecimal(v) ;
+		case 'G': return new BigInteger(v) ;
+		case 'Z': return Boolean.valueOf(v) ;
+		case 'T': 
+			int dot = v.indexOf('.') ;
+			java.sql.Timestamp ts = new java.sql.Timestamp(Long.parseLong(v.substring(0, dot))) ;
+			ts.setNanos(Integer.parseInt(v.substring(dot + 1))) ;
+			return ts ;
+		case 'd': return new java.sql.Date(Long.parseLong(v)) ;
+		case 't': return new java.sql.Time(Long.parseLong(v)) ;
+		case 'U': return new java.util.Date(Long.parseLong(v)) ;
+		}
+		
+		throw new DaoException("unknown value type [" + type + "] in keyset cursor.") ;
+	}
+	
+	public String toString(){
+		return toToken() ;
+	}
+
+}
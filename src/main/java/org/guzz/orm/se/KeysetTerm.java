@@ -0,0 +1,134 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.orm.se;
+
+import org.guzz.exception.DaoException;
+import org.guzz.orm.ObjectMapping;
+
+/**
+ * 
+ * Condition of keyset(seek) pagination: rows after the cursor in the order of the given properties.
+ * <p/>
+ * For (a asc, b asc) after (1, 2), generates <code>(a, b) > (:a, :b)</code> if the database supports row value comparison, 
+ * or <code>(a > :a or (a = :a and b > :b))</code> otherwise, or if the directions are mixed.
+ * <p/>
+ * Null values are not supported: <code>a > null</code> matches nothing, and databases sort nulls differently. 
+ * Order keyset pages by not-null columns.
+ * 
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class KeysetTerm implements SearchTerm {
+	
+	private final String[] propNames ;
+	
+	private final boolean[] ascs ;
+	
+	private final Object[] values ;
+	
+	/**
+	 * @param propNames properties of the keyset. The combination must be unique.
+	 * @param ascs true for asc order.
+	 * @param values values of the cursor row.
+	 * @exception DaoException the values don't match the properties, or any value is null.
+	 */
+	public KeysetTerm(String[] propNames, boolean[] ascs, Object[] values){
+		if(propNames.length != values.length){
+			throw new DaoException("keyset cursor has " + values.length + " values, but " + propNames.length + " properties are ordered.") ;
+		}
+		
+		for(int i = 0 ; i < values.length ; i++){
+			if(values[i] == null){
+				throw new DaoException("keyset cursor has a null value for property [" + propNames[i] + "]. order keyset pages by not-null columns.") ;
+			}
+		}
+		
+		this.propNames = propNames ;
+		this.ascs = ascs ;
+		this.values = values ;
+	}
+
+	public String toExpression(SearchExpression se, ObjectMapping mapping, SearchParams params) {
+		String[] colNames = new String[propNames.length] ;
+		boolean sameDirection = true ;
+		
+		for(int i = 0 ; i < propNames.length ; i++){
+			colNames[i] = mapping.getColNameByPropNameForSQL(propNames[i]) ;
+			if(colNames[i] == null){
+				throw new DaoException("unknown property [" + propNames[i] + "] in keyset.") ;
+			}
+			
+			if(ascs[i] != ascs[0]){
+				sameDirection = false ;
+			}
+		}
+		
+		StringBuffer sb = new StringBuffer(32) ;
+		
+		if(sameDirection && propNames.length > 1 && mapping.getDbGroup().getDialect().supportsRowValueComparison()){
+			sb.append('(') ;
+			for(int i = 0 ; i < colNames.length ; i++){
+				if(i > 0) sb.append(", ") ;
+				sb.append(colNames[i]) ;
+			}
+			
+			sb.append(ascs[0] ? ") > (" : ") < (") ;
+			
+			for(int i = 0 ; i < colNames.length ; i++){
+				if(i > 0) sb.append(", ") ;
+				sb.append(':').append(addParam(params, i)) ;
+			}
+			
+			sb.append(')') ;
+			
+			return sb.toString() ;
+		}
+		
+		//(a > :a or (a = :a and (b > :b or (b = :b and c > :c))))
+		for(int i = 0 ; i < colNames.length ; i++){
+			sb.append('(')
+			  .append(colNames[i])
+			  .append(ascs[i] ? " > :" : " < :")
+			  .append(addParam(params, i)) ;
+			
+			if(i < colNames.length - 1){
+				sb.append(" or (")
+				  .append(colNames[i])
+				  .append(" = :")
+				  .append(addParam(params, i))
+				  .append(" and ") ;
+			}
+		}
+		
+		for(int i = 0 ; i < colNames.length ; i++){
+			sb.append(i < colNames.length - 1 ? "))" : ")") ;
+		}
+		
+		return sb.toString() ;
+	}
+	
+	private String addParam(SearchParams params, int index){
+		String propMark = propNames[index] + "_" + params.getNextSeq() ;
+		params.addParam(propNames[index], propMark, values[index]) ;
+		
+		return propMark ;
+	}
+
+	public boolean isEmptyQuery() {
+		return false;
+	}
+
+}
@@ -117,6 +117,32 @@ public class OrderByTerm implements SearchTerm {
 		return false;
 	}
 	
+	/**
+	 * java properties to order by, in the order of precedence.
+	 */
+	public String[] getOrderPropNames(){
+		String[] names = new String[orders.size()] ;
+		
+		for(int i = 0 ; i < names.length ; i++){
+			names[i] = ((_OrderBy) orders.get(i)).propName ;
+		}
+		
+		return names ;
+	}
+	
+	/**
+	 * true for asc, false for desc. Elements are in the same order as {@link #getOrderPropNames()}.
+	 */
+	public boolean[] getOrderDirections(){
+		boolean[] ascs = new boolean[orders.size()] ;
+		
+		for(int i = 0 ; i < ascs.length ; i++){
+			ascs[i] = ((_OrderBy) orders.get(i)).isASC ;
+		}
+		
+		return ascs ;
+	}
+	
 	static class _OrderBy{		
 		public String propName ;
 		public boolean isASC ;
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.orm.se;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * In-process cache of query results for one business, used by {@link SearchExpression}s with a cacheMode.
+ * <p>
+ * Entries expire after the ttl, and all entries of the business are invalidated together when the business is written.
+ * Invalidation only bumps a generation number, so it costs nothing however many entries are cached.
+ * </p>
+ * <p>
+ * Only writes through {@link org.guzz.transaction.WriteTranSessionImpl} and its batchers invalidate the cache. 
+ * Changes made by raw JDBC, other applications, or services writing the database on their own (e.g. the slow update services) 
+ * are only picked up when the cached results expire, so set a ttl for businesses written that way.
+ * </p>
+ * <p>
+ * Cached lists are never handed out directly: listing callers get copies of the cached domain objects.
+ * </p>
+ * 
+ * @see SearchExpression#setCacheMode(int)
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class QueryResultCache {
+	
+	private final int maxSize ;
+	
+	private final long ttlMillis ;
+	
+	private final AtomicLong generation = new AtomicLong() ;
+	
+	private final AtomicLong hits = new AtomicLong() ;
+	
+	private final AtomicLong misses = new AtomicLong() ;
+	
+	private final LinkedHashMap entries ;
+	
+	/**
+	 * @param maxSize max count of cached queries. The least recently used one is removed on overflow.
+	 * @param ttlMillis milliseconds a result keeps fresh. 0 or negative means never expire unless the business is written.
+	 */
+	public QueryResultCache(int maxSize, long ttlMillis){
+		if(maxSize < 1){
+			throw new IllegalArgumentException("maxSize must be positive. maxSize is:" + maxSize) ;
+		}
+		
+		this.maxSize = maxSize ;
+		this.ttlMillis = ttlMillis ;
+		this.entries = new LRUMap(maxSize) ;
+	}
+	
+	/**
+	 * Return the cached result, or load it.
+	 * 
+	 * @param key key of the query. Must implement equals and hashCode.
+	 * @param cacheMode {@link SearchExpression#CACHE_MODE_READ_THROUGH} or {@link SearchExpression#CACHE_MODE_STALE_WHILE_REVALIDATE}
+	 * @param loader load the result from the database.
+	 */
+	public Object get(Object key, int cacheMode, Loader loader){
+		Entry e ;
+		synchronized(entries){
+			e = (Entry) entries.get(key) ;
+		}
+		
+		if(e != null && isFresh(e)){
+			hits.incrementAndGet() ;
+			return e.value ;
+		}
+		
+		if(e != null && cacheMode == SearchExpression.CACHE_MODE_STALE_WHILE_REVALIDATE){
+			//only one caller refreshes the entry, others return the stale result without waiting.
+			if(!e.refreshing.compareAndSet(false, true)){
+				hits.incrementAndGet() ;
+				return e.value ;
+			}
+			
+			try{
+				return load(key, loader) ;
+			}finally{
+				e.refreshing.set(false) ;
+			}
+		}
+		
+		return load(key, loader) ;
+	}
+	
+	protected Object load(Object key, Loader loader){
+		misses.incrementAndGet() ;
+		
+		//results loaded across an invalidation are stale at once.
+		long gen = generation.get() ;
+		Object value = loader.load() ;
+		
+		synchronized(entries){
+			entries.put(key, new Entry(value, gen)) ;
+		}
+		
+		return value ;
+	}
+	
+	protected boolean isFresh(Entry e){
+		if(e.generation != generation.get()){
+			return false ;
+		}
+		
+		return ttlMillis <= 0 || System.currentTimeMillis() - e.loadTime < ttlMillis ;
+	}
+	
+	/**
+	 * Mark all cached results as stale. Called when the business is written.
+	 */
+	public void invalidate(){
+		generation.incrementAndGet() ;
+	}
+	
+	public void clear(){
+		invalidate() ;
+		
+		synchronized(entries){
+			entries.clear() ;
+		}
+	}
+	
+	public int size(){
+		synchronized(entries){
+			return entries.size() ;
+		}
+	}
+	
+	public long getHits() {
+		return hits.get() ;
+	}
+
+	public long getMisses() {
+		return misses.get() ;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	public static interface Loader{
+		
+		public Object load() ;
+		
+	}
+	
+	static class LRUMap extends LinkedHashMap{
+		private static final long serialVersionUID = -4370918446153926734L;
+		
+		private final int maxSize ;
+		
+		LRUMap(int maxSize){
+			super(16, 0.75f, true) ;
+			this.maxSize = maxSize ;
+		}
+		
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > this.maxSize ;
+		}
+	}
+	
+	static class Entry{
+		final Object value ;
+		
+		final long generation ;
+		
+		final long loadTime = System.currentTimeMillis() ;
+		
+		final AtomicBoolean refreshing = new AtomicBoolean() ;
+		
+		Entry(Object value, long generation){
+			this.value = value ;
+			this.generation = generation ;
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import org.guzz.Guzz;
 import org.guzz.exception.DataTypeException;
 import org.guzz.exception.GuzzException;
+import org.guzz.orm.ObjectMapping;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
 import org.guzz.orm.mapping.RowDataLoader;
 import org.guzz.orm.rdms.Table;
@@ -44,6 +45,21 @@ public abstract class SearchExpression {
 	
 	/**不进行分页，如果每页的包含的记录为此，则不进行分页处理。pageNo自动按照第一页处理。*/
 	public static final int UNLIMITED_PAGE_SIZE = Integer.MAX_VALUE ;
+	
+	/**不使用查询结果缓存。*/
+	public static final int CACHE_MODE_NONE = 0 ;
+	
+	/**读取缓存，缓存过期或失效时在当前线程中重新查询数据库。*/
+	public static final int CACHE_MODE_READ_THROUGH = 1 ;
+	
+	/**缓存过期或失效时，由一个调用者重新查询数据库，其他并发调用者直接返回过期的结果。*/
+	public static final int CACHE_MODE_STALE_WHILE_REVALIDATE = 2 ;
+	
+	/**执行count(*)计算准确的记录数。*/
+	public static final int COUNT_MODE_EXACT = 0 ;
+	
+	/**使用数据库查询计划估算的记录数（如mysql的explain）。数据库不支持估算时，计算准确的记录数。*/
+	public static final int COUNT_MODE_ESTIMATED = 1 ;
 
 	private OrderByTerm orderByTerm ;
 	
@@ -69,6 +85,14 @@ public abstract class SearchExpression {
 	
 	private int cacheMode ;
 	
+	/**count使用的缓存模式，-1表示未设置。*/
+	private int countCacheMode = -1 ;
+	
+	private int countMode = COUNT_MODE_EXACT ;
+	
+	/**page时，在另一个连接中与list并行执行count。*/
+	private boolean countInParallel ;
+	
 	/**定义用于翻页的类，默认使用 (@link PageFlip)*/
 	private Class pageFlipClass ;
 	
@@ -76,6 +100,15 @@ public abstract class SearchExpression {
 	
 	private RowDataLoader rowDataLoader ;
 	
+	/**使用keyset(seek)方式分页，而不是跳过前面的记录。*/
+	private boolean keysetPagination ;
+	
+	/**keyset分页的游标，为空表示从头（或向前翻页时从尾）开始。*/
+	private String seekCursor ;
+	
+	/**keyset分页时，是否读取游标之前的记录（向前翻页）。*/
+	private boolean seekBackward ;
+	
 	/**主从使用策略*/
 //	private int persistPolicy = PersistPolicyParameter.PERSIST_POLICY_AUTO;
 		
@@ -195,6 +228,37 @@ public abstract class SearchExpression {
         }
 		
 		sb.append(" from ").append(table.isShadow() ? table.getBusinessShape() : table.getConfigTableName()) ;
+		
+		if(keysetPagination){
+			String[] props = getKeysetPropNames(mapping) ;
+			boolean[] ascs = getKeysetDirections(mapping) ;
+			
+			//read backward: reverse the order, and seek the rows before the cursor.
+			if(seekBackward){
+				for(int i = 0 ; i < ascs.length ; i++){
+					ascs[i] = !ascs[i] ;
+				}
+			}
+			
+			SearchTerm condition = conditionTerm ;
+			if(seekCursor != null && seekCursor.length() > 0){
+				KeysetTerm keyset = new KeysetTerm(props, ascs, KeysetCursor.parse(seekCursor).getValues()) ;
+				condition = condition == null ? keyset : new AndTerm(condition, keyset) ;
+			}
+			
+			if (condition != null) {
+	        	sb.append(' ').append(new WhereTerm(condition).toExpression(this, mapping, params)) ;
+	        }
+			
+			OrderByTerm orderBy = new OrderByTerm() ;
+			for(int i = 0 ; i < props.length ; i++){
+				orderBy.addOrder(props[i], ascs[i]) ;
+			}
+			
+			sb.append(' ').append(orderBy.toExpression(this, mapping, params));
+			
+			return new MarkedSQL(mapping, sb.toString()) ;
+		}
               
         if (conditionTerm != null) {
         	sb.append(' ').append(new WhereTerm(conditionTerm).toExpression(this, mapping, params)) ;
@@ -264,6 +328,42 @@ public abstract class SearchExpression {
 	    return sql ;
 	}
 	
+	/**
+	 * Create a new SearchExpression with the same settings. Search terms are shared with the copy.
+	 */
+	public SearchExpression copy(){
+		SearchExpression se ;
+		
+		try {
+			se = (SearchExpression) getClass().newInstance() ;
+		} catch (Exception e) {
+			throw new DataTypeException("fail to copy SearchExpression:" + getClass(), e) ;
+		}
+		
+		se.orderByTerm = this.orderByTerm ;
+		se.from = this.from ;
+		se.selectTerm = this.selectTerm ;
+		se.countSelectPhrase = this.countSelectPhrase ;
+		se.conditionTerm = this.conditionTerm ;
+		se.skipCount = this.skipCount ;
+		se.pageNo = this.pageNo ;
+		se.pageSize = this.pageSize ;
+		se.computeRecordNumber = this.computeRecordNumber ;
+		se.loadRecords = this.loadRecords ;
+		se.cacheMode = this.cacheMode ;
+		se.countCacheMode = this.countCacheMode ;
+		se.countMode = this.countMode ;
+		se.countInParallel = this.countInParallel ;
+		se.pageFlipClass = this.pageFlipClass ;
+		se.tableCondition = this.tableCondition ;
+		se.rowDataLoader = this.rowDataLoader ;
+		se.keysetPagination = this.keysetPagination ;
+		se.seekCursor = this.seekCursor ;
+		se.seekBackward = this.seekBackward ;
+		
+		return se ;
+	}
+	
 	public BindedCompiledSQL prepareHits(BindedCompiledSQL bsql){
 		bsql.setTableCondition(getTableCondition()) ;
 		
@@ -283,8 +383,10 @@ public abstract class SearchExpression {
 		return this ;
 	}
 	
-	/**获取记录读取的开始位置，从1开始 */
+	/**获取记录读取的开始位置，从1开始。keyset分页时总是从1开始。 */
 	public int getStartPos(){
+		if(keysetPagination) return 1 ;
+		
 		int pn = pageNo > FIRST_PAGE ? pageNo : FIRST_PAGE ;
 		return (pn - 1) * pageSize + 1 + skipCount ;
 	}
@@ -346,9 +448,57 @@ public abstract class SearchExpression {
 		return cacheMode;
 	}
 
+	/**
+	 * 设置查询结果缓存模式。只有配置了queryCacheSize的business，并在只读事务中执行list/count/page时才使用缓存。
+	 * 
+	 * @param cacheMode {@link #CACHE_MODE_NONE}, {@link #CACHE_MODE_READ_THROUGH} or {@link #CACHE_MODE_STALE_WHILE_REVALIDATE}
+	 * @see QueryResultCache
+	 */
 	public void setCacheMode(int cacheMode) {
 		this.cacheMode = cacheMode;
 	}
+	
+	/**
+	 * 记录数的缓存模式。-1表示未设置：count时与{@link #getCacheMode()}相同，page时不缓存记录数。
+	 */
+	public int getCountCacheMode() {
+		return countCacheMode ;
+	}
+
+	/**
+	 * 单独设置count与page计算记录数时的缓存模式。翻页时记录数变化不敏感，可以只缓存count，而每次读取最新的记录。
+	 * 缓存按照business、查询语句（含where条件与分表后的表名）、参数与数据库组区分，过期时间为business的queryCacheTTL。
+	 * 
+	 * @param countCacheMode {@link #CACHE_MODE_NONE}, {@link #CACHE_MODE_READ_THROUGH} or {@link #CACHE_MODE_STALE_WHILE_REVALIDATE}
+	 */
+	public SearchExpression setCountCacheMode(int countCacheMode) {
+		this.countCacheMode = countCacheMode;
+		return this ;
+	}
+
+	public int getCountMode() {
+		return countMode;
+	}
+
+	/**
+	 * @param countMode {@link #COUNT_MODE_EXACT} or {@link #COUNT_MODE_ESTIMATED}
+	 */
+	public SearchExpression setCountMode(int countMode) {
+		this.countMode = countMode;
+		return this ;
+	}
+
+	public boolean isCountInParallel() {
+		return countInParallel;
+	}
+
+	/**
+	 * 只读事务中page时，是否在另外一个数据库连接中与读取记录并行执行count。写事务中总是顺序执行（以读取到未提交的修改）。
+	 */
+	public SearchExpression setCountInParallel(boolean countInParallel) {
+		this.countInParallel = countInParallel;
+		return this ;
+	}
 
 	public String getCountSelectPhrase() {
 		return countSelectPhrase;
@@ -388,6 +538,92 @@ public abstract class SearchExpression {
 		return this ;
 	}
 
+	/**
+	 * Use keyset(seek) pagination: read the page after the row of @param cursor, instead of skipping all rows before the page.
+	 * <p/>
+	 * The records are ordered by the order-by properties and then the primary key, so the position of each row is unique. 
+	 * pageNo is ignored, and pageSize rows after the cursor are returned.
+	 * 
+	 * @param cursor token from {@link KeysetCursor#toToken()} of the last row of the previous page. null or empty for the first page.
+	 */
+	public SearchExpression seekAfter(String cursor){
+		this.keysetPagination = true ;
+		this.seekCursor = cursor ;
+		this.seekBackward = false ;
+		
+		return this ;
+	}
+	
+	/**
+	 * Use keyset(seek) pagination, and read the page before the row of @param cursor. Rows are still returned in the order-by order.
+	 * 
+	 * @param cursor token from {@link KeysetCursor#toToken()} of the first row of the next page. null or empty for the last page.
+	 * @see #seekAfter(String)
+	 */
+	public SearchExpression seekBefore(String cursor){
+		this.keysetPagination = true ;
+		this.seekCursor = cursor ;
+		this.seekBackward = true ;
+		
+		return this ;
+	}
+	
+	public boolean isKeysetPagination() {
+		return keysetPagination;
+	}
+
+	public String getSeekCursor() {
+		return seekCursor;
+	}
+
+	public boolean isSeekBackward() {
+		return seekBackward;
+	}
+	
+	/**
+	 * Properties to locate a row in keyset pagination: the order-by properties, with the primary key appended if not ordered.
+	 */
+	public String[] getKeysetPropNames(ObjectMapping mapping){
+		String pk = mapping.getTable().getPKPropName() ;
+		String[] props = orderByTerm == null ? new String[0] : orderByTerm.getOrderPropNames() ;
+		
+		for(int i = 0 ; i < props.length ; i++){
+			if(pk.equals(props[i])){
+				String[] m_props = new String[i + 1] ;
+				System.arraycopy(props, 0, m_props, 0, i + 1) ;
+				
+				return m_props ;
+			}
+		}
+		
+		String[] m_props = new String[props.length + 1] ;
+		System.arraycopy(props, 0, m_props, 0, props.length) ;
+		m_props[props.length] = pk ;
+		
+		return m_props ;
+	}
+	
+	/**
+	 * true for asc. The primary key appended follows the direction of the last order-by property.
+	 * 
+	 * @see #getKeysetPropNames(ObjectMapping)
+	 */
+	public boolean[] getKeysetDirections(ObjectMapping mapping){
+		int count = getKeysetPropNames(mapping).length ;
+		boolean[] orders = orderByTerm == null ? new boolean[0] : orderByTerm.getOrderDirections() ;
+		boolean[] ascs = new boolean[count] ;
+		
+		for(int i = 0 ; i < count ; i++){
+			if(i < orders.length){
+				ascs[i] = orders[i] ;
+			}else{
+				ascs[i] = orders.length == 0 ? true : orders[orders.length - 1] ;
+			}
+		}
+		
+		return ascs ;
+	}
+
 	public RowDataLoader getRowDataLoader() {
 		return rowDataLoader;
 	}
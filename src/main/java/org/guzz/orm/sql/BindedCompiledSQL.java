@@ -91,6 +91,7 @@ public abstract class BindedCompiledSQL {
 		NormalCompiledSQL cs = getCompiledSQLToRun() ;
 		
 		String[] orderParams = cs.getOrderedParams() ;
+		SQLDataType[] types = cs.getOrderedParamTypes() ;
 		
 		for(int i = 0 ; i < orderParams.length ; i++){
 			String orderParam = orderParams[i] ;
@@ -105,7 +106,7 @@ public abstract class BindedCompiledSQL {
 				value = null ;
 			}
 			
-			SQLDataType type = cs.getSQLDataTypeForParam(cs, orderParam) ;
+			SQLDataType type = types[i] ;
 			
 			if(type != null){
 				type.setSQLValue(pstm, i + bindStartIndex, value) ;
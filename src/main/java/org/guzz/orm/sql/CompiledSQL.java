@@ -53,6 +53,7 @@ public abstract class CompiledSQL {
 		}
 		
 		paramTypes.put(paramName, dataType) ;
+		paramTypesChanged() ;
 		return this ;
 	}
 	
@@ -77,6 +78,7 @@ public abstract class CompiledSQL {
 		
 		this.paramTypes.putAll(paramTypes) ;
 		
+		paramTypesChanged() ;
 		return this ;
 	}
 	
@@ -90,6 +92,7 @@ public abstract class CompiledSQL {
 		}
 		
 		paramPropMapping.put(paramName, propName) ;
+		paramTypesChanged() ;
 		return this ;
 	}
 	
@@ -108,6 +111,7 @@ public abstract class CompiledSQL {
 		
 		this.paramPropMapping.putAll(paramPropMapping) ;
 		
+		paramTypesChanged() ;
 		return this ;
 	}
 	
@@ -116,9 +120,16 @@ public abstract class CompiledSQL {
 	 */
 	public CompiledSQL setParamPropMapping(Map paramPropMapping){
 		this.paramPropMapping = paramPropMapping ;
+		paramTypesChanged() ;
 		return this ;
 	}
 	
+	/**
+	 * Called after the param types or the param-prop mappings are changed.
+	 */
+	protected void paramTypesChanged(){
+	}
+	
 	/**
 	 * Query the data type for the giving paramName.
 	 * 
@@ -132,7 +143,7 @@ public abstract class CompiledSQL {
 			String typeName = (String) this.paramTypes.get(paramName) ;
  			
 			if(typeName != null){
-				return cs.getMapping().getDbGroup().getDialect().getDataType(typeName) ;
+				return cs.getMapping().getDbGroup().getDialect().getSharedDataType(typeName) ;
 			}
 		}
 		
@@ -47,6 +47,10 @@ public interface CompiledSQLManager {
 	
 	public CompiledSQL getDefinedDeleteSQL(String className) ;
 
+	/**
+	 * build a sql to update the given properties by primary key.
+	 * <p>The returned CompiledSQL may be cached and shared, don't modify it.</p>
+	 */
 	public CompiledSQL buildUpdateSQL(POJOBasedObjectMapping mapping, String[] propsToUpdate) ;
 	
 	/**
@@ -16,8 +16,13 @@
  */
 package org.guzz.orm.sql;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.guzz.orm.AbstractCustomTableView;
+import org.guzz.orm.CustomTableView;
 import org.guzz.orm.mapping.ObjectMappingManager;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
 import org.guzz.orm.rdms.Table;
@@ -25,6 +30,10 @@ import org.guzz.orm.rdms.Table;
 /**
  * 
  * sql语句，根据pojo属性设置情况，动态生成的CompiledSQL
+ * <p>
+ * 为每个运行时的ObjectMapping编译出的{@link NormalCompiledSQL}会被缓存（最多{@link #getMaxCachedSize()}个），
+ * 当 {@link AbstractCustomTableView} 的表结构版本变化时自动重新编译。
+ * </p>
  * 
  * @see BindedCompiledSQL
  * @author liukaixuan(liukaixuan@gmail.com)
@@ -45,6 +54,15 @@ public class CustomCompiledSQL extends CompiledSQL {
 	
 	private DynamicSQLProvider sqlProvider ;
 	
+	/**runtime POJOBasedObjectMapping >> RuntimeSQL*/
+	private final ConcurrentHashMap runtimeSQLs = new ConcurrentHashMap() ;
+	
+	private int maxCachedSize = 256 ;
+	
+	private final AtomicLong cacheHits = new AtomicLong() ;
+	
+	private final AtomicLong cacheMisses = new AtomicLong() ;
+	
 	public CustomCompiledSQL(ObjectMappingManager omm, CompiledSQLBuilder sqlBuilder, String businessName){
 		this.omm = omm ;
 		this.businessName = businessName ;
@@ -70,6 +88,116 @@ public class CustomCompiledSQL extends CompiledSQL {
 		return m_sql ;
 	}
 	
+	/**
+	 * 获取给定运行时mapping下可直接执行的CompiledSQL，并复制了本CompiledSQL上设置的param和prop的mapping、参数类型。
+	 * <p>
+	 * 结果被缓存并在多线程间共享，调用者不能修改返回的对象。
+	 * </p>
+	 */
+	public NormalCompiledSQL getRuntimeSql(POJOBasedObjectMapping mapping){
+		int layoutVersion = getLayoutVersion() ;
+		RuntimeSQL rs = (RuntimeSQL) this.runtimeSQLs.get(mapping) ;
+		
+		if(rs != null && rs.layoutVersion == layoutVersion){
+			this.cacheHits.incrementAndGet() ;
+			
+			return rs.cs ;
+		}
+		
+		this.cacheMisses.incrementAndGet() ;
+		
+		NormalCompiledSQL cs = getSql(mapping) ;
+		//将用户设置的param和prop的mapping复制给CompiledSQL
+		cs.addParamPropMappings(this.paramPropMapping) ;
+		cs.registerParamTypes(this.paramTypes) ;
+		
+		if(rs == null && this.runtimeSQLs.size() >= this.maxCachedSize){
+			//full. drop one to make room; mappings of a CustomTableView are few in most systems.
+			Iterator i = this.runtimeSQLs.keySet().iterator() ;
+			if(i.hasNext()){
+				this.runtimeSQLs.remove(i.next()) ;
+			}
+		}
+		
+		this.runtimeSQLs.put(mapping, new RuntimeSQL(layoutVersion, cs)) ;
+		
+		return cs ;
+	}
+	
+	protected int getLayoutVersion(){
+		CustomTableView view = omm.getCustomTableView(businessName) ;
+		
+		if(view instanceof AbstractCustomTableView){
+			return ((AbstractCustomTableView) view).getLayoutVersion() ;
+		}
+		
+		return 0 ;
+	}
+	
+	/**
+	 * Clear all cached runtime sqls.
+	 */
+	public void clearRuntimeSqls(){
+		this.runtimeSQLs.clear() ;
+	}
+	
+	public long getCacheHits() {
+		return cacheHits.get() ;
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.get() ;
+	}
+	
+	public int getCachedSize(){
+		return this.runtimeSQLs.size() ;
+	}
+
+	public int getMaxCachedSize() {
+		return maxCachedSize;
+	}
+
+	public void setMaxCachedSize(int maxCachedSize) {
+		this.maxCachedSize = maxCachedSize;
+		this.runtimeSQLs.clear() ;
+	}
+	
+	//the cached runtime sqls have copied the old settings, so recompile them on changes.
+	public CompiledSQL registerParamType(String paramName, String dataType) {
+		super.registerParamType(paramName, dataType) ;
+		this.runtimeSQLs.clear() ;
+		
+		return this ;
+	}
+
+	public CompiledSQL registerParamTypes(Map paramTypes) {
+		super.registerParamTypes(paramTypes) ;
+		this.runtimeSQLs.clear() ;
+		
+		return this ;
+	}
+
+	public CompiledSQL addParamPropMapping(String paramName, String propName) {
+		super.addParamPropMapping(paramName, propName) ;
+		this.runtimeSQLs.clear() ;
+		
+		return this ;
+	}
+
+	public CompiledSQL addParamPropMappings(Map paramPropMapping) {
+		super.addParamPropMappings(paramPropMapping) ;
+		this.runtimeSQLs.clear() ;
+		
+		return this ;
+	}
+
+	public CompiledSQL setParamPropMapping(Map paramPropMapping) {
+		super.setParamPropMapping(paramPropMapping) ;
+		this.runtimeSQLs.clear() ;
+		
+		return this ;
+	}
+	
 	
 	/**
 	 * 设置查询sql，如果sql中涉及shadow表，表名可以用@@businessName替代；
@@ -77,10 +205,12 @@ public class CustomCompiledSQL extends CompiledSQL {
 	 */
 	public void setSql(String sql) {
 		this.sql = sql;
+		this.runtimeSQLs.clear() ;
 	}
 
 	public void setSqlProvider(DynamicSQLProvider sqlProvider) {
 		this.sqlProvider = sqlProvider;
+		this.runtimeSQLs.clear() ;
 	}
 	
 	/**绑定sql执行需要的参数*/
@@ -103,5 +233,16 @@ public class CustomCompiledSQL extends CompiledSQL {
 	public BindedCompiledSQL bindNoParams(){
 		return new CustomBindedCompiledSQL(this) ;
 	}
+	
+	static class RuntimeSQL{
+		final int layoutVersion ;
+		
+		final NormalCompiledSQL cs ;
+		
+		public RuntimeSQL(int layoutVersion, NormalCompiledSQL cs){
+			this.layoutVersion = layoutVersion ;
+			this.cs = cs ;
+		}
+	}
 
 }
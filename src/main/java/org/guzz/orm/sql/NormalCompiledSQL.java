@@ -25,6 +25,7 @@ import java.util.Map.Entry;
 
 import org.guzz.orm.ObjectMapping;
 import org.guzz.orm.rdms.Table;
+import org.guzz.orm.type.SQLDataType;
 import org.guzz.util.StringUtil;
 
 /**
@@ -46,6 +47,9 @@ public class NormalCompiledSQL extends CompiledSQL {
 		
 	private String[] cached_orderedParams = null ;
 	
+	/**{@link SQLDataType}s of the ordered params, null for params binded by the jdbc driver.*/
+	private volatile SQLDataType[] cached_orderedParamTypes = null ;
+	
 	/**保存sql中用到的shadow表，如果查询中没有shadow表，值为null*/
 	private Map shadowMapping = null ;
 	
@@ -92,6 +96,7 @@ public class NormalCompiledSQL extends CompiledSQL {
 	public void addParamToLast(String paramName){
 		orderedParams.add(paramName) ;
 		cached_orderedParams = null ;
+		cached_orderedParamTypes = null ;
 	}
 
 	/**如果没有参数，返回长度为0的数组。*/
@@ -106,6 +111,32 @@ public class NormalCompiledSQL extends CompiledSQL {
 	public void setOrderedParams(List orderedParams) {
 		this.orderedParams = orderedParams;
 		cached_orderedParams = null ;
+		cached_orderedParamTypes = null ;
+	}
+	
+	/**
+	 * The {@link SQLDataType}s of {@link #getOrderedParams()}, resolved once and reused on every binding.
+	 * <br>The element is null if no type is declared for the param.
+	 */
+	public SQLDataType[] getOrderedParamTypes(){
+		SQLDataType[] types = cached_orderedParamTypes ;
+		
+		if(types == null){
+			String[] params = getOrderedParams() ;
+			types = new SQLDataType[params.length] ;
+			
+			for(int i = 0 ; i < params.length ; i++){
+				types[i] = getSQLDataTypeForParam(this, params[i]) ;
+			}
+			
+			cached_orderedParamTypes = types ;
+		}
+		
+		return types ;
+	}
+	
+	protected void paramTypesChanged(){
+		cached_orderedParamTypes = null ;
 	}
 
 	public ObjectMapping getMapping() {
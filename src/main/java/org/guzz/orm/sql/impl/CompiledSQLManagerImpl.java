@@ -16,8 +16,11 @@
  */
 package org.guzz.orm.sql.impl;
 
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.guzz.exception.GuzzException;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
@@ -47,6 +50,13 @@ public class CompiledSQLManagerImpl implements CompiledSQLManager {
 	
 	private DynamicSQLService dynamicSQLService ;
 	
+	/**POJOBasedObjectMapping >> UpdateSQLCache*/
+	private final ConcurrentHashMap updateSQLCaches = new ConcurrentHashMap() ;
+	
+	private static final int MAX_UPDATE_SQL_CACHED_MAPPINGS = 1024 ;
+	
+	private int maxUpdateSQLsPerMapping = 64 ;
+	
 	public CompiledSQLManagerImpl(CompiledSQLBuilder compiledSQLBuilder){
 		this.compiledSQLBuilder = compiledSQLBuilder ;
 	}
@@ -418,8 +428,51 @@ public class CompiledSQLManagerImpl implements CompiledSQLManager {
 		return cs ;
 	}
 	
-	//update by primary key.
+	/**
+	 * Build update sql for the dynamic-update. 
+	 * The compiled sqls are cached per mapping, keyed by the set of the updated properties, so the same change shape compiles only once.
+	 */
 	public CompiledSQL buildUpdateSQL(POJOBasedObjectMapping mapping, String[] propsToUpdate){
+		UpdateSQLCache cache = (UpdateSQLCache) this.updateSQLCaches.get(mapping) ;
+		
+		if(cache == null){
+			if(this.updateSQLCaches.size() >= MAX_UPDATE_SQL_CACHED_MAPPINGS){
+				//too many runtime mappings(custom tables). drop one.
+				Iterator i = this.updateSQLCaches.keySet().iterator() ;
+				if(i.hasNext()){
+					this.updateSQLCaches.remove(i.next()) ;
+				}
+			}
+			
+			cache = new UpdateSQLCache(mapping.getTable()) ;
+			UpdateSQLCache old = (UpdateSQLCache) this.updateSQLCaches.putIfAbsent(mapping, cache) ;
+			if(old != null){
+				cache = old ;
+			}
+		}
+		
+		BitSet key = cache.toKey(propsToUpdate) ;
+		if(key == null){
+			//unknown properties, don't cache.
+			return buildUpdateSQLWithoutCache(mapping, propsToUpdate) ;
+		}
+		
+		CompiledSQL cs = (CompiledSQL) cache.sqls.get(key) ;
+		
+		if(cs == null){
+			cs = buildUpdateSQLWithoutCache(mapping, propsToUpdate) ;
+			
+			//keep the first shapes when full.
+			if(cache.sqls.size() < this.maxUpdateSQLsPerMapping){
+				cache.sqls.put(key, cs) ;
+			}
+		}
+		
+		return cs ;
+	}
+	
+	//update by primary key.
+	protected CompiledSQL buildUpdateSQLWithoutCache(POJOBasedObjectMapping mapping, String[] propsToUpdate){
 		Table table = mapping.getTable() ;
 		
 		String primaryKey = table.getPKColumn().getColNameForSQL() ;
@@ -464,6 +517,56 @@ public class CompiledSQLManagerImpl implements CompiledSQLManager {
 		return cs ;
 	}
 	
+	/**
+	 * Cached update sqls of one mapping.
+	 */
+	static class UpdateSQLCache{
+		/**propName >> index in the ordered updatable properties*/
+		private final Map propIndexes = new HashMap() ;
+		
+		/**BitSet of changed props >> CompiledSQL*/
+		final ConcurrentHashMap sqls = new ConcurrentHashMap() ;
+		
+		public UpdateSQLCache(Table table){
+			//same order as BusinessDescriptor#getOrderedAllUpdatableProps()
+			String[] props = table.getPropsForUpdate() ;
+			String[] lazyProps = table.getLazyUpdateProps() ;
+			
+			for(int i = 0 ; i < props.length ; i++){
+				propIndexes.put(props[i], new Integer(i)) ;
+			}
+			
+			for(int i = 0 ; i < lazyProps.length ; i++){
+				propIndexes.put(lazyProps[i], new Integer(props.length + i)) ;
+			}
+			
+			//the primary key may be passed in too.
+			String pkProp = table.getPKPropName() ;
+			if(pkProp != null && !propIndexes.containsKey(pkProp)){
+				propIndexes.put(pkProp, new Integer(propIndexes.size())) ;
+			}
+		}
+		
+		/**
+		 * @return null if any property is unknown.
+		 */
+		public BitSet toKey(String[] propsToUpdate){
+			BitSet key = new BitSet(propIndexes.size()) ;
+			
+			for(int i = 0 ; i < propsToUpdate.length ; i++){
+				Integer index = (Integer) propIndexes.get(propsToUpdate[i]) ;
+				
+				if(index == null){
+					return null ;
+				}
+				
+				key.set(index.intValue()) ;
+			}
+			
+			return key ;
+		}
+	}
+	
 	public CompiledSQL buildLoadColumnByPkSQL(POJOBasedObjectMapping mapping, String columnName){
 		Table table = mapping.getTable() ;
 		
@@ -493,6 +596,17 @@ public class CompiledSQLManagerImpl implements CompiledSQLManager {
 		return dynamicSQLService;
 	}
 
+	public int getMaxUpdateSQLsPerMapping() {
+		return maxUpdateSQLsPerMapping;
+	}
+
+	/**
+	 * Max count of the cached dynamic-update sqls for each domain class(or runtime mapping of the custom table). Default is 64.
+	 */
+	public void setMaxUpdateSQLsPerMapping(int maxUpdateSQLsPerMapping) {
+		this.maxUpdateSQLsPerMapping = maxUpdateSQLsPerMapping;
+	}
+
 	public void setDynamicSQLService(DynamicSQLService dynamicSQLService) {
 		this.dynamicSQLService = dynamicSQLService;
 	}
@@ -122,7 +122,7 @@ public class TwoPhaseBlobDataLoader extends PersistListenerAdapter implements Co
 			
 			pstm.executeUpdate() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -16,6 +16,9 @@
  */
 package org.guzz.service.core;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+
 import javax.sql.DataSource;
 
 import org.guzz.Service;
@@ -32,4 +35,11 @@ public interface DatabaseService extends Service{
 	
 	public DataSource getDataSource() ;
 	
+	/**
+	 * Open a new connection.
+	 * <p/>
+	 * Services with many machines route the request to a healthy machine, and fail over to the others on connection failures.
+	 */
+	public Connection getConnection() throws SQLException ;
+	
 }
@@ -17,6 +17,7 @@
 package org.guzz.service.core;
 
 import org.guzz.orm.sql.BindedCompiledSQL;
+import org.guzz.util.stat.SQLMetrics;
 
 /**
  * 
@@ -30,8 +31,16 @@ public interface DebugService {
 	
 	public boolean isDebugMode() ;
 	
+	/**
+	 * print the executed sqls.
+	 */
 	public boolean isLogSQL() ;
 	
+	/**
+	 * record the executed sqls in {@link #getSQLMetrics()}. The logXXX methods must be called if either this or {@link #isLogSQL()} is true.
+	 */
+	public boolean isMetricsEnabled() ;
+	
 	public boolean isLogParams() ;
 	
 	/**
@@ -69,4 +78,28 @@ public interface DebugService {
 	 */
 	public void logBatch(String sql, int repeatTimes, long nanoTime) ;
 	
+	/**
+	 * log the executed update sql.
+	 * 
+	 * @param bsql
+	 * @param affectedRows count of rows affected
+	 * @param nanoTime how long cost?
+	 */
+	public void logUpdate(BindedCompiledSQL bsql, int affectedRows, long nanoTime) ;
+	
+	/**
+	 * log the sql failed to execute.
+	 * 
+	 * @param sql raw sql statement
+	 * @param nanoTime how long cost before failed?
+	 */
+	public void logSQLError(String sql, long nanoTime) ;
+	
+	/**
+	 * Execution statistics of sqls logged.
+	 * 
+	 * @return null if the sql metrics is not enabled.
+	 */
+	public SQLMetrics getSQLMetrics() ;
+	
 }
@@ -16,8 +16,12 @@
  */
 package org.guzz.service.core.impl;
 
+import java.lang.management.ManagementFactory;
 import java.util.Properties;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.guzz.Service;
@@ -28,10 +32,18 @@ import org.guzz.service.ServiceConfig;
 import org.guzz.service.core.DebugService;
 import org.guzz.util.ArrayUtil;
 import org.guzz.util.StringUtil;
+import org.guzz.util.stat.SQLMetrics;
 
 /**
  * 
- * 
+ * Sql execution statistics are collected in {@link SQLMetrics} when sqlMetrics is enabled:
+ * <ul>
+ * <li>sqlMetrics: collect the statistics. Default is false.</li>
+ * <li>sqlMetricsMaxStatements: max count of distinct sqls to track. Default is 1000.</li>
+ * <li>slowSQLThresholdInMillSeconds: sqls costing at least this long are kept in the slow sqls ring. Default is 1000. 0 to disable.</li>
+ * <li>slowSQLRingSize: count of latest slow sqls to keep. Default is 100.</li>
+ * <li>sqlMetricsMBeanName: register the statistics to the platform MBeanServer under this name, eg: org.guzz:type=SQLMetrics,name=myApp. Not registered if not set.</li>
+ * </ul>
  *
  * @author liukaixuan(liukaixuan@gmail.com)
  */
@@ -54,6 +66,10 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	private boolean measureTime = false ;
 	
 	private long onlySlowSQLInNano = 0L ;
+	
+	private SQLMetrics sqlMetrics ;
+	
+	private ObjectName sqlMetricsMBeanName ;
 
 	public boolean isDebugMode() {
 		return isDebugMode;
@@ -62,9 +78,17 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	public boolean isLogSQL() {
 		return printSQL ;
 	}
+	
+	public boolean isMetricsEnabled() {
+		return sqlMetrics != null ;
+	}
 
 	public boolean isMeasureTime() {
-		return measureTime ;
+		return measureTime || sqlMetrics != null ;
+	}
+	
+	public SQLMetrics getSQLMetrics(){
+		return sqlMetrics ;
 	}
 	
 	public boolean isLogParams(){
@@ -83,6 +107,10 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	}
 	
 	public void logSQL(String sql, long nanoTime){
+		if(sqlMetrics != null){
+			sqlMetrics.record(sql, null, nanoTime, -1, false) ;
+		}
+		
 		if(this.ignoreDemonThreadSQL && isDemonThread()){
 			return ;
 		}
@@ -100,6 +128,10 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	}
 
 	public void logBatch(String sql, int repeatTimes, long nanoTime) {
+		if(sqlMetrics != null){
+			sqlMetrics.record(sql, null, nanoTime, repeatTimes, false) ;
+		}
+		
 		if(this.ignoreDemonThreadSQL && isDemonThread()){
 			return ;
 		}
@@ -119,6 +151,10 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	}
 
 	public void logSQL(String sql, Object[] params, long nanoTime) {
+		if(sqlMetrics != null){
+			sqlMetrics.record(sql, null, nanoTime, -1, false) ;
+		}
+		
 		if(this.ignoreDemonThreadSQL && isDemonThread()){
 			return ;
 		}
@@ -142,6 +178,10 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	}
 	
 	public void logSQL(String sql, int[] params, long nanoTime) {
+		if(sqlMetrics != null){
+			sqlMetrics.record(sql, null, nanoTime, -1, false) ;
+		}
+		
 		if(this.ignoreDemonThreadSQL && isDemonThread()){
 			return ;
 		}
@@ -165,29 +205,34 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	}
 	
 	public void logSQL(BindedCompiledSQL bsql, long nanoTime) {
-		if(this.ignoreDemonThreadSQL && isDemonThread()){
-			return ;
+		logSQL(bsql, bsql.getSQLToRun(), nanoTime) ;
+	}
+	
+	public void logUpdate(BindedCompiledSQL bsql, int affectedRows, long nanoTime) {
+		String sql = bsql.getSQLToRun() ;
+		
+		if(sqlMetrics != null){
+			sqlMetrics.record(sql, bsql.getCompiledSQLToRun().getOrderedParams(), nanoTime, affectedRows, false) ;
 		}
 		
-		if(printSQL && nanoTime >= this.onlySlowSQLInNano){
-			StringBuffer sb = new StringBuffer() ;
-			sb.append("sql:[")
-			  .append(bsql.getSQLToRun()) ;
-			
-			if(printSQLParams){
-			  sb.append("], params is:[")
-			  .append(bsql.getBindedParams()) ;
-			}
-			
-			sb.append("], timeCost:[")
-			  .append(nanoTime)
-			  .append("ns]") ;
-			
-			logInfo(sb.toString()) ;
+		printSQL(bsql, sql, nanoTime) ;
+	}
+	
+	public void logSQLError(String sql, long nanoTime) {
+		if(sqlMetrics != null){
+			sqlMetrics.record(sql, null, nanoTime, -1, true) ;
 		}
 	}
 	
 	public void logSQL(BindedCompiledSQL bsql, String sqlStatment, long nanoTime){
+		if(sqlMetrics != null){
+			sqlMetrics.record(sqlStatment, bsql.getCompiledSQLToRun().getOrderedParams(), nanoTime, -1, false) ;
+		}
+		
+		printSQL(bsql, sqlStatment, nanoTime) ;
+	}
+	
+	protected void printSQL(BindedCompiledSQL bsql, String sqlStatment, long nanoTime){
 		if(this.ignoreDemonThreadSQL && isDemonThread()){
 			return ;
 		}
@@ -248,6 +293,18 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 			this.onlySlowSQLInNano = Long.parseLong(ms) * 1000000 ;
 		}
 		
+		unregisterMBean() ;
+		this.sqlMetrics = null ;
+		
+		if("true".equalsIgnoreCase(prop.getProperty("sqlMetrics"))){
+			int maxStatements = StringUtil.toInt(prop.getProperty("sqlMetricsMaxStatements"), 1000) ;
+			long slowThreshold = StringUtil.toInt(prop.getProperty("slowSQLThresholdInMillSeconds"), 1000) * 1000000L ;
+			int ringSize = StringUtil.toInt(prop.getProperty("slowSQLRingSize"), 100) ;
+			
+			this.sqlMetrics = new SQLMetrics(maxStatements, slowThreshold, ringSize) ;
+			registerMBean(prop.getProperty("sqlMetricsMBeanName")) ;
+		}
+		
 		printGuzzDebugInfo() ;
 		
 		return true ;
@@ -258,9 +315,44 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 	}
 
 	public void shutdown() {
+		unregisterMBean() ;
 		resetToDefaultConfig() ;
 	}
 	
+	protected void registerMBean(String name){
+		if(StringUtil.isEmpty(name)){
+			return ;
+		}
+		
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer() ;
+			ObjectName on = new ObjectName(name) ;
+			
+			if(server.isRegistered(on)){
+				server.unregisterMBean(on) ;
+			}
+			
+			server.registerMBean(this.sqlMetrics, on) ;
+			this.sqlMetricsMBeanName = on ;
+		} catch (Exception e) {
+			log.error("failed to register sql metrics MBean:" + name, e) ;
+		}
+	}
+	
+	protected void unregisterMBean(){
+		if(this.sqlMetricsMBeanName == null){
+			return ;
+		}
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.sqlMetricsMBeanName) ;
+		} catch (Exception e) {
+			log.warn("failed to unregister sql metrics MBean:" + this.sqlMetricsMBeanName, e) ;
+		}
+		
+		this.sqlMetricsMBeanName = null ;
+	}
+	
 	protected void printGuzzDebugInfo(){
 		if(log.isInfoEnabled()){
 			String result = "guzz debug info:" ;
@@ -272,6 +364,7 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 			result += ",printSQLParams:" + this.printSQLParams ;	
 			result += ",measureTime:" + this.measureTime ;
 			result += ",onlySlowSQLInNano:" + this.onlySlowSQLInNano ;
+			result += ",sqlMetrics:" + (this.sqlMetrics != null) ;
 			
 			log.info(result) ;
 		}
@@ -285,6 +378,7 @@ public class DebugServiceImpl extends AbstractService implements DebugService, S
 		printSQLParams = false ;
 		measureTime = false ;
 		onlySlowSQLInNano = 0L ;
+		sqlMetrics = null ;
 	}
 	
 	protected void logInfo(String msg){
@@ -20,6 +20,7 @@ import org.guzz.Service;
 import org.guzz.orm.sql.BindedCompiledSQL;
 import org.guzz.service.ProxyService;
 import org.guzz.service.core.DebugService;
+import org.guzz.util.stat.SQLMetrics;
 
 /**
  * 
@@ -47,6 +48,10 @@ public class DebugServiceProxy extends ProxyService implements DebugService {
 		return debugServiceImpl.isMeasureTime() ;
 	}
 
+	public boolean isMetricsEnabled() {
+		return debugServiceImpl.isMetricsEnabled() ;
+	}
+
 	public boolean isLogParams() {
 		return debugServiceImpl.isLogParams() ;
 	}
@@ -75,6 +80,18 @@ public class DebugServiceProxy extends ProxyService implements DebugService {
 		debugServiceImpl.logBatch(sql, repeatTimes, nanoTime) ;
 	}
 
+	public void logUpdate(BindedCompiledSQL bsql, int affectedRows, long nanoTime) {
+		debugServiceImpl.logUpdate(bsql, affectedRows, nanoTime) ;
+	}
+
+	public void logSQLError(String sql, long nanoTime) {
+		debugServiceImpl.logSQLError(sql, nanoTime) ;
+	}
+
+	public SQLMetrics getSQLMetrics() {
+		return debugServiceImpl.getSQLMetrics() ;
+	}
+
 	public void onErrorProcess(String msg, Exception e) {
 		debugServiceImpl.onErrorProcess(msg, e) ;
 	}
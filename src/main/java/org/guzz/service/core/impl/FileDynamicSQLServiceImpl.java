@@ -23,6 +23,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.xerces.impl.Constants;
@@ -35,6 +36,7 @@ import org.guzz.orm.sql.CompiledSQL;
 import org.guzz.service.ServiceConfig;
 import org.guzz.util.CloseUtil;
 import org.guzz.util.StringUtil;
+import org.guzz.util.thread.DemonQueuedThread;
 
 /**
  * 
@@ -62,6 +64,17 @@ import org.guzz.util.StringUtil;
  * 
  * Check &ltsqlMap&gt in guzz.xml for details.
  * <br>
+ * Configurations:
+ * <ul>
+ * <li>folder: the folder of the sql files.</li>
+ * <li>encoding: encoding of the sql files. Default is UTF-8.</li>
+ * <li>overrideSqlInGuzzXML: sqls in the folder override the sqls with the same id in guzz.xml. Default is false.</li>
+ * <li>useCache: cache the compiled sqls. Default is true.</li>
+ * <li>reloadInterval: milliseconds between two scans of the cached sql files. Default is 0, check the file on every query.
+ * <br>If greater than 0, a demon thread scans the files and swaps the changed sqls in, and queries read the cache only.</li>
+ * <li>reloadDebounce: milliseconds a changed file must stay unmodified before it is reloaded, 
+ * for editors writing files in several steps. Default is 500.</li>
+ * </ul>
  * 
  * @author liu kaixuan(liukaixuan@gmail.com)
  */
@@ -78,12 +91,35 @@ public class FileDynamicSQLServiceImpl extends AbstractDynamicSQLService {
 	private boolean useCache ;
 	
 	protected Map cachedCS = new HashMap() ;
+	
+	private int reloadInterval ;
+	
+	private int reloadDebounce = 500 ;
+	
+	/**
+	 * id to CachedCompiledSQL in the reload mode. Never modified after published, changes are swapped in by a new map.
+	 * <br>Files not existing are cached with null CompiledSQL and 0 mark.
+	 */
+	private volatile Map snapshot = new HashMap() ;
+	
+	private final Object swapLock = new Object() ;
+	
+	private ReloadThread reloadThread ;
 
 	public CompiledSQL getSql(String id) {
 		if(!useCache){
 			return loadCompiledSQLById(id) ;
 		}
 		
+		if(reloadInterval > 0){
+			CachedCompiledSQL ccs = (CachedCompiledSQL) this.snapshot.get(id) ;
+			if(ccs != null){
+				return ccs.getCompiledSQL() ;
+			}
+			
+			return loadToSnapshot(id) ;
+		}
+		
 		CachedCompiledSQL ccs = getFromCache(id) ;
 		if(ccs == null){
 			CompiledSQL cs = loadCompiledSQLById(id) ;
@@ -135,6 +171,93 @@ public class FileDynamicSQLServiceImpl extends AbstractDynamicSQLService {
 		return timeNow != timeBefore ;
 	}
 	
+	/**
+	 * Load the sql not in the snapshot, and swap in a new snapshot with it.
+	 */
+	protected CompiledSQL loadToSnapshot(String id){
+		synchronized(swapLock){
+			CachedCompiledSQL ccs = (CachedCompiledSQL) this.snapshot.get(id) ;
+			
+			if(ccs == null){
+				ccs = loadCachedCompiledSQL(id, null) ;
+				
+				Map newSnapshot = new HashMap(this.snapshot) ;
+				newSnapshot.put(id, ccs) ;
+				this.snapshot = newSnapshot ;
+			}
+			
+			return ccs.getCompiledSQL() ;
+		}
+	}
+	
+	/**
+	 * Load the sql file as a new CachedCompiledSQL. 
+	 * 
+	 * @param old the sql loaded before. It is kept if the changed file fails to load.
+	 */
+	protected CachedCompiledSQL loadCachedCompiledSQL(String id, CachedCompiledSQL old){
+		File f = getSqlFile(id) ;
+		long time = f.lastModified() ;
+		CompiledSQL cs = null ;
+		
+		if(time != 0L){
+			cs = loadCompiledSQLById(id) ;
+			
+			if(cs == null && old != null){
+				cs = old.getCompiledSQL() ;
+			}
+		}
+		
+		CachedCompiledSQL ccs = new CachedCompiledSQL(id, cs) ;
+		ccs.setMark(new Long(time)) ;
+		
+		return ccs ;
+	}
+	
+	/**
+	 * Check the sql files in the snapshot, and swap in a new snapshot if any file is changed, created or deleted.
+	 */
+	protected void reloadChangedFiles(){
+		Map current = this.snapshot ;
+		Map changed = null ;
+		long now = System.currentTimeMillis() ;
+		
+		Iterator i = current.values().iterator() ;
+		while(i.hasNext()){
+			CachedCompiledSQL ccs = (CachedCompiledSQL) i.next() ;
+			long time = getSqlFile(ccs.getKey()).lastModified() ;
+			
+			if(time == ((Long) ccs.getMark()).longValue()){
+				continue ;
+			}
+			
+			//still being written? check it in the next round.
+			if(time != 0L && now - time < reloadDebounce && time <= now){
+				continue ;
+			}
+			
+			if(changed == null){
+				changed = new HashMap() ;
+			}
+			
+			changed.put(ccs.getKey(), loadCachedCompiledSQL(ccs.getKey(), ccs)) ;
+			
+			if(log.isInfoEnabled()){
+				log.info("dynamic sql reloaded. id:" + ccs.getKey()) ;
+			}
+		}
+		
+		if(changed == null){
+			return ;
+		}
+		
+		synchronized(swapLock){
+			Map newSnapshot = new HashMap(this.snapshot) ;
+			newSnapshot.putAll(changed) ;
+			this.snapshot = newSnapshot ;
+		}
+	}
+	
 	protected CompiledSQL loadCompiledSQLById(String id){
 		File file = getSqlFile(id) ;
 		FileInputStream fis = null ;
@@ -208,6 +331,8 @@ public class FileDynamicSQLServiceImpl extends AbstractDynamicSQLService {
 		this.encoding = sc.getProps().getProperty("encoding", "UTF-8") ;
 		this.overrideSqlInGuzzXML = StringUtil.toBoolean(sc.getProps().getProperty("overrideSqlInGuzzXML"), false) ;
 		this.useCache = StringUtil.toBoolean(sc.getProps().getProperty("useCache"), true) ;
+		this.reloadInterval = StringUtil.toInt(sc.getProps().getProperty("reloadInterval"), 0) ;
+		this.reloadDebounce = StringUtil.toInt(sc.getProps().getProperty("reloadDebounce"), this.reloadDebounce) ;
 		
 		return true ;
 	}
@@ -218,12 +343,37 @@ public class FileDynamicSQLServiceImpl extends AbstractDynamicSQLService {
 
 	public void shutdown() {
 		available = false ;
+		
+		if(reloadThread != null){
+			reloadThread.shutdown() ;
+			reloadThread = null ;
+		}
 	}
 
 	public void startup() {
+		if(useCache && reloadInterval > 0 && reloadThread == null){
+			reloadThread = new ReloadThread() ;
+			reloadThread.setMillSecondsToSleep(reloadInterval) ;
+			reloadThread.start() ;
+		}
+		
 		available = true ;
 	}
 	
+	class ReloadThread extends DemonQueuedThread{
+		
+		public ReloadThread(){
+			super("fileDynamicSQLReloadThread", 1) ;
+		}
+
+		protected boolean doWithTheQueue() throws Exception {
+			reloadChangedFiles() ;
+			
+			//sleep until the next round.
+			return false ;
+		}
+	}
+	
 	public static class CachedCompiledSQL {
 		private CompiledSQL compiledSQL ;
 		private String key ;
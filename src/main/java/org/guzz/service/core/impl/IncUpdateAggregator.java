@@ -0,0 +1,305 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 
+ * Merge the count increments of the same record in memory before writing them to the database.
+ * <p/>
+ * Increments are recorded into the current epoch: a ConcurrentHashMap of striped counters keyed by (dbGroup, table, column, pk column, pk value).
+ * The flush thread swaps in a new epoch atomically, waits until the threads still writing into the old epoch finish, and then drains it.
+ * So no increment is lost or counted twice.
+ * <p/>
+ * Hot paths avoid allocation: the key is looked up with a thread local probe and only copied on the first increment of a record in an epoch,
+ * and a counter only expands into striped cells when threads really contend on it.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class IncUpdateAggregator {
+	
+	/**int slots between two used slots to avoid false sharing.*/
+	private static final int PADDING = 16 ;
+	
+	private final int stripes ;
+	
+	private final AtomicReference currentEpoch ;
+	
+	private final ThreadLocal threadContexts = new ThreadLocal(){
+		protected Object initialValue() {
+			return new ThreadContext() ;
+		}
+	} ;
+	
+	private static final AtomicLong threadSeq = new AtomicLong() ;
+	
+	/**
+	 * @param stripes concurrent level. rounded up to the power of 2.
+	 */
+	public IncUpdateAggregator(int stripes){
+		int size = 1 ;
+		while(size < stripes){
+			size <<= 1 ;
+		}
+		
+		this.stripes = size ;
+		this.currentEpoch = new AtomicReference(new Epoch(size)) ;
+	}
+	
+	public IncUpdateAggregator(){
+		this(Runtime.getRuntime().availableProcessors() * 2) ;
+	}
+	
+	public void add(String dbGroup, String tableName, String columnToUpdate, String pkColName, Serializable pkValue, int countToInc){
+		ThreadContext ctx = (ThreadContext) threadContexts.get() ;
+		CountKey probe = ctx.probe ;
+		probe.set(dbGroup, tableName, columnToUpdate, pkColName, pkValue) ;
+		
+		try{
+			while(true){
+				Epoch epoch = (Epoch) currentEpoch.get() ;
+				epoch.enter(ctx.stripe) ;
+				
+				try{
+					//swapped by the flush thread before we entered, use the new one.
+					if(currentEpoch.get() != epoch) continue ;
+					
+					StripedCounter counter = (StripedCounter) epoch.counters.get(probe) ;
+					
+					if(counter == null){
+						counter = new StripedCounter(stripes) ;
+						StripedCounter old = (StripedCounter) epoch.counters.putIfAbsent(probe.copy(), counter) ;
+						
+						if(old != null){
+							counter = old ;
+						}
+					}
+					
+					counter.add(ctx.stripe, countToInc) ;
+					
+					return ;
+				}finally{
+					epoch.exit(ctx.stripe) ;
+				}
+			}
+		}finally{
+			//don't hold the references.
+			probe.set(null, null, null, null, null) ;
+		}
+	}
+	
+	/**
+	 * Start a new epoch for the coming increments, and return the merged increments of the old epoch.
+	 * 
+	 * @return List of {@link IncUpdateBusiness} whose countToInc is not 0.
+	 */
+	public List swapAndDrain(){
+		Epoch old = (Epoch) currentEpoch.getAndSet(new Epoch(stripes)) ;
+		
+		//wait for threads still adding to the old epoch.
+		old.awaitQuiescence() ;
+		
+		LinkedList results = new LinkedList() ;
+		Iterator i = old.counters.entrySet().iterator() ;
+		
+		while(i.hasNext()){
+			Map.Entry e = (Map.Entry) i.next() ;
+			CountKey key = (CountKey) e.getKey() ;
+			long count = ((StripedCounter) e.getValue()).sum() ;
+			
+			//countToInc is an int; split larger sums into several updates instead of truncating.
+			while(count != 0){
+				int part = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, count)) ;
+				count -= part ;
+				
+				IncUpdateBusiness ut = new IncUpdateBusiness(key.dbGroup) ;
+				ut.setTableName(key.tableName) ;
+				ut.setColumnToUpdate(key.columnToUpdate) ;
+				ut.setPkColunName(key.pkColName) ;
+				ut.setPkValue(key.pkValue.toString()) ;
+				ut.setCountToInc(part) ;
+				
+				results.addLast(ut) ;
+			}
+		}
+		
+		return results ;
+	}
+	
+	/**
+	 * Is there any increments in the current epoch?
+	 */
+	public boolean isEmpty(){
+		return ((Epoch) currentEpoch.get()).counters.isEmpty() ;
+	}
+	
+	static class Epoch{
+		final ConcurrentHashMap counters = new ConcurrentHashMap(2048) ;
+		
+		/**count of threads adding to this epoch, striped.*/
+		private final AtomicIntegerArray writers ;
+		
+		private final int stripes ;
+		
+		public Epoch(int stripes){
+			this.stripes = stripes ;
+			this.writers = new AtomicIntegerArray(stripes * PADDING) ;
+		}
+		
+		public void enter(int stripe){
+			writers.incrementAndGet(stripe * PADDING) ;
+		}
+		
+		public void exit(int stripe){
+			writers.decrementAndGet(stripe * PADDING) ;
+		}
+		
+		public void awaitQuiescence(){
+			for(int i = 0 ; i < stripes ; i++){
+				while(writers.get(i * PADDING) != 0){
+					Thread.yield() ;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * LongAdder like counter. Starts with a single base value, and spreads to striped cells on contention.
+	 */
+	static class StripedCounter{
+		private final AtomicLong base = new AtomicLong() ;
+		
+		private volatile AtomicLongArray cells ;
+		
+		private final int stripes ;
+		
+		public StripedCounter(int stripes){
+			this.stripes = stripes ;
+		}
+		
+		public void add(int stripe, long value){
+			AtomicLongArray cs = this.cells ;
+			
+			if(cs == null){
+				long v = base.get() ;
+				if(base.compareAndSet(v, v + value)){
+					return ;
+				}
+				
+				//contended
+				cs = expand() ;
+			}
+			
+			cs.addAndGet(stripe * (PADDING / 2), value) ;
+		}
+		
+		private synchronized AtomicLongArray expand(){
+			if(this.cells == null){
+				this.cells = new AtomicLongArray(stripes * (PADDING / 2)) ;
+			}
+			
+			return this.cells ;
+		}
+		
+		public long sum(){
+			long sum = base.get() ;
+			AtomicLongArray cs = this.cells ;
+			
+			if(cs != null){
+				for(int i = 0 ; i < stripes ; i++){
+					sum += cs.get(i * (PADDING / 2)) ;
+				}
+			}
+			
+			return sum ;
+		}
+	}
+	
+	class ThreadContext{
+		final CountKey probe = new CountKey() ;
+		
+		final int stripe = (int) (threadSeq.getAndIncrement() & (stripes - 1)) ;
+	}
+	
+	static class CountKey{
+		String dbGroup ;
+		String tableName ;
+		String columnToUpdate ;
+		String pkColName ;
+		Serializable pkValue ;
+		int hash ;
+		
+		void set(String dbGroup, String tableName, String columnToUpdate, String pkColName, Serializable pkValue){
+			this.dbGroup = dbGroup ;
+			this.tableName = tableName ;
+			this.columnToUpdate = columnToUpdate ;
+			this.pkColName = pkColName ;
+			this.pkValue = pkValue ;
+			
+			int h = pkValue == null ? 0 : pkValue.hashCode() ;
+			h = 31 * h + (columnToUpdate == null ? 0 : columnToUpdate.hashCode()) ;
+			h = 31 * h + (tableName == null ? 0 : tableName.hashCode()) ;
+			h = 31 * h + (dbGroup == null ? 0 : dbGroup.hashCode()) ;
+			this.hash = h ;
+		}
+		
+		CountKey copy(){
+			CountKey key = new CountKey() ;
+			key.dbGroup = dbGroup ;
+			key.tableName = tableName ;
+			key.columnToUpdate = columnToUpdate ;
+			key.pkColName = pkColName ;
+			key.pkValue = pkValue ;
+			key.hash = hash ;
+			
+			return key ;
+		}
+
+		public int hashCode() {
+			return hash ;
+		}
+
+		public boolean equals(Object obj) {
+			if(this == obj) return true ;
+			if(!(obj instanceof CountKey)) return false ;
+			
+			CountKey k = (CountKey) obj ;
+			
+			return hash == k.hash 
+					&& eq(pkValue, k.pkValue) 
+					&& eq(columnToUpdate, k.columnToUpdate) 
+					&& eq(tableName, k.tableName) 
+					&& eq(dbGroup, k.dbGroup) 
+					&& eq(pkColName, k.pkColName) ;
+		}
+		
+		private static boolean eq(Object a, Object b){
+			return a == null ? b == null : a.equals(b) ;
+		}
+	}
+
+}
@@ -16,8 +16,18 @@
  */
 package org.guzz.service.core.impl;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
@@ -30,21 +40,47 @@ import org.guzz.service.AbstractService;
 import org.guzz.service.ServiceConfig;
 import org.guzz.service.core.DatabaseService;
 import org.guzz.util.ArrayUtil;
+import org.guzz.util.CloseUtil;
+import org.guzz.util.StringUtil;
 import org.guzz.util.lb.LBRound;
-import org.guzz.util.lb.RoundCard;
 
 /**
  * 
  * 从数据库服务。从数据库服务器中可能存在多个从数据库，{@link MultiMachinesDatabaseServiceImpl} 负责管理按照负载进行调度使用。
+ * <p/>
+ * 连接按照负载因子轮询分配（lb.policy=round，默认），或者分配给活动连接数/负载因子最小的机器（lb.policy=leastActive）。
+ * 一台机器连续lb.failThreshold（默认2）次获取连接失败后被摘除，请求自动转到其他机器；后台线程每隔lb.probeInterval毫秒（默认5000，0表示不检测）
+ * 检测所有机器，检测成功的机器重新加入轮询。检测时可以通过lb.probeSQL指定执行的sql语句，默认只获取连接。
+ * 没有健康的机器可用时，请求会尝试被摘除的机器，连接成功的机器重新加入轮询；因此lb.probeInterval=0时，被摘除的机器只在其他机器都不可用时才会被重新启用。
+ * <p/>
+ * lb.*参数可以配置在任意一台机器的配置中，对整个服务生效。
  *
  * @author liukaixuan(liukaixuan@gmail.com)
  */
 public class MultiMachinesDatabaseServiceImpl extends AbstractService implements DatabaseService {
 	private static transient final Log log = LogFactory.getLog(MultiMachinesDatabaseServiceImpl.class) ;
+	
+	public static final int POLICY_ROUND = 1 ;
+	
+	public static final int POLICY_LEAST_ACTIVE = 2 ;
 		
 	DataSourceProvider[] uniqueProviders = null ;
 	
-	private RoundCard card ;	
+	private volatile Node[] nodes = new Node[0] ;
+	
+	private volatile LBRound card ;
+	
+	private volatile int policy = POLICY_ROUND ;
+	
+	private volatile int failThreshold = 2 ;
+	
+	private volatile long probeInterval = 5000 ;
+	
+	private volatile String probeSQL ;
+	
+	private final AtomicInteger leastActiveStart = new AtomicInteger() ;
+	
+	private HealthProbeThread probeThread ;
 	
 	/**
 	 * @link ServiceConfig.uniqueIdentifer vs DataSourceProvicer
@@ -56,11 +92,290 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 	}
 	
 	public DataSource getDataSource() {
-		DataSourceProvider p = (DataSourceProvider) card.getCard() ;
-		if(p == null){
+		Node n = selectNode() ;
+		
+		if(n == null){
+			//all machines are ejected, return any of them rather than nothing.
+			LBRound card = this.card ;
+			if(card == null){
+				return null ;
+			}
+			
+			n = (Node) card.getCard() ;
+		}
+		
+		return n.provider.getDataSource() ;
+	}
+	
+	public Connection getConnection() throws SQLException {
+		Node[] nodes = this.nodes ;
+		Node first = selectNode() ;
+		
+		//machines ejected before this request.
+		boolean[] ejected = new boolean[nodes.length] ;
+		for(int i = 0 ; i < nodes.length ; i++){
+			ejected[i] = nodes[i].ejected ;
+		}
+		
+		SQLException lastError = null ;
+		
+		if(first != null){
+			try{
+				return openConnection(first) ;
+			}catch(SQLException e){
+				lastError = e ;
+			}
+			
+			//fail over to other healthy machines.
+			for(int i = 0 ; i < nodes.length ; i++){
+				Node n = nodes[i] ;
+				
+				if(n == first || ejected[i]) continue ;
+				
+				try{
+					return openConnection(n) ;
+				}catch(SQLException e){
+					lastError = e ;
+				}
+			}
+		}
+		
+		//no healthy machine is left. try the ejected ones, or they never come back with the probing disabled.
+		for(int i = 0 ; i < nodes.length ; i++){
+			Node n = nodes[i] ;
+			
+			if(!ejected[i]) continue ;
+			
+			try{
+				Connection conn = openConnection(n) ;
+				readmit(n) ;
+				
+				return conn ;
+			}catch(SQLException e){
+				lastError = e ;
+			}
+		}
+		
+		if(lastError == null){
+			throw new SQLException("no database is available. service:" + this.getServiceInfo().getServiceName()) ;
+		}
+		
+		throw lastError ;
+	}
+	
+	protected Connection openConnection(Node n) throws SQLException{
+		Connection conn = null ;
+		
+		try{
+			conn = n.provider.getDataSource().getConnection() ;
+		}catch(SQLException e){
+			CloseUtil.close(conn) ;
+			onFailure(n, e) ;
+			
+			throw e ;
+		}
+		
+		n.onSuccess() ;
+		
+		if(this.policy == POLICY_LEAST_ACTIVE){
+			n.active.incrementAndGet() ;
+			
+			return (Connection) Proxy.newProxyInstance(
+					conn.getClass().getClassLoader(), new Class[]{Connection.class},
+					new ActiveCountingInvocationHandler(conn, n)) ;
+		}
+		
+		return conn ;
+	}
+	
+	protected void onFailure(Node n, Exception e){
+		if(n.onFailure(this.failThreshold)){
+			log.error("database:[" + n.name + "] is ejected from service:[" + this.getServiceInfo().getServiceName() + "] after " + this.failThreshold + " failures.", e) ;
+		}else if(log.isWarnEnabled()){
+			log.warn("failed to open connection on database:[" + n.name + "]", e) ;
+		}
+	}
+	
+	/**
+	 * Pick a healthy machine.
+	 * 
+	 * @return null if no machine is healthy.
+	 */
+	protected Node selectNode(){
+		LBRound card = this.card ;
+		if(card == null){
+			return null ;
+		}
+		
+		if(this.policy == POLICY_LEAST_ACTIVE){
+			return selectLeastActiveNode() ;
+		}
+		
+		int rounds = card.getRoundSize() ;
+		
+		for(int i = 0 ; i < rounds ; i++){
+			Node n = (Node) card.getCard() ;
+			
+			if(!n.ejected){
+				return n ;
+			}
+		}
+		
+		return null ;
+	}
+	
+	protected Node selectLeastActiveNode(){
+		Node[] nodes = this.nodes ;
+		int size = nodes.length ;
+		
+		if(size == 0){
 			return null ;
 		}
-		return p.getDataSource() ;
+		
+		//rotate the start position to spread requests among machines with the same load.
+		int start = (this.leastActiveStart.getAndIncrement() & Integer.MAX_VALUE) % size ;
+		Node best = null ;
+		
+		for(int i = 0 ; i < size ; i++){
+			Node n = nodes[(start + i) % size] ;
+			
+			if(n.ejected) continue ;
+			
+			//compare active/weight without division
+			if(best == null || (long) n.active.get() * best.weight < (long) best.active.get() * n.weight){
+				best = n ;
+			}
+		}
+		
+		return best ;
+	}
+	
+	/**
+	 * Check all machines once. Ejected machines are re-admitted if the check passed.
+	 */
+	public void probe(){
+		Node[] nodes = this.nodes ;
+		String probeSQL = this.probeSQL ;
+		
+		for(int i = 0 ; i < nodes.length ; i++){
+			Node n = nodes[i] ;
+			Connection conn = null ;
+			Statement st = null ;
+			
+			try{
+				conn = n.provider.getDataSource().getConnection() ;
+				
+				if(probeSQL != null){
+					st = conn.createStatement() ;
+					st.execute(probeSQL) ;
+				}
+				
+				readmit(n) ;
+			}catch(Exception e){
+				onFailure(n, e) ;
+			}finally{
+				CloseUtil.close(st) ;
+				CloseUtil.close(conn) ;
+			}
+		}
+	}
+	
+	protected void readmit(Node n){
+		if(n.ejected){
+			log.warn("database:[" + n.name + "] is re-admitted to service:[" + this.getServiceInfo().getServiceName() + "].") ;
+		}
+		
+		n.readmit() ;
+	}
+	
+	/**
+	 * The count of healthy machines.
+	 */
+	public int getHealthyCount(){
+		Node[] nodes = this.nodes ;
+		int count = 0 ;
+		
+		for(int i = 0 ; i < nodes.length ; i++){
+			if(!nodes[i].ejected){
+				count++ ;
+			}
+		}
+		
+		return count ;
+	}
+	
+	/**
+	 * Names(uniqueIdentifers of the configurations) of all machines.
+	 */
+	public String[] getMachineNames(){
+		Node[] nodes = this.nodes ;
+		String[] names = new String[nodes.length] ;
+		
+		for(int i = 0 ; i < nodes.length ; i++){
+			names[i] = nodes[i].name ;
+		}
+		
+		return names ;
+	}
+	
+	/**
+	 * The DataSource of the given machine, without load balancing.
+	 * 
+	 * @return null if the machine is not found.
+	 */
+	public DataSource getMachineDataSource(String name){
+		Node n = findNode(name) ;
+		
+		return n == null ? null : n.provider.getDataSource() ;
+	}
+	
+	/**
+	 * Is the machine taking requests, i.e. not ejected?
+	 */
+	public boolean isMachineHealthy(String name){
+		Node n = findNode(name) ;
+		
+		return n != null && !n.ejected ;
+	}
+	
+	/**
+	 * Record the replication lag of the given machine measured just now. -1 to mark it as unknown.
+	 */
+	public void updateMachineLatency(String name, long lagInMillis){
+		Node n = findNode(name) ;
+		
+		if(n != null){
+			n.latencyMeasuredTime = System.currentTimeMillis() ;
+			n.latency = lagInMillis ;
+		}
+	}
+	
+	/**
+	 * How stale the given machine may be in milliseconds, or -1 if unknown. Same as {@link org.guzz.connection.PhysicsDBGroup#getLatency()}, but for one machine.
+	 */
+	public long getMachineLatency(String name){
+		Node n = findNode(name) ;
+		
+		if(n == null || n.latency < 0){
+			return -1 ;
+		}
+		
+		long staleness = n.latency + (System.currentTimeMillis() - n.latencyMeasuredTime) ;
+		
+		//overflow
+		return staleness < 0 ? Long.MAX_VALUE : staleness ;
+	}
+	
+	protected Node findNode(String name){
+		Node[] nodes = this.nodes ;
+		
+		for(int i = 0 ; i < nodes.length ; i++){
+			if(nodes[i].name.equals(name)){
+				return nodes[i] ;
+			}
+		}
+		
+		return null ;
 	}
 	
 	public synchronized boolean configure(ServiceConfig[] scs) {
@@ -72,6 +387,7 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 			}
 			
 			DataSourceProvider[] uniqueProviders = new DataSourceProvider[scs.length] ;
+			Node[] nodes = new Node[scs.length] ;
 			
 			LBRound lr = new LBRound() ;
 			
@@ -88,6 +404,9 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 					sc.setMaxLoad(maxLoad) ;
 				}
 				
+				//负载均衡参数不传递给连接池
+				configureLB(sc.getProps()) ;
+				
 				DataSourceProvider oldProvider = (DataSourceProvider) configProviders.get(sc.getUniqueIdentifer()) ;
 				
 				if(oldProvider == null){
@@ -99,11 +418,13 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 				uniqueProviders[i] = oldProvider ;
 				newConfigProviders.put(sc.getUniqueIdentifer(), oldProvider) ;
 				
-				lr.addToPool(oldProvider, maxLoad) ;
+				nodes[i] = new Node(sc.getUniqueIdentifer(), oldProvider, maxLoad) ;
+				lr.addToPool(nodes[i], maxLoad) ;
 			}
 			
 			lr.applyNewPool() ;
 			//更新到当前使用中
+			this.nodes = nodes ;
 			this.card = lr ;
 			
 			DataSourceProvider[] oldProviders = this.uniqueProviders ;			
@@ -118,7 +439,7 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 				for(int i = 0 ; i < oldProviders.length ; i++){
 					DataSourceProvider oldDsp = oldProviders[i] ;
 					
-					if(ArrayUtil.inArray(this.uniqueProviders, oldDsp)){ //新的连接中已经不再使用
+					if(!ArrayUtil.inArray(this.uniqueProviders, oldDsp)){ //新的连接中已经不再使用
 						try{
 							oldDsp.shutdown() ;
 						}catch(Exception e){
@@ -135,7 +456,42 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 		return true ;
 	}
 	
+	protected void configureLB(Properties props){
+		String policy = (String) props.remove("lb.policy") ;
+		String failThreshold = (String) props.remove("lb.failThreshold") ;
+		String probeInterval = (String) props.remove("lb.probeInterval") ;
+		String probeSQL = (String) props.remove("lb.probeSQL") ;
+		
+		if(StringUtil.notEmpty(policy)){
+			if("leastActive".equalsIgnoreCase(policy)){
+				this.policy = POLICY_LEAST_ACTIVE ;
+			}else if("round".equalsIgnoreCase(policy)){
+				this.policy = POLICY_ROUND ;
+			}else{
+				log.warn("unknown lb.policy:[" + policy + "], use round instead.") ;
+				this.policy = POLICY_ROUND ;
+			}
+		}
+		
+		if(StringUtil.notEmpty(failThreshold)){
+			this.failThreshold = Math.max(1, StringUtil.toInt(failThreshold, 2)) ;
+		}
+		
+		if(StringUtil.notEmpty(probeInterval)){
+			this.probeInterval = StringUtil.toInt(probeInterval, 5000) ;
+		}
+		
+		if(StringUtil.notEmpty(probeSQL)){
+			this.probeSQL = probeSQL ;
+		}
+	}
+	
 	public synchronized void shutdown() {
+		if(this.probeThread != null){
+			this.probeThread.shutdown() ;
+			this.probeThread = null ;
+		}
+		
 		if(this.uniqueProviders != null){
 			if(log.isInfoEnabled()){
 				log.info("shutting down service:[" + this.getServiceInfo().getServiceName() + "->" + this.configProviders.keySet() + "]...") ;
@@ -151,8 +507,148 @@ public class MultiMachinesDatabaseServiceImpl extends AbstractService implements
 		}
 	}
 
-	public void startup() {
+	public synchronized void startup() {
+		if(this.probeInterval > 0 && this.probeThread == null){
+			this.probeThread = new HealthProbeThread("guzz-db-probe-" + this.getServiceInfo().getServiceName()) ;
+			this.probeThread.start() ;
+		}
+	}
+	
+	public int getPolicy() {
+		return policy;
+	}
+
+	public int getFailThreshold() {
+		return failThreshold;
+	}
+
+	public long getProbeInterval() {
+		return probeInterval;
+	}
+
+	static class Node{
+		final String name ;
+		
+		final DataSourceProvider provider ;
+		
+		final int weight ;
+		
+		/**consecutive failures*/
+		final AtomicInteger failures = new AtomicInteger() ;
+		
+		/**connections in use. Only counted in the leastActive policy.*/
+		final AtomicInteger active = new AtomicInteger() ;
+		
+		volatile boolean ejected ;
+		
+		/**replication lag measured in milliseconds. -1 means unknown.*/
+		volatile long latency = -1 ;
+		
+		volatile long latencyMeasuredTime ;
+		
+		Node(String name, DataSourceProvider provider, int weight){
+			this.name = name ;
+			this.provider = provider ;
+			this.weight = weight ;
+		}
+		
+		void onSuccess(){
+			//avoid writing the shared counter in the common case.
+			if(failures.get() != 0){
+				failures.set(0) ;
+			}
+		}
+		
+		/**
+		 * @return true if the node is ejected by this failure.
+		 */
+		boolean onFailure(int threshold){
+			if(failures.incrementAndGet() >= threshold && !ejected){
+				ejected = true ;
+				
+				return true ;
+			}
+			
+			return false ;
+		}
+		
+		void readmit(){
+			failures.set(0) ;
+			ejected = false ;
+		}
+	}
+	
+	/**
+	 * Decrease the active count of the machine when the connection is closed.
+	 */
+	static class ActiveCountingInvocationHandler implements InvocationHandler {
+		
+		private final Connection target ;
+		
+		private final Node node ;
+		
+		private final AtomicBoolean closed = new AtomicBoolean() ;
+		
+		public ActiveCountingInvocationHandler(Connection target, Node node) {
+			this.target = target ;
+			this.node = node ;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName() ;
+			
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]) ;
+			}else if (name.equals("hashCode")) {
+				return new Integer(System.identityHashCode(proxy)) ;
+			}else if (name.equals("close")) {
+				if(closed.compareAndSet(false, true)){
+					node.active.decrementAndGet() ;
+				}
+			}
+			
+			try {
+				return method.invoke(this.target, args) ;
+			}catch (InvocationTargetException ex) {
+				throw ex.getTargetException() ;
+			}
+		}
+	}
+	
+	class HealthProbeThread extends Thread{
 		
+		private volatile boolean keepRunning = true ;
+		
+		public HealthProbeThread(String name){
+			super(name) ;
+			this.setDaemon(true) ;
+		}
+		
+		public void run(){
+			while(keepRunning){
+				try {
+					long interval = probeInterval ;
+					
+					if(interval <= 0){
+						//disabled by re-configuration.
+						break ;
+					}
+					
+					sleep(interval) ;
+					
+					probe() ;
+				} catch (InterruptedException e) {
+					//shutdown
+				} catch (Throwable e) {
+					log.error("health probe failed.", e) ;
+				}
+			}
+		}
+		
+		public void shutdown(){
+			this.keepRunning = false ;
+			this.interrupt() ;
+		}
 	}
 
 }
@@ -5,10 +5,14 @@ package org.guzz.service.core.impl;
 
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.CallbackFilter;
 import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
@@ -25,6 +29,10 @@ import org.guzz.util.StringUtil;
 /**
  * 
  * A general purpose RPC client service implementation based on Cglib Proxy. 
+ * <p>
+ * Each method of the proxy is bound to its target method when the proxy class is created(through a {@link CallbackFilter}), 
+ * so invocations don't look up the method again.
+ * </p>
  * 
  * @author liukaixuan(liukaixuan@gmail.com)
  */
@@ -37,6 +45,9 @@ public class RPCServiceImpl extends AbstractRPCService implements MethodIntercep
 	private Map<String, Method> stubMethods = new HashMap<String, Method>() ;
 
 	private Map<String, Method> thisMethods = new HashMap<String, Method>() ;
+	
+	/**method key >> index of the proxy's callback. 0 is this RPCServiceImpl, resolving the method on each invocation.*/
+	private Map<String, Integer> callbackIndexes = new HashMap<String, Integer>() ;
 
 	public Service createService() {
 		return proxy ;
@@ -118,6 +129,22 @@ public class RPCServiceImpl extends AbstractRPCService implements MethodIntercep
     		
     		this.thisMethods.put(key, m) ;
     	}
+    	
+    	//the dispatch table: stub methods first, then this RPCServiceImpl's methods.
+    	List<Callback> callbacks = new ArrayList<Callback>() ;
+    	callbacks.add(this) ;
+    	
+    	for(Map.Entry<String, Method> entry : this.stubMethods.entrySet()){
+    		this.callbackIndexes.put(entry.getKey(), callbacks.size()) ;
+    		callbacks.add(new StubMethodInvoker(entry.getValue())) ;
+    	}
+    	
+    	for(Map.Entry<String, Method> entry : this.thisMethods.entrySet()){
+    		if(!this.callbackIndexes.containsKey(entry.getKey())){
+    			this.callbackIndexes.put(entry.getKey(), callbacks.size()) ;
+    			callbacks.add(new ThisMethodInvoker(entry.getValue())) ;
+    		}
+    	}
     	        		
 		Enhancer e = new Enhancer() ;
 		
@@ -137,7 +164,8 @@ public class RPCServiceImpl extends AbstractRPCService implements MethodIntercep
 			}
 		}
 		
-		e.setCallback(this) ;
+		e.setCallbackFilter(new DispatchFilter()) ;
+		e.setCallbacks(callbacks.toArray(new Callback[callbacks.size()])) ;
 		this.proxy = (Service) e.create() ;
 		
     	if(super.configure(scs)){
@@ -153,6 +181,55 @@ public class RPCServiceImpl extends AbstractRPCService implements MethodIntercep
     	return super.isAvailable() && stub != null ;
     }
     
+    /**
+     * Pick the callback for each method of the proxy class, called once per method when the class is generated.
+     */
+    class DispatchFilter implements CallbackFilter {
+    	
+		public int accept(Method method) {
+			//GuzzProxy#invokeProxiedMethod(Method, Object[]) needs the proxy.
+			if("invokeProxiedMethod".equals(method.getName()) && method.getParameterTypes().length == 2){
+				return 0 ;
+			}
+			
+			Integer index = callbackIndexes.get(getMethodKey(method)) ;
+			
+			return index == null ? 0 : index.intValue() ;
+		}
+		
+		public boolean equals(Object obj) {
+			return obj == this ;
+		}
+		
+		public int hashCode() {
+			return System.identityHashCode(this) ;
+		}
+    }
+    
+    class StubMethodInvoker implements MethodInterceptor {
+    	private final Method stubMethod ;
+    	
+    	public StubMethodInvoker(Method stubMethod){
+    		this.stubMethod = stubMethod ;
+    	}
+
+		public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+			return stubMethod.invoke(stub, args) ;
+		}
+    }
+    
+    class ThisMethodInvoker implements MethodInterceptor {
+    	private final Method thisMethod ;
+    	
+    	public ThisMethodInvoker(Method thisMethod){
+    		this.thisMethod = thisMethod ;
+    	}
+
+		public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
+			return thisMethod.invoke(RPCServiceImpl.this, args) ;
+		}
+    }
+    
 //    public static void main(String[] args){
 //    	Method[] ms = RPCServiceImpl.class.getMethods() ;
 //    	
@@ -16,6 +16,9 @@
  */
 package org.guzz.service.core.impl;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
@@ -48,6 +51,10 @@ public class SingleMachineDatabaseServiceImpl extends AbstractService implements
 		return dsp.getDataSource() ;
 	}
 	
+	public Connection getConnection() throws SQLException {
+		return dsp.getDataSource().getConnection() ;
+	}
+	
 	public boolean configure(ServiceConfig[] scs) {
 		if(scs == null || scs.length == 0){
 			throw new GuzzException("no serviceConfig found for single database.") ;
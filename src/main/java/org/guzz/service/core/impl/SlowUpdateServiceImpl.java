@@ -56,6 +56,7 @@ public class SlowUpdateServiceImpl extends AbstractService implements GuzzContex
 	
 	private int batchSize = 2048 ;
 	private int queueSize = 20480 ;
+	private int fullQueuePolicy = DemonQueuedThread.POLICY_DROP_OLDEST ;
 	
 	public void updateCount(String businessName, Object tableCondition, String propToUpdate, Serializable pkValue, int countToInc){
 		tableCondition = tableCondition == null ? Guzz.getTableCondition() : tableCondition ;
@@ -94,14 +95,7 @@ public class SlowUpdateServiceImpl extends AbstractService implements GuzzContex
 		ut.setCountToInc(countToInc) ;
 		
 		this.updateThread.addToQueue(ut) ;
-		
-		if(this.updateThread.isSleeping()){
-			synchronized (updateThread) {
-				try{
-					this.updateThread.notify() ;
-				}catch(Exception e){}
-			}
-		}
+		this.updateThread.wakeUp() ;
 	}
 
 	public boolean configure(ServiceConfig[] scs) {
@@ -116,9 +110,11 @@ public class SlowUpdateServiceImpl extends AbstractService implements GuzzContex
 		
 		String m_queueSize = (String) sc.getProps().get(QUEUE_MAX_SIZE) ;
 		String m_batchSize = (String) sc.getProps().get("batchSize") ;
+		String m_fullQueuePolicy = (String) sc.getProps().get("fullQueuePolicy") ;
 		
 		this.queueSize = StringUtil.toInt(m_queueSize, this.queueSize) ;
 		this.batchSize = StringUtil.toInt(m_batchSize, this.batchSize) ;
+		this.fullQueuePolicy = DemonQueuedThread.toFullQueuePolicy(m_fullQueuePolicy, this.fullQueuePolicy) ;
 		
 		return true ;
 	}
@@ -127,6 +123,7 @@ public class SlowUpdateServiceImpl extends AbstractService implements GuzzContex
 		//启动更新线程
 		if(updateThread == null){
 			updateThread = new UpdateToDBThread(this.queueSize) ;
+			updateThread.setFullQueuePolicy(this.fullQueuePolicy) ;
 			updateThread.start() ;
 		}
 	}
@@ -148,65 +145,59 @@ public class SlowUpdateServiceImpl extends AbstractService implements GuzzContex
 			super("slowUpdateThread", queueSize) ;
 		}
 		
-		protected boolean doWithTheQueue() throws SQLException{			
-			if(queues == null){
+		protected boolean doWithTheQueue() throws SQLException{
+			Object[] uts = new Object[batchSize] ;
+			int count = drainTo(uts) ;
+			
+			if(count == 0){
 				return false ;
 			}
 			
-			int length = queues.length ;			
-			boolean processSomething = false ;
-								
-			WriteTranSession tran = null ;
-			IncUpdateBusiness ut = null ;
+			updateToDB(uts, count) ;
 			
-			try{
-				ObjectBatcher batcher = null ;
-				int addedCount = 0 ;
-				
-				for(int i = 0 ; i < length; i++){
-					ut = (IncUpdateBusiness) queues[i] ;
-					if(ut == null) continue ;
-					queues[i] = null ; //释放队列空间
-										
-					processSomething = true ;
-					
-					if(tran == null){
-						tran = tm.openRWTran(false) ;
-					}
-					if(batcher == null){
-						batcher = tran.createObjectBatcher() ;
-					}
-					
-					batcher.insert(ut) ;
-					addedCount++ ;
-					
-					if(addedCount >= batchSize){
-						batcher.executeBatch() ;
-						tran.commit() ;
-						
-						addedCount = 0 ;
-					}
-				}
-				
-				if(addedCount > 0){
-					batcher.executeBatch() ;
-					tran.commit() ;
-				}
-			}catch(Exception e){
-				log.error(ut, e) ;
+			return true ;
+		}
+		
+		protected void processInCaller(Object obj) {
+			updateToDB(new Object[]{obj}, 1) ;
+		}
+		
+		protected boolean supportsCallerRuns() {
+			return true ;
+		}
+		
+	}
+	
+	/**
+	 * Write the updates to the database in one batch.
+	 */
+	protected void updateToDB(Object[] uts, int count){
+		WriteTranSession tran = null ;
+		IncUpdateBusiness ut = null ;
+		
+		try{
+			tran = tm.openRWTran(false) ;
+			ObjectBatcher batcher = tran.createObjectBatcher() ;
+			
+			for(int i = 0 ; i < count ; i++){
+				ut = (IncUpdateBusiness) uts[i] ;
 				
-				if(tran != null){
-					tran.rollback() ;
-				}
-			}finally{
-				if(tran != null){
-					tran.close() ;
-				}
+				batcher.insert(ut) ;
 			}
 			
-			return processSomething ;
+			batcher.executeBatch() ;
+			tran.commit() ;
+		}catch(Exception e){
+			log.error(ut, e) ;
+			
+			if(tran != null){
+				tran.rollback() ;
+			}
+		}finally{
+			if(tran != null){
+				tran.close() ;
+			}
 		}
-		
 	}
 
 	public void setGuzzContext(GuzzContext guzzContext) {
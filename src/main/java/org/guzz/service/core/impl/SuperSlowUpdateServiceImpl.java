@@ -17,10 +17,8 @@
 package org.guzz.service.core.impl;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,16 +42,15 @@ import org.guzz.web.context.GuzzContextAware;
  * 
  * 在写入前进行操作合并的update服务。
  * <p/>
- * 进行数据合并时，将创建Map保存临时对象，更新数据一般不会出现错误和丢失（无锁操作，不能确保不出任何差错）；但数据全部存放在内存，如果项目较多可能出现内存不足。
+ * 进行数据合并时，使用{@link IncUpdateAggregator}在内存中累加增量，更新数据不会丢失；但数据全部存放在内存，如果项目较多可能出现内存不足。
  * <p/>
  * 建议用在更新项目较少，但更新频率非常高的场景下。
  * <p/>
  * 实现方式：
  * <lo>
- * <li>获取到更新操作后，根据key从Map中读取以往的操作</li>
- * <li>如果操作存在，增加本次操作的count值；如果不存在，当前对象写入Map中。</li>
- * <li>后台进程获取更新Map，并创建新的Map供新的update操作使用，保证当前处理的Map不再更新。</li>
- * <li>后台进程遍历Map，并将操作写入临时数据库。</li>
+ * <li>获取到更新操作后，根据(dbGroup, 表, 字段, 主键)在当前epoch中找到计数器，分段累加本次操作的count值。</li>
+ * <li>后台进程原子地切换到新的epoch供新的update操作使用，并等待仍在写入旧epoch的线程完成，保证当前处理的数据不再更新。</li>
+ * <li>后台进程遍历旧epoch，并将合并后的操作写入临时数据库。</li>
  * <li>后台进行休眠@param updateInterval 毫秒，重复执行。</li>
  * </lo>
  * 
@@ -62,7 +59,7 @@ import org.guzz.web.context.GuzzContextAware;
 public class SuperSlowUpdateServiceImpl extends AbstractService implements GuzzContextAware, SlowUpdateService {
 	private static transient final Log log = LogFactory.getLog(SuperSlowUpdateServiceImpl.class) ;
 		
-	private Map updateOperations = new HashMap(2048) ;
+	private final IncUpdateAggregator aggregator = new IncUpdateAggregator() ;
 		
 	private TransactionManager tm ;
 	
@@ -75,8 +72,6 @@ public class SuperSlowUpdateServiceImpl extends AbstractService implements GuzzC
 	/**后台更新频率，默认500毫秒。*/
 	private int updateInterval = 500 ;
 	
-	private Object insertLock = new Object() ;
-	
 	public void updateCount(String businessName, Object tableCondition, String propToUpdate, Serializable pkValue, int countToInc){
 		tableCondition = tableCondition == null ? Guzz.getTableCondition() : tableCondition ;
 		POJOBasedObjectMapping mapping = (POJOBasedObjectMapping) omm.getObjectMapping(businessName, tableCondition) ;
@@ -103,43 +98,7 @@ public class SuperSlowUpdateServiceImpl extends AbstractService implements GuzzC
 			throw new GuzzException("superSlowUpdateService is not available. use the config server's [" + FAMOUSE_SERVICE.SLOW_UPDATE + "] to active this service.") ;
 		}
 		
-		//key
-		StringBuffer sb = new StringBuffer(32) ;		
-		sb.append(pkValue)
-		  .append(columnToUpdate) 
-		  .append(tableName)
-		  .append(dbGroup) ;
-		
-		String key = sb.toString() ;
-		
-		IncUpdateBusiness ut = (IncUpdateBusiness) this.updateOperations.get(key) ;
-		if(ut != null){
-			ut.incCount(countToInc) ;
-		}else{
-			synchronized(insertLock){
-				//read again
-				ut = (IncUpdateBusiness) this.updateOperations.get(key) ;
-				
-				if(ut != null){//already created while waiting for the lock
-					//do nothing
-				}else{
-					ut = new IncUpdateBusiness(dbGroup) ;
-					
-					//put it into the map as soon as possible. 
-					this.updateOperations.put(key, ut) ;
-				}
-			}
-			
-			//release lock as soon as possible.
-			ut.setTableName(tableName) ;
-			ut.setPkColunName(pkColName) ;
-			
-			ut.setColumnToUpdate(columnToUpdate) ;
-			ut.setPkValue(pkValue.toString()) ;
-			
-			//use thread safe method to inc count. Other threads may have already changed the count.
-			ut.incCount(countToInc) ;
-		}
+		this.aggregator.add(dbGroup, tableName, columnToUpdate, pkColName, pkValue, countToInc) ;
 		
 		//just let it sleep. The delay is fine, a big batch is preferred.
 //		if(this.updateThread.isSleeping()){
@@ -198,51 +157,15 @@ public class SuperSlowUpdateServiceImpl extends AbstractService implements GuzzC
 		}
 		
 		protected boolean doWithTheQueue() throws Exception{
-			Map oldOperations = updateOperations ;
-			
-			if(oldOperations == null || oldOperations.isEmpty()){
+			if(aggregator.isEmpty()){
 				return false ;
 			}
 			
-			//将操作Map挪出来，同时生成1个新的Map供update操作计算增量。
-			//在生成新的Map的时候，将旧Map中count != 0的记录（认为更新频繁记录）提前存放进去，避免在update操作发现没有此记录，从而多线程并发生成，相互覆盖，造成数据不准确。
-			HashMap newMap = new HashMap(2048) ;
-		
-			/*
-			 * 20091231 BUG注意：最初设计没有使用同步，寄希望于 “就算抛出异常，抛出异常后本方法等待interval毫秒后还会重新执行，不影响使用。因此没有必要浪费同步资源”。
-			 * 但在实际使用中发现：高并发下，的确可能出现ConcurrentModifyException，而一旦出现ConcurrentModifyException，就会重复的抛出此异常，并导致CPU资源全部耗尽；
-			 * CPU上升到150%以上，系统无法继续工作，造成宕机。具体原因不详，推测是JDK HashMap的bug。
-			 */
-			synchronized(insertLock){
-				Iterator it = oldOperations.entrySet().iterator() ;
-				
-				while(it.hasNext()){
-					Map.Entry e = (Entry) it.next() ; //
-					String key = (String) e.getKey() ;				
-					IncUpdateBusiness value = (IncUpdateBusiness) e.getValue() ;
-					
-					if(value.getCountToInc() != 0){
-						IncUpdateBusiness newValue = new IncUpdateBusiness() ;
-						newValue.setColumnToUpdate(value.getColumnToUpdate()) ;
-						newValue.setCountToInc(0) ;
-						newValue.setDbGroup(value.getDbGroup()) ;
-						newValue.setId(value.getId()) ;
-						newValue.setPkColunName(value.getPkColunName()) ;
-						newValue.setPkValue(value.getPkValue()) ;
-						newValue.setTableName(value.getTableName()) ;
-						
-						newMap.put(key, newValue) ;
-					}
-				}
-			}
-			
-			//使用新的Map
 			WriteTranSession tran = tm.openRWTran(false) ; //如果数据库连接打开失败，旧的数据保持不变，避免数据丢失。
-			updateOperations = newMap ;
-			
 			
-			//旧的Map中的值，可能某些线程已经获取到，但由于CPU调度还没有执行incCount操作。执行其他代码等待一下所有旧记录不在变化。
-			Iterator i = oldOperations.values().iterator() ;			
+			//切换到新的epoch，并等待仍在写入旧epoch的线程完成，旧的数据不会再变化。
+			List uts = aggregator.swapAndDrain() ;
+			Iterator i = uts.iterator() ;
 			ObjectBatcher batcher = null ;
 			int addedCount = 0 ;
 			IncUpdateBusiness ut = null ;
@@ -250,12 +173,6 @@ public class SuperSlowUpdateServiceImpl extends AbstractService implements GuzzC
 			try{
 				while(i.hasNext()){
 					ut = (IncUpdateBusiness) i.next() ;
-					if(ut == null) continue ;
-					
-					//执行一次同步等待，使得没有来得及完成CPU指令周期的更新操作得以执行。
-					ut.incCount(0) ;
-					
-					if(ut.getCountToInc() == 0) continue ;
 					
 					if(batcher == null){
 						batcher = tran.createObjectBatcher() ;
@@ -285,9 +202,6 @@ public class SuperSlowUpdateServiceImpl extends AbstractService implements GuzzC
 				}
 			}
 			
-			oldOperations.clear() ;
-			oldOperations = null ;
-			
 			//force sleep to reduce conflict.
 			return false ;
 		}
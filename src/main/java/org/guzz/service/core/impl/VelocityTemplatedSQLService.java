@@ -21,8 +21,12 @@ import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections.ExtendedProperties;
 import org.apache.velocity.Template;
@@ -58,6 +62,11 @@ import org.guzz.web.context.GuzzContextAware;
 /**
  * 
  * The Velocity implementation of {@link TemplatedSQLService}.
+ * <p>
+ * Templates are parsed once and the parsed {@link Template}s are rendered for every query.
+ * Templates registered by id are parsed at registration (or at startup if registered before), 
+ * and sql statements are parsed at the first use.
+ * </p>
  *
  * @author liu kaixuan(liukaixuan@gmail.com)
  */
@@ -73,11 +82,31 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 	
 	private String userdirective ;
 	
+	/**max count of parsed sql statements to keep. Statements beyond it are evaluated without caching.*/
+	private static final int MAX_CACHED_STATEMENTS = 2048 ;
+	
+	/**buffers larger than this won't be kept for reusing.*/
+	private static final int MAX_KEPT_BUFFER_SIZE = 16 * 1024 ;
+	
+	private static final String STATEMENT_NAME_PREFIX = "guzz_vts_stmt_" ;
+	
+	private static final ThreadLocal<StringWriter> writers = new ThreadLocal<StringWriter>() ;
+	
 	private HashMap<String, TemplateData> templates = new HashMap<String, TemplateData>() ;
 	
+	/**sql statement to its parsed template.*/
+	private final ConcurrentHashMap<String, Template> statementTemplates = new ConcurrentHashMap<String, Template>() ;
+	
+	/**sources of the sql statements being parsed, named by {@link #STATEMENT_NAME_PREFIX} + seq.*/
+	private final ConcurrentHashMap<String, byte[]> statementsToParse = new ConcurrentHashMap<String, byte[]>() ;
+	
+	private final AtomicInteger statementSeq = new AtomicInteger() ;
+	
 	static class TemplateData{
 		public final byte[] sql ;
 		
+		public volatile Template template ;
+		
 		public final ObjectMapping mapping ;
 		
 		public final String ormName ;
@@ -102,7 +131,7 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 	
 	public void addImutableSql(String id, ObjectMapping mapping, String sqlStatement) {
 		try {
-			this.templates.put(id, new TemplateData(mapping, sqlStatement.getBytes("UTF-8"))) ;
+			addTemplate(id, new TemplateData(mapping, sqlStatement.getBytes("UTF-8"))) ;
 		} catch (UnsupportedEncodingException e) {
 			throw new TemplateInitException(e.getMessage(), id, 1, 1) ;
 		}
@@ -110,24 +139,28 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 	
 	public void addImutableSql(String id, String ormName, String sqlStatement) {
 		try {
-			this.templates.put(id, new TemplateData(ormName, sqlStatement.getBytes("UTF-8"))) ;
+			addTemplate(id, new TemplateData(ormName, sqlStatement.getBytes("UTF-8"))) ;
 		} catch (UnsupportedEncodingException e) {
 			throw new TemplateInitException(e.getMessage(), id, 1, 1) ;
 		}
 	}
 	
+	protected void addTemplate(String id, TemplateData data){
+		this.templates.put(id, data) ;
+		
+		//not started yet, parse it in the startup.
+		if(this.ve != null){
+			data.template = ve.getTemplate(id) ;
+		}
+	}
+	
 	public CompiledSQL getSqlById(String id, Object tableCondition, Map params) {
 		TemplateData data = this.templates.get(id) ;
 		if (data == null) {
 			throw new ResourceNotFoundException("No Template for id:" + id);     
 	    }
 		
-		VelocityContext context = new VelocityContext(params) ;
-		StringWriter w = new StringWriter() ;
-		
-		Template template = ve.getTemplate(id);
-		template.merge(context, w) ;		
-		String sql = w.toString() ;
+		String sql = renderById(id, params) ;
 		
 		if(data.mapping != null){
 			return compiledSQLBuilder.buildCompiledSQL(data.mapping, sql) ;
@@ -137,22 +170,109 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 	}
 
 	public CompiledSQL getSqlByStatement(ObjectMapping mapping, Object tableCondition, String sqlStatement, Map params) {
-		VelocityContext context = new VelocityContext(params) ;
-		StringWriter w = new StringWriter() ;		
-		ve.evaluate(context, w, sqlStatement, sqlStatement) ;		
-		String sql = w.toString() ;
+		String sql = renderStatement(sqlStatement, params) ;
 		
 		return compiledSQLBuilder.buildCompiledSQL(mapping, sql) ;
 	}
 
 	public CompiledSQL getSqlByStatement(String ormName, Object tableCondition, String sqlStatement, Map params) {
-		VelocityContext context = new VelocityContext(params) ;
-		StringWriter w = new StringWriter() ;		
-		ve.evaluate(context, w, sqlStatement, sqlStatement) ;		
-		String sql = w.toString() ;
+		String sql = renderStatement(sqlStatement, params) ;
 		
 		return this.compiledSQLBuilder.buildCompiledSQL(ormName, sql) ;
 	}
+	
+	Set<String> getTemplateIds(){
+		return this.templates.keySet() ;
+	}
+	
+	byte[] getTemplateSource(String id){
+		return this.templates.get(id).sql ;
+	}
+	
+	/**
+	 * Render the template registered as @param id.
+	 */
+	String renderById(String id, Map params){
+		TemplateData data = this.templates.get(id) ;
+		if (data == null) {
+			throw new ResourceNotFoundException("No Template for id:" + id);     
+	    }
+		
+		Template template = data.template ;
+		if(template == null){
+			template = ve.getTemplate(id) ;
+			data.template = template ;
+		}
+		
+		return render(template, params) ;
+	}
+	
+	/**
+	 * Render the sql statement, parsing it at the first time.
+	 */
+	String renderStatement(String sqlStatement, Map params){
+		Template template = this.statementTemplates.get(sqlStatement) ;
+		
+		if(template == null){
+			if(this.statementTemplates.size() >= MAX_CACHED_STATEMENTS){
+				VelocityContext context = new VelocityContext(params) ;
+				StringWriter w = new StringWriter() ;
+				ve.evaluate(context, w, sqlStatement, sqlStatement) ;
+				
+				return w.toString() ;
+			}
+			
+			template = parseStatement(sqlStatement) ;
+			
+			Template old = this.statementTemplates.putIfAbsent(sqlStatement, template) ;
+			if(old != null){
+				template = old ;
+			}
+		}
+		
+		return render(template, params) ;
+	}
+	
+	protected Template parseStatement(String sqlStatement){
+		String name = STATEMENT_NAME_PREFIX + this.statementSeq.incrementAndGet() ;
+		
+		try {
+			this.statementsToParse.put(name, sqlStatement.getBytes("UTF-8")) ;
+		} catch (UnsupportedEncodingException e) {
+			throw new TemplateInitException(e.getMessage(), sqlStatement, 1, 1) ;
+		}
+		
+		try{
+			return ve.getTemplate(name) ;
+		}finally{
+			this.statementsToParse.remove(name) ;
+		}
+	}
+	
+	/**
+	 * Merge the template into the buffer of this thread. Directives may query templated sqls while rendering, 
+	 * so the buffer is taken away from the thread during the merging, and nested renderings get new ones.
+	 */
+	protected String render(Template template, Map params){
+		StringWriter w = writers.get() ;
+		if(w == null){
+			w = new StringWriter(256) ;
+		}else{
+			writers.set(null) ;
+		}
+		
+		try{
+			template.merge(new VelocityContext(params), w) ;
+			
+			return w.toString() ;
+		}finally{
+			StringBuffer sb = w.getBuffer() ;
+			if(sb.capacity() <= MAX_KEPT_BUFFER_SIZE){
+				sb.setLength(0) ;
+				writers.set(w) ;
+			}
+		}
+	}
 
 	public boolean configure(ServiceConfig[] scs) {
 		if(scs.length > 0){
@@ -199,12 +319,23 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 		
 		ve.setApplicationAttribute(SummonDirective.GUZZ_CONTEXT_NAME, this.guzzContext) ;
 		ve.setApplicationAttribute("guzz_vts_templates_name", templates) ;
+		ve.setApplicationAttribute("guzz_vts_statements_name", statementsToParse) ;
 
 		try {
 			ve.init(p) ;
 		} catch (Exception e) {
 			throw new InvalidConfigurationException(e) ;
 		}
+		
+		//parse the templates registered before the startup.
+		Iterator<Map.Entry<String, TemplateData>> i = this.templates.entrySet().iterator() ;
+		while(i.hasNext()){
+			Map.Entry<String, TemplateData> e = i.next() ;
+			
+			if(e.getValue().template == null){
+				e.getValue().template = ve.getTemplate(e.getKey()) ;
+			}
+		}
 	}
 
 	public void shutdown() {
@@ -216,14 +347,25 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 		
 		private HashMap<String, TemplateData> templates ;
 		
+		private Map<String, byte[]> statements ;
+		
 		public void init(ExtendedProperties configuration) {
 			templates = (HashMap<String, TemplateData>) this.rsvc.getApplicationAttribute("guzz_vts_templates_name") ;
+			statements = (Map<String, byte[]>) this.rsvc.getApplicationAttribute("guzz_vts_statements_name") ;
 			
 			this.setCachingOn(false) ;
 			this.setModificationCheckInterval(0L) ;
 		}
 
 		public InputStream getResourceStream(String source) throws ResourceNotFoundException {
+			if(source.startsWith(STATEMENT_NAME_PREFIX)){
+				byte[] sql = statements.get(source) ;
+				
+				if(sql != null){
+					return new ByteArrayInputStream(sql) ;
+				}
+			}
+			
 			TemplateData bs = templates.get(source) ;
 			
 	        if (bs == null) {
@@ -242,7 +384,7 @@ public final class VelocityTemplatedSQLService extends AbstractService implement
 		}
 
 		public boolean resourceExists(String resourceName) {
-			return templates.get(resourceName) != null ;
+			return templates.get(resourceName) != null || statements.get(resourceName) != null ;
 		} 
 		
 	}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.db;
+
+/**
+ * 
+ * 定期测量数据库组从库的同步延迟，测量结果记录到{@link org.guzz.connection.PhysicsDBGroup#getLatency()}中，
+ * 供{@link org.guzz.transaction.TransactionManager#openDelayReadTran(long)}选择数据库。
+ * <p/>
+ * 从库服务包含多台机器时，每台机器分别测量；由于读请求仍在正常的从库之间负载均衡，数据库组的延迟取正常从库中的最大值。
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface ReplicationLagMonitor {
+	
+	/**
+	 * 返回数据库组从库当前可能的最大数据延迟。
+	 * 
+	 * @param dbGroup 物理数据库组名称
+	 * @return 单位毫秒。-1表示没有测量。
+	 */
+	public long getLatency(String dbGroup) ;
+
+}
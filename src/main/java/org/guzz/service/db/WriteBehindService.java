@@ -0,0 +1,61 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.db;
+
+import org.guzz.Guzz;
+import org.guzz.util.stat.WriteBehindMetricsMBean;
+
+/**
+ * 
+ * Write-behind updates for "last value wins" writes on hot rows, such as last seen time or counters kept in the entity.
+ * <p>
+ * Updates are buffered in memory by (business, table condition, primary key). A new update of a buffered row is merged into it: 
+ * the values of the new update win, and the changed properties are unioned when the object is {@link org.guzz.pojo.DynamicUpdatable}.
+ * The buffer is written to the database by jdbc batches in a background thread every flush interval, 
+ * or sooner when the buffered rows reach the flush size. Pending updates are flushed when the service is shut down with the GuzzContext.
+ * </p>
+ * <p>
+ * The property values are read when the update is called. Persist listeners are not invoked, the same as the batchers.
+ * Updates of a failed flush are kept in the buffer and retried later, as long as the buffer has room. 
+ * Updates still buffered when the service is shut down are logged and lost.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface WriteBehindService {
+	
+	/**
+	 * Buffer an update of the domain object. 
+	 * 如果存在shadow表，按照{@link Guzz#getTableCondition()}分表
+	 */
+	public void update(Object domainObject) ;
+	
+	/**
+	 * Buffer an update of the domain object.
+	 * 
+	 * @param tableCondition shadow表分表条件。如果tableCondition为null，将会使用null作为分表条件，不在读取{@link Guzz#getTableCondition()}
+	 */
+	public void update(Object domainObject, Object tableCondition) ;
+	
+	/**
+	 * Write all buffered updates to the database in the caller thread.
+	 */
+	public void flush() ;
+	
+	public WriteBehindMetricsMBean getMetrics() ;
+
+}
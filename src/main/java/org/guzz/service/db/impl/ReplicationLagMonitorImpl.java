@@ -0,0 +1,241 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.db.impl;
+
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.guzz.GuzzContext;
+import org.guzz.connection.HeartbeatReplicationLagProbe;
+import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.connection.ReplicationLagProbe;
+import org.guzz.exception.InvalidConfigurationException;
+import org.guzz.service.AbstractService;
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.core.impl.MultiMachinesDatabaseServiceImpl;
+import org.guzz.service.db.ReplicationLagMonitor;
+import org.guzz.util.StringUtil;
+import org.guzz.util.javabean.BeanCreator;
+import org.guzz.util.thread.DemonQueuedThread;
+import org.guzz.web.context.GuzzContextAware;
+
+/**
+ * 
+ * Measure the replication lag of the configured database groups periodically with a {@link ReplicationLagProbe}.
+ * <p/>
+ * Configurations:
+ * <ul>
+ * <li>dbGroups: names of the physics database groups to monitor, separated by comma. Required.</li>
+ * <li>interval: milliseconds between two measurements. Default is 1000.</li>
+ * <li>probe: class name of the {@link ReplicationLagProbe}. Default is {@link HeartbeatReplicationLagProbe}.</li>
+ * <li>other properties are passed to the probe.</li>
+ * </ul>
+ * If a measurement fails, the lag is marked as unknown, and readers with a max latency go to the master database.
+ * <p/>
+ * When the slave service of a group is a {@link MultiMachinesDatabaseServiceImpl}, every slave machine is measured separately 
+ * and its lag is kept in {@link MultiMachinesDatabaseServiceImpl#getMachineLatency(String)}. As reads are still load balanced among the healthy slaves,
+ * the lag of the group is the largest lag of the healthy slaves, and unknown if any of them is unknown.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class ReplicationLagMonitorImpl extends AbstractService implements ReplicationLagMonitor, GuzzContextAware {
+	
+	public static final String CONFIG_DB_GROUPS = "dbGroups" ;
+	
+	public static final String CONFIG_INTERVAL = "interval" ;
+	
+	public static final String CONFIG_PROBE = "probe" ;
+	
+	private GuzzContext guzzContext ;
+	
+	private String[] dbGroupNames ;
+	
+	private PhysicsDBGroup[] dbGroups ;
+	
+	private ReplicationLagProbe probe ;
+	
+	private int interval = 1000 ;
+	
+	private MeasureThread measureThread ;
+
+	public long getLatency(String dbGroup) {
+		return this.guzzContext.getPhysicsDBGroup(dbGroup).getLatency() ;
+	}
+	
+	/**
+	 * Measure the lag of all monitored groups once.
+	 */
+	public void measure(){
+		PhysicsDBGroup[] groups = this.dbGroups ;
+		
+		if(groups == null) return ;
+		
+		for(int i = 0 ; i < groups.length ; i++){
+			PhysicsDBGroup group = groups[i] ;
+			
+			if(group.getSlaveDB() == null){
+				//all reads go to the master.
+				group.updateLatency(0) ;
+				continue ;
+			}
+			
+			if(group.getSlaveDB() instanceof MultiMachinesDatabaseServiceImpl){
+				measureMachines(group, (MultiMachinesDatabaseServiceImpl) group.getSlaveDB()) ;
+				continue ;
+			}
+			
+			try{
+				long lag = probe.measureLag(group) ;
+				group.updateLatency(lag) ;
+				
+				if(log.isDebugEnabled()){
+					log.debug("replication lag of dbGroup:[" + group.getGroupName() + "] is " + lag + "ms.") ;
+				}
+			}catch(Exception e){
+				group.updateLatency(-1) ;
+				
+				log.warn("fail to measure replication lag of dbGroup:[" + group.getGroupName() + "]", e) ;
+			}
+		}
+	}
+
+	/**
+	 * Measure every slave machine of the group, and take the largest lag of the healthy ones as the lag of the group.
+	 */
+	protected void measureMachines(PhysicsDBGroup group, MultiMachinesDatabaseServiceImpl slaves){
+		String[] names = slaves.getMachineNames() ;
+		long groupLag = -1 ;
+		boolean unknown = false ;
+		
+		for(int i = 0 ; i < names.length ; i++){
+			DataSource ds = slaves.getMachineDataSource(names[i]) ;
+			
+			//removed by re-configuration.
+			if(ds == null) continue ;
+			
+			long lag = -1 ;
+			
+			try{
+				lag = probe.measureLag(group, ds) ;
+				
+				if(log.isDebugEnabled()){
+					log.debug("replication lag of slave:[" + names[i] + "] in dbGroup:[" + group.getGroupName() + "] is " + lag + "ms.") ;
+				}
+			}catch(Exception e){
+				log.warn("fail to measure replication lag of slave:[" + names[i] + "] in dbGroup:[" + group.getGroupName() + "]", e) ;
+			}
+			
+			slaves.updateMachineLatency(names[i], lag) ;
+			
+			//ejected machines take no reads.
+			if(!slaves.isMachineHealthy(names[i])) continue ;
+			
+			if(lag < 0){
+				unknown = true ;
+			}else{
+				groupLag = Math.max(groupLag, lag) ;
+			}
+		}
+		
+		group.updateLatency(unknown ? -1 : groupLag) ;
+	}
+
+	public boolean configure(ServiceConfig[] scs) {
+		if(scs == null || scs.length == 0){
+			log.warn("replicationLagMonitor is not started. no configuration found.") ;
+			return false ;
+		}
+		
+		Properties props = scs[0].getProps() ;
+		
+		String m_dbGroups = (String) props.remove(CONFIG_DB_GROUPS) ;
+		String m_interval = (String) props.remove(CONFIG_INTERVAL) ;
+		String m_probe = (String) props.remove(CONFIG_PROBE) ;
+		
+		if(StringUtil.isEmpty(m_dbGroups)){
+			throw new InvalidConfigurationException("dbGroups is required for the replicationLagMonitor.") ;
+		}
+		
+		this.dbGroupNames = StringUtil.splitString(m_dbGroups, ",") ;
+		this.interval = StringUtil.toInt(m_interval, this.interval) ;
+		
+		ReplicationLagProbe probe ;
+		if(StringUtil.isEmpty(m_probe)){
+			probe = new HeartbeatReplicationLagProbe() ;
+		}else{
+			probe = (ReplicationLagProbe) BeanCreator.newBeanInstance(m_probe.trim()) ;
+		}
+		
+		probe.configure(props) ;
+		this.probe = probe ;
+		
+		return true ;
+	}
+
+	public boolean isAvailable() {
+		return measureThread != null ;
+	}
+
+	public void setGuzzContext(GuzzContext guzzContext) {
+		this.guzzContext = guzzContext ;
+	}
+
+	public void startup() {
+		if(this.dbGroupNames == null) return ;
+		
+		PhysicsDBGroup[] groups = new PhysicsDBGroup[this.dbGroupNames.length] ;
+		
+		for(int i = 0 ; i < groups.length ; i++){
+			groups[i] = this.guzzContext.getPhysicsDBGroup(this.dbGroupNames[i].trim()) ;
+			
+			if(groups[i].getSlaveDB() == null){
+				log.warn("dbGroup:[" + groups[i].getGroupName() + "] has no slave database to monitor.") ;
+			}
+		}
+		
+		this.dbGroups = groups ;
+		
+		if(measureThread == null){
+			measureThread = new MeasureThread() ;
+			measureThread.setMillSecondsToSleep(Math.max(this.interval, 10)) ;
+			measureThread.start() ;
+		}
+	}
+
+	public void shutdown() {
+		if(measureThread != null){
+			measureThread.shutdown() ;
+			measureThread = null ;
+		}
+	}
+	
+	class MeasureThread extends DemonQueuedThread{
+		
+		public MeasureThread(){
+			super("replicationLagMonitorThread", 1) ;
+		}
+
+		protected boolean doWithTheQueue() throws Exception {
+			measure() ;
+			
+			//sleep until the next round.
+			return false ;
+		}
+	}
+
+}
@@ -89,9 +89,22 @@ public class SlowUpdateServerImpl extends AbstractService implements SlowUpdateS
 	
 	private LeaderService leaderService ;
 	
+	/**the time when the temporary table was found having more updates than a round can handle. 0 means no backlog.*/
+	private volatile long backlogSince ;
+	
+	/**
+	 * 临时表中的数据超过一轮可以处理的数量时开始计时，返回积压持续的时间；没有积压时返回0。
+	 */
 	public int getLatency() {
-		//FIXME: implemement this
-		return 0;
+		long since = this.backlogSince ;
+		
+		if(since == 0){
+			return 0 ;
+		}
+		
+		long latency = System.currentTimeMillis() - since ;
+		
+		return latency > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) latency ;
 	}
 
 	public boolean configure(ServiceConfig[] scs) {			
@@ -196,9 +209,13 @@ public class SlowUpdateServerImpl extends AbstractService implements SlowUpdateS
 				}
 								
 				if(updates.isEmpty()){
+					backlogSince = 0 ;
 					return false ;
 				}
 				
+				//a full round read means more updates are waiting.
+				boolean hasBacklog = updates.size() >= pageSize * combinePageCount ;
+				
 				//记录下最大的id
 				maxIdNum = ((IncUpdateBusiness) updates.get(updates.size() - 1)).getId() ;
 				
@@ -243,6 +260,12 @@ public class SlowUpdateServerImpl extends AbstractService implements SlowUpdateS
 				writeSession.executeUpdate(deleteTempSQL.bind("id", maxIdNum)) ;
 				
 				writeSession.commit() ;
+				
+				if(!hasBacklog){
+					backlogSince = 0 ;
+				}else if(backlogSince == 0){
+					backlogSince = System.currentTimeMillis() ;
+				}
 			}catch(Exception e){
 				if(writeSession != null){
 					writeSession.rollback() ;
@@ -0,0 +1,714 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.db.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.guzz.Guzz;
+import org.guzz.GuzzContext;
+import org.guzz.GuzzContextImpl;
+import org.guzz.bytecode.LazyPropChangeDetector;
+import org.guzz.exception.DaoException;
+import org.guzz.exception.GuzzException;
+import org.guzz.exception.ORMException;
+import org.guzz.jdbc.SQLBatcher;
+import org.guzz.orm.mapping.ObjectMappingManager;
+import org.guzz.orm.mapping.POJOBasedObjectMapping;
+import org.guzz.orm.rdms.Table;
+import org.guzz.orm.sql.CompiledSQL;
+import org.guzz.orm.sql.CompiledSQLManager;
+import org.guzz.pojo.DynamicUpdatable;
+import org.guzz.pojo.GuzzProxy;
+import org.guzz.service.AbstractService;
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.db.WriteBehindService;
+import org.guzz.transaction.TransactionManager;
+import org.guzz.transaction.WriteTranSession;
+import org.guzz.util.StringUtil;
+import org.guzz.util.javabean.BeanWrapper;
+import org.guzz.util.stat.WriteBehindMetrics;
+import org.guzz.util.stat.WriteBehindMetricsMBean;
+import org.guzz.util.thread.DemonQueuedThread;
+import org.guzz.web.context.GuzzContextAware;
+
+/**
+ * 
+ * {@link WriteBehindService} buffering the updates in a LinkedHashMap.
+ * <p>
+ * Configurations:
+ * <lo>
+ * <li>flushInterval: milliseconds between two flushes. Default is 1000.</li>
+ * <li>flushSize: flush once the buffered rows reach this size. Default is 512.</li>
+ * <li>maxPendingRows: max rows buffered. Default is 10240.</li>
+ * <li>fullQueuePolicy: what to do with a new row when the buffer is full. callerRuns(default, flush in the caller thread), block, dropNewest or dropOldest.
+ * While flushes are failing, callerRuns drops the new row instead of retrying in the caller.</li>
+ * <li>maxAttempts: a row failed to write this many times is dropped. Default is 3.</li>
+ * <li>mbeanName: register the {@link WriteBehindMetricsMBean} to the platform MBeanServer under this name, eg: org.guzz:type=WriteBehind,name=myApp. Not registered if not set.</li>
+ * </lo>
+ * </p>
+ * <p>
+ * If a flush fails, its rows are written again group by group, and the rows of a failed group one by one, so a bad row won't block the others.
+ * Rows still failing are put back into the buffer, under the values buffered since then, as long as the buffer has room. 
+ * The flush thread waits twice as long after every flush in a row that writes nothing, up to 64 flush intervals, before the next try.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class WriteBehindServiceImpl extends AbstractService implements WriteBehindService, GuzzContextAware {
+	private static transient final Log log = LogFactory.getLog(WriteBehindServiceImpl.class) ;
+	
+	private TransactionManager tm ;
+	
+	private ObjectMappingManager omm ;
+	
+	private CompiledSQLManager compiledSQLManager ;
+	
+	protected FlushThread flushThread ;
+	
+	private int flushInterval = 1000 ;
+	private int flushSize = 512 ;
+	private int maxPendingRows = 10240 ;
+	private int fullQueuePolicy = DemonQueuedThread.POLICY_CALLER_RUNS ;
+	private int maxAttempts = 3 ;
+	
+	/**failed flushes in a row. guarded by flushLock.*/
+	private int failedFlushes ;
+	
+	/**flushes are not retried by the flush thread before this time, in milliseconds.*/
+	private volatile long retryNotBefore ;
+	
+	/**RowKey >> PendingRow, guarded by itself.*/
+	private LinkedHashMap pendingRows = new LinkedHashMap() ;
+	
+	private final Object lock = new Object() ;
+	
+	/**flushes are serialized, or an older value of a row could be written after a newer one.*/
+	private final Object flushLock = new Object() ;
+	
+	private final WriteBehindMetrics metrics = new WriteBehindMetrics() ;
+	
+	private ObjectName mbeanName ;
+	
+	public void update(Object domainObject) {
+		update(domainObject, Guzz.getTableCondition()) ;
+	}
+
+	public void update(Object domainObject, Object tableCondition) {
+		if(!isAvailable()){
+			throw new GuzzException("writeBehindService is not available.") ;
+		}
+		
+		Class domainClass = domainObject instanceof GuzzProxy ? ((GuzzProxy) domainObject).getProxiedClass() : domainObject.getClass() ;
+		POJOBasedObjectMapping mapping = (POJOBasedObjectMapping) omm.getObjectMapping(domainClass.getName(), tableCondition) ;
+		
+		if(mapping == null){
+			throw new ORMException("unknown business for class:[" + domainClass.getName() + "]") ;
+		}
+		
+		String[] props = getPropsToUpdate(domainObject, mapping.getTable()) ;
+		if(props == null){
+			return ;
+		}
+		
+		BeanWrapper bw = mapping.getBeanWrapper() ;
+		String pkProp = mapping.getTable().getPKPropName() ;
+		
+		LinkedHashMap values = new LinkedHashMap() ;
+		for(int i = 0 ; i < props.length ; i++){
+			if(!props[i].equals(pkProp)){
+				values.put(props[i], bw.getValueUnderProxy(domainObject, props[i])) ;
+			}
+		}
+		
+		if(values.isEmpty()){
+			//nothing to update but the primary key.
+			return ;
+		}
+		
+		RowKey key = new RowKey(mapping.getBusiness().getName(), tableCondition, bw.getValueUnderProxy(domainObject, pkProp)) ;
+		
+		while(!addRow(key, mapping, values)){
+			//the buffer is full.
+			switch(this.fullQueuePolicy){
+			case DemonQueuedThread.POLICY_DROP_NEWEST:
+				this.metrics.recordDropped() ;
+				return ;
+				
+			case DemonQueuedThread.POLICY_BLOCK:
+				this.flushThread.wakeUp() ;
+				
+				synchronized(lock){
+					if(this.pendingRows.size() >= this.maxPendingRows){
+						try {
+							lock.wait(100) ;
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt() ;
+							throw new GuzzException("interrupted while waiting for the write-behind buffer.", e) ;
+						}
+					}
+				}
+				
+				break ;
+				
+			default:
+				if(isBackingOff() || !flushRows()){
+					//the database is failing, and the buffer is full of the rows to retry.
+					this.metrics.recordDropped() ;
+					return ;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Properties to update like {@link org.guzz.transaction.WriteTranSessionImpl#update(Object, Object)} does. 
+	 * The changed properties recorded in the object are reset.
+	 * 
+	 * @return null to ignore the update.
+	 */
+	protected String[] getPropsToUpdate(Object domainObject, Table table){
+		if(domainObject instanceof DynamicUpdatable){
+			String[] changedProps = ((DynamicUpdatable) domainObject).getChangedProps() ;
+			
+			if(changedProps == null){
+				return table.getPropsForUpdate() ;
+			}else if(changedProps.length == 0){
+				return null ;
+			}
+			
+			((DynamicUpdatable) domainObject).resetChangeCounter() ;
+			
+			return changedProps ;
+		}
+		
+		String[] props = table.getPropsForUpdate() ;
+		
+		if(domainObject instanceof LazyPropChangeDetector){
+			String[] changedProps = ((LazyPropChangeDetector) domainObject).getChangedLazyProps() ;
+			
+			if(changedProps != null && changedProps.length > 0){
+				String[] all = new String[props.length + changedProps.length] ;
+				System.arraycopy(props, 0, all, 0, props.length) ;
+				System.arraycopy(changedProps, 0, all, props.length, changedProps.length) ;
+				props = all ;
+				
+				((LazyPropChangeDetector) domainObject).resetLazyCounter() ;
+			}
+		}
+		
+		return props ;
+	}
+	
+	/**
+	 * @return false if the buffer is full and the row is not buffered.
+	 */
+	protected boolean addRow(RowKey key, POJOBasedObjectMapping mapping, Map values){
+		int size ;
+		
+		synchronized(lock){
+			PendingRow row = (PendingRow) this.pendingRows.get(key) ;
+			
+			if(row != null){
+				//last value wins. the changed properties are unioned.
+				row.mapping = mapping ;
+				row.values.putAll(values) ;
+				this.metrics.recordQueued(true) ;
+				
+				return true ;
+			}
+			
+			if(this.pendingRows.size() >= this.maxPendingRows){
+				if(this.fullQueuePolicy != DemonQueuedThread.POLICY_DROP_OLDEST){
+					return false ;
+				}
+				
+				Iterator i = this.pendingRows.values().iterator() ;
+				i.next() ;
+				i.remove() ;
+				this.metrics.recordDropped() ;
+			}
+			
+			this.pendingRows.put(key, new PendingRow(key, mapping, values)) ;
+			this.metrics.recordQueued(false) ;
+			
+			size = this.pendingRows.size() ;
+			this.metrics.setPendingRows(size) ;
+		}
+		
+		if(size >= this.flushSize){
+			this.flushThread.wakeUp() ;
+		}
+		
+		return true ;
+	}
+
+	public void flush() {
+		flushRows() ;
+	}
+	
+	protected boolean isBackingOff(){
+		return System.currentTimeMillis() < this.retryNotBefore ;
+	}
+	
+	/**
+	 * Write all buffered rows. Rows failed to write are put back into the buffer, or dropped after maxAttempts tries.
+	 * 
+	 * @return false if the flush failed and no row is written.
+	 */
+	protected boolean flushRows() {
+		synchronized(flushLock){
+			LinkedHashMap rows ;
+			
+			synchronized(lock){
+				if(this.pendingRows.isEmpty()){
+					return true ;
+				}
+				
+				rows = this.pendingRows ;
+				this.pendingRows = new LinkedHashMap() ;
+				this.metrics.setPendingRows(0) ;
+				
+				//release the callers blocked by the full buffer.
+				lock.notifyAll() ;
+			}
+			
+			long startTime = System.nanoTime() ;
+			LinkedHashMap failedRows = new LinkedHashMap() ;
+			Exception error = null ;
+			
+			try{
+				writeRows(rows.values()) ;
+			}catch(Exception e){
+				error = e ;
+				
+				if(rows.size() == 1){
+					failedRows.putAll(rows) ;
+				}else{
+					Exception e2 = writeIsolated(rows.values(), failedRows) ;
+					
+					if(e2 != null){
+						error = e2 ;
+					}
+				}
+			}
+			
+			int written = rows.size() - failedRows.size() ;
+			this.metrics.recordFlush(written, failedRows.size(), System.nanoTime() - startTime) ;
+			
+			if(!failedRows.isEmpty()){
+				int dropped = requeueRows(failedRows) ;
+				
+				log.error("failed to flush " + failedRows.size() + " of " + rows.size() + " rows, " + (failedRows.size() - dropped) + " rows are put back to retry, " + dropped + " rows are dropped.", error) ;
+			}
+			
+			boolean failed = written == 0 && !failedRows.isEmpty() ;
+			
+			if(failed){
+				//2, 4, 8... up to 64 intervals.
+				this.failedFlushes++ ;
+				this.retryNotBefore = System.currentTimeMillis() + ((long) this.flushInterval << Math.min(this.failedFlushes, 6)) ;
+			}else{
+				this.failedFlushes = 0 ;
+				this.retryNotBefore = 0 ;
+			}
+			
+			return !failed ;
+		}
+	}
+	
+	/**
+	 * Write the rows of a failed flush group by group, and the rows of a failed group one by one, each in its own transaction.
+	 * 
+	 * @param failedRows rows still failing are put here.
+	 * @return the last error, or null if all rows are written.
+	 */
+	protected Exception writeIsolated(Collection rows, Map failedRows){
+		Collection groups = groupRows(rows).values() ;
+		Exception error = null ;
+		
+		Iterator i = groups.iterator() ;
+		while(i.hasNext()){
+			List group = (List) i.next() ;
+			
+			//a single group is the failed flush itself.
+			if(groups.size() > 1 && group.size() > 1){
+				try{
+					writeRows(group) ;
+					continue ;
+				}catch(Exception e){
+					error = e ;
+				}
+			}
+			
+			for(int k = 0 ; k < group.size() ; k++){
+				PendingRow row = (PendingRow) group.get(k) ;
+				
+				try{
+					writeRows(Collections.singletonList(row)) ;
+				}catch(Exception e){
+					error = e ;
+					failedRows.put(row.key, row) ;
+				}
+			}
+		}
+		
+		return error ;
+	}
+	
+	/**
+	 * Put the rows of a failed flush back before the rows buffered during the flush, or drop them after maxAttempts tries. 
+	 * Values buffered during the flush are newer and win; properties they don't have are taken from the failed row.
+	 * 
+	 * @return count of failed rows dropped as the buffer is full or they failed too many times.
+	 */
+	protected int requeueRows(LinkedHashMap failedRows){
+		int dropped = 0 ;
+		
+		synchronized(lock){
+			LinkedHashMap rows = new LinkedHashMap() ;
+			int room = this.maxPendingRows - this.pendingRows.size() ;
+			
+			Iterator i = failedRows.values().iterator() ;
+			while(i.hasNext()){
+				PendingRow row = (PendingRow) i.next() ;
+				PendingRow newer = (PendingRow) this.pendingRows.get(row.key) ;
+				
+				if(++row.attempts >= this.maxAttempts){
+					log.warn("row dropped after " + row.attempts + " failed writes. business:" + row.key.businessName + ", pk:" + row.key.pk + ", values:" + row.values) ;
+					this.metrics.recordDropped() ;
+					dropped++ ;
+				}else if(newer != null){
+					boolean merged = false ;
+					
+					Iterator props = row.values.entrySet().iterator() ;
+					while(props.hasNext()){
+						Map.Entry e = (Map.Entry) props.next() ;
+						
+						if(!newer.values.containsKey(e.getKey())){
+							newer.values.put(e.getKey(), e.getValue()) ;
+							merged = true ;
+						}
+					}
+					
+					//the failed values are carried over, and so are their tries.
+					if(merged){
+						newer.attempts = Math.max(newer.attempts, row.attempts) ;
+					}
+				}else if(room > 0){
+					rows.put(row.key, row) ;
+					room-- ;
+				}else{
+					this.metrics.recordDropped() ;
+					dropped++ ;
+				}
+			}
+			
+			rows.putAll(this.pendingRows) ;
+			this.pendingRows = rows ;
+			this.metrics.setPendingRows(rows.size()) ;
+		}
+		
+		return dropped ;
+	}
+	
+	/**
+	 * Write the rows in one transaction. 
+	 * Rows are grouped by the business, the table condition and the properties to update, and each group is updated through a jdbc batch.
+	 */
+	protected void writeRows(Collection rows){
+		LinkedHashMap groups = groupRows(rows) ;
+		
+		WriteTranSession tran = tm.openRWTran(false) ;
+		
+		try{
+			Iterator it = groups.entrySet().iterator() ;
+			
+			while(it.hasNext()){
+				Map.Entry e = (Map.Entry) it.next() ;
+				WriteGroup g = (WriteGroup) e.getKey() ;
+				List list = (List) e.getValue() ;
+				
+				CompiledSQL cs = this.compiledSQLManager.buildUpdateSQL(g.mapping, g.props) ;
+				SQLBatcher batcher = tran.createCompiledSQLBatcher(cs, g.tableCondition) ;
+				String pkProp = g.mapping.getTable().getPKPropName() ;
+				
+				for(int i = 0 ; i < list.size() ; i++){
+					PendingRow row = (PendingRow) list.get(i) ;
+					HashMap params = new HashMap(row.values) ;
+					params.put(pkProp, row.key.pk) ;
+					
+					batcher.addNewBatchParams(params) ;
+				}
+				
+				batcher.executeBatch() ;
+			}
+			
+			tran.commit() ;
+		}catch(RuntimeException e){
+			tran.rollback() ;
+			
+			throw e ;
+		}finally{
+			tran.close() ;
+		}
+	}
+	
+	/**
+	 * Group the rows by the business, the table condition and the properties to update.
+	 * 
+	 * @return WriteGroup >> List of PendingRow
+	 */
+	protected LinkedHashMap groupRows(Collection rows){
+		LinkedHashMap groups = new LinkedHashMap() ;
+		
+		Iterator it = rows.iterator() ;
+		while(it.hasNext()){
+			PendingRow row = (PendingRow) it.next() ;
+			String[] props = (String[]) row.values.keySet().toArray(new String[row.values.size()]) ;
+			Arrays.sort(props) ;
+			
+			WriteGroup g = new WriteGroup(row.key.businessName, row.key.tableCondition, props) ;
+			List list = (List) groups.get(g) ;
+			
+			if(list == null){
+				g.mapping = row.mapping ;
+				list = new ArrayList() ;
+				groups.put(g, list) ;
+			}
+			
+			list.add(row) ;
+		}
+		
+		return groups ;
+	}
+	
+	public WriteBehindMetricsMBean getMetrics() {
+		return this.metrics ;
+	}
+
+	public boolean configure(ServiceConfig[] scs) {
+		if(scs != null && scs.length > 0 && scs[0].getProps() != null){
+			ServiceConfig sc = scs[0] ;
+			
+			this.flushInterval = StringUtil.toInt((String) sc.getProps().get("flushInterval"), this.flushInterval) ;
+			this.flushSize = StringUtil.toInt((String) sc.getProps().get("flushSize"), this.flushSize) ;
+			this.maxPendingRows = StringUtil.toInt((String) sc.getProps().get("maxPendingRows"), this.maxPendingRows) ;
+			this.fullQueuePolicy = DemonQueuedThread.toFullQueuePolicy((String) sc.getProps().get("fullQueuePolicy"), this.fullQueuePolicy) ;
+			this.maxAttempts = StringUtil.toInt((String) sc.getProps().get("maxAttempts"), this.maxAttempts) ;
+			
+			unregisterMBean() ;
+			registerMBean((String) sc.getProps().get("mbeanName")) ;
+			
+			if(this.flushThread != null){
+				this.flushThread.setMillSecondsToSleep(this.flushInterval) ;
+			}
+		}
+		
+		return true ;
+	}
+	
+	protected void registerMBean(String name){
+		if(StringUtil.isEmpty(name)) return ;
+		
+		try{
+			ObjectName on = new ObjectName(name) ;
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer() ;
+			
+			if(server.isRegistered(on)){
+				server.unregisterMBean(on) ;
+			}
+			
+			server.registerMBean(new StandardMBean(this.metrics, WriteBehindMetricsMBean.class), on) ;
+			this.mbeanName = on ;
+		}catch(Exception e){
+			log.error("failed to register write-behind metrics MBean:" + name, e) ;
+		}
+	}
+	
+	protected void unregisterMBean(){
+		if(this.mbeanName == null){
+			return ;
+		}
+		
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.mbeanName) ;
+		}catch(Exception e){
+			log.warn("failed to unregister write-behind metrics MBean:" + this.mbeanName, e) ;
+		}
+		
+		this.mbeanName = null ;
+	}
+
+	public void startup() {
+		if(flushThread == null){
+			flushThread = new FlushThread() ;
+			flushThread.setMillSecondsToSleep(this.flushInterval) ;
+			flushThread.start() ;
+		}
+	}
+
+	/**
+	 * Stop the flush thread, and write all buffered updates before the database connections are closed.
+	 * Rows still left after the last try are logged as lost.
+	 */
+	public void shutdown() {
+		if(flushThread != null){
+			flushThread.shutdown() ;
+			
+			try{
+				if(!flushRows()){
+					int left ;
+					
+					synchronized(lock){
+						left = this.pendingRows.size() ;
+					}
+					
+					log.error("writeBehindService is shutdown with " + left + " rows not written.") ;
+				}
+			}finally{
+				flushThread = null ;
+				unregisterMBean() ;
+			}
+		}
+	}
+
+	public boolean isAvailable() {
+		return this.tm != null && this.flushThread != null ;
+	}
+
+	public void setGuzzContext(GuzzContext guzzContext) {
+		this.tm = guzzContext.getTransactionManager() ;
+		this.omm = guzzContext.getObjectMappingManager() ;
+		this.compiledSQLManager = ((GuzzContextImpl) guzzContext).getCompiledSQLManager() ;
+	}
+	
+	class FlushThread extends DemonQueuedThread {
+		
+		private boolean started ;
+		
+		public FlushThread(){
+			super("writeBehindThread", 0) ;
+		}
+		
+		protected boolean doWithTheQueue() throws Exception{
+			if(started){
+				//wait for the next interval after failed flushes.
+				if(isBackingOff() || !flushRows()){
+					return false ;
+				}
+			}else{
+				//the first flush comes after one interval.
+				started = true ;
+			}
+			
+			//keep flushing without sleep if the buffer is filled up during the flush.
+			synchronized(lock){
+				return pendingRows.size() >= flushSize ;
+			}
+		}
+	}
+	
+	static class RowKey {
+		final String businessName ;
+		final Object tableCondition ;
+		final Object pk ;
+		
+		RowKey(String businessName, Object tableCondition, Object pk){
+			if(pk == null){
+				throw new DaoException("primary key is null. business:" + businessName) ;
+			}
+			
+			this.businessName = businessName ;
+			this.tableCondition = tableCondition ;
+			this.pk = pk ;
+		}
+
+		public int hashCode() {
+			return (businessName.hashCode() * 31 + (tableCondition == null ? 0 : tableCondition.hashCode())) * 31 + pk.hashCode() ;
+		}
+
+		public boolean equals(Object obj) {
+			if(!(obj instanceof RowKey)) return false ;
+			
+			RowKey k = (RowKey) obj ;
+			
+			if(!businessName.equals(k.businessName) || !pk.equals(k.pk)) return false ;
+			
+			return tableCondition == null ? k.tableCondition == null : tableCondition.equals(k.tableCondition) ;
+		}
+	}
+	
+	static class PendingRow {
+		final RowKey key ;
+		POJOBasedObjectMapping mapping ;
+		
+		/**property name >> value*/
+		final Map values ;
+		
+		/**failed writes so far.*/
+		int attempts ;
+		
+		PendingRow(RowKey key, POJOBasedObjectMapping mapping, Map values){
+			this.key = key ;
+			this.mapping = mapping ;
+			this.values = values ;
+		}
+	}
+	
+	static class WriteGroup {
+		final String businessName ;
+		final Object tableCondition ;
+		final String[] props ;
+		POJOBasedObjectMapping mapping ;
+		
+		WriteGroup(String businessName, Object tableCondition, String[] props){
+			this.businessName = businessName ;
+			this.tableCondition = tableCondition ;
+			this.props = props ;
+		}
+
+		public int hashCode() {
+			return (businessName.hashCode() * 31 + (tableCondition == null ? 0 : tableCondition.hashCode())) * 31 + Arrays.hashCode(props) ;
+		}
+
+		public boolean equals(Object obj) {
+			if(!(obj instanceof WriteGroup)) return false ;
+			
+			WriteGroup g = (WriteGroup) obj ;
+			
+			if(!businessName.equals(g.businessName) || !Arrays.equals(props, g.props)) return false ;
+			
+			return tableCondition == null ? g.tableCondition == null : tableCondition.equals(g.tableCondition) ;
+		}
+	}
+
+}
@@ -16,8 +16,15 @@
  */
 package org.guzz.service.log.impl;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
 import org.guzz.Guzz;
 import org.guzz.GuzzContext;
+import org.guzz.jdbc.ObjectBatcher;
 import org.guzz.service.AbstractService;
 import org.guzz.service.ServiceConfig;
 import org.guzz.service.db.impl.InsertQueueServiceImpl;
@@ -46,6 +53,8 @@ public class DBLogServiceImpl extends AbstractService implements LogService, Guz
 	private int commitSize = 2048 ;
 	private int queueSize = 20480 ;
 	private int updateInterval ;
+	private int fullQueuePolicy = DemonQueuedThread.POLICY_DROP_OLDEST ;
+	private boolean multiRowInsert ;
 
 	public boolean configure(ServiceConfig[] scs) {
 		if(scs != null && scs.length > 0){
@@ -54,14 +63,22 @@ public class DBLogServiceImpl extends AbstractService implements LogService, Guz
 			String m_commitSize = (String) sc.getProps().get("commitSize") ;
 			String m_queueSize = (String) sc.getProps().get("queueSize") ;
 			String m_checkInterval = (String) sc.getProps().get("checkInterval") ;
+			String m_fullQueuePolicy = (String) sc.getProps().get("fullQueuePolicy") ;
+			String m_multiRowInsert = (String) sc.getProps().get("multiRowInsert") ;
 			
 			this.commitSize = StringUtil.toInt(m_commitSize, this.commitSize) ;
 			this.queueSize = StringUtil.toInt(m_queueSize, this.queueSize) ;
 			this.updateInterval = StringUtil.toInt(m_checkInterval, -1) ;
+			this.fullQueuePolicy = DemonQueuedThread.toFullQueuePolicy(m_fullQueuePolicy, this.fullQueuePolicy) ;
+			this.multiRowInsert = StringUtil.toBoolean(m_multiRowInsert, false) ;
 			
 			if(this.updateThread != null && this.updateInterval > 10){
 				this.updateThread.setMillSecondsToSleep(updateInterval) ;
 			}
+			
+			if(this.updateThread != null){
+				this.updateThread.setFullQueuePolicy(fullQueuePolicy) ;
+			}
 		}
 		
 		return true ;
@@ -71,6 +88,7 @@ public class DBLogServiceImpl extends AbstractService implements LogService, Guz
 		//启动更新线程
 		if(updateThread == null){
 			updateThread = new DBLogThread(queueSize) ;
+			updateThread.setFullQueuePolicy(fullQueuePolicy) ;
 			updateThread.start() ;
 		}
 		
@@ -113,49 +131,108 @@ public class DBLogServiceImpl extends AbstractService implements LogService, Guz
 		}
 		
 		protected boolean doWithTheQueue() throws Exception{
-			WriteTranSession tran = null ;
-			boolean doSomething = false ;
+			Object[] logs = new Object[commitSize] ;
+			int count = drainTo(logs) ;
+			
+			if(count == 0){
+				return false ;
+			}
+			
+			insertLogs(logs, count) ;
+			
+			return true ;
+		}
+		
+		protected void processInCaller(Object obj) {
+			insertLogs(new Object[]{obj}, 1) ;
+		}
+		
+		protected boolean supportsCallerRuns() {
+			return true ;
+		}
+	}
+	
+	/**
+	 * Insert the logs in one transaction. 
+	 * <p>
+	 * Logs are grouped by the domain class and the table condition, and each group is inserted through a jdbc batch.
+	 * </p>
+	 */
+	protected void insertLogs(Object[] logs, int count){
+		//(domain class, tableCondition) >> List of logObject
+		LinkedHashMap groups = new LinkedHashMap() ;
+		
+		for(int i = 0 ; i < count ; i++){
+			LogObject log = (LogObject) logs[i] ;
+			LogGroup group = new LogGroup(log.logObject.getClass(), log.tableCondition) ;
+			
+			List objects = (List) groups.get(group) ;
+			if(objects == null){
+				objects = new LinkedList() ;
+				groups.put(group, objects) ;
+			}
+			
+			objects.add(log.logObject) ;
+		}
+		
+		WriteTranSession tran = tm.openRWTran(false) ;
+		Object oldTableCondition = Guzz.getTableCondition() ;
+		
+		try{
+			Iterator it = groups.entrySet().iterator() ;
 			
-			try{
-				int addedCount = 0 ;
+			while(it.hasNext()){
+				Map.Entry e = (Map.Entry) it.next() ;
+				LogGroup group = (LogGroup) e.getKey() ;
+				List objects = (List) e.getValue() ;
 				
-				for(int i = 0 ; i < this.queues.length ; i++){
-					LogObject log = (LogObject) this.queues[i] ;
-					if(log == null) continue ;
-					this.queues[i] = null ;
-					
-					if(tran == null){
-						tran = tm.openRWTran(false) ;
-					}
-					
-					doSomething = true ;
-					
-					Guzz.setTableCondition(log.tableCondition) ;
-					tran.insert(log.logObject) ;
-					addedCount++ ;
-					
-					if(addedCount >= commitSize){
-						tran.commit() ;
-						
-						addedCount = 0 ;
-					}
-				}
+				//the batcher picks up the tableCondition on the first insert.
+				Guzz.setTableCondition(group.tableCondition) ;
 				
-				if(addedCount > 0){
-					tran.commit() ;
-				}
-			}catch(Exception e){
-				if(tran != null){
-					tran.rollback() ;
-				}
-				throw e ;
-			}finally{
-				if(tran != null){
-					tran.close() ;
+				ObjectBatcher batcher = tran.createObjectBatcher() ;
+				batcher.setMultiRowInsert(this.multiRowInsert) ;
+				
+				Iterator i = objects.iterator() ;
+				while(i.hasNext()){
+					batcher.insert(i.next()) ;
 				}
+				
+				batcher.executeBatch() ;
 			}
 			
-			return doSomething ;
+			tran.commit() ;
+		}catch(RuntimeException e){
+			tran.rollback() ;
+			
+			throw e ;
+		}finally{
+			Guzz.setTableCondition(oldTableCondition) ;
+			tran.close() ;
+		}
+	}
+	
+	static class LogGroup{
+		final Class domainClass ;
+		
+		final Object tableCondition ;
+		
+		public LogGroup(Class domainClass, Object tableCondition){
+			this.domainClass = domainClass ;
+			this.tableCondition = tableCondition ;
+		}
+
+		public int hashCode() {
+			return domainClass.hashCode() * 31 + (tableCondition == null ? 0 : tableCondition.hashCode()) ;
+		}
+
+		public boolean equals(Object obj) {
+			if(!(obj instanceof LogGroup)) return false ;
+			
+			LogGroup g = (LogGroup) obj ;
+			
+			if(domainClass != g.domainClass) return false ;
+			
+			return tableCondition == null ? g.tableCondition == null : tableCondition.equals(g.tableCondition) ;
 		}
 	}
 
@@ -22,9 +22,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -33,6 +39,7 @@ import org.guzz.connection.ConnectionFetcher;
 import org.guzz.connection.DBGroup;
 import org.guzz.connection.DBGroupManager;
 import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.dao.KeysetPageFlip;
 import org.guzz.dao.PageFlip;
 import org.guzz.dialect.Dialect;
 import org.guzz.exception.DaoException;
@@ -43,9 +50,13 @@ import org.guzz.jdbc.JDBCTemplate;
 import org.guzz.jdbc.JDBCTemplateImpl;
 import org.guzz.orm.ObjectMapping;
 import org.guzz.orm.mapping.ObjectMappingManager;
+import org.guzz.orm.mapping.ObjectMappingUtil;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
 import org.guzz.orm.mapping.RowDataLoader;
+import org.guzz.orm.mapping.RowMappingPlan;
 import org.guzz.orm.rdms.Table;
+import org.guzz.orm.se.KeysetCursor;
+import org.guzz.orm.se.QueryResultCache;
 import org.guzz.orm.se.SearchExpression;
 import org.guzz.orm.se.SearchParams;
 import org.guzz.orm.sql.BindedCompiledSQL;
@@ -58,6 +69,7 @@ import org.guzz.orm.type.SQLDataType;
 import org.guzz.pojo.GuzzProxy;
 import org.guzz.service.core.DebugService;
 import org.guzz.util.CloseUtil;
+import org.guzz.util.StringUtil;
 import org.guzz.util.javabean.BeanCreator;
 import org.guzz.util.javabean.BeanWrapper;
 
@@ -212,19 +224,19 @@ public class AbstractTranSessionImpl {
 			startTime = System.nanoTime() ;
 		}
 		
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
 		PreparedStatement pstm = null ;
 		ResultSet rs = null ;
 		
 		try{
-			Connection conn = getConnection(db, bsql.getTableCondition()) ;
-			pstm = conn.prepareStatement(rawSQL) ;
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
 			this.applyQueryTimeout(pstm) ;
 			
 			bsql.prepareNamedParams(db.getDialect(), pstm) ;
 			
 			rs = pstm.executeQuery() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -235,21 +247,19 @@ public class AbstractTranSessionImpl {
 			
 			//do ORM
 			LinkedList results = new LinkedList() ;
+			RowMappingPlan plan = ObjectMappingUtil.createRowMappingPlan(m, loader, rs, bsql.getResultClass()) ;
 			
 			while(rs.next()){
-				if(loader == null){
-					results.addLast(m.rs2Object(rs, bsql.getResultClass())) ;
-				}else{
-					results.addLast(loader.rs2Object(m, rs)) ;
-				}
+				results.addLast(plan.rs2Object(rs)) ;
 			}
 			
 			return results ;
 		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
 			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
 		}finally{
 			CloseUtil.close(rs) ;
-			CloseUtil.close(pstm) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
 		}
 	}
 	
@@ -265,15 +275,193 @@ public class AbstractTranSessionImpl {
 			throw new ORMException("unknow object:" + se.getFrom()) ;
 		}
 		
+		final BindedCompiledSQL bsql = buildLoadRecordsSQL(m, se) ;
+		final int startPos = se.getStartPos() ;
+		final int pageSize = se.getPageSize() ;
+		
+		QueryResultCache cache = getQueryResultCache(m, se) ;
+		List results ;
+		
+		if(cache == null){
+			results = list(bsql, startPos, pageSize) ;
+		}else{
+			results = (List) cache.get(createQueryCacheKey("list", bsql, startPos, pageSize), se.getCacheMode(), new QueryResultCache.Loader(){
+				public Object load() {
+					return list(bsql, startPos, pageSize) ;
+				}
+			}) ;
+			
+			//the cached list and its objects are shared, return copies for the caller to change.
+			results = ((POJOBasedObjectMapping) m).copyLoadedObjects(results) ;
+		}
+		
+		//rows before the keyset cursor are queried in the reversed order.
+		if(se.isKeysetPagination() && se.isSeekBackward()){
+			Collections.reverse(results) ;
+		}
+		
+		return results ;
+	}
+	
+	protected BindedCompiledSQL buildLoadRecordsSQL(ObjectMapping m, SearchExpression se){
 		SearchParams sp = new SearchParams() ;
 		MarkedSQL ms = se.toLoadRecordsMarkedSQL((POJOBasedObjectMapping) m, sp) ;
 		
 		CompiledSQL sql = this.compiledSQLBuilder.buildCompiledSQL(ms).setParamPropMapping(sp.getParamPropMapping()) ;
 		
-		return list(se.prepareHits(sql.bind(sp.getSearchParams())), se.getStartPos(), se.getPageSize()) ;
+		return se.prepareHits(sql.bind(sp.getSearchParams())) ;
+	}
+	
+	/**
+	 * Stream the results of @param bsql row by row without pagination.
+	 * 
+	 * @param bsql the query
+	 * @param fetchSize rows to fetch from the database each time. Passed to the dialect to enable streaming for the database.
+	 * @see Dialect#getFetchSizeForStreaming(int)
+	 */
+	public ResultCursor iterate(BindedCompiledSQL bsql, int fetchSize){
+		ObjectMapping m = bsql.getCompiledSQLToRun().getMapping() ;
+		String rawSQL = bsql.getSQLToRun() ;
+		if(m == null){
+			throw new ORMException("ObjectMapping is null. sql is:" + rawSQL) ;
+		}
+		
+		DBGroup db = m.getDbGroup() ;
+		Dialect dialect = db.getDialect() ;
+		
+		LockMode lock = bsql.getLockMode() ;
+		
+		if(lock == LockMode.UPGRADE){
+			rawSQL = dialect.getForUpdateString(rawSQL) ;
+		}else if(lock == LockMode.UPGRADE_NOWAIT){
+			rawSQL = dialect.getForUpdateNoWaitString(rawSQL) ;
+		}
+		
+		boolean measureTime = this.debugService.isMeasureTime() ;
+		long startTime = 0L ;
+		if(measureTime){
+			startTime = System.nanoTime() ;
+		}
+		
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
+		PreparedStatement pstm = null ;
+		ResultSet rs = null ;
+		
+		try{
+			//the statement stays open until the cursor is closed, so it is not taken from the statement cache.
+			pstm = getConnection(fdb).prepareStatement(rawSQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ;
+			pstm.setFetchSize(dialect.getFetchSizeForStreaming(fetchSize)) ;
+			this.applyQueryTimeout(pstm) ;
+			
+			bsql.prepareNamedParams(dialect, pstm) ;
+			
+			rs = pstm.executeQuery() ;
+			
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
+				long timeCost = 0 ;
+				if(measureTime){
+					timeCost = System.nanoTime() - startTime ;
+				}
+				
+				this.debugService.logSQL(bsql, rawSQL, timeCost) ;
+			}
+			
+			RowMappingPlan plan = ObjectMappingUtil.createRowMappingPlan(m, bsql.getRowDataLoader(), rs, bsql.getResultClass()) ;
+			
+			return new ResultSetCursor(pstm, rs, plan, rawSQL) ;
+		}catch(SQLException e){
+			CloseUtil.close(rs) ;
+			CloseUtil.close(pstm) ;
+			
+			logSQLError(rawSQL, startTime) ;
+			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
+		}
+	}
+	
+	/**
+	 * Stream all records matched by @param se row by row. The pagination of @param se is ignored.
+	 * 
+	 * @see #iterate(BindedCompiledSQL, int)
+	 */
+	public ResultCursor iterate(SearchExpression se, int fetchSize){
+		if(se.isEmptyQuery()){
+			return ResultSetCursor.emptyCursor() ;
+		}
+		
+		ObjectMapping m = omm.getObjectMapping(se.getFrom(), se.getTableCondition()) ;
+		
+		if(m == null){
+			throw new ORMException("unknow object:" + se.getFrom()) ;
+		}
+		
+		return iterate(buildLoadRecordsSQL(m, se), fetchSize) ;
+	}
+	
+	/**
+	 * Return the {@link QueryResultCache} of the business if the SearchExpression asks for it.
+	 * <p>
+	 * Only readonly sessions use the cache. A write session may read its own uncommitted changes, which must not be cached.
+	 * </p>
+	 * @return null if the results should not be cached.
+	 */
+	protected QueryResultCache getQueryResultCache(ObjectMapping m, SearchExpression se){
+		if(se.getRowDataLoader() != null){
+			return null ;
+		}
+		
+		return getQueryResultCache(m, se.getCacheMode()) ;
+	}
+	
+	protected QueryResultCache getQueryResultCache(ObjectMapping m, int cacheMode){
+		if(!this.isReadonly || cacheMode == SearchExpression.CACHE_MODE_NONE){
+			return null ;
+		}
+		
+		if(m instanceof POJOBasedObjectMapping){
+			return ((POJOBasedObjectMapping) m).getBusiness().getQueryResultCache() ;
+		}
+		
+		return null ;
+	}
+	
+	/**
+	 * The sql to run contains the shadow table name, and the physics dbgroup stands for the virtual database, so the table condition itself is not a part of the key.
+	 */
+	protected Object createQueryCacheKey(String queryType, BindedCompiledSQL bsql, int startPos, int pageSize){
+		HashMap params = new HashMap() ;
+		Iterator i = bsql.getBindedParams().entrySet().iterator() ;
+		
+		while(i.hasNext()){
+			Map.Entry e = (Map.Entry) i.next() ;
+			Object value = e.getValue() ;
+			
+			//arrays of in(...)
+			if(value instanceof Object[]){
+				value = Arrays.asList((Object[]) value) ;
+			}
+			
+			params.put(e.getKey(), value) ;
+		}
+		
+		return Arrays.asList(new Object[]{queryType, bsql.getPhysicsDBGroup().getGroupName(), bsql.getSQLToRun(), params, new Integer(startPos), new Integer(pageSize)}) ;
 	}
 	
 	public long count(SearchExpression se) {
+		int cacheMode = se.getCountCacheMode() < 0 ? se.getCacheMode() : se.getCountCacheMode() ;
+		
+		return count(se, cacheMode) ;
+	}
+	
+	/**
+	 * The count of records in page(). Cached only if the count cache mode is set explicitly.
+	 */
+	protected long countForPage(SearchExpression se){
+		int cacheMode = se.getCountCacheMode() < 0 ? SearchExpression.CACHE_MODE_NONE : se.getCountCacheMode() ;
+		
+		return count(se, cacheMode) ;
+	}
+	
+	protected long count(SearchExpression se, int cacheMode) {
 		if(se.isEmptyQuery()){
 			//must resulted in no results.
 			return 0L ;
@@ -291,7 +479,20 @@ public class AbstractTranSessionImpl {
 		
 		CompiledSQL sql = this.compiledSQLBuilder.buildCompiledSQL(ms).setParamPropMapping(sp.getParamPropMapping()) ;
 		
-		Object ret = findCell00(se.prepareHits(sql.bind(sp.getSearchParams())), Long.class.getName()) ;
+		final BindedCompiledSQL bsql = se.prepareHits(sql.bind(sp.getSearchParams())) ;
+		final boolean estimated = se.getCountMode() == SearchExpression.COUNT_MODE_ESTIMATED ;
+		Object ret ;
+		
+		QueryResultCache cache = getQueryResultCache(m, cacheMode) ;
+		if(cache == null){
+			ret = estimated ? estimateCount(bsql) : findCell00(bsql, Long.class.getName()) ;
+		}else{
+			ret = cache.get(createQueryCacheKey(estimated ? "estimate" : "count", bsql, 0, 0), cacheMode, new QueryResultCache.Loader(){
+				public Object load() {
+					return estimated ? estimateCount(bsql) : findCell00(bsql, Long.class.getName()) ;
+				}
+			}) ;
+		}
 		
 		if(ret == null){
 			return 0L ;
@@ -300,12 +501,74 @@ public class AbstractTranSessionImpl {
 		}
 	}
 	
+	/**
+	 * Ask the query planner how many rows the count sql will count. 
+	 * Execute the count sql if the database doesn't give estimates.
+	 * 
+	 * @see Dialect#getEstimatedCountSQL(String)
+	 */
+	protected Long estimateCount(BindedCompiledSQL bsql){
+		ObjectMapping m = bsql.getCompiledSQLToRun().getMapping() ;
+		Dialect dialect = m.getDbGroup().getDialect() ;
+		String rawSQL = dialect.getEstimatedCountSQL(bsql.getSQLToRun()) ;
+		
+		if(rawSQL == null){
+			return (Long) findCell00(bsql, Long.class.getName()) ;
+		}
+		
+		boolean measureTime = this.debugService.isMeasureTime() ;
+		long startTime = 0L ;
+		if(measureTime){
+			startTime = System.nanoTime() ;
+		}
+		
+		PhysicsDBGroup fdb = m.getDbGroup().getPhysicsDBGroup(bsql.getTableCondition()) ;
+		PreparedStatement pstm = null ;
+		ResultSet rs = null ;
+		long count ;
+		
+		try{
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
+			this.applyQueryTimeout(pstm) ;
+			
+			bsql.prepareNamedParams(dialect, pstm) ;
+			
+			rs = pstm.executeQuery() ;
+			
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
+				long timeCost = 0 ;
+				if(measureTime){
+					timeCost = System.nanoTime() - startTime ;
+				}
+				
+				this.debugService.logSQL(bsql, rawSQL, timeCost) ;
+			}
+			
+			count = dialect.readEstimatedCount(rs) ;
+		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
+			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
+		}finally{
+			CloseUtil.close(rs) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
+		}
+		
+		//no estimate in the plan.
+		if(count < 0){
+			return (Long) findCell00(bsql, Long.class.getName()) ;
+		}
+		
+		return new Long(count) ;
+	}
+	
 	public PageFlip page(SearchExpression se) {
 		if(se.isEmptyQuery()){
 			Class m_flip = se.getPageFlipClass() ;
 			
 			PageFlip pf = null ;
-			if(m_flip == null){
+			if(se.isKeysetPagination() && (m_flip == null || !KeysetPageFlip.class.isAssignableFrom(m_flip))){
+				pf = new KeysetPageFlip() ;
+			}else if(m_flip == null){
 				pf = new PageFlip() ;
 			}else{
 				pf = (PageFlip) BeanCreator.newBeanInstance(m_flip) ;
@@ -323,6 +586,10 @@ public class AbstractTranSessionImpl {
 			throw new ORMException("unknow object:" + se.getFrom()) ;
 		}
 		
+		if(se.isKeysetPagination()){
+			return pageByKeyset(m, se) ;
+		}
+		
 		PageFlip pf = null ;
 		
 		Class m_flip = se.getPageFlipClass() ;
@@ -333,6 +600,11 @@ public class AbstractTranSessionImpl {
 		}
 		
 		List records = null ;
+		Future countTask = null ;
+		
+		if(se.isLoadRecords() && se.isComputeRecordNumber() && se.isCountInParallel()){
+			countTask = submitParallelCount(se) ;
+		}
 		
 		if(se.isLoadRecords()){
 			records = list(se) ;
@@ -340,20 +612,103 @@ public class AbstractTranSessionImpl {
 		
 		int recordCount = 0 ;
 		
-		if(se.isComputeRecordNumber()){
-			SearchParams sp = new SearchParams() ;
-			MarkedSQL ms = se.toComputeRecordNumberSQL((POJOBasedObjectMapping) m, sp) ;
-			
-			CompiledSQL sql = this.compiledSQLBuilder.buildCompiledSQL(ms).setParamPropMapping(sp.getParamPropMapping()) ;
-			
-			Integer count = (Integer) findCell00(se.prepareHits(sql.bind(sp.getSearchParams())), "int") ;
-			recordCount = count.intValue() ;
+		if(countTask != null){
+			recordCount = (int) waitForCount(countTask) ;
+		}else if(se.isComputeRecordNumber()){
+			recordCount = (int) countForPage(se) ;
 		}
 		
 		pf.setResult(recordCount, se.getPageNo(), se.getPageSize(), records) ;
 		
 		return pf;
 	}
+	
+	/**
+	 * Start computing the count of @param se in another connection, in parallel with loading the records.
+	 * 
+	 * @return null if the count should be computed in this session after the records are loaded.
+	 */
+	protected Future submitParallelCount(SearchExpression se){
+		//write sessions must count in the same transaction to see their own changes.
+		return null ;
+	}
+	
+	protected long waitForCount(Future countTask){
+		try {
+			return ((Long) countTask.get()).longValue() ;
+		} catch (InterruptedException e) {
+			countTask.cancel(true) ;
+			Thread.currentThread().interrupt() ;
+			
+			throw new DaoException("interrupted while waiting for the count.", e) ;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() ;
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause ;
+			}
+			
+			throw new DaoException("failed to count.", cause) ;
+		}
+	}
+	
+	/**
+	 * Page with keyset pagination. One more row is queried to tell whether more rows exist in the reading direction.
+	 */
+	protected KeysetPageFlip pageByKeyset(ObjectMapping m, SearchExpression se){
+		Class m_flip = se.getPageFlipClass() ;
+		KeysetPageFlip pf ;
+		
+		if(m_flip != null && KeysetPageFlip.class.isAssignableFrom(m_flip)){
+			pf = (KeysetPageFlip) BeanCreator.newBeanInstance(m_flip) ;
+		}else{
+			pf = new KeysetPageFlip() ;
+		}
+		
+		int pageSize = se.getPageSize() ;
+		boolean backward = se.isSeekBackward() ;
+		boolean fromCursor = StringUtil.notEmpty(se.getSeekCursor()) ;
+		
+		LinkedList records = new LinkedList() ;
+		boolean hasMore = false ;
+		
+		if(se.isLoadRecords()){
+			records.addAll(list(se.copy().setPageSize(pageSize + 1))) ;
+			
+			if(records.size() > pageSize){
+				hasMore = true ;
+				
+				//the extra row is the farthest one from the cursor.
+				if(backward){
+					records.removeFirst() ;
+				}else{
+					records.removeLast() ;
+				}
+			}
+		}
+		
+		int recordCount = 0 ;
+		if(se.isComputeRecordNumber()){
+			recordCount = (int) count(se) ;
+		}
+		
+		String previousCursor = null ;
+		String nextCursor = null ;
+		
+		if(!records.isEmpty()){
+			String[] props = se.getKeysetPropNames(m) ;
+			
+			previousCursor = KeysetCursor.forRow(records.getFirst(), props, m.getBeanWrapper()).toToken() ;
+			nextCursor = KeysetCursor.forRow(records.getLast(), props, m.getBeanWrapper()).toToken() ;
+		}
+		
+		if(backward){
+			pf.setKeysetResult(recordCount, pageSize, records, previousCursor, nextCursor, hasMore, fromCursor) ;
+		}else{
+			pf.setKeysetResult(recordCount, pageSize, records, previousCursor, nextCursor, fromCursor, hasMore) ;
+		}
+		
+		return pf ;
+	}
 
 	public Object findCell00(String id, Map params, String returnType){
 		CompiledSQL sql = compiledSQLManager.getSQL(id) ;
@@ -391,18 +746,18 @@ public class AbstractTranSessionImpl {
 			startTime = System.nanoTime() ;
 		}
 		
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
 		PreparedStatement pstm = null ;
 		ResultSet rs = null ;
 		
 		try{
-			Connection conn = getConnection(db, bsql.getTableCondition()) ;
-			pstm = conn.prepareStatement(rawSQL) ;
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
 			this.applyQueryTimeout(pstm) ;
 			bsql.prepareNamedParams(db.getDialect(), pstm) ;
 			
 			rs = pstm.executeQuery() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -429,10 +784,11 @@ public class AbstractTranSessionImpl {
 				}
 			}
 		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
 			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
 		}finally{
 			CloseUtil.close(rs) ;
-			CloseUtil.close(pstm) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
 		}
 	}
 	
@@ -467,18 +823,18 @@ public class AbstractTranSessionImpl {
 			startTime = System.nanoTime() ;
 		}
 		
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
 		PreparedStatement pstm = null ;
 		ResultSet rs = null ;
 		
 		try{
-			Connection conn = getConnection(db, bsql.getTableCondition()) ;
-			pstm = conn.prepareStatement(rawSQL) ;
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
 			this.applyQueryTimeout(pstm) ;
 			bsql.prepareNamedParams(db.getDialect(), pstm) ;
 			
 			rs = pstm.executeQuery() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -503,10 +859,11 @@ public class AbstractTranSessionImpl {
 				}
 			}
 		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
 			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
 		}finally{
 			CloseUtil.close(rs) ;
-			CloseUtil.close(pstm) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
 		}
 	}
 
@@ -550,19 +907,19 @@ public class AbstractTranSessionImpl {
 			startTime = System.nanoTime() ;
 		}
 		
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
 		PreparedStatement pstm = null ;
 		ResultSet rs = null ;
 		
 		try{
-			Connection conn = getConnection(db, bsql.getTableCondition()) ;
-			pstm = conn.prepareStatement(rawSQL) ;
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
 			this.applyQueryTimeout(pstm) ;
 			
 			bsql.prepareNamedParams(db.getDialect(), pstm) ;
 			
 			rs = pstm.executeQuery() ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
@@ -586,10 +943,11 @@ public class AbstractTranSessionImpl {
 				}
 			}
 		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
 			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
 		}finally{
 			CloseUtil.close(rs) ;
-			CloseUtil.close(pstm) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
 		}
 	}
 
@@ -695,6 +1053,17 @@ public class AbstractTranSessionImpl {
 		return new JDBCTemplateImpl(this, group.getDialect(), debugService, conn, isReadonly) ;
 	}
 	
+	/**
+	 * Tell the debug service the sql failed.
+	 * 
+	 * @param startTime the System.nanoTime() when the execution started, or 0 if not measured.
+	 */
+	protected void logSQLError(String rawSQL, long startTime){
+		if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
+			this.debugService.logSQLError(rawSQL, startTime == 0L ? 0L : System.nanoTime() - startTime) ;
+		}
+	}
+	
 	/**
 	 * Apply the current query timeout, if any, to the current <code>PreparedStatement</code>.
 	 * 
@@ -17,6 +17,7 @@
 package org.guzz.transaction;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -49,9 +50,16 @@ public class ConnectionsGroup {
 	/**保存已经打开的连接。针对同一个数据库只打开一个连接（保证事务提交）。*/
 	protected final Map opennedConnections = new HashMap() ;
 	
+	/**groupName -> {@link PreparedStatementCache} of the opened connection.*/
+	protected final Map statementCaches = new HashMap() ;
+	
 	public ConnectionsGroup(ConnectionFetcher connectionFetcher){
 		this.connectionFetcher = connectionFetcher ;
 	}
+	
+	public ConnectionFetcher getConnectionFetcher() {
+		return connectionFetcher;
+	}
 
 	public void commit(){
 		try {
@@ -106,7 +114,18 @@ public class ConnectionsGroup {
 			log.warn("Some connections' transaction isolations have changed but never reset back before closing.") ;
 		}
 		
-		Iterator i = this.opennedConnections.values().iterator() ;
+		//statements must be closed before their connections.
+		Iterator i = this.statementCaches.values().iterator() ;
+		
+		while(i.hasNext()){
+			PreparedStatementCache cache = (PreparedStatementCache) i.next() ;
+			
+			cache.close() ;
+		}
+		
+		this.statementCaches.clear() ;
+		
+		i = this.opennedConnections.values().iterator() ;
 		
 		while(i.hasNext()){
 			Connection conn = (Connection) i.next() ;
@@ -136,6 +155,43 @@ public class ConnectionsGroup {
 		return conn ;
 	}
 	
+	/**
+	 * Prepare the sql on the connection of the given group. The statement is reused from the cache of the connection
+	 * if {@link PhysicsDBGroup#getStatementCacheSize()} is greater than 0.
+	 * <p/>
+	 * The returned statement must be passed back to {@link #releaseStatement(PhysicsDBGroup, PreparedStatement)} instead of being closed.
+	 */
+	public PreparedStatement prepareStatement(PhysicsDBGroup fdb, String sql) throws SQLException {
+		Connection conn = getConnection(fdb) ;
+		
+		if(fdb.getStatementCacheSize() <= 0){
+			return conn.prepareStatement(sql) ;
+		}
+		
+		PreparedStatementCache cache = (PreparedStatementCache) this.statementCaches.get(fdb.getGroupName()) ;
+		if(cache == null){
+			cache = new PreparedStatementCache(conn, fdb.getStatementCacheSize(), fdb.getStatementCacheStats()) ;
+			this.statementCaches.put(fdb.getGroupName(), cache) ;
+		}
+		
+		return cache.prepareStatement(sql) ;
+	}
+	
+	/**
+	 * Return the statement prepared by {@link #prepareStatement(PhysicsDBGroup, String)}. It is closed if the statement cache is not enabled.
+	 */
+	public void releaseStatement(PhysicsDBGroup fdb, PreparedStatement pstm) {
+		if(pstm == null) return ;
+		
+		PreparedStatementCache cache = (PreparedStatementCache) this.statementCaches.get(fdb.getGroupName()) ;
+		
+		if(cache == null){
+			CloseUtil.close(pstm) ;
+		}else{
+			cache.release(pstm) ;
+		}
+	}
+	
 	public void setTransactionIsolation(Connection conn, int level) throws SQLException{
 		if(isp != null){
 			isp.setIsolation(conn, level) ;
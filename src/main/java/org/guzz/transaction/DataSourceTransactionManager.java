@@ -16,6 +16,14 @@
  */
 package org.guzz.transaction;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.guzz.ContextLifeCycle;
 import org.guzz.connection.DBGroupManager;
 import org.guzz.dao.WriteTemplate;
 import org.guzz.orm.mapping.ObjectMappingManager;
@@ -29,7 +37,10 @@ import org.guzz.service.core.DebugService;
  *
  * @author liukaixuan(liukaixuan@gmail.com)
  */
-public class DataSourceTransactionManager implements TransactionManager {
+public class DataSourceTransactionManager implements TransactionManager, ContextLifeCycle {
+	
+	/**max threads computing counts of page() in parallel. When all are busy, the count is computed in the caller's thread.*/
+	private static final int MAX_PARALLEL_COUNT_THREADS = 32 ;
 	
 	private CompiledSQLManager compiledSQLManager ;
 	
@@ -44,6 +55,12 @@ public class DataSourceTransactionManager implements TransactionManager {
 	
 	protected final TranSessionLocator tranSessionLocator ;
 	
+	/**guarded by this*/
+	private ExecutorService countExecutor ;
+	
+	/**guarded by this*/
+	private boolean shutdown ;
+	
 	public DataSourceTransactionManager(ObjectMappingManager omm, CompiledSQLManager compiledSQLManager,
 			CompiledSQLBuilder compiledSQLBuilder, DebugService debugService, DBGroupManager dbGroupManager, 
 			TranSessionLocator tranSessionLocator) {
@@ -56,7 +73,17 @@ public class DataSourceTransactionManager implements TransactionManager {
 	}
 	
 	public ReadonlyTranSession openDelayReadTran() {
-		return new ReadonlyTranSessionImpl(omm, compiledSQLManager, debugService, dbGroupManager, true) ;
+		ReadonlyTranSessionImpl session = new ReadonlyTranSessionImpl(omm, compiledSQLManager, debugService, dbGroupManager, true) ;
+		session.setCountExecutor(getCountExecutor()) ;
+		
+		return session ;
+	}
+	
+	public ReadonlyTranSession openDelayReadTran(long maxLatency) {
+		ReadonlyTranSessionImpl session = new ReadonlyTranSessionImpl(omm, compiledSQLManager, debugService, dbGroupManager, maxLatency) ;
+		session.setCountExecutor(getCountExecutor()) ;
+		
+		return session ;
 	}
 
 	public WriteTranSession openRWTran(boolean autoCommit)  {
@@ -64,7 +91,51 @@ public class DataSourceTransactionManager implements TransactionManager {
 	}
 
 	public ReadonlyTranSession openNoDelayReadonlyTran() {
-		return new ReadonlyTranSessionImpl(omm, compiledSQLManager, debugService, dbGroupManager, false) ;
+		ReadonlyTranSessionImpl session = new ReadonlyTranSessionImpl(omm, compiledSQLManager, debugService, dbGroupManager, false) ;
+		session.setCountExecutor(getCountExecutor()) ;
+		
+		return session ;
+	}
+	
+	/**
+	 * Threads computing counts of page() in parallel, created on the first use.
+	 * 
+	 * @return null after the shutdown, counts are computed in the sessions then.
+	 */
+	protected synchronized ExecutorService getCountExecutor(){
+		if(shutdown){
+			return null ;
+		}
+		
+		if(countExecutor == null){
+			final AtomicInteger threadNumber = new AtomicInteger() ;
+			
+			countExecutor = new ThreadPoolExecutor(0, MAX_PARALLEL_COUNT_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue(), new ThreadFactory(){
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, DebugService.DEMON_NAME_PREFIX + "pageCount-" + threadNumber.incrementAndGet()) ;
+					t.setDaemon(true) ;
+					
+					return t;
+				}
+			}, new ThreadPoolExecutor.CallerRunsPolicy()) ;
+		}
+		
+		return countExecutor ;
+	}
+	
+	public void startup() {
+	}
+	
+	/**
+	 * Stop the parallel count threads.
+	 */
+	public synchronized void shutdown() {
+		this.shutdown = true ;
+		
+		if(countExecutor != null){
+			countExecutor.shutdown() ;
+			countExecutor = null ;
+		}
 	}
 	
 	public CompiledSQLBuilder getCompiledSQLBuilder() {
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.guzz.connection.StatementCacheStats;
+import org.guzz.util.CloseUtil;
+
+/**
+ * 
+ * Bounded LRU cache of {@link PreparedStatement}s prepared on one {@link Connection}.
+ * <p>
+ * Statements are keyed by the sql text and the result set type/concurrency. A statement is removed from the cache when
+ * it is checked out, and put back by {@link #release(PreparedStatement)} after its parameters are cleared, so one statement
+ * is never shared by two callers even if the same sql is executed recursively.
+ * </p>
+ * The cache is not thread-safe; it lives and dies with the connection of one {@link TranSession}.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class PreparedStatementCache {
+	
+	private final Connection conn ;
+	
+	private final int maxSize ;
+	
+	private final StatementCacheStats stats ;
+	
+	private final LinkedHashMap cachedStatements ;
+	
+	/**PreparedStatement -> key of statements checked out from this cache.*/
+	private final Map borrowedKeys = new IdentityHashMap() ;
+	
+	public PreparedStatementCache(Connection conn, int maxSize, StatementCacheStats stats){
+		this.conn = conn ;
+		this.maxSize = maxSize ;
+		this.stats = stats ;
+		
+		this.cachedStatements = new StatementLRUMap(maxSize, stats) ;
+	}
+	
+	public PreparedStatement prepareStatement(String sql) throws SQLException{
+		return prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ;
+	}
+	
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException{
+		String key = resultSetType + "#" + resultSetConcurrency + "#" + sql ;
+		PreparedStatement pstm = (PreparedStatement) this.cachedStatements.remove(key) ;
+		
+		if(pstm != null){
+			stats.hit() ;
+		}else{
+			stats.miss() ;
+			pstm = conn.prepareStatement(sql, resultSetType, resultSetConcurrency) ;
+		}
+		
+		this.borrowedKeys.put(pstm, key) ;
+		
+		return pstm ;
+	}
+	
+	/**
+	 * Return the statement to the cache. Statements not prepared by this cache, or failed to reset, are closed.
+	 */
+	public void release(PreparedStatement pstm){
+		if(pstm == null) return ;
+		
+		String key = (String) this.borrowedKeys.remove(pstm) ;
+		if(key == null){
+			CloseUtil.close(pstm) ;
+			return ;
+		}
+		
+		try {
+			pstm.clearParameters() ;
+			
+			//timeout is only set when configured, reset it for the next user.
+			if(pstm.getQueryTimeout() != 0){
+				pstm.setQueryTimeout(0) ;
+			}
+		} catch (SQLException e) {
+			CloseUtil.close(pstm) ;
+			return ;
+		}
+		
+		Object old = this.cachedStatements.put(key, pstm) ;
+		if(old != null){
+			CloseUtil.close((PreparedStatement) old) ;
+		}
+	}
+	
+	public int size(){
+		return this.cachedStatements.size() ;
+	}
+	
+	/**
+	 * Close all cached and borrowed statements. Must be called before the connection is closed.
+	 */
+	public void close(){
+		Iterator i = this.cachedStatements.values().iterator() ;
+		while(i.hasNext()){
+			CloseUtil.close((PreparedStatement) i.next()) ;
+		}
+		
+		i = this.borrowedKeys.keySet().iterator() ;
+		while(i.hasNext()){
+			CloseUtil.close((PreparedStatement) i.next()) ;
+		}
+		
+		this.cachedStatements.clear() ;
+		this.borrowedKeys.clear() ;
+	}
+
+	/**
+	 * LRU map closing the evicted statements.
+	 */
+	static class StatementLRUMap extends LinkedHashMap{
+		private static final long serialVersionUID = 3150620358341740317L;
+		
+		private final int maxSize ;
+		
+		private final StatementCacheStats stats ;
+		
+		StatementLRUMap(int maxSize, StatementCacheStats stats){
+			super(16, 0.75f, true) ;
+			this.maxSize = maxSize ;
+			this.stats = stats ;
+		}
+		
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			if(size() > this.maxSize){
+				CloseUtil.close((PreparedStatement) eldest.getValue()) ;
+				this.stats.evict() ;
+				
+				return true ;
+			}
+			
+			return false ;
+		}
+	}
+
+}
@@ -67,6 +67,24 @@ public interface ReadonlyTranSession extends TranSession{
 	
 	public List list(SearchExpression se) ;
 	
+	/**
+	 * Execute query without pagination, and map the rows lazily one by one as the returned cursor moves forward. 
+	 * Use it to read large result sets, the memory used stays flat no matter how many rows are returned.
+	 * <p/>
+	 * The cursor must be closed (or read to the end) before the session is closed.
+	 * 
+	 * @param bsql
+	 * @param fetchSize rows to fetch from the database each time. Mysql always streams row by row.
+	 */
+	public ResultCursor iterate(BindedCompiledSQL bsql, int fetchSize) ;
+	
+	/**
+	 * Execute query with the pagination of @param se ignored, and map the rows lazily one by one.
+	 * 
+	 * @see #iterate(BindedCompiledSQL, int)
+	 */
+	public ResultCursor iterate(SearchExpression se, int fetchSize) ;
+	
 	/**分页查询*/
 	public PageFlip page(SearchExpression se) ;
 	
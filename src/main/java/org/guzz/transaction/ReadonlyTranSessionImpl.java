@@ -18,12 +18,19 @@ package org.guzz.transaction;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.guzz.connection.ConnectionFetcher;
 import org.guzz.connection.DBGroupManager;
 import org.guzz.connection.PhysicsDBGroup;
 import org.guzz.exception.DaoException;
 import org.guzz.orm.mapping.ObjectMappingManager;
+import org.guzz.orm.se.SearchExpression;
 import org.guzz.orm.sql.CompiledSQLManager;
 import org.guzz.service.core.DatabaseService;
 import org.guzz.service.core.DebugService;
@@ -38,30 +45,94 @@ import org.guzz.util.CloseUtil;
 public class ReadonlyTranSessionImpl extends AbstractTranSessionImpl implements ReadonlyTranSession {
 //	private static transient final Log log = LogFactory.getLog(ReadonlyTranSessionImpl.class) ;	
 	
+	/**threads computing counts of page() in parallel, owned by the transaction manager. null to count in this session.*/
+	private ExecutorService countExecutor ;
+	
 	private final boolean allowDelay ;
 	
 	public ReadonlyTranSessionImpl(ObjectMappingManager omm, CompiledSQLManager compiledSQLManager, DebugService debugService, DBGroupManager dbGroupManager, boolean allowDelay){
-		super(omm, compiledSQLManager, new ReadonlyConnectionFetcher(allowDelay), debugService, dbGroupManager, true) ;
+		super(omm, compiledSQLManager, new ReadonlyConnectionFetcher(allowDelay, -1), debugService, dbGroupManager, true) ;
 		this.allowDelay = allowDelay ;
 	}
 	
+	/**
+	 * Open a delay-allowed session reading slaves only if their replication lag is within maxLatency milliseconds.
+	 */
+	public ReadonlyTranSessionImpl(ObjectMappingManager omm, CompiledSQLManager compiledSQLManager, DebugService debugService, DBGroupManager dbGroupManager, long maxLatency){
+		super(omm, compiledSQLManager, new ReadonlyConnectionFetcher(true, maxLatency), debugService, dbGroupManager, true) ;
+		this.allowDelay = true ;
+	}
+	
 	public ReadonlyTranSessionImpl(WriteTranSessionImpl writeSessionImpl){
 		super(writeSessionImpl) ;
 		this.allowDelay = false ;
 	}
+	
+	/**
+	 * Open a session reading the same databases as @param sessionImpl, but with its own connections.
+	 */
+	protected ReadonlyTranSessionImpl(ReadonlyTranSessionImpl sessionImpl, ConnectionFetcher connectionFetcher){
+		super(sessionImpl.omm, sessionImpl.compiledSQLManager, connectionFetcher, sessionImpl.debugService, sessionImpl.dbGroupManager, true) ;
+		this.allowDelay = sessionImpl.allowDelay ;
+		this.setQueryTimeoutInSeconds(sessionImpl.getQueryTimeoutInSeconds()) ;
+	}
 
 	public boolean allowDelayRead() {
 		return allowDelay ;
 	}
 	
+	public ExecutorService getCountExecutor() {
+		return countExecutor;
+	}
+
+	public void setCountExecutor(ExecutorService countExecutor) {
+		this.countExecutor = countExecutor;
+	}
+
+	/**
+	 * Count in a new session with its own connections, sharing nothing with this session.
+	 */
+	protected Future submitParallelCount(SearchExpression se) {
+		//sessions sharing the connections of a write session must see its uncommitted changes.
+		if(countExecutor == null || !(this.connectionsGroup.getConnectionFetcher() instanceof ReadonlyConnectionFetcher)){
+			return null ;
+		}
+		
+		//the table condition set by Guzz.setTableCondition() is a ThreadLocal, resolve it in this thread.
+		final SearchExpression countSE = se.copy().setTableCondition(se.getTableCondition()) ;
+		final ReadonlyTranSessionImpl countSession = new ReadonlyTranSessionImpl(this, this.connectionsGroup.getConnectionFetcher()) ;
+		
+		try{
+			return countExecutor.submit(new Callable(){
+				public Object call() throws Exception {
+					try{
+						return new Long(countSession.countForPage(countSE)) ;
+					}finally{
+						countSession.close() ;
+					}
+				}
+			}) ;
+		}catch(RejectedExecutionException e){
+			//the transaction manager is shutdown.
+			countSession.close() ;
+			
+			return null ;
+		}
+	}
+	
 }
 
 class ReadonlyConnectionFetcher implements ConnectionFetcher{
+	private static transient final Log log = LogFactory.getLog(ReadonlyConnectionFetcher.class) ;
 	
 	private final boolean allowDelay ;
 	
-	public ReadonlyConnectionFetcher(boolean allowDelay){
+	/**max replication lag acceptable in milliseconds. -1 means no limit.*/
+	private final long maxLatency ;
+	
+	public ReadonlyConnectionFetcher(boolean allowDelay, long maxLatency){
 		this.allowDelay = allowDelay ;
+		this.maxLatency = maxLatency ;
 	}
 	
 	public Connection getConnection(PhysicsDBGroup dbGroup) {
@@ -75,16 +146,19 @@ class ReadonlyConnectionFetcher implements ConnectionFetcher{
 	public Connection openDelayReadConn(PhysicsDBGroup dbGroup) {
 		DatabaseService slaveDatabaseService = dbGroup.getSlaveDB() ;
 		
-		if(slaveDatabaseService != null && slaveDatabaseService.isAvailable()){
+		if(slaveDatabaseService != null && slaveDatabaseService.isAvailable() && isFreshEnough(dbGroup)){
 			Connection conn = null;
 			try {
-				conn = slaveDatabaseService.getDataSource().getConnection();
+				//the slave service fails over to other slaves itself.
+				conn = slaveDatabaseService.getConnection();
 			} catch (SQLException e) {
 				//be careful of conn leak.
 				CloseUtil.close(conn) ;
 				
-				//TODO: add a check job to diagnose the datasource. refetch the connection from another slave datasource.
-				throw new DaoException("failed to acquire a readonly conn.", e) ;
+				//no slave is available. read from the master.
+				log.warn("failed to acquire a readonly conn from slaves, try the master db.", e) ;
+				
+				return openNoDelayReadonlyConn(dbGroup) ;
 			}
 
 			try {
@@ -102,13 +176,24 @@ class ReadonlyConnectionFetcher implements ConnectionFetcher{
 		return openNoDelayReadonlyConn(dbGroup) ;
 	}
 	
+	protected boolean isFreshEnough(PhysicsDBGroup dbGroup){
+		if(maxLatency < 0){
+			return true ;
+		}
+		
+		long latency = dbGroup.getLatency() ;
+		
+		//unknown lag is taken as too stale.
+		return latency >= 0 && latency <= maxLatency ;
+	}
+	
 	public Connection openNoDelayReadonlyConn(PhysicsDBGroup dbGroup){
 		DatabaseService masterDatabaseService = dbGroup.getMasterDB() ;
 		
 		if(masterDatabaseService != null && masterDatabaseService.isAvailable()){
 			Connection conn = null;
 			try {
-				conn = masterDatabaseService.getDataSource().getConnection();
+				conn = masterDatabaseService.getConnection();
 				
 				//were not make master database's connection to readonly
 				return conn ;
@@ -116,7 +201,6 @@ class ReadonlyConnectionFetcher implements ConnectionFetcher{
 				//be careful of conn leak.
 				CloseUtil.close(conn) ;
 				
-				//TODO: add a check job to diagnose the datasource. refetch the connection from another slave datasource.
 				throw new DaoException("failed to acquire a no-delay readonly conn.", e) ;
 			}
 		}
@@ -127,5 +211,9 @@ class ReadonlyConnectionFetcher implements ConnectionFetcher{
 	public boolean isAllowDelay() {
 		return allowDelay;
 	}
+
+	public long getMaxLatency() {
+		return maxLatency;
+	}
 	
 }
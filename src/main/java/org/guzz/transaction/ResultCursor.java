@@ -0,0 +1,44 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.util.Iterator;
+
+/**
+ * 
+ * Forward-only iterator over a query result. Rows are read from the database and mapped one by one as {@link #next()} is called, 
+ * so the memory used stays flat no matter how many rows are returned.
+ * <p/>
+ * The cursor holds an open statement of its session. It is released automatically when all rows are read; 
+ * otherwise call {@link #close()} (in a finally block) before closing the session.
+ * 
+ * @see ReadonlyTranSession#iterate(org.guzz.orm.sql.BindedCompiledSQL, int)
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface ResultCursor extends Iterator {
+	
+	/**
+	 * Count of rows returned by {@link #next()} so far.
+	 */
+	public int getRowCount() ;
+	
+	/**
+	 * Release the ResultSet and the statement. Calling it more than once is allowed.
+	 */
+	public void close() ;
+
+}
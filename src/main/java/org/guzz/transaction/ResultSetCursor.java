@@ -0,0 +1,128 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import org.guzz.exception.JDBCException;
+import org.guzz.orm.mapping.RowMappingPlan;
+import org.guzz.util.CloseUtil;
+
+/**
+ * 
+ * {@link ResultCursor} mapping rows of an open {@link ResultSet} with a {@link RowMappingPlan}.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class ResultSetCursor implements ResultCursor {
+	
+	private final PreparedStatement pstm ;
+	
+	private final ResultSet rs ;
+	
+	private final RowMappingPlan plan ;
+	
+	private final String sql ;
+	
+	private boolean closed ;
+	
+	/**has rs been moved to a row not returned yet?*/
+	private boolean rowAhead ;
+	
+	private int rowCount ;
+	
+	/**
+	 * @param pstm the statement to close with the cursor.
+	 * @param rs opened ResultSet
+	 * @param plan plan to map rows
+	 * @param sql the executed sql, for error messages.
+	 */
+	public ResultSetCursor(PreparedStatement pstm, ResultSet rs, RowMappingPlan plan, String sql){
+		this.pstm = pstm ;
+		this.rs = rs ;
+		this.plan = plan ;
+		this.sql = sql ;
+	}
+
+	/**
+	 * Cursor without any row. Used when the query must result in no results.
+	 */
+	public static ResultSetCursor emptyCursor(){
+		ResultSetCursor c = new ResultSetCursor(null, null, null, null) ;
+		c.closed = true ;
+		
+		return c ;
+	}
+
+	public boolean hasNext() {
+		if(closed) return false ;
+		if(rowAhead) return true ;
+		
+		try {
+			rowAhead = rs.next() ;
+		} catch (SQLException e) {
+			close() ;
+			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + sql, e, e.getSQLState()) ;
+		}
+		
+		//exhausted
+		if(!rowAhead){
+			close() ;
+		}
+		
+		return rowAhead ;
+	}
+
+	public Object next() {
+		if(!hasNext()){
+			throw new NoSuchElementException("no more rows.") ;
+		}
+		
+		rowAhead = false ;
+		
+		try {
+			Object row = plan.rs2Object(rs) ;
+			rowCount++ ;
+			
+			return row ;
+		} catch (SQLException e) {
+			close() ;
+			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + sql, e, e.getSQLState()) ;
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("ResultCursor is read-only.") ;
+	}
+	
+	public int getRowCount() {
+		return rowCount ;
+	}
+
+	public void close() {
+		if(closed) return ;
+		closed = true ;
+		rowAhead = false ;
+		
+		CloseUtil.close(rs) ;
+		CloseUtil.close(pstm) ;
+	}
+
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.guzz.GuzzContext;
+import org.guzz.connection.DBGroup;
+import org.guzz.connection.VirtualDBGroup;
+import org.guzz.exception.DaoException;
+import org.guzz.orm.Business;
+import org.guzz.orm.ObjectMapping;
+import org.guzz.orm.ShadowTableView;
+import org.guzz.orm.TableConditionEnumerable;
+import org.guzz.orm.rdms.SimpleTable;
+import org.guzz.orm.rdms.Table;
+import org.guzz.orm.se.OrderByTerm;
+import org.guzz.orm.se.SearchExpression;
+import org.guzz.orm.sql.BindedCompiledSQL;
+import org.guzz.orm.sql.CompiledSQL;
+import org.guzz.util.javabean.BeanWrapper;
+
+/**
+ * 
+ * Scatter-gather queries over sharded tables ({@link ShadowTableView}, {@link org.guzz.orm.CustomTableView}) and sharded databases ({@link org.guzz.connection.VirtualDBView}).
+ * <p>
+ * The query is executed once for each table condition in parallel, each in its own {@link ReadonlyTranSession}, and the results are merged:
+ * <ul>
+ * <li>list: every shard is asked for the first (offset + limit) records, then the sorted results are merged with a k-way merge sort
+ * on the ORDER BY properties, and the global offset/limit is applied. Without ORDER BY, results are appended in the order of table conditions.</li>
+ * <li>count: counts of all shards are summed. Don't use it with countSelectPhrase like max(id).</li>
+ * </ul>
+ * </p>
+ * <p>
+ * If no table conditions are passed, the shards are listed by the {@link TableConditionEnumerable} view of the business.
+ * </p>
+ * The executor is thread-safe. Shutdown it after use if it creates its own thread pool.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class ShardedQueryExecutor {
+	private static final Log log = LogFactory.getLog(ShardedQueryExecutor.class) ;
+	
+	/**throw an exception on the first failed shard, and cancel the others.*/
+	public static final int FAIL_FAST = 1 ;
+	
+	/**skip failed shards, and return the results of the succeeded ones.*/
+	public static final int BEST_EFFORT = 2 ;
+	
+	private final GuzzContext guzzContext ;
+	
+	private final ExecutorService executor ;
+	
+	private final boolean ownExecutor ;
+	
+	private int failPolicy = FAIL_FAST ;
+	
+	private boolean allowDelayRead ;
+	
+	/**
+	 * @param guzzContext guzzContext
+	 * @param executor the thread pool to run queries in. It is not shutdown by this executor.
+	 */
+	public ShardedQueryExecutor(GuzzContext guzzContext, ExecutorService executor){
+		this.guzzContext = guzzContext ;
+		this.executor = executor ;
+		this.ownExecutor = false ;
+	}
+	
+	/**
+	 * @param guzzContext guzzContext
+	 * @param maxThreads max count of shards queried at the same time.
+	 */
+	public ShardedQueryExecutor(GuzzContext guzzContext, int maxThreads){
+		this.guzzContext = guzzContext ;
+		this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger() ;
+			
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "guzz-sharded-query-" + count.incrementAndGet()) ;
+				t.setDaemon(true) ;
+				
+				return t ;
+			}
+		}) ;
+		this.ownExecutor = true ;
+	}
+	
+	/**
+	 * Query the shards of the business in parallel, and merge the records by the order by of the SearchExpression.
+	 * 
+	 * @param se The query. Its page number, page size and skipCount are applied to the merged result.
+	 * @param tableConditions One condition for each shard. null to query all shards of the business.
+	 */
+	public List list(SearchExpression se, Object[] tableConditions){
+		if(se.isEmptyQuery()){
+			return new LinkedList() ;
+		}
+		
+		if(tableConditions == null){
+			tableConditions = getAllTableConditions(se.getFrom()) ;
+		}
+		
+		final int offset = se.getStartPos() - 1 ;
+		final int limit = se.getPageSize() ;
+		final int maxSizeForShard = maxSizeForShard(offset, limit) ;
+		
+		//copy in the caller thread; shards never touch the shared SearchExpression.
+		Callable[] tasks = new Callable[tableConditions.length] ;
+		for(int i = 0 ; i < tableConditions.length ; i++){
+			final SearchExpression shardSE = se.copy() ;
+			shardSE.setTableCondition(tableConditions[i]) ;
+			shardSE.setSkipCount(0) ;
+			shardSE.setPageNo(SearchExpression.FIRST_PAGE) ;
+			shardSE.setPageSize(maxSizeForShard) ;
+			
+			tasks[i] = new ShardTask(tableConditions[i]){
+				protected Object query(ReadonlyTranSession session) {
+					ObjectMapping m = guzzContext.getObjectMappingManager().getObjectMapping(shardSE.getFrom(), shardSE.getTableCondition()) ;
+					
+					return new ShardResult(session.list(shardSE), m == null ? null : m.getBeanWrapper()) ;
+				}
+			} ;
+		}
+		
+		return merge(execute(tasks), se.getOrderBy(), offset, limit) ;
+	}
+	
+	/**
+	 * Execute the sql over the shards in parallel, and merge the records.
+	 * 
+	 * @param cs The sql to execute. The sql should be sorted by the same properties as orderBy.
+	 * @param params Named parameters
+	 * @param tableConditions One condition for each shard.
+	 * @param orderBy The order of the sql in java properties(eg: id asc, createdTime desc), used to merge the records. null to append the records in the order of tableConditions.
+	 * @param startPos the first is 1, the second is 2... applied to the merged result.
+	 * @param maxSize max size of the merged result.
+	 */
+	public List list(final CompiledSQL cs, final Map params, Object[] tableConditions, String orderBy, int startPos, int maxSize){
+		final int offset = startPos - 1 ;
+		final int maxSizeForShard = maxSizeForShard(offset, maxSize) ;
+		
+		Callable[] tasks = new Callable[tableConditions.length] ;
+		for(int i = 0 ; i < tableConditions.length ; i++){
+			final Object tableCondition = tableConditions[i] ;
+			
+			tasks[i] = new ShardTask(tableCondition){
+				protected Object query(ReadonlyTranSession session) {
+					BindedCompiledSQL bsql = (params == null ? cs.bindNoParams() : cs.bind(params)).setTableCondition(tableCondition) ;
+					List records = session.list(bsql, 1, maxSizeForShard) ;
+					
+					return new ShardResult(records, bsql.getCompiledSQLToRun().getMapping().getBeanWrapper()) ;
+				}
+			} ;
+		}
+		
+		return merge(execute(tasks), orderBy == null ? null : new OrderByTerm(orderBy), offset, maxSize) ;
+	}
+	
+	/**
+	 * Sum the count of all shards.
+	 * 
+	 * @param se The query.
+	 * @param tableConditions One condition for each shard. null to count all shards of the business.
+	 */
+	public long count(SearchExpression se, Object[] tableConditions){
+		if(se.isEmptyQuery()){
+			return 0L ;
+		}
+		
+		if(tableConditions == null){
+			tableConditions = getAllTableConditions(se.getFrom()) ;
+		}
+		
+		Callable[] tasks = new Callable[tableConditions.length] ;
+		for(int i = 0 ; i < tableConditions.length ; i++){
+			final SearchExpression shardSE = se.copy() ;
+			shardSE.setTableCondition(tableConditions[i]) ;
+			
+			tasks[i] = new ShardTask(tableConditions[i]){
+				protected Object query(ReadonlyTranSession session) {
+					return new Long(session.count(shardSE)) ;
+				}
+			} ;
+		}
+		
+		List counts = execute(tasks) ;
+		long total = 0 ;
+		
+		for(int i = 0 ; i < counts.size() ; i++){
+			total += ((Long) counts.get(i)).longValue() ;
+		}
+		
+		return total ;
+	}
+	
+	/**
+	 * Ask the {@link TableConditionEnumerable} view of the business for the conditions of all shards.
+	 * <p>The shadow table view or custom table view is preferred to the virtual database view.</p>
+	 * 
+	 * @param businessName business name or domain class name
+	 */
+	public Object[] getAllTableConditions(String businessName){
+		Business business = guzzContext.getBusiness(businessName) ;
+		if(business == null){
+			throw new DaoException("unknown business:" + businessName) ;
+		}
+		
+		Object customView = guzzContext.getObjectMappingManager().getCustomTableView(business.getName()) ;
+		if(customView instanceof TableConditionEnumerable){
+			return ((TableConditionEnumerable) customView).getAllTableConditions() ;
+		}
+		
+		Table table = business.getTable() ;
+		if(table instanceof SimpleTable){
+			ShadowTableView view = ((SimpleTable) table).getShadowTableView() ;
+			
+			if(view instanceof TableConditionEnumerable){
+				return ((TableConditionEnumerable) view).getAllTableConditions() ;
+			}
+		}
+		
+		DBGroup db = guzzContext.getDBGroup(business.getDbGroup()) ;
+		if(db instanceof VirtualDBGroup){
+			Object view = ((VirtualDBGroup) db).getVirtualDBGroupView() ;
+			
+			if(view instanceof TableConditionEnumerable){
+				return ((TableConditionEnumerable) view).getAllTableConditions() ;
+			}
+		}
+		
+		throw new DaoException("business [" + businessName + "] has no view implementing " + TableConditionEnumerable.class.getName() + ", pass the table conditions explicitly.") ;
+	}
+	
+	public void shutdown(){
+		if(ownExecutor){
+			this.executor.shutdown() ;
+		}
+	}
+	
+	protected static int maxSizeForShard(int offset, int limit){
+		if(limit == Integer.MAX_VALUE){
+			return Integer.MAX_VALUE ;
+		}
+		
+		long size = (long) offset + limit ;
+		
+		return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size ;
+	}
+	
+	/**
+	 * Run the tasks in parallel.
+	 * 
+	 * @return results of the succeeded tasks, in the order of tasks.
+	 */
+	protected List execute(Callable[] tasks){
+		CompletionService cs = new ExecutorCompletionService(this.executor) ;
+		Future[] futures = new Future[tasks.length] ;
+		Object[] results = new Object[tasks.length] ;
+		
+		for(int i = 0 ; i < tasks.length ; i++){
+			futures[i] = cs.submit(tasks[i]) ;
+		}
+		
+		try{
+			for(int i = 0 ; i < tasks.length ; i++){
+				Future f = cs.take() ;
+				int index = indexOf(futures, f) ;
+				
+				try {
+					results[index] = f.get() ;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause() ;
+					Object tableCondition = tasks[index] instanceof ShardTask ? ((ShardTask) tasks[index]).tableCondition : null ;
+					
+					if(failPolicy == BEST_EFFORT){
+						log.warn("shard query failed, and is skipped. tableCondition:" + tableCondition, cause) ;
+					}else{
+						throw new DaoException("shard query failed. tableCondition:" + tableCondition, cause) ;
+					}
+				}
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt() ;
+			throw new DaoException("interrupted while waiting for shard queries.", e) ;
+		}finally{
+			//cancel the unfinished queries on errors.
+			for(int i = 0 ; i < futures.length ; i++){
+				futures[i].cancel(true) ;
+			}
+		}
+		
+		ArrayList ls = new ArrayList(tasks.length) ;
+		for(int i = 0 ; i < results.length ; i++){
+			if(results[i] != null){
+				ls.add(results[i]) ;
+			}
+		}
+		
+		return ls ;
+	}
+	
+	private static int indexOf(Future[] futures, Future f){
+		for(int i = 0 ; i < futures.length ; i++){
+			if(futures[i] == f) return i ;
+		}
+		
+		throw new IllegalStateException("unknown future.") ;
+	}
+	
+	/**
+	 * Merge the sorted records of the shards, and apply the global offset/limit.
+	 * 
+	 * @param shardResults List of {@link ShardResult}
+	 */
+	protected static List merge(List shardResults, OrderByTerm orderBy, int offset, int limit){
+		LinkedList merged = new LinkedList() ;
+		
+		if(orderBy == null || orderBy.getOrderPropNames().length == 0){
+			int skipped = 0 ;
+			
+			for(int i = 0 ; i < shardResults.size() && merged.size() < limit ; i++){
+				Iterator it = ((ShardResult) shardResults.get(i)).records.iterator() ;
+				
+				while(it.hasNext() && merged.size() < limit){
+					Object record = it.next() ;
+					
+					if(skipped < offset){
+						skipped++ ;
+					}else{
+						merged.addLast(record) ;
+					}
+				}
+			}
+			
+			return merged ;
+		}
+		
+		String[] props = orderBy.getOrderPropNames() ;
+		boolean[] ascs = orderBy.getOrderDirections() ;
+		
+		PriorityQueue heads = new PriorityQueue(Math.max(shardResults.size(), 1)) ;
+		for(int i = 0 ; i < shardResults.size() ; i++){
+			ShardCursor c = new ShardCursor((ShardResult) shardResults.get(i), i, props, ascs) ;
+			
+			if(c.next()){
+				heads.add(c) ;
+			}
+		}
+		
+		int skipped = 0 ;
+		while(!heads.isEmpty() && merged.size() < limit){
+			ShardCursor c = (ShardCursor) heads.poll() ;
+			
+			if(skipped < offset){
+				skipped++ ;
+			}else{
+				merged.addLast(c.current) ;
+			}
+			
+			if(c.next()){
+				heads.add(c) ;
+			}
+		}
+		
+		return merged ;
+	}
+	
+	public int getFailPolicy() {
+		return failPolicy;
+	}
+
+	/**
+	 * {@link #FAIL_FAST} or {@link #BEST_EFFORT}. Default is {@link #FAIL_FAST}.
+	 */
+	public void setFailPolicy(int failPolicy) {
+		if(failPolicy != FAIL_FAST && failPolicy != BEST_EFFORT){
+			throw new IllegalArgumentException("unknown fail policy:" + failPolicy) ;
+		}
+		
+		this.failPolicy = failPolicy;
+	}
+
+	public boolean isAllowDelayRead() {
+		return allowDelayRead;
+	}
+
+	/**
+	 * Query the slave databases ({@link TransactionManager#openDelayReadTran()}) if true. Default is false.
+	 */
+	public void setAllowDelayRead(boolean allowDelayRead) {
+		this.allowDelayRead = allowDelayRead;
+	}
+
+	abstract class ShardTask implements Callable{
+		final Object tableCondition ;
+		
+		ShardTask(Object tableCondition){
+			this.tableCondition = tableCondition ;
+		}
+		
+		public Object call() throws Exception {
+			TransactionManager tm = guzzContext.getTransactionManager() ;
+			ReadonlyTranSession session = allowDelayRead ? tm.openDelayReadTran() : tm.openNoDelayReadonlyTran() ;
+			
+			try{
+				return query(session) ;
+			}finally{
+				session.close() ;
+			}
+		}
+		
+		protected abstract Object query(ReadonlyTranSession session) ;
+	}
+	
+	static class ShardResult{
+		final List records ;
+		
+		final BeanWrapper beanWrapper ;
+		
+		ShardResult(List records, BeanWrapper beanWrapper){
+			this.records = records == null ? Collections.EMPTY_LIST : records ;
+			this.beanWrapper = beanWrapper ;
+		}
+	}
+	
+	/**
+	 * Head of the sorted records of one shard. Nulls are smaller than any value.
+	 */
+	static class ShardCursor implements Comparable{
+		private final Iterator records ;
+		
+		private final BeanWrapper beanWrapper ;
+		
+		private final int shardIndex ;
+		
+		private final String[] props ;
+		
+		private final boolean[] ascs ;
+		
+		Object current ;
+		
+		Object[] currentKeys ;
+		
+		ShardCursor(ShardResult result, int shardIndex, String[] props, boolean[] ascs){
+			this.records = result.records.iterator() ;
+			this.beanWrapper = result.beanWrapper ;
+			this.shardIndex = shardIndex ;
+			this.props = props ;
+			this.ascs = ascs ;
+		}
+		
+		boolean next(){
+			if(!records.hasNext()){
+				return false ;
+			}
+			
+			this.current = records.next() ;
+			this.currentKeys = new Object[props.length] ;
+			
+			for(int i = 0 ; i < props.length ; i++){
+				if(current instanceof Map){
+					currentKeys[i] = ((Map) current).get(props[i]) ;
+				}else if(beanWrapper != null){
+					currentKeys[i] = beanWrapper.getValue(current, props[i]) ;
+				}else{
+					currentKeys[i] = BeanWrapper.createPOJOWrapper(current.getClass()).getValue(current, props[i]) ;
+				}
+			}
+			
+			return true ;
+		}
+
+		public int compareTo(Object o) {
+			ShardCursor c = (ShardCursor) o ;
+			
+			for(int i = 0 ; i < props.length ; i++){
+				int ret = compareValue(currentKeys[i], c.currentKeys[i]) ;
+				
+				if(ret != 0){
+					return ascs[i] ? ret : -ret ;
+				}
+			}
+			
+			//stable between shards.
+			return shardIndex - c.shardIndex ;
+		}
+		
+		private static int compareValue(Object a, Object b){
+			if(a == b) return 0 ;
+			if(a == null) return -1 ;
+			if(b == null) return 1 ;
+			
+			return ((Comparable) a).compareTo(b) ;
+		}
+	}
+
+}
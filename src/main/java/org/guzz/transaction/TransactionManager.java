@@ -37,6 +37,16 @@ public interface TransactionManager {
 	 * */
 	public ReadonlyTranSession openDelayReadTran() ;
 	
+	/**
+	 * 打开一个只读并允许数据延迟的事务，但是数据延迟不能超过maxLatency毫秒。
+	 * <p/>
+	 * 从库的延迟由{@link org.guzz.service.db.ReplicationLagMonitor}测量。如果从库的延迟超过maxLatency，或者没有测量从库延迟，连接将从主库获取。
+	 * 
+	 * @param maxLatency 可以接受的最大数据延迟，单位毫秒。
+	 * @see org.guzz.connection.PhysicsDBGroup#getLatency()
+	 */
+	public ReadonlyTranSession openDelayReadTran(long maxLatency) ;
+	
 	/**
 	 * 打开一个可读写的数据连接。
 	 * @param autoCommit 事务提交是否设定为自动提交。true，自动提交; false手动提交。
@@ -23,6 +23,7 @@ import org.guzz.Guzz;
 import org.guzz.exception.DaoException;
 import org.guzz.jdbc.ObjectBatcher;
 import org.guzz.jdbc.SQLBatcher;
+import org.guzz.jdbc.UnitOfWorkBatcher;
 import org.guzz.orm.ColumnDataLoader;
 import org.guzz.orm.se.SearchExpression;
 import org.guzz.orm.sql.BindedCompiledSQL;
@@ -82,6 +83,19 @@ public interface WriteTranSession extends TranSession{
 	 */
 	public ObjectBatcher createObjectBatcher() ;
 	
+	/**
+	 *
+	 * create a batcher to perform inserts/updates/deletes of many domain classes and table conditions as one unit of work.
+	 *
+	 * <br>the {@link WriteTranSession} from which the batcher is created, 
+	 * share the same {@link java.sql.Connection} and javax.transaction.Transaction with the batcher.
+	 * <br>
+	 * The resources of the batcher will be released once the {@link WriteTranSession} is closed.
+	 * 
+	 * @exception DaoException may raise database exception
+	 */
+	public UnitOfWorkBatcher createUnitOfWorkBatcher() ;
+	
 	public Object findObjectByPK(String businessName, Serializable pk) ;
 	
 	public Object findObjectByPK(Class domainClass, Serializable pk) ;
@@ -24,10 +24,12 @@ import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.guzz.Guzz;
 import org.guzz.bytecode.LazyPropChangeDetector;
@@ -45,11 +47,14 @@ import org.guzz.jdbc.ObjectBatcher;
 import org.guzz.jdbc.ObjectBatcherImpl;
 import org.guzz.jdbc.SQLBatcher;
 import org.guzz.jdbc.SQLBatcherImpl;
+import org.guzz.jdbc.UnitOfWorkBatcher;
+import org.guzz.jdbc.UnitOfWorkBatcherImpl;
 import org.guzz.orm.ObjectMapping;
 import org.guzz.orm.mapping.ObjectMappingManager;
 import org.guzz.orm.mapping.POJOBasedObjectMapping;
 import org.guzz.orm.rdms.Table;
 import org.guzz.orm.rdms.TableColumn;
+import org.guzz.orm.se.QueryResultCache;
 import org.guzz.orm.se.SearchExpression;
 import org.guzz.orm.se.SearchParams;
 import org.guzz.orm.sql.BindedCompiledSQL;
@@ -76,6 +81,9 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 	private List objectBatchers = null ;
 	
 	private ReadonlyTranSession read ;
+	
+	/**query result caches of the businesses written in this session. Invalidated again when the transaction ends.*/
+	private Set writtenQueryCaches = null ;
 
 	public WriteTranSessionImpl(ObjectMappingManager omm, CompiledSQLManager compiledSQLManager, DebugService debugService, DBGroupManager dbGroupManager, boolean autoCommit) {
 		super(omm, compiledSQLManager, new WriteConnectionFetcher(autoCommit), debugService, dbGroupManager, false);
@@ -303,6 +311,7 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 	protected int executeUpdateWithPrePL(ObjectMapping mapping, BindedCompiledSQL bsql, PersistListener[] pls, Object domainObject, Serializable pk, int operation){
 		String rawSQL = bsql.getSQLToRun() ;
 		DBGroup db = mapping.getDbGroup() ;
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
 		PreparedStatement pstm = null;
 		
 		boolean measureTime = this.debugService.isMeasureTime() ;
@@ -312,8 +321,8 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 		}
 		
 		try {
-			Connection conn = getConnection(db, bsql.getTableCondition()) ;
-			pstm = conn.prepareStatement(rawSQL);		
+			Connection conn = getConnection(fdb) ;
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
 			this.applyQueryTimeout(pstm) ;	
 			bsql.prepareNamedParams(db.getDialect(), pstm) ;
 			
@@ -332,21 +341,23 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 			}
 			
 			int affectedRows = pstm.executeUpdate() ;
+			invalidateQueryResultCache(mapping) ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
 				}
 				
-				this.debugService.logSQL(bsql, timeCost) ;
+				this.debugService.logUpdate(bsql, affectedRows, timeCost) ;
 			}
 			
 			return affectedRows ;
 		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
 			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
 		}finally{
-			CloseUtil.close(pstm) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
 		}
 	}
 	
@@ -359,6 +370,7 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 		}
 		
 		DBGroup db = m.getDbGroup() ;
+		PhysicsDBGroup fdb = db.getPhysicsDBGroup(bsql.getTableCondition()) ;
 		PreparedStatement pstm = null;
 		
 		boolean measureTime = this.debugService.isMeasureTime() ;
@@ -368,27 +380,28 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 		}
 		
 		try {
-			Connection conn = getConnection(db, bsql.getTableCondition()) ;
-			pstm = conn.prepareStatement(rawSQL);
+			pstm = this.connectionsGroup.prepareStatement(fdb, rawSQL) ;
 			this.applyQueryTimeout(pstm) ;
 			bsql.prepareNamedParams(db.getDialect(), pstm) ;
 			
 			int affectedRows = pstm.executeUpdate() ;
+			invalidateQueryResultCache(m) ;
 			
-			if(this.debugService.isLogSQL()){
+			if(this.debugService.isLogSQL() || this.debugService.isMetricsEnabled()){
 				long timeCost = 0 ;
 				if(measureTime){
 					timeCost = System.nanoTime() - startTime ;
 				}
 				
-				this.debugService.logSQL(bsql, timeCost) ;
+				this.debugService.logUpdate(bsql, affectedRows, timeCost) ;
 			}
 			
 			return affectedRows ;
 		}catch(SQLException e){
+			logSQLError(rawSQL, startTime) ;
 			throw new JDBCException("Error Code:" + e.getErrorCode() + ", sql:" + rawSQL, e, e.getSQLState()) ;
 		}finally{
-			CloseUtil.close(pstm) ;
+			this.connectionsGroup.releaseStatement(fdb, pstm) ;
 		}
 	}
 
@@ -462,6 +475,9 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 		
 		this.psForBatch.add(pstm) ;
 		
+		//the batch is executed by the user, invalidate the cached results now and at the end of the transaction.
+		invalidateQueryResultCache(m) ;
+		
 		SQLBatcherImpl b = new SQLBatcherImpl(this.debugService, pstm, rawSQL, db.getDialect(), bsql.getCompiledSQLToRun()) ;
 		
 		return b ;
@@ -479,12 +495,54 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 		return b ;
 	}
 	
+	public UnitOfWorkBatcher createUnitOfWorkBatcher() {
+		return new UnitOfWorkBatcherImpl(this) ;
+	}
+	
 	public void commit(){
 		this.connectionsGroup.commit() ;
+		invalidateWrittenQueryCaches() ;
 	}
 	
 	public void rollback() throws DaoException {
-		this.connectionsGroup.rollback() ;
+		try{
+			this.connectionsGroup.rollback() ;
+		}finally{
+			invalidateWrittenQueryCaches() ;
+		}
+	}
+	
+	/**
+	 * Invalidate the query results cached for the business of the mapping.
+	 * <p>
+	 * The results are invalidated again when the transaction is committed, rolled back or closed,
+	 * in case readonly sessions cached the old data before the changes were committed.
+	 * </p>
+	 */
+	public void invalidateQueryResultCache(ObjectMapping mapping){
+		if(!(mapping instanceof POJOBasedObjectMapping)) return ;
+		
+		QueryResultCache cache = ((POJOBasedObjectMapping) mapping).getBusiness().getQueryResultCache() ;
+		if(cache == null) return ;
+		
+		cache.invalidate() ;
+		
+		if(this.writtenQueryCaches == null){
+			this.writtenQueryCaches = new HashSet() ;
+		}
+		
+		this.writtenQueryCaches.add(cache) ;
+	}
+	
+	protected void invalidateWrittenQueryCaches(){
+		if(this.writtenQueryCaches == null) return ;
+		
+		Iterator i = this.writtenQueryCaches.iterator() ;
+		while(i.hasNext()){
+			((QueryResultCache) i.next()).invalidate() ;
+		}
+		
+		this.writtenQueryCaches.clear() ;
 	}
 
 	public void close() {		
@@ -505,7 +563,11 @@ public class WriteTranSessionImpl extends AbstractTranSessionImpl implements Wri
 		}
 		
 		//close connections.
-		super.close();
+		try{
+			super.close();
+		}finally{
+			invalidateWrittenQueryCaches() ;
+		}
 	}
 	
 	public ReadonlyTranSession exportReadAPI() {
@@ -582,7 +644,7 @@ class WriteConnectionFetcher implements ConnectionFetcher{
 		if(masterDatabaseService != null && masterDatabaseService.isAvailable()){
 			Connection conn = null ;
 			try {
-				conn = masterDatabaseService.getDataSource().getConnection();				
+				conn = masterDatabaseService.getConnection();				
 			} catch (SQLException e) {
 				//be careful of conn leak.
 				CloseUtil.close(conn) ;
@@ -18,6 +18,7 @@ package org.guzz.util.javabean;
 
 import java.lang.reflect.Method;
 
+import org.guzz.exception.ORMException;
 import org.guzz.util.JRTInfo;
 
 /**
@@ -28,8 +29,12 @@ import org.guzz.util.JRTInfo;
  */
 public abstract class BeanWrapper {
 	
+	/**
+	 * Create a BeanWrapper for the POJO class. A {@link CglibBeanWrapper} with generated property accessor is returned if possible,
+	 * or the reflection based {@link JavaBeanWrapper} will be used.
+	 */
 	public static JavaBeanWrapper createPOJOWrapper(Class beanClass){
-		return new JavaBeanWrapper(beanClass) ;
+		return CglibBeanWrapper.createWrapper(beanClass) ;
 	}
 		
 	public abstract void setValue(Object beanInstance, String propName, Object value) ;
@@ -48,6 +53,31 @@ public abstract class BeanWrapper {
 	 */
 	public abstract Object getValueUnderProxy(Object beanInstance, String propName) ;
 	
+	/**
+	 * 返回属性的存取槽位(slot)。对同一个属性反复读写时，通过槽位存取可以省去按属性名查找的开销。
+	 * 
+	 * @return 属性不存在或者不支持槽位存取时，返回-1。
+	 * @see #getValue(Object, int)
+	 * @see #setValue(Object, int, Object)
+	 */
+	public int getPropertyIndex(String propName){
+		return -1 ;
+	}
+	
+	/**
+	 * 按{@link #getPropertyIndex(String)}返回的槽位读取属性值。
+	 */
+	public Object getValue(Object beanInstance, int propIndex){
+		throw new ORMException("slot access is not supported in :" + this.getClass()) ;
+	}
+	
+	/**
+	 * 按{@link #getPropertyIndex(String)}返回的槽位设置属性值。
+	 */
+	public void setValue(Object beanInstance, int propIndex, Object value){
+		throw new ORMException("slot access is not supported in :" + this.getClass()) ;
+	}
+	
 	public abstract Method getReadMethod(String propName) ;
 	
 	public abstract Method getWriteMethod(String propName) ;
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.javabean;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import net.sf.cglib.asm.ClassVisitor;
+import net.sf.cglib.asm.Label;
+import net.sf.cglib.asm.Type;
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.ProcessSwitchCallback;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import net.sf.cglib.core.TypeUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.guzz.exception.ORMException;
+
+/**
+ *
+ * BeanWrapper reading and writing properties through a cglib generated {@link PropertyAccessor}.
+ * <p>
+ * The accessor is generated once for each bean class when the wrapper is created, and invokes the getters/setters
+ * directly by slot(see {@link #getPropertyIndex(String)}), avoiding the Method.invoke and the arguments array allocation.
+ * Properties whose methods are not public(or the bean class is not public) fall back to the reflection of {@link JavaBeanWrapper}.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class CglibBeanWrapper extends JavaBeanWrapper {
+	private static final Log log = LogFactory.getLog(CglibBeanWrapper.class) ;
+
+	private PropertyAccessor accessor ;
+
+	private final boolean[] fastReadable ;
+
+	private final boolean[] fastWritable ;
+
+	public static CglibBeanWrapper createWrapper(Class beanClass){
+		return new CglibBeanWrapper(beanClass) ;
+	}
+
+	public CglibBeanWrapper(Class beanClass) {
+		super(beanClass) ;
+
+		Method[] reads = new Method[propNames.length] ;
+		Method[] writes = new Method[propNames.length] ;
+		this.fastReadable = new boolean[propNames.length] ;
+		this.fastWritable = new boolean[propNames.length] ;
+
+		if(!Modifier.isPublic(beanClass.getModifiers()) || beanClass.getClassLoader() == null){
+			return ;
+		}
+
+		for(int i = 0 ; i < propNames.length ; i++){
+			if(isAccessible(readMethods[i])){
+				reads[i] = readMethods[i] ;
+			}
+
+			if(isAccessible(writeMethods[i])){
+				writes[i] = writeMethods[i] ;
+			}
+		}
+
+		try{
+			this.accessor = new Generator(beanClass, reads, writes).create() ;
+		}catch(Throwable e){
+			//use reflection instead.
+			log.warn("fail to generate property accessor for class:[" + beanClass.getName() + "], reflection will be used.", e) ;
+			return ;
+		}
+
+		for(int i = 0 ; i < propNames.length ; i++){
+			this.fastReadable[i] = reads[i] != null ;
+			this.fastWritable[i] = writes[i] != null ;
+		}
+	}
+
+	protected static boolean isAccessible(Method m){
+		if(m == null) return false ;
+
+		return Modifier.isPublic(m.getModifiers()) && Modifier.isPublic(m.getDeclaringClass().getModifiers()) ;
+	}
+
+	public Object getValue(Object beanInstance, int propIndex) {
+		if(!this.fastReadable[propIndex]){
+			return super.getValue(beanInstance, propIndex) ;
+		}
+
+		try{
+			return this.accessor.getValue(beanInstance, propIndex) ;
+		}catch(RuntimeException e){
+			throw new ORMException("property:" + propNames[propIndex] + " not readable in :" + this.beanClass, e) ;
+		}
+	}
+
+	public void setValue(Object beanInstance, int propIndex, Object value) {
+		if(!this.fastWritable[propIndex]){
+			super.setValue(beanInstance, propIndex, value) ;
+			return ;
+		}
+
+		try{
+			this.accessor.setValue(beanInstance, propIndex, value) ;
+		}catch(RuntimeException e){
+			throw new ORMException("property:" + propNames[propIndex] + " not writable in :" + this.beanClass, e) ;
+		}
+	}
+
+	public boolean isAccessorGenerated(){
+		return this.accessor != null ;
+	}
+
+	static class Generator extends AbstractClassGenerator{
+		private static final Source SOURCE = new Source(PropertyAccessor.class.getName()) ;
+
+		private static final Type PROPERTY_ACCESSOR = Type.getType(PropertyAccessor.class) ;
+
+		private static final Type ILLEGAL_ARGUMENT_EXCEPTION = TypeUtils.parseType("java.lang.IllegalArgumentException") ;
+
+		private static final Signature GET_VALUE = TypeUtils.parseSignature("java.lang.Object getValue(java.lang.Object, int)") ;
+
+		private static final Signature SET_VALUE = TypeUtils.parseSignature("void setValue(java.lang.Object, int, java.lang.Object)") ;
+
+		private final Class beanClass ;
+
+		private final Method[] readMethods ;
+
+		private final Method[] writeMethods ;
+
+		public Generator(Class beanClass, Method[] readMethods, Method[] writeMethods){
+			super(SOURCE) ;
+
+			this.beanClass = beanClass ;
+			this.readMethods = readMethods ;
+			this.writeMethods = writeMethods ;
+
+			setNamePrefix(beanClass.getName()) ;
+		}
+
+		public PropertyAccessor create(){
+			//the accessible methods of a class never change, the class name is enough.
+			return (PropertyAccessor) super.create(beanClass.getName()) ;
+		}
+
+		protected ClassLoader getDefaultClassLoader() {
+			return beanClass.getClassLoader() ;
+		}
+
+		protected Object firstInstance(Class type) throws Exception {
+			return ReflectUtils.newInstance(type) ;
+		}
+
+		protected Object nextInstance(Object instance) throws Exception {
+			if(instance instanceof Class){
+				return ReflectUtils.newInstance((Class) instance) ;
+			}
+
+			return ReflectUtils.newInstance(instance.getClass()) ;
+		}
+
+		public void generateClass(ClassVisitor v) throws Exception {
+			ClassEmitter ce = new ClassEmitter(v) ;
+			ce.begin_class(Constants.V1_2, Constants.ACC_PUBLIC, getClassName(), PROPERTY_ACCESSOR, null, Constants.SOURCE_FILE) ;
+			EmitUtils.null_constructor(ce) ;
+
+			emitGetValue(ce) ;
+			emitSetValue(ce) ;
+
+			ce.end_class() ;
+		}
+
+		protected void emitGetValue(ClassEmitter ce) throws Exception {
+			final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, GET_VALUE, null) ;
+			int[] slots = getSlots(readMethods) ;
+
+			if(slots.length > 0){
+				e.load_arg(1) ;
+				e.process_switch(slots, new ProcessSwitchCallback(){
+					public void processCase(int key, Label end) {
+						Method m = readMethods[key] ;
+
+						e.load_arg(0) ;
+						e.checkcast(Type.getType(m.getDeclaringClass())) ;
+						e.invoke(ReflectUtils.getMethodInfo(m)) ;
+						e.box(Type.getType(m.getReturnType())) ;
+						e.return_value() ;
+					}
+
+					public void processDefault() {
+						e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "no accessible read method for the slot.") ;
+					}
+				}) ;
+			}
+
+			e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "no accessible read method for the slot.") ;
+			e.end_method() ;
+		}
+
+		protected void emitSetValue(ClassEmitter ce) throws Exception {
+			final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, SET_VALUE, null) ;
+			int[] slots = getSlots(writeMethods) ;
+
+			if(slots.length > 0){
+				e.load_arg(1) ;
+				e.process_switch(slots, new ProcessSwitchCallback(){
+					public void processCase(int key, Label end) {
+						Method m = writeMethods[key] ;
+
+						e.load_arg(0) ;
+						e.checkcast(Type.getType(m.getDeclaringClass())) ;
+						e.load_arg(2) ;
+						e.unbox(Type.getType(m.getParameterTypes()[0])) ;
+						e.invoke(ReflectUtils.getMethodInfo(m)) ;
+
+						//ignore the returned value of setter, if any.
+						Type returnType = Type.getType(m.getReturnType()) ;
+						if(returnType.getSize() == 2){
+							e.pop2() ;
+						}else if(returnType.getSize() == 1){
+							e.pop() ;
+						}
+
+						e.return_value() ;
+					}
+
+					public void processDefault() {
+						e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "no accessible write method for the slot.") ;
+					}
+				}) ;
+			}
+
+			e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "no accessible write method for the slot.") ;
+			e.end_method() ;
+		}
+
+		protected int[] getSlots(Method[] methods){
+			int count = 0 ;
+			for(int i = 0 ; i < methods.length ; i++){
+				if(methods[i] != null) count++ ;
+			}
+
+			int[] slots = new int[count] ;
+			for(int i = 0, k = 0 ; i < methods.length ; i++){
+				if(methods[i] != null){
+					slots[k++] = i ;
+				}
+			}
+
+			return slots ;
+		}
+	}
+
+}
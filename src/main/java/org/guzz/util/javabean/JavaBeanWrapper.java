@@ -41,7 +41,15 @@ import org.guzz.pojo.GuzzProxy;
 public class JavaBeanWrapper extends BeanWrapper{
 	
 	private Map propertyDescriptors = new HashMap() ;
-	private Class beanClass ;
+	private Map propertyIndexes = new HashMap() ;
+	protected Class beanClass ;
+	
+	/**
+	 * properties ordered by slot. The index in the array is the property's slot.
+	 */
+	protected final String[] propNames ;
+	protected final Method[] readMethods ;
+	protected final Method[] writeMethods ;
 	
 	public JavaBeanWrapper(Class beanClass){
 		this.beanClass = beanClass ;
@@ -55,31 +63,55 @@ public class JavaBeanWrapper extends BeanWrapper{
 		
 		PropertyDescriptor[] pd = bi.getPropertyDescriptors();
 		
+		this.propNames = new String[pd.length] ;
+		this.readMethods = new Method[pd.length] ;
+		this.writeMethods = new Method[pd.length] ;
+		
 		//FIXME: cann't handle property:My_book_title
 		for(int i = 0 ; i < pd.length ; i++){
 			this.propertyDescriptors.put(pd[i].getName(), pd[i]) ;
+			this.propertyIndexes.put(pd[i].getName(), new Integer(i)) ;
+			
+			this.propNames[i] = pd[i].getName() ;
+			this.readMethods[i] = pd[i].getReadMethod() ;
+			this.writeMethods[i] = pd[i].getWriteMethod() ;
 		}	
 	}
 	
-	public void setValue(Object beanInstance, String propName, Object value){
-		PropertyDescriptor pd = (PropertyDescriptor) this.propertyDescriptors.get(propName) ;
-		if(pd == null){
+	public int getPropertyIndex(String propName){
+		Integer index = (Integer) this.propertyIndexes.get(propName) ;
+		
+		return index == null ? -1 : index.intValue() ;
+	}
+	
+	protected int getPropertyIndexNotNull(String propName){
+		Integer index = (Integer) this.propertyIndexes.get(propName) ;
+		if(index == null){
 			throw new ORMException("unknown property[" + propName + "] in :" + this.beanClass) ;
 		}
 		
-		Method writeMethod = pd.getWriteMethod();
+		return index.intValue() ;
+	}
+	
+	public void setValue(Object beanInstance, String propName, Object value){
+		setValue(beanInstance, getPropertyIndexNotNull(propName), value) ;
+	}
+	
+	public void setValue(Object beanInstance, int propIndex, Object value){
+		Method writeMethod = this.writeMethods[propIndex] ;
+		
 		if (writeMethod != null) {
 			try {
 				writeMethod.invoke(beanInstance, new Object[]{value});
 			} catch (IllegalArgumentException e) {
-				throw new ORMException("property:" + propName + " not writable in :" + this.beanClass, e) ;
+				throw new ORMException("property:" + propNames[propIndex] + " not writable in :" + this.beanClass, e) ;
 			} catch (IllegalAccessException e) {
-				throw new ORMException("property:" + propName + " not writable in :" + this.beanClass, e) ;
+				throw new ORMException("property:" + propNames[propIndex] + " not writable in :" + this.beanClass, e) ;
 			} catch (InvocationTargetException e) {
-				throw new ORMException("property:" + propName + " not writable in :" + this.beanClass, e) ;
+				throw new ORMException("property:" + propNames[propIndex] + " not writable in :" + this.beanClass, e) ;
 			}
 		}else{
-			throw new ORMException("property:" + propName + " not writable in :" + this.beanClass) ;
+			throw new ORMException("property:" + propNames[propIndex] + " not writable in :" + this.beanClass) ;
 		}
 	}
 	
@@ -136,24 +168,24 @@ public class JavaBeanWrapper extends BeanWrapper{
 	}
 	
 	public Object getValue(Object beanInstance, String propName){
-		PropertyDescriptor pd = (PropertyDescriptor) this.propertyDescriptors.get(propName) ;
-		if(pd == null){
-			throw new ORMException("unknown property[" + propName + "] in :" + this.beanClass) ;
-		}
+		return getValue(beanInstance, getPropertyIndexNotNull(propName)) ;
+	}
+	
+	public Object getValue(Object beanInstance, int propIndex){
+		Method readMethod = this.readMethods[propIndex] ;
 		
-		Method readMethod = pd.getReadMethod();
 		if (readMethod != null) {
 			try {
 				return readMethod.invoke(beanInstance, new Object[0]);
 			} catch (IllegalArgumentException e) {
-				throw new ORMException("property:" + propName + " not readable in :" + this.beanClass, e) ;
+				throw new ORMException("property:" + propNames[propIndex] + " not readable in :" + this.beanClass, e) ;
 			} catch (IllegalAccessException e) {
-				throw new ORMException("property:" + propName + " not readable in :" + this.beanClass, e) ;
+				throw new ORMException("property:" + propNames[propIndex] + " not readable in :" + this.beanClass, e) ;
 			} catch (InvocationTargetException e) {
-				throw new ORMException("property:" + propName + " not readable in :" + this.beanClass, e) ;
+				throw new ORMException("property:" + propNames[propIndex] + " not readable in :" + this.beanClass, e) ;
 			}
 		}else{
-			throw new ORMException("property:" + propName + " not readable in :" + this.beanClass) ;
+			throw new ORMException("property:" + propNames[propIndex] + " not readable in :" + this.beanClass) ;
 		}
 	}
 	
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.javabean;
+
+/**
+ *
+ * Read and write the properties of a bean class by slot without reflection.
+ * <p>Subclasses are generated at runtime by {@link CglibBeanWrapper}, one for each bean class.</p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public abstract class PropertyAccessor {
+
+	/**
+	 * Invoke the read method of the property at slot @param propIndex.
+	 */
+	public abstract Object getValue(Object beanInstance, int propIndex) ;
+
+	/**
+	 * Invoke the write method of the property at slot @param propIndex.
+	 */
+	public abstract void setValue(Object beanInstance, int propIndex, Object value) ;
+
+}
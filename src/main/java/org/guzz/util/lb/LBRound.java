@@ -17,10 +17,11 @@
 package org.guzz.util.lb;
 
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 
- * 
+ * Weighted round robin. {@link #getCard()} is lock-free and safe for concurrent callers.
  *
  * @author liukaixuan(liukaixuan@gmail.com)
  */
@@ -28,8 +29,8 @@ public class LBRound implements RoundCard{
 	
 	private LinkedList hs = new LinkedList() ;
 	
-	private Object[] card_services = new Object[0] ;
-	private int currentPos = 0 ;
+	private volatile Object[] card_services = new Object[0] ;
+	private final AtomicInteger currentPos = new AtomicInteger() ;
 	
 	
 	/**
@@ -123,21 +124,26 @@ public class LBRound implements RoundCard{
 	}
 
 	public Object getCard() {
-		int maxSize = card_services.length ;
+		Object[] cards = this.card_services ;
+		int maxSize = cards.length ;
+		
 		if(maxSize == 0){
 			return null ;
 		}else if(maxSize == 1){
-			return card_services[0] ;
+			return cards[0] ;
 		}
 		
-		int pos = this.currentPos++ ;
-		
-		if(pos >= maxSize){
-			pos = pos % maxSize ;
-			this.currentPos = pos + 1 ;
-		}
+		//ignore the sign bit on overflow.
+		int pos = (this.currentPos.getAndIncrement() & Integer.MAX_VALUE) % maxSize ;
 		
-		return card_services[pos];
+		return cards[pos];
+	}
+	
+	/**
+	 * The count of slots in a round. A card appears in the round as many times as its load factor(divided by the gcd).
+	 */
+	public int getRoundSize(){
+		return this.card_services.length ;
 	}
 	
 	//计算最大约数，通过最大公约数缩写lv数组大小。
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.stat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * Lock-free latency histogram with log-linear buckets, in the way of HdrHistogram.
+ * <p>
+ * Values are recorded in microseconds. Values below 16 have their own buckets; above that, every power of 2 is split into 16 buckets,
+ * so the value reported for a percentile is at most 1/16 (6.25%) higher than the recorded one. Values up to about 38 hours are kept precisely,
+ * larger values are counted in the last bucket.
+ * </p>
+ * Recording is a few atomic increments without any allocation, and can be done by any threads at the same time.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 4 ;
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS ;
+	
+	private static final int MAX_EXPONENT = 36 ;
+	
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1 ;
+	
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS ;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS) ;
+	
+	private final AtomicLong totalCount = new AtomicLong() ;
+	
+	private final AtomicLong totalMicros = new AtomicLong() ;
+	
+	private final AtomicLong maxMicros = new AtomicLong() ;
+	
+	public void recordNanos(long nanos){
+		record(nanos / 1000) ;
+	}
+	
+	public void record(long micros){
+		if(micros < 0){
+			micros = 0 ;
+		}
+		
+		counts.incrementAndGet(indexOf(micros)) ;
+		totalCount.incrementAndGet() ;
+		totalMicros.addAndGet(micros) ;
+		
+		long max = maxMicros.get() ;
+		while(micros > max){
+			if(maxMicros.compareAndSet(max, micros)) break ;
+			max = maxMicros.get() ;
+		}
+	}
+	
+	static int indexOf(long value){
+		if(value > MAX_VALUE){
+			value = MAX_VALUE ;
+		}
+		
+		if(value < SUB_BUCKETS){
+			return (int) value ;
+		}
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value) ;
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1) ;
+		
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub ;
+	}
+	
+	/**
+	 * The highest value counted in the bucket.
+	 */
+	static long highestValueOf(int index){
+		if(index < SUB_BUCKETS){
+			return index ;
+		}
+		
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1 ;
+		int sub = index % SUB_BUCKETS ;
+		int shift = exponent - SUB_BUCKET_BITS ;
+		
+		return ((long) (SUB_BUCKETS + sub) << shift) + (1L << shift) - 1 ;
+	}
+	
+	/**
+	 * The value in microseconds that @param percentile percent of the recorded values are less than or equal to.
+	 * 
+	 * @param percentile 0 - 100, eg: 99.9
+	 * @return 0 if nothing is recorded.
+	 */
+	public long getValueAtPercentile(double percentile){
+		long[] snapshot = new long[BUCKETS] ;
+		long total = 0 ;
+		
+		for(int i = 0 ; i < BUCKETS ; i++){
+			snapshot[i] = counts.get(i) ;
+			total += snapshot[i] ;
+		}
+		
+		if(total == 0){
+			return 0 ;
+		}
+		
+		long target = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total) ;
+		if(target < 1){
+			target = 1 ;
+		}
+		
+		long count = 0 ;
+		for(int i = 0 ; i < BUCKETS ; i++){
+			count += snapshot[i] ;
+			
+			if(count >= target){
+				return Math.min(highestValueOf(i), getMaxMicros()) ;
+			}
+		}
+		
+		return getMaxMicros() ;
+	}
+	
+	public long getTotalCount(){
+		return totalCount.get() ;
+	}
+	
+	public long getTotalMicros(){
+		return totalMicros.get() ;
+	}
+	
+	public long getMaxMicros(){
+		return maxMicros.get() ;
+	}
+	
+	public long getMeanMicros(){
+		long count = getTotalCount() ;
+		
+		return count == 0 ? 0 : getTotalMicros() / count ;
+	}
+	
+	public void reset(){
+		for(int i = 0 ; i < BUCKETS ; i++){
+			counts.set(i, 0) ;
+		}
+		
+		totalCount.set(0) ;
+		totalMicros.set(0) ;
+		maxMicros.set(0) ;
+	}
+
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 
+ * Execution statistics of sql statements: a {@link LatencyHistogram} with rows and error counts for every distinct sql,
+ * and a ring of the latest slow sqls.
+ * <p>
+ * Statements are told apart by the sql to run, with number and quoted string literals replaced by ? (see {@link #normalize(String)}). 
+ * Guzz runs sqls with named parameters as prepared statements, so the sql is the fingerprint already; 
+ * raw sqls with literal values (eg: passed to JDBCTemplate) are counted with the other executions of the same shape. 
+ * Once maxStatements statements are tracked, new statements are counted together as {@link #OTHER_STATEMENTS}.
+ * </p>
+ * <p>
+ * Recording an execution is lock-free, and allocates nothing unless the execution is slow or the sql has literals. 
+ * Slow sqls keep the normalized sql and the names of the bound parameters, and never the values.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class SQLMetrics implements SQLMetricsMBean {
+	
+	public static final String OTHER_STATEMENTS = "(other statements)" ;
+	
+	private final int maxStatements ;
+	
+	private final long slowThresholdNanos ;
+	
+	private final ConcurrentHashMap stats = new ConcurrentHashMap() ;
+	
+	private final StatementStats otherStats = new StatementStats(OTHER_STATEMENTS) ;
+	
+	private final AtomicReferenceArray slowSQLs ;
+	
+	private final AtomicLong slowCount = new AtomicLong() ;
+	
+	/**
+	 * @param maxStatements max count of distinct statements to track.
+	 * @param slowThresholdNanos executions taking at least this long are kept in the slow sqls ring. 0 to disable the ring.
+	 * @param slowRingSize count of the latest slow sqls to keep.
+	 */
+	public SQLMetrics(int maxStatements, long slowThresholdNanos, int slowRingSize){
+		this.maxStatements = maxStatements ;
+		this.slowThresholdNanos = slowThresholdNanos ;
+		this.slowSQLs = new AtomicReferenceArray(Math.max(slowRingSize, 1)) ;
+	}
+	
+	/**
+	 * Record an execution.
+	 * 
+	 * @param sql the sql executed.
+	 * @param paramNames names of the bound parameters. Only kept for slow sqls. Can be null.
+	 * @param nanoTime time cost. 0 or negative if not measured.
+	 * @param rows rows affected, or count of batched operations. -1 if unknown.
+	 * @param failed the execution failed.
+	 */
+	public void record(String sql, String[] paramNames, long nanoTime, int rows, boolean failed){
+		if(sql == null) return ;
+		
+		sql = normalize(sql) ;
+		StatementStats s = getStatementStats(sql) ;
+		
+		if(nanoTime > 0){
+			s.latency.recordNanos(nanoTime) ;
+		}else{
+			s.latency.record(0) ;
+		}
+		
+		if(rows > 0){
+			s.rows.addAndGet(rows) ;
+		}
+		
+		if(failed){
+			s.errors.incrementAndGet() ;
+		}
+		
+		if(slowThresholdNanos > 0 && nanoTime >= slowThresholdNanos){
+			long seq = slowCount.getAndIncrement() ;
+			
+			slowSQLs.set((int) (seq % slowSQLs.length()), new SlowSQL(sql, paramNames, nanoTime, failed, System.currentTimeMillis(), Thread.currentThread().getName())) ;
+		}
+	}
+	
+	protected StatementStats getStatementStats(String sql){
+		StatementStats s = (StatementStats) stats.get(sql) ;
+		
+		if(s == null){
+			if(stats.size() >= maxStatements){
+				return otherStats ;
+			}
+			
+			s = new StatementStats(sql) ;
+			StatementStats old = (StatementStats) stats.putIfAbsent(sql, s) ;
+			if(old != null){
+				s = old ;
+			}
+		}
+		
+		return s ;
+	}
+	
+	/**
+	 * Replace number and single-quoted string literals with ?, so executions differing only in the values are one statement. 
+	 * eg: <code>select * from TB_USER where id = 12 and name = 'lily'</code> to <code>select * from TB_USER where id = ? and name = ?</code>.
+	 * Digits inside identifiers (eg: TB_COMMENT2, t1.id) are kept.
+	 * 
+	 * @return @param sql itself if it has no literals.
+	 */
+	public static String normalize(String sql){
+		int length = sql.length() ;
+		int first = -1 ;
+		
+		for(int i = 0 ; i < length ; i++){
+			char c = sql.charAt(i) ;
+			
+			if(c == '\'' || (isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1))))){
+				first = i ;
+				break ;
+			}
+		}
+		
+		if(first < 0){
+			return sql ;
+		}
+		
+		StringBuffer sb = new StringBuffer(length) ;
+		sb.append(sql, 0, first) ;
+		
+		int i = first ;
+		while(i < length){
+			char c = sql.charAt(i) ;
+			
+			if(c == '\''){
+				//'it''s' is one literal.
+				i++ ;
+				while(i < length){
+					if(sql.charAt(i) == '\''){
+						if(i + 1 < length && sql.charAt(i + 1) == '\''){
+							i += 2 ;
+							continue ;
+						}
+						
+						break ;
+					}
+					
+					i++ ;
+				}
+				
+				i++ ;
+				sb.append('?') ;
+			}else if(isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))){
+				//12, 1.5, 1e10, 0x1F
+				i++ ;
+				while(i < length && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.')){
+					i++ ;
+				}
+				
+				sb.append('?') ;
+			}else{
+				sb.append(c) ;
+				i++ ;
+			}
+		}
+		
+		return sb.toString() ;
+	}
+	
+	private static boolean isDigit(char c){
+		return c >= '0' && c <= '9' ;
+	}
+	
+	private static boolean isIdentifierPart(char c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_' || c == '$' || c == '@' || c == '#' || c > 127 ;
+	}
+	
+	/**
+	 * Snapshots of all tracked statements, in the order of total time cost, highest first.
+	 */
+	public List getStatementSnapshots(){
+		ArrayList list = new ArrayList(stats.size() + 1) ;
+		
+		Iterator i = stats.values().iterator() ;
+		while(i.hasNext()){
+			list.add(((StatementStats) i.next()).snapshot()) ;
+		}
+		
+		if(otherStats.latency.getTotalCount() > 0){
+			list.add(otherStats.snapshot()) ;
+		}
+		
+		Collections.sort(list, new Comparator(){
+			public int compare(Object o1, Object o2) {
+				long t1 = ((StatementSnapshot) o1).getTotalMicros() ;
+				long t2 = ((StatementSnapshot) o2).getTotalMicros() ;
+				
+				return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1) ;
+			}
+		}) ;
+		
+		return list ;
+	}
+	
+	/**
+	 * Snapshot of the statement.
+	 * 
+	 * @param sql the sql executed. Literals are normalized as in recording.
+	 * @return null if the statement is not tracked.
+	 */
+	public StatementSnapshot getStatementSnapshot(String sql){
+		StatementStats s = (StatementStats) stats.get(normalize(sql)) ;
+		
+		return s == null ? null : s.snapshot() ;
+	}
+	
+	/**
+	 * The latest slow sqls({@link SlowSQL}), the newest first.
+	 */
+	public List getSlowSQLs(){
+		int size = slowSQLs.length() ;
+		long end = slowCount.get() ;
+		ArrayList list = new ArrayList(size) ;
+		
+		for(long seq = end - 1 ; seq >= 0 && seq >= end - size ; seq--){
+			SlowSQL s = (SlowSQL) slowSQLs.get((int) (seq % size)) ;
+			
+			if(s != null){
+				list.add(s) ;
+			}
+		}
+		
+		return list ;
+	}
+	
+	public int getStatementCount() {
+		return stats.size() ;
+	}
+	
+	public long getExecutionCount() {
+		long count = otherStats.latency.getTotalCount() ;
+		
+		Iterator i = stats.values().iterator() ;
+		while(i.hasNext()){
+			count += ((StatementStats) i.next()).latency.getTotalCount() ;
+		}
+		
+		return count ;
+	}
+	
+	public long getErrorCount() {
+		long count = otherStats.errors.get() ;
+		
+		Iterator i = stats.values().iterator() ;
+		while(i.hasNext()){
+			count += ((StatementStats) i.next()).errors.get() ;
+		}
+		
+		return count ;
+	}
+	
+	public long getSlowCount() {
+		return slowCount.get() ;
+	}
+	
+	public long getSlowThresholdMicros() {
+		return slowThresholdNanos / 1000 ;
+	}
+	
+	public String[] listTopStatements(int maxStatements) {
+		List list = getStatementSnapshots() ;
+		int size = Math.min(Math.max(maxStatements, 0), list.size()) ;
+		String[] lines = new String[size] ;
+		
+		for(int i = 0 ; i < size ; i++){
+			lines[i] = list.get(i).toString() ;
+		}
+		
+		return lines ;
+	}
+	
+	public String[] listSlowSQLs() {
+		List list = getSlowSQLs() ;
+		String[] lines = new String[list.size()] ;
+		
+		for(int i = 0 ; i < lines.length ; i++){
+			lines[i] = list.get(i).toString() ;
+		}
+		
+		return lines ;
+	}
+	
+	public void reset() {
+		stats.clear() ;
+		otherStats.reset() ;
+		
+		for(int i = 0 ; i < slowSQLs.length() ; i++){
+			slowSQLs.set(i, null) ;
+		}
+		
+		slowCount.set(0) ;
+	}
+	
+	static class StatementStats{
+		final String sql ;
+		
+		final LatencyHistogram latency = new LatencyHistogram() ;
+		
+		final AtomicLong rows = new AtomicLong() ;
+		
+		final AtomicLong errors = new AtomicLong() ;
+		
+		StatementStats(String sql){
+			this.sql = sql ;
+		}
+		
+		StatementSnapshot snapshot(){
+			return new StatementSnapshot(sql, latency.getTotalCount(), errors.get(), rows.get(), latency.getTotalMicros(), latency.getMeanMicros(),
+					latency.getValueAtPercentile(50), latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9), latency.getMaxMicros()) ;
+		}
+		
+		void reset(){
+			latency.reset() ;
+			rows.set(0) ;
+			errors.set(0) ;
+		}
+	}
+	
+	/**
+	 * Statistics of a statement at the time the snapshot is taken. Times are in microseconds.
+	 */
+	public static class StatementSnapshot{
+		private final String sql ;
+		private final long count ;
+		private final long errors ;
+		private final long rows ;
+		private final long totalMicros ;
+		private final long meanMicros ;
+		private final long p50Micros ;
+		private final long p99Micros ;
+		private final long p999Micros ;
+		private final long maxMicros ;
+		
+		public StatementSnapshot(String sql, long count, long errors, long rows, long totalMicros, long meanMicros, long p50Micros, long p99Micros, long p999Micros, long maxMicros){
+			this.sql = sql ;
+			this.count = count ;
+			this.errors = errors ;
+			this.rows = rows ;
+			this.totalMicros = totalMicros ;
+			this.meanMicros = meanMicros ;
+			this.p50Micros = p50Micros ;
+			this.p99Micros = p99Micros ;
+			this.p999Micros = p999Micros ;
+			this.maxMicros = maxMicros ;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * Count of executions, including the failed ones.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Rows affected by updates, and operations executed in batches.
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		public long getTotalMicros() {
+			return totalMicros;
+		}
+
+		public long getMeanMicros() {
+			return meanMicros;
+		}
+
+		public long getP50Micros() {
+			return p50Micros;
+		}
+
+		public long getP99Micros() {
+			return p99Micros;
+		}
+
+		public long getP999Micros() {
+			return p999Micros;
+		}
+
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+		
+		public String toString(){
+			return "count:" + count + ", errors:" + errors + ", rows:" + rows + ", total:" + totalMicros + "us, mean:" + meanMicros 
+				+ "us, p50:" + p50Micros + "us, p99:" + p99Micros + "us, p999:" + p999Micros + "us, max:" + maxMicros + "us, sql:" + sql ;
+		}
+	}
+	
+	/**
+	 * A slow execution. Values of the parameters are not kept.
+	 */
+	public static class SlowSQL{
+		private final String sql ;
+		private final String[] paramNames ;
+		private final long nanoTime ;
+		private final boolean failed ;
+		private final long executedTime ;
+		private final String threadName ;
+		
+		public SlowSQL(String sql, String[] paramNames, long nanoTime, boolean failed, long executedTime, String threadName){
+			this.sql = sql ;
+			this.paramNames = paramNames ;
+			this.nanoTime = nanoTime ;
+			this.failed = failed ;
+			this.executedTime = executedTime ;
+			this.threadName = threadName ;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * Names of the bound parameters, or null if unknown.
+		 */
+		public String[] getParamNames() {
+			return paramNames;
+		}
+
+		public long getNanoTime() {
+			return nanoTime;
+		}
+
+		public boolean isFailed() {
+			return failed;
+		}
+
+		/**
+		 * When the execution finished, in milliseconds.
+		 */
+		public long getExecutedTime() {
+			return executedTime;
+		}
+
+		public String getThreadName() {
+			return threadName;
+		}
+		
+		public String toString(){
+			StringBuffer sb = new StringBuffer(64 + sql.length()) ;
+			sb.append(new Date(executedTime))
+			  .append(", timeCost:").append(nanoTime / 1000).append("us")
+			  .append(failed ? ", failed" : "")
+			  .append(", thread:").append(threadName)
+			  .append(", sql:[").append(sql).append("]") ;
+			
+			if(paramNames != null && paramNames.length > 0){
+				sb.append(", params:[") ;
+				
+				for(int i = 0 ; i < paramNames.length ; i++){
+					if(i > 0){
+						sb.append(", ") ;
+					}
+					
+					sb.append(paramNames[i]).append("=?") ;
+				}
+				
+				sb.append("]") ;
+			}
+			
+			return sb.toString() ;
+		}
+	}
+
+}
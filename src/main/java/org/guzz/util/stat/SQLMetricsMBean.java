@@ -0,0 +1,66 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.stat;
+
+/**
+ * 
+ * JMX management interface of {@link SQLMetrics}. Times are in microseconds.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface SQLMetricsMBean {
+	
+	/**
+	 * Count of distinct sql statements tracked.
+	 */
+	public int getStatementCount() ;
+	
+	/**
+	 * Count of executions of all statements.
+	 */
+	public long getExecutionCount() ;
+	
+	/**
+	 * Count of failed executions of all statements.
+	 */
+	public long getErrorCount() ;
+	
+	/**
+	 * Count of executions slower than the slow sql threshold.
+	 */
+	public long getSlowCount() ;
+	
+	public long getSlowThresholdMicros() ;
+	
+	/**
+	 * Statements cost the most total time, one statement per line with its counts and percentiles.
+	 * 
+	 * @param maxStatements max lines to return.
+	 */
+	public String[] listTopStatements(int maxStatements) ;
+	
+	/**
+	 * The latest slow sqls, the newest first.
+	 */
+	public String[] listSlowSQLs() ;
+	
+	/**
+	 * Clear all statistics.
+	 */
+	public void reset() ;
+
+}
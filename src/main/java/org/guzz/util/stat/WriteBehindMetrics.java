@@ -0,0 +1,131 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.stat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * Statistics of a write-behind buffer: how many updates are coalesced, and how long the flushes take.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class WriteBehindMetrics implements WriteBehindMetricsMBean {
+	
+	private final AtomicLong queuedUpdates = new AtomicLong() ;
+	
+	private final AtomicLong coalescedUpdates = new AtomicLong() ;
+	
+	private final AtomicLong droppedUpdates = new AtomicLong() ;
+	
+	private final AtomicLong writtenRows = new AtomicLong() ;
+	
+	private final AtomicLong failedRows = new AtomicLong() ;
+	
+	private final LatencyHistogram flushLatency = new LatencyHistogram() ;
+	
+	private volatile int pendingRows ;
+	
+	/**
+	 * @param coalesced the update is merged into a pending update of the same row.
+	 */
+	public void recordQueued(boolean coalesced){
+		queuedUpdates.incrementAndGet() ;
+		
+		if(coalesced){
+			coalescedUpdates.incrementAndGet() ;
+		}
+	}
+	
+	public void recordDropped(){
+		droppedUpdates.incrementAndGet() ;
+	}
+	
+	/**
+	 * Record a flush.
+	 * 
+	 * @param writtenRows rows written.
+	 * @param failedRows rows failed to write.
+	 * @param nanoTime time cost.
+	 */
+	public void recordFlush(int writtenRows, int failedRows, long nanoTime){
+		flushLatency.recordNanos(nanoTime) ;
+		
+		this.writtenRows.addAndGet(writtenRows) ;
+		this.failedRows.addAndGet(failedRows) ;
+	}
+	
+	public void setPendingRows(int pendingRows){
+		this.pendingRows = pendingRows ;
+	}
+
+	public long getQueuedUpdates() {
+		return queuedUpdates.get() ;
+	}
+
+	public long getCoalescedUpdates() {
+		return coalescedUpdates.get() ;
+	}
+
+	public long getDroppedUpdates() {
+		return droppedUpdates.get() ;
+	}
+
+	public double getCoalescingRatio() {
+		long queued = queuedUpdates.get() ;
+		
+		return queued == 0 ? 0 : (double) coalescedUpdates.get() / queued ;
+	}
+
+	public int getPendingRows() {
+		return pendingRows ;
+	}
+
+	public long getWrittenRows() {
+		return writtenRows.get() ;
+	}
+
+	public long getFailedRows() {
+		return failedRows.get() ;
+	}
+
+	public long getFlushCount() {
+		return flushLatency.getTotalCount() ;
+	}
+
+	public long getFlushLatencyMeanMicros() {
+		return flushLatency.getMeanMicros() ;
+	}
+
+	public long getFlushLatencyP99Micros() {
+		return flushLatency.getValueAtPercentile(99) ;
+	}
+
+	public long getFlushLatencyMaxMicros() {
+		return flushLatency.getMaxMicros() ;
+	}
+
+	public void reset() {
+		queuedUpdates.set(0) ;
+		coalescedUpdates.set(0) ;
+		droppedUpdates.set(0) ;
+		writtenRows.set(0) ;
+		failedRows.set(0) ;
+		flushLatency.reset() ;
+	}
+
+}
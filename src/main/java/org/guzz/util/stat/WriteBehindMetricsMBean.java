@@ -0,0 +1,75 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.stat;
+
+/**
+ * 
+ * JMX management interface of {@link WriteBehindMetrics}. Times are in microseconds.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public interface WriteBehindMetricsMBean {
+	
+	/**
+	 * Count of updates accepted.
+	 */
+	public long getQueuedUpdates() ;
+	
+	/**
+	 * Count of updates merged into a pending update of the same row.
+	 */
+	public long getCoalescedUpdates() ;
+	
+	/**
+	 * Count of updates dropped as the buffer is full, or as their rows failed to write too many times.
+	 */
+	public long getDroppedUpdates() ;
+	
+	/**
+	 * coalescedUpdates / queuedUpdates. 0 if nothing queued.
+	 */
+	public double getCoalescingRatio() ;
+	
+	/**
+	 * Rows waiting to be flushed.
+	 */
+	public int getPendingRows() ;
+	
+	/**
+	 * Count of rows written to the database.
+	 */
+	public long getWrittenRows() ;
+	
+	/**
+	 * Count of failed row writes. A row is counted in every flush it fails.
+	 */
+	public long getFailedRows() ;
+	
+	public long getFlushCount() ;
+	
+	public long getFlushLatencyMeanMicros() ;
+	
+	public long getFlushLatencyP99Micros() ;
+	
+	public long getFlushLatencyMaxMicros() ;
+	
+	/**
+	 * Clear all statistics.
+	 */
+	public void reset() ;
+
+}
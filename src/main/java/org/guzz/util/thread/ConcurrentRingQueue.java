@@ -0,0 +1,170 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.thread;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *
+ * Lock-free bounded queue backed by a ring buffer.
+ * <p>
+ * Every slot carries a sequence number telling whether it is ready to be written or to be read,
+ * so producers and consumers claim slots with a single CAS on the tail/head position and never see half-written slots.
+ * The queue is designed for many producers and one consumer thread, but polling from other threads is also safe
+ * (it is needed to drop the oldest element when the queue is full).
+ * </p>
+ * The capacity is rounded up to the power of 2.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class ConcurrentRingQueue {
+
+	private final int capacity ;
+
+	private final int mask ;
+
+	private final AtomicReferenceArray slots ;
+
+	private final AtomicLongArray sequences ;
+
+	/**next position to write*/
+	private final AtomicLong tail = new AtomicLong() ;
+
+	/**next position to read*/
+	private final AtomicLong head = new AtomicLong() ;
+
+	public ConcurrentRingQueue(int minCapacity){
+		if(minCapacity < 1){
+			throw new IllegalArgumentException("capacity must be positive. capacity is:" + minCapacity) ;
+		}
+
+		int size = 1 ;
+		while(size < minCapacity){
+			size <<= 1 ;
+		}
+
+		this.capacity = size ;
+		this.mask = size - 1 ;
+		this.slots = new AtomicReferenceArray(size) ;
+		this.sequences = new AtomicLongArray(size) ;
+
+		for(int i = 0 ; i < size ; i++){
+			this.sequences.set(i, i) ;
+		}
+	}
+
+	/**
+	 * Add the object to the tail of the queue.
+	 *
+	 * @return false if the queue is full.
+	 */
+	public boolean offer(Object obj){
+		if(obj == null){
+			throw new NullPointerException("null element is not allowed.") ;
+		}
+
+		while(true){
+			long pos = tail.get() ;
+			int index = (int) pos & mask ;
+			long diff = sequences.get(index) - pos ;
+
+			if(diff == 0){
+				if(tail.compareAndSet(pos, pos + 1)){
+					slots.set(index, obj) ;
+					//publish
+					sequences.set(index, pos + 1) ;
+
+					return true ;
+				}
+			}else if(diff < 0){
+				//the slot is not consumed yet.
+				return false ;
+			}
+
+			//another producer took the slot, retry.
+		}
+	}
+
+	/**
+	 * Retrieve and remove the head of the queue.
+	 *
+	 * @return null if the queue is empty.
+	 */
+	public Object poll(){
+		while(true){
+			long pos = head.get() ;
+			int index = (int) pos & mask ;
+			long diff = sequences.get(index) - (pos + 1) ;
+
+			if(diff == 0){
+				if(head.compareAndSet(pos, pos + 1)){
+					Object obj = slots.get(index) ;
+					slots.set(index, null) ;
+					//release the slot for the next round.
+					sequences.set(index, pos + capacity) ;
+
+					return obj ;
+				}
+			}else if(diff < 0){
+				//empty, or the producer hasn't finished writing yet.
+				return null ;
+			}
+		}
+	}
+
+	/**
+	 * Remove at most maxElements elements to the given array.
+	 *
+	 * @return the count of elements drained.
+	 */
+	public int drainTo(Object[] batch, int maxElements){
+		int max = Math.min(batch.length, maxElements) ;
+		int count = 0 ;
+
+		while(count < max){
+			Object obj = poll() ;
+			if(obj == null) break ;
+
+			batch[count++] = obj ;
+		}
+
+		return count ;
+	}
+
+	/**
+	 * The approximate count of elements in the queue.
+	 */
+	public int size(){
+		long size = tail.get() - head.get() ;
+
+		if(size < 0) return 0 ;
+		if(size > capacity) return capacity ;
+
+		return (int) size ;
+	}
+
+	public boolean isEmpty(){
+		return size() == 0 ;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
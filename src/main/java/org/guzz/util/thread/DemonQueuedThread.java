@@ -16,29 +16,56 @@
  */
 package org.guzz.util.thread;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.guzz.service.core.DebugService;
 
 /**
  * 
- * A demon thread holding a queue. When the queue is full, new arrived objects override the oldest one.
- * <p />The queue is not thread-safe, and doesn't guarantee that no data will lose. Objects in this queue is processed randomly.
+ * A demon thread holding a bounded queue. Any thread can add objects to the queue, and this thread processes them in batches.
+ * <p />
+ * The queue is lock-free(see {@link ConcurrentRingQueue}), and objects are processed in the order they were added.
+ * What happens when the queue is full is decided by the full-queue policy:
+ * <ul>
+ * <li>{@link #POLICY_DROP_OLDEST} : drop the oldest object in the queue to make room for the new one. The default policy.</li>
+ * <li>{@link #POLICY_DROP_NEWEST} : drop the new arrived object.</li>
+ * <li>{@link #POLICY_BLOCK} : wait until the queue has room.</li>
+ * <li>{@link #POLICY_CALLER_RUNS} : process the new arrived object in the caller thread by {@link #processInCaller(Object)}.</li>
+ * </ul>
+ * 
+ * Subclasses override {@link #doWithTheQueue()} and fetch objects with {@link #drainTo(Object[])}. 
+ * Subclasses supporting {@link #POLICY_CALLER_RUNS} override {@link #processInCaller(Object)} and {@link #supportsCallerRuns()} together.
  *
  * @author liukaixuan(liukaixuan@gmail.com)
  */
 public class DemonQueuedThread extends Thread{
 	private transient final Log log = LogFactory.getLog(getClass()) ;
 	
-	private boolean keepRunning = true ;
+	public static final int POLICY_DROP_OLDEST = 1 ;
+	
+	public static final int POLICY_DROP_NEWEST = 2 ;
+	
+	public static final int POLICY_BLOCK = 3 ;
+	
+	public static final int POLICY_CALLER_RUNS = 4 ;
+	
+	private volatile boolean keepRunning = true ;
 	
 	private String threadName ;
 	
-	protected Object[] queues ;
+	private final ConcurrentRingQueue queue ;
+	
+	private volatile int fullQueuePolicy = POLICY_DROP_OLDEST ;
+	
+	private final AtomicLong enqueuedCount = new AtomicLong() ;
 	
-	private volatile int currentWritePos = 0 ;
+	private final AtomicLong droppedCount = new AtomicLong() ;
 	
-	private boolean isSleepNow = false ;
+	private final AtomicLong drainedCount = new AtomicLong() ;
+	
+	private volatile boolean isSleepNow = false ;
 	
 	private int millSecondsToSleep = 500 ;
 
@@ -46,20 +73,66 @@ public class DemonQueuedThread extends Thread{
 		return isSleepNow ;
 	}
 	
-	public void addToQueue(Object obj){
-		int pos = currentWritePos++ ;
-		if(pos >= queues.length){
-			currentWritePos = 0 ;
-			pos = 0 ;
+	/**
+	 * Add a object to the queue.
+	 * 
+	 * @return false if the object is dropped or processed in the caller thread.
+	 */
+	public boolean addToQueue(Object obj){
+		if(queue.offer(obj)){
+			enqueuedCount.incrementAndGet() ;
+			return true ;
 		}
 		
-		queues[pos] = obj ;	
+		switch(this.fullQueuePolicy){
+		case POLICY_DROP_NEWEST:
+			droppedCount.incrementAndGet() ;
+			return false ;
+			
+		case POLICY_BLOCK:
+			while(keepRunning){
+				if(queue.offer(obj)){
+					enqueuedCount.incrementAndGet() ;
+					return true ;
+				}
+				
+				wakeUp() ;
+				
+				try {
+					Thread.sleep(1) ;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt() ;
+					break ;
+				}
+			}
+			
+			droppedCount.incrementAndGet() ;
+			return false ;
+			
+		case POLICY_CALLER_RUNS:
+			processInCaller(obj) ;
+			return false ;
+			
+		default:
+			//drop the oldest ones until the new one is accepted.
+			while(true){
+				if(queue.poll() != null){
+					droppedCount.incrementAndGet() ;
+				}
+				
+				if(queue.offer(obj)){
+					enqueuedCount.incrementAndGet() ;
+					return true ;
+				}
+			}
+		}
 	}
 	
 	public DemonQueuedThread(String threadName, int queueSize){
 		this.setDaemon(true) ;
 		this.threadName = threadName ;
-		this.queues = new Object[queueSize] ;
+		//threads not using the queue pass 0.
+		this.queue = new ConcurrentRingQueue(Math.max(queueSize, 1)) ;
 		
 		this.setName(DebugService.DEMON_NAME_PREFIX + threadName) ;
 	}
@@ -67,14 +140,53 @@ public class DemonQueuedThread extends Thread{
 	public void shutdown(){
 		this.keepRunning = false ;
 		
-		try {
-			this.notify() ;
-		} catch (Exception e) {
-		}
+		wakeUp() ;
 		
 		log.info("thread [" + threadName + "] closed.") ;
 	}
 	
+	/**
+	 * Wake up the thread if it is sleeping.
+	 */
+	public void wakeUp(){
+		if(this.isSleepNow){
+			synchronized(this){
+				this.notify() ;
+			}
+		}
+	}
+	
+	/**
+	 * Move at most batch.length objects from the queue to the batch array in the order they were added.
+	 * 
+	 * @return the count of objects moved.
+	 */
+	protected int drainTo(Object[] batch){
+		int count = queue.drainTo(batch, batch.length) ;
+		
+		if(count > 0){
+			drainedCount.addAndGet(count) ;
+		}
+		
+		return count ;
+	}
+	
+	/**
+	 * Process a object in the caller thread under {@link #POLICY_CALLER_RUNS} when the queue is full.
+	 * Only invoked if {@link #supportsCallerRuns()} returns true. The default implementation drops the object.
+	 * <p>This method can be invoked by many threads at the same time.</p>
+	 */
+	protected void processInCaller(Object obj){
+		droppedCount.incrementAndGet() ;
+	}
+	
+	/**
+	 * Override this to return true if {@link #processInCaller(Object)} is overridden to support {@link #POLICY_CALLER_RUNS}.
+	 */
+	protected boolean supportsCallerRuns(){
+		return false ;
+	}
+	
 	/**
 	 * 
 	 * @return should keep the thread running.
@@ -88,12 +200,14 @@ public class DemonQueuedThread extends Thread{
 			isSleepNow = false ;
 			
 			boolean shouldSleep = true ;
+			boolean failed = false ;
 			
 			try{
 				shouldSleep = !doWithTheQueue() ;
 				
 			}catch(Throwable e){
 				shouldSleep = true ;
+				failed = true ;
 				//ignore all errors
 				log.error("error occured whiling processing the queue of thread: " + this.threadName, e) ;
 			}
@@ -102,7 +216,12 @@ public class DemonQueuedThread extends Thread{
 				try{
 					synchronized(this){
 						isSleepNow = true ;
-						this.wait(getMillSecondsToSleep()) ;
+						
+						//addToQueue() never wakes the thread up, so objects added after the check wait for
+						//the timeout. Only blocked producers and shutdown() call wakeUp().
+						if((failed || queue.isEmpty()) && keepRunning){
+							this.wait(getMillSecondsToSleep()) ;
+						}
 					}
 				}catch(Throwable e){
 					//ignore all errors
@@ -119,4 +238,66 @@ public class DemonQueuedThread extends Thread{
 		this.millSecondsToSleep = millSecondsToSleep;
 	}
 
+	public int getFullQueuePolicy() {
+		return fullQueuePolicy;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the policy is {@link #POLICY_CALLER_RUNS} and {@link #supportsCallerRuns()} returns false.
+	 */
+	public void setFullQueuePolicy(int fullQueuePolicy) {
+		if(fullQueuePolicy == POLICY_CALLER_RUNS && !supportsCallerRuns()){
+			throw new IllegalArgumentException("caller-runs policy is not supported by thread:" + this.threadName) ;
+		}
+		
+		this.fullQueuePolicy = fullQueuePolicy;
+	}
+	
+	/**
+	 * Parse the policy name: block, dropNewest, dropOldest or callerRuns.
+	 * 
+	 * @return defaultPolicy if the name is unknown.
+	 */
+	public static int toFullQueuePolicy(String policyName, int defaultPolicy){
+		if("block".equalsIgnoreCase(policyName)){
+			return POLICY_BLOCK ;
+		}else if("dropNewest".equalsIgnoreCase(policyName)){
+			return POLICY_DROP_NEWEST ;
+		}else if("dropOldest".equalsIgnoreCase(policyName)){
+			return POLICY_DROP_OLDEST ;
+		}else if("callerRuns".equalsIgnoreCase(policyName)){
+			return POLICY_CALLER_RUNS ;
+		}
+		
+		return defaultPolicy ;
+	}
+	
+	/**
+	 * Count of objects accepted by the queue.
+	 */
+	public long getEnqueuedCount(){
+		return enqueuedCount.get() ;
+	}
+	
+	/**
+	 * Count of objects dropped because the queue is full.
+	 */
+	public long getDroppedCount(){
+		return droppedCount.get() ;
+	}
+	
+	/**
+	 * Count of objects taken out from the queue for processing.
+	 */
+	public long getDrainedCount(){
+		return drainedCount.get() ;
+	}
+	
+	/**
+	 * Count of objects waiting in the queue.
+	 */
+	public int getQueueDepth(){
+		return queue.size() ;
+	}
+
 }
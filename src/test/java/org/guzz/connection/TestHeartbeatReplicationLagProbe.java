@@ -0,0 +1,119 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.connection;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.ServiceInfo;
+import org.guzz.service.core.impl.SingleMachineDatabaseServiceImpl;
+import org.guzz.util.CloseUtil;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestHeartbeatReplicationLagProbe extends TestCase {
+	
+	public static SingleMachineDatabaseServiceImpl createDatabaseService(String jdbcUrl){
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setUniqueIdentifer(jdbcUrl) ;
+		sc.setMaxLoad(10) ;
+		
+		Properties props = new Properties() ;
+		props.setProperty("pool", "nopool") ;
+		props.setProperty("driverClass", "org.h2.Driver") ;
+		props.setProperty("jdbcUrl", jdbcUrl) ;
+		props.setProperty("user", "sa") ;
+		props.setProperty("password", "") ;
+		sc.setProps(props) ;
+		
+		SingleMachineDatabaseServiceImpl ds = new SingleMachineDatabaseServiceImpl() ;
+		ds.setServiceInfo(new ServiceInfo(jdbcUrl, jdbcUrl, SingleMachineDatabaseServiceImpl.class)) ;
+		ds.configure(sc) ;
+		
+		return ds ;
+	}
+	
+	public static void execute(SingleMachineDatabaseServiceImpl ds, String sql) throws Exception{
+		Connection conn = ds.getConnection() ;
+		Statement st = null ;
+		
+		try{
+			st = conn.createStatement() ;
+			st.execute(sql) ;
+		}finally{
+			CloseUtil.close(st) ;
+			CloseUtil.close(conn) ;
+		}
+	}
+	
+	public void testMeasureLag() throws Exception{
+		SingleMachineDatabaseServiceImpl master = createDatabaseService("jdbc:h2:mem:lagmaster;DB_CLOSE_DELAY=-1") ;
+		SingleMachineDatabaseServiceImpl staleSlave = createDatabaseService("jdbc:h2:mem:lagslave;DB_CLOSE_DELAY=-1") ;
+		
+		execute(master, "drop table if exists guzz_heartbeat") ;
+		execute(master, "create table guzz_heartbeat(id int not null primary key, beat_time bigint not null)") ;
+		execute(staleSlave, "drop table if exists guzz_heartbeat") ;
+		execute(staleSlave, "create table guzz_heartbeat(id int not null primary key, beat_time bigint not null)") ;
+		
+		HeartbeatReplicationLagProbe probe = new HeartbeatReplicationLagProbe() ;
+		probe.configure(new Properties()) ;
+		
+		//the slave is the master itself: no lag.
+		PhysicsDBGroup group = new PhysicsDBGroup() ;
+		group.setGroupName("lag") ;
+		group.setMasterDB(master) ;
+		group.setSlaveDB(master) ;
+		
+		assertEquals(-1, group.getLatency()) ;
+		
+		long lag = probe.measureLag(group) ;
+		assertTrue(lag < 1000) ;
+		
+		//updated, not inserted again.
+		lag = probe.measureLag(group) ;
+		assertTrue(lag < 1000) ;
+		
+		group.updateLatency(lag) ;
+		assertTrue(group.getLatency() >= lag) ;
+		assertTrue(group.getLatency() < 1000) ;
+		
+		//a slave not replicated yet.
+		group.setSlaveDB(staleSlave) ;
+		assertEquals(Long.MAX_VALUE, probe.measureLag(group)) ;
+		
+		//a slave one minute behind.
+		execute(staleSlave, "insert into guzz_heartbeat(id, beat_time) values(1, " + (System.currentTimeMillis() - 60000) + ")") ;
+		lag = probe.measureLag(group) ;
+		assertTrue(lag >= 60000) ;
+		assertTrue(lag < 61000) ;
+		
+		group.updateLatency(-1) ;
+		assertEquals(-1, group.getLatency()) ;
+		
+		master.shutdown() ;
+		staleSlave.shutdown() ;
+	}
+
+}
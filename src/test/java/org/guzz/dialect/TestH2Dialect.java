@@ -18,8 +18,15 @@ package org.guzz.dialect;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import org.guzz.exception.DataTypeException;
 import org.guzz.orm.sql.CompiledSQL;
+import org.guzz.orm.sql.NormalCompiledSQL;
+import org.guzz.orm.type.DateTimeSQLDataType;
+import org.guzz.orm.type.EnumOrdinalSQLDataType;
+import org.guzz.orm.type.SQLDataType;
+import org.guzz.orm.type.StringSQLDataType;
 import org.guzz.test.Article;
 import org.guzz.test.DBBasedTestCase;
 import org.guzz.transaction.LockMode;
@@ -71,4 +78,56 @@ public class TestH2Dialect extends DBBasedTestCase {
 		read.close() ;
 	}
 	
+	public void testDataTypeCache() throws Exception{
+		H2Dialect dialect = new H2Dialect() ;
+		
+		SQLDataType t1 = dialect.getDataType("varchar(255)") ;
+		SQLDataType t2 = dialect.getDataType("varchar(255)") ;
+		assertTrue(t1 instanceof StringSQLDataType) ;
+		//private instances
+		assertNotSame(t1, t2) ;
+		assertTrue(dialect.getDataType("VarChar") instanceof StringSQLDataType) ;
+		
+		SQLDataType shared = dialect.getSharedDataType("enum.ordinal|" + TimeUnit.class.getName()) ;
+		assertTrue(shared instanceof EnumOrdinalSQLDataType) ;
+		assertSame(shared, dialect.getSharedDataType("enum.ordinal|" + TimeUnit.class.getName())) ;
+		assertEquals(TimeUnit.class, shared.getDataType()) ;
+		
+		try{
+			dialect.getDataType("no_such_type") ;
+			fail("DataTypeException expected.") ;
+		}catch(DataTypeException e){
+		}
+		
+		//new types are found after registered.
+		dialect.registerUserDefinedTypes("no_such_type", StringSQLDataType.class) ;
+		assertTrue(dialect.getDataType("NO_SUCH_TYPE") instanceof StringSQLDataType) ;
+		assertNotSame(shared, dialect.getSharedDataType("enum.ordinal|" + TimeUnit.class.getName())) ;
+	}
+	
+	public void testParamTypesResolvedOnce() throws Exception{
+		NormalCompiledSQL cs = (NormalCompiledSQL) tm.getCompiledSQLBuilder().buildCompiledSQL("article", "select * from @@article where id > :id and @title = :title and @createdTime > :time") ;
+		cs.addParamPropMapping("id", "id") ;
+		cs.registerParamType("title", "string") ;
+		
+		SQLDataType[] types = cs.getOrderedParamTypes() ;
+		assertEquals(3, types.length) ;
+		assertNotNull(types[0]) ;
+		assertTrue(types[1] instanceof StringSQLDataType) ;
+		assertNull(types[2]) ;
+		assertSame(types, cs.getOrderedParamTypes()) ;
+		
+		cs.registerParamType("time", "datetime") ;
+		types = cs.getOrderedParamTypes() ;
+		assertTrue(types[2] instanceof DateTimeSQLDataType) ;
+		
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		try{
+			List articles = read.list(cs.bind("id", 1).bind("title", "no title").bind("time", new Date()), 1, 10) ;
+			assertTrue(articles.isEmpty()) ;
+		}finally{
+			read.close() ;
+		}
+	}
+	
 }
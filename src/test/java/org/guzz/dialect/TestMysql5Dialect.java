@@ -0,0 +1,60 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.dialect;
+
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+import org.h2.tools.SimpleResultSet;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestMysql5Dialect extends TestCase {
+	
+	public void testReadEstimatedCount() throws Exception{
+		Mysql5Dialect dialect = new Mysql5Dialect() ;
+		
+		assertEquals(dialect.readEstimatedCount(newPlan(new Object[]{new Long(1000)})), 1000) ;
+		
+		//joins: rows of all tables are multiplied.
+		assertEquals(dialect.readEstimatedCount(newPlan(new Object[]{new Long(1000), new Long(3)})), 3000) ;
+		assertEquals(dialect.readEstimatedCount(newPlan(new Object[]{new Long(Integer.MAX_VALUE), new Long(3), new Long(5)})), Integer.MAX_VALUE) ;
+		
+		//no estimate
+		assertEquals(dialect.readEstimatedCount(newPlan(new Object[0])), -1) ;
+		assertEquals(dialect.readEstimatedCount(newPlan(new Object[]{new Long(1000), null})), -1) ;
+		assertEquals(dialect.readEstimatedCount(newPlan(new Object[]{null})), -1) ;
+	}
+	
+	protected SimpleResultSet newPlan(Object[] rows){
+		SimpleResultSet rs = new SimpleResultSet() ;
+		rs.addColumn("table", Types.VARCHAR, 64, 0) ;
+		rs.addColumn("rows", Types.BIGINT, 20, 0) ;
+		
+		for(int i = 0 ; i < rows.length ; i++){
+			rs.addRow(new Object[]{"t" + i, rows[i]}) ;
+		}
+		
+		return rs ;
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.id;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.guzz.transaction.WriteTranSession;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestHiLoBlockAllocator extends TestCase {
+	
+	public void testSameIdsAsHiLo(){
+		CountingFetcher fetcher = new CountingFetcher() ;
+		HiLoBlockAllocator allocator = new HiLoBlockAllocator(9, 0, fetcher) ;
+		
+		//hi value 0 skips id 0.
+		for(int i = 1 ; i < 30 ; i++){
+			assertEquals(i, allocator.next("db1:guzz_unique_key", null, null)) ;
+		}
+		
+		assertEquals(3, fetcher.fetchedCount()) ;
+		assertEquals(1, allocator.getTargetsCount()) ;
+	}
+	
+	public void testSeparatedTargets(){
+		CountingFetcher fetcher = new CountingFetcher() ;
+		HiLoBlockAllocator allocator = new HiLoBlockAllocator(9, 0, fetcher) ;
+		
+		assertEquals(1, allocator.next("db1:guzz_unique_key", null, null)) ;
+		assertEquals(10, allocator.next("db2:guzz_unique_key", null, null)) ;
+		assertEquals(2, allocator.next("db1:guzz_unique_key", null, null)) ;
+		assertEquals(11, allocator.next("db2:guzz_unique_key", null, null)) ;
+		
+		assertEquals(2, allocator.getTargetsCount()) ;
+	}
+	
+	public void testPrefetch() throws Exception{
+		final CountingFetcher fetcher = new CountingFetcher() ;
+		HiLoBlockAllocator allocator = new HiLoBlockAllocator(9, 80, fetcher) ;
+		
+		for(int i = 1 ; i < 9 ; i++){
+			assertEquals(i, allocator.next("db1:guzz_unique_key", null, null)) ;
+		}
+		
+		//the 8th id triggers the prefetching.
+		for(int i = 0 ; i < 100 && fetcher.fetchedCount() < 2 ; i++){
+			Thread.sleep(10) ;
+		}
+		
+		assertEquals(2, fetcher.fetchedCount()) ;
+		assertNull(fetcher.lastSession) ;
+		
+		assertEquals(9, allocator.next("db1:guzz_unique_key", null, null)) ;
+		assertEquals(10, allocator.next("db1:guzz_unique_key", null, null)) ;
+		
+		//id 10 comes from the prefetched block, no more fetching.
+		assertEquals(2, fetcher.fetchedCount()) ;
+	}
+	
+	public void testShutdown() throws Exception{
+		final CountingFetcher fetcher = new CountingFetcher() ;
+		HiLoBlockAllocator allocator = new HiLoBlockAllocator(9, 80, fetcher) ;
+		allocator.shutdown() ;
+		
+		for(int i = 1 ; i < 10 ; i++){
+			assertEquals(i, allocator.next("db1:guzz_unique_key", null, null)) ;
+		}
+		
+		//no prefetching after the shutdown, the next block is fetched in the caller.
+		Thread.sleep(50) ;
+		assertEquals(1, fetcher.fetchedCount()) ;
+		
+		assertEquals(10, allocator.next("db1:guzz_unique_key", null, null)) ;
+		assertEquals(2, fetcher.fetchedCount()) ;
+	}
+	
+	public void testConcurrentAllocation() throws Exception{
+		final CountingFetcher fetcher = new CountingFetcher() ;
+		final HiLoBlockAllocator allocator = new HiLoBlockAllocator(99, 80, fetcher) ;
+		final Set ids = Collections.synchronizedSet(new HashSet()) ;
+		final int threads = 8 ;
+		final int loops = 5000 ;
+		
+		Thread[] ts = new Thread[threads] ;
+		
+		for(int i = 0 ; i < threads ; i++){
+			ts[i] = new Thread(){
+				public void run(){
+					for(int k = 0 ; k < loops ; k++){
+						ids.add(new Long(allocator.next("db1:guzz_unique_key", null, null))) ;
+					}
+				}
+			} ;
+			ts[i].start() ;
+		}
+		
+		for(int i = 0 ; i < threads ; i++){
+			ts[i].join() ;
+		}
+		
+		assertEquals(threads * loops, ids.size()) ;
+		assertFalse(ids.contains(new Long(0))) ;
+	}
+	
+	static class CountingFetcher implements HiLoBlockAllocator.HiValueFetcher{
+		private final AtomicLong next = new AtomicLong() ;
+		
+		volatile WriteTranSession lastSession ;
+		
+		public long nextHiValue(WriteTranSession session, Object tableCondition) {
+			lastSession = session ;
+			
+			return next.getAndIncrement() ;
+		}
+		
+		public int fetchedCount(){
+			return (int) next.get() ;
+		}
+	}
+
+}
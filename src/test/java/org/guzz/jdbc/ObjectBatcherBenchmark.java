@@ -0,0 +1,96 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.jdbc;
+
+import org.guzz.test.Comment;
+import org.guzz.test.DBBasedTestCase;
+import org.guzz.test.User;
+import org.guzz.transaction.WriteTranSession;
+
+/**
+ *
+ * Inserting rate of {@link ObjectBatcher} against the test H2 database: jdbc batch compared with multi-row insert,
+ * with comments keyed by the hilo generator(H2 doesn't report the auto-increment keys of multi-row inserts),
+ * for groups of 1/10/100/1000 rows per execution.
+ * <p>
+ * main() builds the test context with setUp(), warms up with a tenth of the rows, and prints rows/s for each group size. 
+ * args[0]: rows inserted in each case, 20000 by default. The class is named *Benchmark so that the test runs skip it.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class ObjectBatcherBenchmark extends DBBasedTestCase {
+	
+	private static final int[] groups = new int[]{1, 10, 100, 1000} ;
+
+	public static void main(String[] args) throws Exception{
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000 ;
+		
+		ObjectBatcherBenchmark b = new ObjectBatcherBenchmark() ;
+		b.setUp() ;
+		
+		try{
+			//warm up
+			for(int i = 0 ; i < groups.length ; i++){
+				b.insert(rows / 10, groups[i], false) ;
+				b.insert(rows / 10, groups[i], true) ;
+			}
+			
+			for(int i = 0 ; i < groups.length ; i++){
+				long batch = b.insert(rows, groups[i], false) ;
+				long multiRow = b.insert(rows, groups[i], true) ;
+				
+				System.out.println(groups[i] + " rows/group, jdbc batch: " + rows * 1000L / Math.max(1, batch) + " rows/s, multi-row: " + rows * 1000L / Math.max(1, multiRow) + " rows/s") ;
+			}
+		}finally{
+			b.tearDown() ;
+		}
+	}
+
+	/**
+	 * @return time cost in milliseconds
+	 */
+	protected long insert(int rows, int group, boolean multiRow){
+		WriteTranSession session = tm.openRWTran(false) ;
+		long start = System.currentTimeMillis() ;
+		
+		try{
+			ObjectBatcher batcher = session.createObjectBatcher() ;
+			batcher.setMultiRowInsert(multiRow) ;
+			batcher.setBatchSize(group) ;
+			//even users' comments are in TB_COMMENT1 of the default database.
+			batcher.setTableCondition(new User(2)) ;
+			
+			for(int i = 0 ; i < rows ; i++){
+				Comment c = new Comment() ;
+				c.setUserId(i) ;
+				c.setUserName("bench un " + i) ;
+				c.setContent("bench content") ;
+				
+				batcher.insert(c) ;
+			}
+			
+			batcher.executeBatch() ;
+			session.commit() ;
+		}finally{
+			session.close() ;
+		}
+		
+		return System.currentTimeMillis() - start ;
+	}
+
+}
@@ -74,6 +74,72 @@ public class TestObjectBatcher extends DBBasedTestCase {
 		assertEquals(count2, 980 + count) ;
 	}
 	
+	public void testMultiRowInsert() throws Exception{
+		WriteTranSession session = tm.openRWTran(false) ;
+		ObjectBatcher batcher = session.createObjectBatcher() ;
+		batcher.setMultiRowInsert(true) ;
+		batcher.setBatchSize(250) ;
+		
+		int count = countUser(tm) ;
+		
+		for(int loop = 0 ; loop < 980 ; loop++){
+			User user = new User() ;
+			user.setUserName("multi un " + loop) ;
+			user.setFavCount(new Integer(loop)) ;
+				
+			batcher.insert(user) ;
+		}
+		
+		int[] affected = batcher.executeBatch() ;
+		assertEquals(980 % 250, affected.length) ;
+
+		session.commit() ;
+		session.close() ;
+		
+		int count2 = countUser(tm) ;
+		assertEquals(count2, 980 + count) ;
+		
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		SearchExpression se = SearchExpression.forLoadAll(User.class) ;
+		se.and(Terms.eq("userName", "multi un 777")) ;
+		User user = (User) read.findObject(se) ;
+		read.close() ;
+		
+		assertEquals(new Integer(777), user.getFavCount()) ;
+	}
+	
+	public void testMultiRowInsertGeneratedKeys() throws Exception{
+		WriteTranSession session = tm.openRWTran(false) ;
+		ObjectBatcher batcher = session.createObjectBatcher() ;
+		batcher.setMultiRowInsert(true) ;
+		
+		//H2 doesn't report the keys of multi-row inserts, the jdbc batch is used and no key is guessed.
+		int total = 1200 ;
+		batcher.setBatchSize(total) ;
+		
+		User[] users = new User[total] ;
+		for(int loop = 0 ; loop < total ; loop++){
+			users[loop] = new User() ;
+			users[loop].setUserName("key un " + loop) ;
+				
+			batcher.insert(users[loop]) ;
+		}
+		
+		batcher.executeBatch() ;
+		session.commit() ;
+		session.close() ;
+		
+		for(int loop = 0 ; loop < total ; loop++){
+			assertEquals(0, users[loop].getId()) ;
+		}
+		
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		SearchExpression se = SearchExpression.forClass(User.class) ;
+		se.and(Terms.like("userName", "key un %", true)) ;
+		assertEquals(total, read.count(se)) ;
+		read.close() ;
+	}
+	
 	public void testUpdate() throws Exception{
 		WriteTranSession session = tm.openRWTran(false) ;
 		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
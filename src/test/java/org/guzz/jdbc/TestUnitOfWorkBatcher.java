@@ -0,0 +1,214 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.jdbc;
+
+import java.util.Date;
+import java.util.List;
+
+import org.guzz.orm.se.SearchExpression;
+import org.guzz.orm.se.Terms;
+import org.guzz.test.Book;
+import org.guzz.test.DBBasedTestCase;
+import org.guzz.test.User;
+import org.guzz.transaction.ReadonlyTranSession;
+import org.guzz.transaction.WriteTranSession;
+import org.guzz.transaction.WriteTranSessionImpl;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestUnitOfWorkBatcher extends DBBasedTestCase {
+
+	protected void prepareEnv() throws Exception{
+		for(int i = 1 ; i < 100 ; i++){
+			executeUpdate(getDefaultConn(), "insert into TB_USER values(" + i + ", 'name " + i + "', 'psw " + i + "', " + ((i%2==0)?1:0) + ", " + i + ", " + getDateFunction() + ")") ;		
+		}		
+	}
+	
+	protected long count(Class domainClass){
+		ReadonlyTranSession session = tm.openNoDelayReadonlyTran() ;
+		
+		try{
+			return session.count(SearchExpression.forClass(domainClass)) ;
+		}finally{
+			session.close() ;
+		}
+	}
+	
+	protected Book newBook(int i){
+		Book book = new Book() ;
+		book.setTitle("uow book " + i) ;
+		book.setContent("content " + i) ;
+		book.setISDN("isdn " + i) ;
+		book.setCreatedTime(new Date()) ;
+		
+		return book ;
+	}
+	
+	public void testMixedOperations() throws Exception{
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		List users = read.list(SearchExpression.forClass(User.class, 1, 20)) ;
+		read.close() ;
+		
+		long userCount = count(User.class) ;
+		long bookCount = count(Book.class) ;
+		
+		WriteTranSession session = tm.openRWTran(false) ;
+		UnitOfWorkBatcher batcher = session.createUnitOfWorkBatcher() ;
+		
+		for(int i = 0 ; i < 10 ; i++){
+			User user = new User() ;
+			user.setUserName("uow un " + i) ;
+			batcher.insert(user) ;
+			batcher.insert(newBook(i)) ;
+			
+			User old = (User) users.get(i) ;
+			old.setFavCount(new Integer(-7)) ;
+			batcher.update(old) ;
+			
+			batcher.delete(users.get(10 + i)) ;
+		}
+		
+		BatchUpdateCounts[] results = batcher.flush() ;
+		session.commit() ;
+		session.close() ;
+		
+		assertEquals(4, results.length) ;
+		assertEquals(BatchUpdateCounts.INSERT, results[0].getOperation()) ;
+		assertEquals(User.class, results[0].getDomainClass()) ;
+		assertEquals(BatchUpdateCounts.INSERT, results[1].getOperation()) ;
+		assertEquals(Book.class, results[1].getDomainClass()) ;
+		assertEquals(BatchUpdateCounts.UPDATE, results[2].getOperation()) ;
+		assertEquals(BatchUpdateCounts.DELETE, results[3].getOperation()) ;
+		
+		for(int i = 0 ; i < results.length ; i++){
+			assertEquals(10, results[i].getUpdateCounts().length) ;
+			assertEquals(10, results[i].getTotalRows()) ;
+		}
+		
+		assertEquals(userCount + 10 - 10, count(User.class)) ;
+		assertEquals(bookCount + 10, count(Book.class)) ;
+		
+		read = tm.openNoDelayReadonlyTran() ;
+		SearchExpression se = SearchExpression.forClass(User.class) ;
+		se.and(Terms.eq("favCount", -7)) ;
+		assertEquals(10, read.count(se)) ;
+		read.close() ;
+	}
+	
+	public void testFlushOrder() throws Exception{
+		WriteTranSession session = tm.openRWTran(false) ;
+		UnitOfWorkBatcher batcher = session.createUnitOfWorkBatcher() ;
+		batcher.setFlushOrder(new Class[]{User.class, Book.class}) ;
+		
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		User u1 = (User) read.findObjectByPK(User.class, 1) ;
+		Book b1 = (Book) read.findObjectByPK(Book.class, 1) ;
+		read.close() ;
+		
+		//called children first for inserts, and parents first for deletes.
+		batcher.delete(u1) ;
+		batcher.insert(newBook(1)) ;
+		batcher.delete(b1) ;
+		batcher.insert(new User()) ;
+		
+		BatchUpdateCounts[] results = batcher.flush() ;
+		session.rollback() ;
+		session.close() ;
+		
+		assertEquals(4, results.length) ;
+		assertEquals(BatchUpdateCounts.INSERT, results[0].getOperation()) ;
+		assertEquals(User.class, results[0].getDomainClass()) ;
+		assertEquals(BatchUpdateCounts.INSERT, results[1].getOperation()) ;
+		assertEquals(Book.class, results[1].getDomainClass()) ;
+		assertEquals(BatchUpdateCounts.DELETE, results[2].getOperation()) ;
+		assertEquals(Book.class, results[2].getDomainClass()) ;
+		assertEquals(BatchUpdateCounts.DELETE, results[3].getOperation()) ;
+		assertEquals(User.class, results[3].getDomainClass()) ;
+	}
+	
+	public void testAutoExecute() throws Exception{
+		long userCount = count(User.class) ;
+		long bookCount = count(Book.class) ;
+		
+		WriteTranSession session = tm.openRWTran(false) ;
+		UnitOfWorkBatcher batcher = session.createUnitOfWorkBatcher() ;
+		batcher.setMultiRowInsert(true) ;
+		batcher.setBatchSize(7) ;
+		
+		User[] users = new User[50] ;
+		for(int i = 0 ; i < 50 ; i++){
+			users[i] = new User() ;
+			users[i].setUserName("uow auto " + i) ;
+			batcher.insert(users[i]) ;
+			batcher.insert(newBook(i)) ;
+		}
+		
+		int[] counts = batcher.executeBatch() ;
+		session.commit() ;
+		session.close() ;
+		
+		//100 objects, 14 auto executed groups of 7.
+		assertEquals(2, counts.length) ;
+		assertEquals(userCount + 50, count(User.class)) ;
+		assertEquals(bookCount + 50, count(Book.class)) ;
+		
+		//H2 can't tell the keys of a multi-row insert, the users are inserted by the jdbc batch without reading the keys back.
+		for(int i = 0 ; i < 50 ; i++){
+			assertEquals(0, users[i].getId()) ;
+		}
+	}
+	
+	public void testBatchersReused() throws Exception{
+		long userCount = count(User.class) ;
+		long bookCount = count(Book.class) ;
+		final int[] created = new int[1] ;
+		
+		WriteTranSession session = tm.openRWTran(false) ;
+		UnitOfWorkBatcher batcher = new UnitOfWorkBatcherImpl((WriteTranSessionImpl) session){
+			protected ObjectBatcherImpl createObjectBatcher() {
+				created[0]++ ;
+				return super.createObjectBatcher() ;
+			}
+		} ;
+		batcher.setBatchSize(4) ;
+		
+		for(int i = 0 ; i < 20 ; i++){
+			User user = new User() ;
+			user.setUserName("uow reused " + i) ;
+			batcher.insert(user) ;
+			batcher.insert(newBook(i)) ;
+			
+			if(i % 5 == 0){
+				batcher.executeBatch() ;
+			}
+		}
+		
+		batcher.executeBatch() ;
+		session.commit() ;
+		session.close() ;
+		
+		//one batcher per group, reused by the flushes and the auto executions.
+		assertEquals(2, created[0]) ;
+		assertEquals(userCount + 20, count(User.class)) ;
+		assertEquals(bookCount + 20, count(Book.class)) ;
+	}
+
+}
@@ -18,16 +18,22 @@ package org.guzz.orm.mapping;
 
 import java.security.SecureRandom;
 import java.util.List;
+import java.util.Properties;
 
+import org.guzz.Service;
 import org.guzz.bytecode.LazyPropChangeDetector;
 import org.guzz.orm.rdms.SimpleTable;
 import org.guzz.orm.se.SearchExpression;
 import org.guzz.orm.se.Terms;
 import org.guzz.pojo.DynamicUpdatable;
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.core.impl.DebugServiceImpl;
+import org.guzz.service.core.impl.DebugServiceProxy;
 import org.guzz.test.Book;
 import org.guzz.test.DBBasedTestCase;
 import org.guzz.transaction.ReadonlyTranSession;
 import org.guzz.transaction.WriteTranSession;
+import org.guzz.util.stat.SQLMetrics;
 
 /**
  * 
@@ -146,4 +152,66 @@ public class TestLazyLoad extends DBBasedTestCase {
 		session.close() ;
 	}
 
+	public void testBatchLazyLoad() throws Exception{
+		for(int i = 2 ; i <= 5 ; i++){
+			executeUpdate(getDefaultConn(), "insert into TB_BOOK values(" + i + ", 'book title " + i + "', 'book content " + i + "', now(), 'isdn-b" + i + "', null)") ;
+		}
+		
+		SearchExpression se = SearchExpression.forClass(Book.class) ;
+		se.setOrderBy("id asc") ;
+		
+		ReadonlyTranSession session = tm.openDelayReadTran() ;
+		List books = session.list(se) ;
+		session.close() ;
+		assertEquals(books.size(), 5) ;
+		
+		//count the executed sqls with the sql metrics of a debug service swapped in.
+		DebugServiceProxy debugService = (DebugServiceProxy) gf.getDebugService() ;
+		DebugServiceImpl countingService = newCountingDebugService() ;
+		SQLMetrics metrics = countingService.getSQLMetrics() ;
+		Object oldDebugService = debugService.setServiceImpl(countingService) ;
+		
+		try{
+			//batch-size is 3: book 1 loads 1,2,3; book 4 loads 4,5.
+			for(int i = 0 ; i < 5 ; i++){
+				Book b = (Book) books.get(i) ;
+				assertEquals(b.getContent(), "book content " + (i + 1)) ;
+			}
+			
+			assertEquals(2, metrics.getExecutionCount()) ;
+			
+			//cached
+			assertEquals(((Book) books.get(2)).getContent(), "book content 3") ;
+			assertEquals(2, metrics.getExecutionCount()) ;
+			
+			//objects loaded one by one are not grouped.
+			session = tm.openDelayReadTran() ;
+			Book b3 = (Book) session.findObjectByPK(Book.class, 3) ;
+			Book b4 = (Book) session.findObjectByPK(Book.class, 4) ;
+			session.close() ;
+			
+			metrics.reset() ;
+			assertEquals(b3.getContent(), "book content 3") ;
+			assertEquals(b4.getContent(), "book content 4") ;
+			assertEquals(2, metrics.getExecutionCount()) ;
+		}finally{
+			debugService.setServiceImpl((Service) oldDebugService) ;
+		}
+	}
+	
+	protected DebugServiceImpl newCountingDebugService(){
+		Properties props = new Properties() ;
+		props.setProperty("runMode", "debug") ;
+		props.setProperty("onError", "halt") ;
+		props.setProperty("sqlMetrics", "true") ;
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setProps(props) ;
+		
+		DebugServiceImpl s = new DebugServiceImpl() ;
+		s.configure(new ServiceConfig[]{sc}) ;
+		
+		return s ;
+	}
+
 }
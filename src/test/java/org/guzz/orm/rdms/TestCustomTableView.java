@@ -25,9 +25,12 @@ import org.guzz.Guzz;
 import org.guzz.connection.PhysicsDBGroup;
 import org.guzz.jdbc.JDBCTemplate;
 import org.guzz.jdbc.ObjectBatcher;
+import org.guzz.orm.AbstractCustomTableView;
 import org.guzz.orm.se.SearchExpression;
 import org.guzz.orm.se.Terms;
 import org.guzz.orm.sql.CompiledSQL;
+import org.guzz.orm.sql.CustomCompiledSQL;
+import org.guzz.orm.sql.NormalCompiledSQL;
 import org.guzz.test.DBBasedTestCase;
 import org.guzz.test.shop.Cargo;
 import org.guzz.test.shop.CargoStatus;
@@ -368,6 +371,44 @@ public class TestCustomTableView extends DBBasedTestCase {
 		session.close() ;
 	}
 	
+	public void testCompiledSQLCache() throws Exception{
+		testInsert() ;
+		ReadonlyTranSession session = tm.openDelayReadTran() ;
+		
+		String sql = "select * from @@cargo where @publisher = :publisher2" ;
+		CustomCompiledSQL cs = (CustomCompiledSQL) tm.getCompiledSQLBuilder().buildCompiledSQL(Cargo.class, sql) ;
+		cs.addParamPropMapping("publisher2", "publisher") ;
+		
+		Guzz.setTableCondition("book") ;
+		assertEquals(session.list(cs.bind("publisher2", "sheep"), 1, 1000).size(), 500) ;
+		assertEquals(session.list(cs.bind("publisher2", "wolf"), 1, 1000).size(), 500) ;
+		assertEquals(1, cs.getCacheMisses()) ;
+		assertEquals(1, cs.getCacheHits()) ;
+		
+		//the same runtime sql is shared.
+		NormalCompiledSQL runtimeCS = cs.getRuntimeSql(cs.getObjectMapping("book")) ;
+		assertSame(runtimeCS, cs.getRuntimeSql(cs.getObjectMapping("book"))) ;
+		assertEquals(1, cs.getCachedSize()) ;
+		
+		//layout changed
+		AbstractCustomTableView view = (AbstractCustomTableView) gf.getObjectMappingManager().getCustomTableView("cargo") ;
+		view.notifyLayoutChanged() ;
+		
+		assertNotSame(runtimeCS, cs.getRuntimeSql(cs.getObjectMapping("book"))) ;
+		assertEquals(2, cs.getCacheMisses()) ;
+		assertEquals(500, session.list(cs.bind("publisher2", "sheep"), 1, 1000).size()) ;
+		
+		//bounded
+		cs = (CustomCompiledSQL) tm.getCompiledSQLBuilder().buildCompiledSQL(Cargo.class, "select * from @@cargo where @price > :price") ;
+		cs.setMaxCachedSize(1) ;
+		cs.getRuntimeSql(cs.getObjectMapping("book")) ;
+		cs.getRuntimeSql(cs.getObjectMapping("crossStitch")) ;
+		assertEquals(1, cs.getCachedSize()) ;
+		assertEquals(2, cs.getCacheMisses()) ;
+		
+		session.close() ;
+	}
+	
 	public void testIBatisQuery() throws Exception{
 		testInsert() ;
 		ReadonlyTranSession session = tm.openDelayReadTran() ;
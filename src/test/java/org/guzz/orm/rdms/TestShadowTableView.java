@@ -23,6 +23,7 @@ import java.util.List;
 
 import org.guzz.Guzz;
 import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.dao.PageFlip;
 import org.guzz.jdbc.ObjectBatcher;
 import org.guzz.jdbc.SQLBatcher;
 import org.guzz.orm.se.SearchExpression;
@@ -125,6 +126,37 @@ public class TestShadowTableView extends DBBasedTestCase {
 		session.close() ;
 	}
 	
+	public void testPageWithParallelCount() throws Exception{
+		testInsert() ;
+		
+		ReadonlyTranSession session = tm.openDelayReadTran() ;
+		
+		try{
+			//the table condition is only set in this thread, the count thread must use it as well.
+			User u = new User() ;
+			u.setId(1) ;
+			Guzz.setTableCondition(u) ;
+			
+			SearchExpression se = SearchExpression.forClass(Comment.class, 1, 10) ;
+			se.and(Terms.eq("userName", "lily")) ;
+			se.setCountInParallel(true) ;
+			
+			PageFlip page = session.page(se) ;
+			assertEquals(page.getElements().size(), 10) ;
+			assertEquals(page.getTotalCount(), 500) ;
+			
+			User u2 = new User() ;
+			u2.setId(2) ;
+			Guzz.setTableCondition(u2) ;
+			
+			page = session.page(se) ;
+			assertEquals(page.getElements().size(), 0) ;
+			assertEquals(page.getTotalCount(), 0) ;
+		}finally{
+			session.close() ;
+		}
+	}
+	
 	public void testCompiledSQL() throws Exception{
 		testInsert() ;
 		
@@ -197,6 +229,46 @@ public class TestShadowTableView extends DBBasedTestCase {
 		read.close() ;
 	}
 	
+	public void testObjectBatcherMultiRowInsert() throws Exception{
+		WriteTranSession session = tm.openRWTran(false) ;
+		ObjectBatcher batcher = session.createObjectBatcher() ;
+		batcher.setMultiRowInsert(true) ;
+		batcher.setBatchSize(300) ;
+		
+		User u = new User() ;
+		u.setId(1) ;
+		Guzz.setTableCondition(u) ;
+		
+		//keys are assigned by the hilo generator before inserting.
+		Comment[] comments = new Comment[700] ;
+		for(int i = 0 ; i < comments.length ; i++){
+			Comment c = new Comment() ;
+			c.setContent("multi-row content") ;
+			c.setCreatedTime(new Date()) ;
+			c.setUserName(i % 2 == 0 ? "lucy" : "lily") ;
+			c.setUserId(i) ;
+			
+			batcher.insert(c) ;
+			comments[i] = c ;
+		}
+		
+		batcher.executeBatch() ;
+		session.commit() ;
+		session.close() ;
+		
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		
+		try{
+			SearchExpression se = SearchExpression.forClass(Comment.class) ;
+			assertEquals(read.count(se), 700) ;
+			
+			Comment c = (Comment) read.findObjectByPK(Comment.class, comments[650].getId()) ;
+			assertEquals(650, c.getUserId()) ;
+		}finally{
+			read.close() ;
+		}
+	}
+	
 	public void testSQLBatcher() throws Exception{
 		WriteTranSession session = tm.openRWTran(false) ;
 
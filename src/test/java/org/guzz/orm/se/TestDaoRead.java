@@ -20,10 +20,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.guzz.dao.KeysetPageFlip;
 import org.guzz.dao.PageFlip;
+import org.guzz.exception.DaoException;
 import org.guzz.test.Article;
 import org.guzz.test.DBBasedTestCase;
 import org.guzz.test.User;
+import org.guzz.transaction.DataSourceTransactionManager;
 import org.guzz.transaction.ReadonlyTranSession;
 import org.guzz.transaction.TransactionManager;
 
@@ -177,6 +180,145 @@ public class TestDaoRead extends DBBasedTestCase {
 		//count
 		assertEquals(page.getTotalCount(), 999) ;
 	}
+	
+	public void testFindPageWithParallelCount() throws Exception{
+		ReadonlyTranSession session = tm.openDelayReadTran() ;
+		
+		try{
+			SearchExpression se = SearchExpression.forClass(User.class, 3, 10) ;
+			se.setOrderBy("id asc") ;
+			se.and(Terms.bigger("favCount", new Integer(99))) ;
+			se.setCountInParallel(true) ;
+			
+			PageFlip page = session.page(se) ;
+			assertEquals(page.getTotalCount(), 900) ;
+			assertEquals(page.getElements().size(), 10) ;
+			assertEquals(((User) page.getElements().get(0)).getId(), 120) ;
+			
+			//no estimates in H2, the exact count is returned.
+			se.setCountMode(SearchExpression.COUNT_MODE_ESTIMATED) ;
+			page = session.page(se) ;
+			assertEquals(page.getTotalCount(), 900) ;
+			assertEquals(session.count(se), 900L) ;
+		}finally{
+			session.close() ;
+		}
+		
+		//the count threads are stopped with the transaction manager, counts are computed in the sessions then.
+		((DataSourceTransactionManager) tm).shutdown() ;
+		
+		session = tm.openDelayReadTran() ;
+		
+		try{
+			SearchExpression se = SearchExpression.forClass(User.class, 3, 10) ;
+			se.and(Terms.bigger("favCount", new Integer(99))) ;
+			se.setCountInParallel(true) ;
+			
+			assertEquals(session.page(se).getTotalCount(), 900) ;
+		}finally{
+			session.close() ;
+		}
+	}
+
+	public void testFindPageByKeyset() throws Exception{
+		ReadonlyTranSession session = tm.openDelayReadTran() ;
+		
+		try{
+			//mixed directions: vip users first, then ordered by favCount.
+			SearchExpression se = SearchExpression.forClass(User.class, 1, 100) ;
+			se.setOrderBy("vip desc, favCount asc") ;
+			List all = session.list(se.copy().setPageSize(SearchExpression.UNLIMITED_PAGE_SIZE)) ;
+			assertEquals(all.size(), 999) ;
+			
+			//read forward
+			se.seekAfter(null) ;
+			KeysetPageFlip page = (KeysetPageFlip) session.page(se) ;
+			assertFalse(page.isHasPreviousPage()) ;
+			assertEquals(page.getTotalCount(), 999) ;
+			
+			int pos = 0 ;
+			int pages = 1 ;
+			while(true){
+				for(int i = 0 ; i < page.getElements().size() ; i++){
+					assertEquals(((User) page.getElements().get(i)).getId(), ((User) all.get(pos++)).getId()) ;
+				}
+				
+				if(!page.isHasNextPage()) break ;
+				
+				se.seekAfter(page.getNextCursor()) ;
+				page = (KeysetPageFlip) session.page(se) ;
+				assertTrue(page.isHasPreviousPage()) ;
+				pages++ ;
+			}
+			assertEquals(pos, 999) ;
+			assertEquals(pages, 10) ;
+			assertEquals(page.getElements().size(), 99) ;
+			
+			//read backward from the last page.
+			se.seekBefore(page.getPreviousCursor()) ;
+			page = (KeysetPageFlip) session.page(se) ;
+			assertTrue(page.isHasNextPage()) ;
+			assertEquals(page.getElements().size(), 100) ;
+			for(int i = 0 ; i < 100 ; i++){
+				assertEquals(((User) page.getElements().get(i)).getId(), ((User) all.get(800 + i)).getId()) ;
+			}
+			
+			//single order with the row value comparison.
+			se = SearchExpression.forClass(User.class, 1, 10) ;
+			se.setOrderBy("favCount asc") ;
+			se.and(Terms.bigger("favCount", new Integer(500))) ;
+			se.seekAfter(new KeysetCursor(new Object[]{new Integer(600), new Integer(600)}).toToken()) ;
+			List users = session.list(se) ;
+			assertEquals(users.size(), 10) ;
+			assertEquals(((User) users.get(0)).getId(), 601) ;
+			
+			//no more rows
+			se.seekAfter(new KeysetCursor(new Object[]{new Integer(999), new Integer(999)}).toToken()) ;
+			page = (KeysetPageFlip) session.page(se) ;
+			assertTrue(page.getElements().isEmpty()) ;
+			assertFalse(page.isHasNextPage()) ;
+			assertNull(page.getNextCursor()) ;
+		}finally{
+			session.close() ;
+		}
+	}
+
+	public void testKeysetWithNullableOrder() throws Exception{
+		executeUpdate(getDefaultConn(), "update TB_USER set userName = null where pk = 5") ;
+		
+		ReadonlyTranSession session = tm.openDelayReadTran() ;
+		
+		try{
+			SearchExpression se = SearchExpression.forClass(User.class, 1, 10) ;
+			se.setOrderBy("userName asc") ;
+			se.seekAfter(null) ;
+			
+			//the null row is on the first page, and no cursor can be made for it.
+			try{
+				session.page(se) ;
+				fail("null value in the keyset.") ;
+			}catch(DaoException e){
+			}
+			
+			//cursors with null values are rejected, instead of comparing with null and returning nothing.
+			se.seekAfter(new KeysetCursor(new Object[]{null, new Integer(5)}).toToken()) ;
+			try{
+				session.list(se) ;
+				fail("null value in the keyset.") ;
+			}catch(DaoException e){
+			}
+			
+			//not-null orders still work with the row.
+			se = SearchExpression.forClass(User.class, 1, 10) ;
+			se.setOrderBy("favCount asc") ;
+			se.seekAfter(new KeysetCursor(new Object[]{new Integer(4), new Integer(4)}).toToken()) ;
+			List users = session.list(se) ;
+			assertEquals(((User) users.get(0)).getId(), 5) ;
+			assertNull(((User) users.get(0)).getUserName()) ;
+		}finally{
+			session.close() ;
+		}
+	}
 
 	protected void prepareEnv() throws Exception{
 		for(int i = 1 ; i < 1000 ; i++){
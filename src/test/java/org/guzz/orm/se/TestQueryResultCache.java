@@ -0,0 +1,187 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.orm.se;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.guzz.dao.PageFlip;
+import org.guzz.test.Book;
+import org.guzz.test.DBBasedTestCase;
+import org.guzz.transaction.ReadonlyTranSession;
+import org.guzz.transaction.WriteTranSession;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestQueryResultCache extends DBBasedTestCase {
+	
+	public void testReadThroughAndInvalidate() throws Exception{
+		SearchExpression se = SearchExpression.forClass(Book.class) ;
+		se.setCacheMode(SearchExpression.CACHE_MODE_READ_THROUGH) ;
+		
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		try{
+			assertEquals(1, read.list(se).size()) ;
+			assertEquals(1, read.count(se)) ;
+			
+			//written behind guzz, the cached results are returned.
+			executeUpdate(H2Conn, "insert into TB_BOOK values(2, 'book title 2', 'book content 2', now(), 'isdn-b2', null)") ;
+			assertEquals(1, read.list(se).size()) ;
+			assertEquals(1, read.count(se)) ;
+			assertEquals(2, read.page(se).getTotalCount()) ;
+			
+			//not cached
+			se.setCacheMode(SearchExpression.CACHE_MODE_NONE) ;
+			assertEquals(2, read.list(se).size()) ;
+			se.setCacheMode(SearchExpression.CACHE_MODE_READ_THROUGH) ;
+			
+			//only the count of the page is cached.
+			SearchExpression se3 = SearchExpression.forClass(Book.class) ;
+			se3.setCountCacheMode(SearchExpression.CACHE_MODE_READ_THROUGH) ;
+			PageFlip page = read.page(se3) ;
+			assertEquals(1, page.getTotalCount()) ;
+			assertEquals(2, page.getElements().size()) ;
+			
+			//the returned list is a copy.
+			read.list(se).clear() ;
+			assertEquals(1, read.list(se).size()) ;
+			
+			//so are the objects in it.
+			Book cached = (Book) read.list(se).get(0) ;
+			String title = cached.getTitle() ;
+			cached.setTitle("changed by the caller") ;
+			cached.getCreatedTime().setTime(0) ;
+			
+			Book copy = (Book) read.list(se).get(0) ;
+			assertNotSame(cached, copy) ;
+			assertEquals(title, copy.getTitle()) ;
+			assertTrue(copy.getCreatedTime().getTime() != 0) ;
+			
+			//lazy properties are loaded by the copy.
+			assertNotNull(copy.getContent()) ;
+		}finally{
+			read.close() ;
+		}
+		
+		WriteTranSession write = tm.openRWTran(false) ;
+		try{
+			Book b = new Book() ;
+			b.setTitle("book title 3") ;
+			b.setCreatedTime(new Date()) ;
+			write.insert(b) ;
+			write.commit() ;
+		}finally{
+			write.close() ;
+		}
+		
+		read = tm.openNoDelayReadonlyTran() ;
+		try{
+			assertEquals(3, read.list(se).size()) ;
+			assertEquals(3, read.count(se)) ;
+			
+			//different parameters are cached separately.
+			SearchExpression se2 = SearchExpression.forClass(Book.class) ;
+			se2.setCacheMode(SearchExpression.CACHE_MODE_READ_THROUGH) ;
+			se2.and(Terms.eq("title", "book title 3")) ;
+			
+			List books = read.list(se2) ;
+			assertEquals(1, books.size()) ;
+			assertEquals("book title 3", ((Book) books.get(0)).getTitle()) ;
+		}finally{
+			read.close() ;
+		}
+	}
+	
+	public void testLRU() throws Exception{
+		QueryResultCache cache = new QueryResultCache(2, 0) ;
+		CountingLoader loader = new CountingLoader() ;
+		
+		cache.get("a", SearchExpression.CACHE_MODE_READ_THROUGH, loader) ;
+		cache.get("b", SearchExpression.CACHE_MODE_READ_THROUGH, loader) ;
+		cache.get("a", SearchExpression.CACHE_MODE_READ_THROUGH, loader) ;
+		cache.get("c", SearchExpression.CACHE_MODE_READ_THROUGH, loader) ;
+		assertEquals(3, loader.count.get()) ;
+		assertEquals(2, cache.size()) ;
+		
+		//b is evicted.
+		cache.get("a", SearchExpression.CACHE_MODE_READ_THROUGH, loader) ;
+		assertEquals(3, loader.count.get()) ;
+		cache.get("b", SearchExpression.CACHE_MODE_READ_THROUGH, loader) ;
+		assertEquals(4, loader.count.get()) ;
+		
+		cache.invalidate() ;
+		assertEquals(new Integer(5), cache.get("b", SearchExpression.CACHE_MODE_READ_THROUGH, loader)) ;
+	}
+	
+	public void testStaleWhileRevalidate() throws Exception{
+		final QueryResultCache cache = new QueryResultCache(10, 0) ;
+		cache.get("k", SearchExpression.CACHE_MODE_STALE_WHILE_REVALIDATE, new CountingLoader()) ;
+		cache.invalidate() ;
+		
+		final CountDownLatch loading = new CountDownLatch(1) ;
+		final CountDownLatch release = new CountDownLatch(1) ;
+		final Object[] refreshed = new Object[1] ;
+		
+		Thread refresher = new Thread(){
+			public void run(){
+				refreshed[0] = cache.get("k", SearchExpression.CACHE_MODE_STALE_WHILE_REVALIDATE, new QueryResultCache.Loader(){
+					public Object load() {
+						loading.countDown() ;
+						
+						try {
+							release.await() ;
+						} catch (InterruptedException e) {
+						}
+						
+						return "new" ;
+					}
+				}) ;
+			}
+		} ;
+		refresher.start() ;
+		assertTrue(loading.await(5, TimeUnit.SECONDS)) ;
+		
+		//the stale result is returned without waiting for the refreshing.
+		assertEquals(new Integer(1), cache.get("k", SearchExpression.CACHE_MODE_STALE_WHILE_REVALIDATE, new CountingLoader())) ;
+		
+		release.countDown() ;
+		refresher.join() ;
+		
+		assertEquals("new", refreshed[0]) ;
+		assertEquals("new", cache.get("k", SearchExpression.CACHE_MODE_STALE_WHILE_REVALIDATE, new CountingLoader())) ;
+		
+		//read-through waits for the fresh result.
+		cache.invalidate() ;
+		assertEquals(new Integer(1), cache.get("k", SearchExpression.CACHE_MODE_READ_THROUGH, new CountingLoader())) ;
+	}
+	
+	static class CountingLoader implements QueryResultCache.Loader{
+		AtomicInteger count = new AtomicInteger() ;
+
+		public Object load() {
+			return new Integer(count.incrementAndGet()) ;
+		}
+	}
+
+}
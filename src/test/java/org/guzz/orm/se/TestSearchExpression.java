@@ -62,6 +62,61 @@ public class TestSearchExpression extends DBBasedTestCase{
 		assertEqualsIDWS(se.toLoadRecordsMarkedSQL(map, new SearchParams()).getOrginalSQL(), "select id, NAME, DESCRIPTION, createdTime from TB_ARTICLE where NAME in( :title_0, :title_1, :title_2, :title_3, :title_4)") ;
 	}
 	
+	public void testKeysetSQL() throws Exception{
+		POJOBasedObjectMapping map = (POJOBasedObjectMapping) gf.getObjectMappingManager().getStaticObjectMapping("article") ;
+		
+		//the first page. pk is appended to the order by.
+		SearchExpression se = SearchExpression.forClass(Article.class, 5, 20) ;
+		se.setOrderBy("createdTime desc") ;
+		se.seekAfter(null) ;
+		assertEquals(se.getStartPos(), 1) ;
+		assertEqualsIDWS(se.toLoadRecordsMarkedSQL(map, new SearchParams()).getOrginalSQL(), "select id, NAME, DESCRIPTION, createdTime from TB_ARTICLE order by createdTime desc, id desc") ;
+		
+		//row value comparison
+		java.sql.Timestamp ts = new java.sql.Timestamp(System.currentTimeMillis()) ;
+		ts.setNanos(123456789) ;
+		String cursor = new KeysetCursor(new Object[]{ts, new Integer(8)}).toToken() ;
+		se.and(Terms.eq("title", "48")) ;
+		se.seekAfter(cursor) ;
+		SearchParams sp = new SearchParams() ;
+		assertEqualsIDWS(se.toLoadRecordsMarkedSQL(map, sp).getOrginalSQL(), "select id, NAME, DESCRIPTION, createdTime from TB_ARTICLE where NAME = :title_0 and (createdTime, id) < (:createdTime_1, :id_2) order by createdTime desc, id desc") ;
+		assertEquals(sp.getSearchParams().get("createdTime_1"), ts) ;
+		assertEquals(sp.getSearchParams().get("id_2"), new Integer(8)) ;
+		
+		//the keyset doesn't affect count.
+		assertEquals(se.toComputeRecordNumberSQL(map, new SearchParams()).getOrginalSQL(), "select count(*) from TB_ARTICLE where NAME = :title_0") ;
+		
+		//mixed directions, read backward.
+		se = SearchExpression.forClass(Article.class) ;
+		se.setOrderBy("title asc, createdTime desc") ;
+		se.seekBefore(new KeysetCursor(new Object[]{"t", ts, new Integer(8)}).toToken()) ;
+		assertEqualsIDWS(se.toLoadRecordsMarkedSQL(map, new SearchParams()).getOrginalSQL(), "select id, NAME, DESCRIPTION, createdTime from TB_ARTICLE where (NAME < :title_0 or (NAME = :title_1 and (createdTime > :createdTime_2 or (createdTime = :createdTime_3 and (id > :id_4))))) order by NAME desc, createdTime asc, id asc") ;
+		
+		//orders after the pk are useless.
+		se = SearchExpression.forClass(Article.class) ;
+		se.setOrderBy("id asc, title asc") ;
+		assertEquals(se.getKeysetPropNames(map).length, 1) ;
+		
+		//cursor tokens
+		Object[] values = KeysetCursor.parse(cursor).getValues() ;
+		assertEquals(values.length, 2) ;
+		assertEquals(values[0], ts) ;
+		assertEquals(((java.sql.Timestamp) values[0]).getNanos(), 123456789) ;
+		assertEquals(values[1], new Integer(8)) ;
+		
+		values = KeysetCursor.parse(new KeysetCursor(new Object[]{null, "中文:12", new Long(5), Boolean.TRUE}).toToken()).getValues() ;
+		assertNull(values[0]) ;
+		assertEquals(values[1], "中文:12") ;
+		assertEquals(values[2], new Long(5)) ;
+		assertEquals(values[3], Boolean.TRUE) ;
+		
+		try{
+			KeysetCursor.parse("zz12") ;
+			fail("illegal token.") ;
+		}catch(org.guzz.exception.DaoException e){
+		}
+	}
+	
 	public void testLoadGhost() throws Exception{
 		SearchExpression se = SearchExpression.forBusiness("article") ;
 		assertNotNull(se) ;
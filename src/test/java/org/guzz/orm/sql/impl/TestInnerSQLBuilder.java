@@ -105,6 +105,31 @@ public class TestInnerSQLBuilder extends GuzzTestCase {
 		assertEquals(Arrays.asList(cs.bindNoParams().getCompiledSQLToRun().getOrderedParams()).toString(), "[articleId]") ;
 	}
 
+	public void testDynamicUpdateSQLCache() throws Exception{
+		POJOBasedObjectMapping map = (POJOBasedObjectMapping) gf.getObjectMappingManager().getStaticObjectMapping("user") ;
+		CompiledSQLManagerImpl csm = new CompiledSQLManagerImpl(((GuzzContextImpl) gf).getCompiledSQLBuilder()) ;
+		
+		CompiledSQL cs = csm.buildUpdateSQL(map, new String[]{"userName", "vip"}) ;
+		assertEquals(cs.bindNoParams().getSQLToRun(), "update TB_USER set userName=?, VIP_USER=? where pk=?") ;
+		assertEquals(Arrays.asList(cs.bindNoParams().getCompiledSQLToRun().getOrderedParams()).toString(), "[userName, vip, id]") ;
+		
+		//same change shape, same sql.
+		assertSame(cs, csm.buildUpdateSQL(map, new String[]{"userName", "vip"})) ;
+		assertSame(cs, csm.buildUpdateSQL(map, new String[]{"vip", "userName"})) ;
+		
+		CompiledSQL cs2 = csm.buildUpdateSQL(map, new String[]{"favCount"}) ;
+		assertNotSame(cs, cs2) ;
+		assertEquals(cs2.bindNoParams().getSQLToRun(), "update TB_USER set FAV_COUNT=? where pk=?") ;
+		assertSame(cs2, csm.buildUpdateSQL(map, new String[]{"favCount"})) ;
+		
+		//full
+		csm.setMaxUpdateSQLsPerMapping(2) ;
+		CompiledSQL cs3 = csm.buildUpdateSQL(map, new String[]{"password"}) ;
+		assertEquals(cs3.bindNoParams().getSQLToRun(), "update TB_USER set MyPSW=? where pk=?") ;
+		assertNotSame(cs3, csm.buildUpdateSQL(map, new String[]{"password"})) ;
+		assertSame(cs, csm.buildUpdateSQL(map, new String[]{"userName", "vip"})) ;
+	}
+
 	protected void setUp() throws Exception {
 		super.buildGF() ;
 	}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ *
+ * Multi-threaded throughput of {@link IncUpdateAggregator}, compared with a synchronized HashMap keyed by concatenated strings
+ * (the way the super slow update service merged counts before).
+ * <p>
+ * All threads start together and increase the readCount of a few article ids, so they contend on the same keys. main() prints ops/s of both counters. 
+ * args: threads(2 * cpus), increments per thread(2000000), distinct ids(64). Fewer ids means more contention.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class IncUpdateAggregatorBenchmark {
+
+	interface Counter{
+		public void add(Integer pk) ;
+	}
+
+	public static void main(String[] args) throws Exception{
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2 ;
+		final int loops = args.length > 1 ? Integer.parseInt(args[1]) : 2000000 ;
+		final int keys = args.length > 2 ? Integer.parseInt(args[2]) : 64 ;
+
+		final IncUpdateAggregator ag = new IncUpdateAggregator() ;
+		Counter striped = new Counter(){
+			public void add(Integer pk) {
+				ag.add("default", "TB_ARTICLE", "readCount", "id", pk, 1) ;
+			}
+		} ;
+
+		final Map map = new HashMap() ;
+		Counter locked = new Counter(){
+			public void add(Integer pk) {
+				String key = new StringBuffer(32).append(pk).append("readCount").append("TB_ARTICLE").append("default").toString() ;
+
+				synchronized(map){
+					IncUpdateBusiness ut = (IncUpdateBusiness) map.get(key) ;
+					if(ut == null){
+						ut = new IncUpdateBusiness("default") ;
+						map.put(key, ut) ;
+					}
+
+					ut.incCount(1) ;
+				}
+			}
+		} ;
+
+		//warm up
+		run(striped, threads, loops / 10, keys) ;
+		run(locked, threads, loops / 10, keys) ;
+
+		long ms = run(striped, threads, loops, keys) ;
+		System.out.println("striped aggregator   : " + ms + " ms, " + ((long) threads * loops * 1000 / Math.max(ms, 1)) + " ops/s") ;
+
+		ms = run(locked, threads, loops, keys) ;
+		System.out.println("synchronized HashMap : " + ms + " ms, " + ((long) threads * loops * 1000 / Math.max(ms, 1)) + " ops/s") ;
+	}
+
+	protected static long run(final Counter counter, int threads, final int loops, final int keys) throws Exception{
+		final Integer[] pks = new Integer[keys] ;
+		for(int i = 0 ; i < keys ; i++){
+			pks[i] = new Integer(i) ;
+		}
+
+		final CountDownLatch start = new CountDownLatch(1) ;
+		final CountDownLatch done = new CountDownLatch(threads) ;
+
+		for(int t = 0 ; t < threads ; t++){
+			final int offset = t ;
+
+			new Thread(){
+				public void run(){
+					try {
+						start.await() ;
+					} catch (InterruptedException e) {
+						return ;
+					}
+
+					for(int i = 0 ; i < loops ; i++){
+						counter.add(pks[(i + offset) % keys]) ;
+					}
+
+					done.countDown() ;
+				}
+			}.start() ;
+		}
+
+		long begin = System.currentTimeMillis() ;
+		start.countDown() ;
+		done.await() ;
+
+		return System.currentTimeMillis() - begin ;
+	}
+
+}
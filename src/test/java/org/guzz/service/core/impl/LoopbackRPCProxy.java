@@ -0,0 +1,92 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.util.Properties;
+
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.remote.RemoteRPCProxy;
+
+/**
+ * 
+ * In-JVM loopback {@link RemoteRPCProxy} for tests: the stub is a local {@link EchoService}.
+ * <p>Configure it with rpc.protocol=org.guzz.service.core.impl.LoopbackRPCProxy</p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class LoopbackRPCProxy implements RemoteRPCProxy {
+	
+	public static interface EchoService {
+		
+		public int add(int a, int b) ;
+		
+		public String echo(String msg) ;
+		
+		public String echo(String msg, int times) ;
+		
+	}
+	
+	public static class LocalEchoService implements EchoService {
+
+		public int add(int a, int b) {
+			return a + b ;
+		}
+
+		public String echo(String msg) {
+			return msg ;
+		}
+
+		public String echo(String msg, int times) {
+			StringBuffer sb = new StringBuffer() ;
+			for(int i = 0 ; i < times ; i++){
+				sb.append(msg) ;
+			}
+			
+			return sb.toString() ;
+		}
+		
+	}
+
+	public void startup(Properties props) {
+	}
+
+	public Object getRemoteStub(Class serviceInterface) {
+		if(serviceInterface != EchoService.class){
+			throw new IllegalArgumentException("unsupported interface:" + serviceInterface) ;
+		}
+		
+		return new LocalEchoService() ;
+	}
+
+	public void close() {
+	}
+	
+	public static RPCServiceImpl createRPCService(){
+		Properties props = new Properties() ;
+		props.setProperty(RPC_PARAM_PREFIX + "protocol", LoopbackRPCProxy.class.getName()) ;
+		props.setProperty(RPC_PARAM_PREFIX + "serviceInterface", EchoService.class.getName()) ;
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setProps(props) ;
+		
+		RPCServiceImpl rpc = new RPCServiceImpl() ;
+		rpc.configure(new ServiceConfig[]{sc}) ;
+		
+		return rpc ;
+	}
+
+}
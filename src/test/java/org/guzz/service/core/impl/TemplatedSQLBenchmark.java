@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.velocity.VelocityContext;
+
+/**
+ *
+ * Rendering time of {@link VelocityTemplatedSQLService}: evaluating/re-parsing the raw template on every query (the old path),
+ * compared with rendering the parsed templates.
+ * <p>
+ * main() first checks that all paths render the same sql, then prints the cost per rendering of a search template with 5 optional conditions. 
+ * args[0]: renderings of each path, 200000 by default.
+ * </p>
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TemplatedSQLBenchmark {
+	
+	static final String SQL = "select @id, @title, @content, @createdTime from @@article where 1=1 " 
+		+ "#notEmpty($title) and @title like :title #end "
+		+ "#notEmpty($authorId) and @authorId = :authorId #end "
+		+ "#if(${onlyPublished}) and @published = 1 #end "
+		+ "#if(${minId} > 0) and @id > :minId #end "
+		+ "order by #if(${orderByTime}) @createdTime desc #else @id asc #end" ;
+
+	public static void main(String[] args) throws Exception{
+		int loops = args.length > 0 ? Integer.parseInt(args[0]) : 200000 ;
+		
+		final VelocityTemplatedSQLService service = new VelocityTemplatedSQLService() ;
+		service.startup() ;
+		service.addImutableSql("searchArticles", "article", SQL) ;
+		
+		final Map params = new HashMap() ;
+		params.put("title", "%guzz%") ;
+		params.put("authorId", new Integer(12)) ;
+		params.put("onlyPublished", Boolean.TRUE) ;
+		params.put("minId", new Integer(100)) ;
+		params.put("orderByTime", Boolean.TRUE) ;
+		
+		Renderer evaluate = new Renderer(){
+			public String render() {
+				StringWriter w = new StringWriter() ;
+				service.ve.evaluate(new VelocityContext(params), w, SQL, SQL) ;
+				
+				return w.toString() ;
+			}
+		} ;
+		
+		Renderer reparse = new Renderer(){
+			public String render() {
+				StringWriter w = new StringWriter() ;
+				service.ve.getTemplate("searchArticles").merge(new VelocityContext(params), w) ;
+				
+				return w.toString() ;
+			}
+		} ;
+		
+		Renderer byId = new Renderer(){
+			public String render() {
+				return service.renderById("searchArticles", params) ;
+			}
+		} ;
+		
+		Renderer byStatement = new Renderer(){
+			public String render() {
+				return service.renderStatement(SQL, params) ;
+			}
+		} ;
+		
+		if(!evaluate.render().equals(byId.render()) || !evaluate.render().equals(byStatement.render())){
+			throw new IllegalStateException("different outputs.") ;
+		}
+		
+		//warm up
+		run(evaluate, loops / 10) ;
+		run(reparse, loops / 10) ;
+		run(byId, loops / 10) ;
+		run(byStatement, loops / 10) ;
+		
+		print("evaluate statement (old)  ", run(evaluate, loops), loops) ;
+		print("parse template by id (old)", run(reparse, loops), loops) ;
+		print("parsed template by id     ", run(byId, loops), loops) ;
+		print("parsed statement          ", run(byStatement, loops), loops) ;
+		
+		service.shutdown() ;
+	}
+	
+	interface Renderer{
+		public String render() ;
+	}
+	
+	protected static long run(Renderer r, int loops){
+		long start = System.currentTimeMillis() ;
+		int len = 0 ;
+		
+		for(int i = 0 ; i < loops ; i++){
+			len += r.render().length() ;
+		}
+		
+		if(len == 0){
+			System.out.println("nothing rendered.") ;
+		}
+		
+		return System.currentTimeMillis() - start ;
+	}
+	
+	protected static void print(String name, long ms, int loops){
+		System.out.println(name + ": " + ms + " ms, " + ((long) loops * 1000 / Math.max(ms, 1)) + " renderings/s") ;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Properties;
+
+import org.guzz.orm.sql.NormalCompiledSQL;
+import org.guzz.service.ServiceConfig;
+import org.guzz.test.DBBasedTestCase;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestFileDynamicSQLService extends DBBasedTestCase {
+	
+	protected File folder ;
+	
+	protected void setUp() throws Exception {
+		super.setUp() ;
+		
+		folder = File.createTempFile("guzzsql", "") ;
+		folder.delete() ;
+		folder.mkdirs() ;
+	}
+	
+	protected void tearDown() throws Exception {
+		File[] files = folder.listFiles() ;
+		for(int i = 0 ; files != null && i < files.length ; i++){
+			files[i].delete() ;
+		}
+		folder.delete() ;
+		
+		super.tearDown() ;
+	}
+
+	public void testReloadInBackground() throws Exception{
+		FileDynamicSQLServiceImpl ds = createService("50", "200") ;
+		
+		try{
+			//not exist
+			assertNull(ds.getSql("selectUser")) ;
+			
+			writeSqlFile("selectUser", "select @id from @@user where @id = 1") ;
+			File f = new File(folder, "selectUser.xml") ;
+			f.setLastModified(System.currentTimeMillis() - 10000) ;
+			assertTrue(waitForSql(ds, "selectUser", "where pk = 1")) ;
+			
+			//changed files are reloaded after the debounce time.
+			writeSqlFile("selectUser", "select @id from @@user where @id = 2") ;
+			assertEquals("select pk from TB_USER where pk = 1", getSql(ds, "selectUser")) ;
+			assertTrue(waitForSql(ds, "selectUser", "where pk = 2")) ;
+			
+			//a broken file doesn't replace the loaded sql.
+			writeSqlFile("selectUser", "<sqlMap><select ") ;
+			f.setLastModified(System.currentTimeMillis() - 10000) ;
+			Thread.sleep(300) ;
+			assertEquals("select pk from TB_USER where pk = 2", getSql(ds, "selectUser")) ;
+			
+			//deleted
+			f.delete() ;
+			long start = System.currentTimeMillis() ;
+			while(ds.getSql("selectUser") != null && System.currentTimeMillis() - start < 5000){
+				Thread.sleep(20) ;
+			}
+			assertNull(ds.getSql("selectUser")) ;
+		}finally{
+			ds.shutdown() ;
+		}
+	}
+	
+	public void testCheckOnEveryQuery() throws Exception{
+		FileDynamicSQLServiceImpl ds = createService(null, null) ;
+		
+		try{
+			writeSqlFile("selectUser", "select @id from @@user where @id = 1") ;
+			File f = new File(folder, "selectUser.xml") ;
+			f.setLastModified(System.currentTimeMillis() - 10000) ;
+			assertEquals("select pk from TB_USER where pk = 1", getSql(ds, "selectUser")) ;
+			
+			writeSqlFile("selectUser", "select @id from @@user where @id = 2") ;
+			assertEquals("select pk from TB_USER where pk = 2", getSql(ds, "selectUser")) ;
+		}finally{
+			ds.shutdown() ;
+		}
+	}
+	
+	protected FileDynamicSQLServiceImpl createService(String reloadInterval, String reloadDebounce){
+		Properties props = new Properties() ;
+		props.setProperty("folder", folder.getAbsolutePath()) ;
+		if(reloadInterval != null){
+			props.setProperty("reloadInterval", reloadInterval) ;
+			props.setProperty("reloadDebounce", reloadDebounce) ;
+		}
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setProps(props) ;
+		
+		FileDynamicSQLServiceImpl ds = new FileDynamicSQLServiceImpl() ;
+		ds.setGuzzContext(gf) ;
+		ds.configure(new ServiceConfig[]{sc}) ;
+		ds.startup() ;
+		
+		return ds ;
+	}
+	
+	protected boolean waitForSql(FileDynamicSQLServiceImpl ds, String id, String expected) throws Exception{
+		long start = System.currentTimeMillis() ;
+		
+		while(System.currentTimeMillis() - start < 5000){
+			String sql = getSql(ds, id) ;
+			if(sql != null && sql.endsWith(expected)){
+				return true ;
+			}
+			
+			Thread.sleep(20) ;
+		}
+		
+		return false ;
+	}
+	
+	protected String getSql(FileDynamicSQLServiceImpl ds, String id){
+		NormalCompiledSQL cs = (NormalCompiledSQL) ds.getSql(id) ;
+		
+		return cs == null ? null : cs.getSql(null).trim() ;
+	}
+	
+	protected void writeSqlFile(String id, String sql) throws Exception{
+		String xml = sql.startsWith("<") ? sql : "<sqlMap dbgroup=\"default\"><select orm=\"user\">" + sql + "</select></sqlMap>" ;
+		
+		FileOutputStream fos = new FileOutputStream(new File(folder, id + ".xml")) ;
+		try{
+			fos.write(xml.getBytes("UTF-8")) ;
+		}finally{
+			fos.close() ;
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ *
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestIncUpdateAggregator extends TestCase {
+
+	public void testMerge(){
+		IncUpdateAggregator ag = new IncUpdateAggregator(4) ;
+		assertTrue(ag.isEmpty()) ;
+
+		ag.add("default", "TB_ARTICLE", "readCount", "id", new Integer(1), 1) ;
+		ag.add("default", "TB_ARTICLE", "readCount", "id", new Integer(1), 2) ;
+		ag.add("default", "TB_ARTICLE", "readCount", "id", new Integer(2), 1) ;
+		ag.add("default", "TB_ARTICLE", "voteCount", "id", new Integer(1), -1) ;
+		ag.add("default", "TB_ARTICLE", "voteCount", "id", new Integer(1), 1) ;
+		assertFalse(ag.isEmpty()) ;
+
+		List uts = ag.swapAndDrain() ;
+		assertTrue(ag.isEmpty()) ;
+
+		//voteCount of 1 is 0, ignored.
+		assertEquals(2, uts.size()) ;
+
+		for(int i = 0 ; i < uts.size() ; i++){
+			IncUpdateBusiness ut = (IncUpdateBusiness) uts.get(i) ;
+
+			assertEquals("default", ut.getDbGroup()) ;
+			assertEquals("TB_ARTICLE", ut.getTableName()) ;
+			assertEquals("readCount", ut.getColumnToUpdate()) ;
+			assertEquals("id", ut.getPkColunName()) ;
+
+			if("1".equals(ut.getPkValue())){
+				assertEquals(3, ut.getCountToInc()) ;
+			}else{
+				assertEquals("2", ut.getPkValue()) ;
+				assertEquals(1, ut.getCountToInc()) ;
+			}
+		}
+
+		assertEquals(0, ag.swapAndDrain().size()) ;
+	}
+
+	public void testNoLostIncrements() throws Exception{
+		final IncUpdateAggregator ag = new IncUpdateAggregator(8) ;
+		final int threads = 8 ;
+		final int loops = 100000 ;
+		final int keys = 16 ;
+		final CountDownLatch done = new CountDownLatch(threads) ;
+
+		for(int t = 0 ; t < threads ; t++){
+			new Thread(){
+				public void run(){
+					for(int i = 0 ; i < loops ; i++){
+						ag.add("default", "TB_ARTICLE", "readCount", "id", new Integer(i % keys), 1) ;
+					}
+
+					done.countDown() ;
+				}
+			}.start() ;
+		}
+
+		//flush concurrently
+		Map totals = new HashMap() ;
+		while(done.getCount() > 0){
+			sum(totals, ag.swapAndDrain()) ;
+			Thread.sleep(1) ;
+		}
+
+		done.await() ;
+		sum(totals, ag.swapAndDrain()) ;
+
+		assertEquals(keys, totals.size()) ;
+
+		long all = 0 ;
+		Iterator it = totals.values().iterator() ;
+		while(it.hasNext()){
+			long count = ((Long) it.next()).longValue() ;
+			assertEquals((long) threads * loops / keys, count) ;
+
+			all += count ;
+		}
+
+		assertEquals((long) threads * loops, all) ;
+	}
+
+	public void testOverflowSplit(){
+		IncUpdateAggregator ag = new IncUpdateAggregator(4) ;
+
+		for(int i = 0 ; i < 3 ; i++){
+			ag.add("default", "TB_ARTICLE", "readCount", "id", new Integer(1), Integer.MAX_VALUE) ;
+		}
+		ag.add("default", "TB_ARTICLE", "readCount", "id", new Integer(1), 10) ;
+
+		List uts = ag.swapAndDrain() ;
+		assertEquals(4, uts.size()) ;
+		assertEquals(10, ((IncUpdateBusiness) uts.get(3)).getCountToInc()) ;
+
+		Map totals = new HashMap() ;
+		sum(totals, uts) ;
+		assertEquals(3L * Integer.MAX_VALUE + 10, ((Long) totals.get("1")).longValue()) ;
+	}
+
+	protected void sum(Map totals, List uts){
+		for(int i = 0 ; i < uts.size() ; i++){
+			IncUpdateBusiness ut = (IncUpdateBusiness) uts.get(i) ;
+			Long old = (Long) totals.get(ut.getPkValue()) ;
+
+			totals.put(ut.getPkValue(), new Long((old == null ? 0 : old.longValue()) + ut.getCountToInc())) ;
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.guzz.connection.NoPooledDataSourceProvider;
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.ServiceInfo;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestMultiMachinesDatabaseService extends TestCase {
+	
+	protected MultiMachinesDatabaseServiceImpl createService(ServiceConfig[] scs){
+		MultiMachinesDatabaseServiceImpl ds = new MultiMachinesDatabaseServiceImpl() ;
+		ds.setServiceInfo(new ServiceInfo("slaveDB", "slaveDB", MultiMachinesDatabaseServiceImpl.class)) ;
+		ds.configure(scs) ;
+		ds.startup() ;
+		
+		return ds ;
+	}
+	
+	protected ServiceConfig createConfig(String id, String jdbcUrl, int maxLoad){
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setUniqueIdentifer(id) ;
+		sc.setMaxLoad(maxLoad) ;
+		
+		Properties props = new Properties() ;
+		props.setProperty("pool", "nopool") ;
+		props.setProperty("driverClass", "org.h2.Driver") ;
+		props.setProperty("jdbcUrl", jdbcUrl) ;
+		props.setProperty("user", "sa") ;
+		props.setProperty("password", "") ;
+		sc.setProps(props) ;
+		
+		return sc ;
+	}
+	
+	public void testFailover() throws Exception{
+		ServiceConfig good = createConfig("good", "jdbc:h2:mem:lbtest1", 100) ;
+		ServiceConfig bad = createConfig("bad", "jdbc:nosuchdb:lbtest", 100) ;
+		bad.getProps().setProperty("lb.probeInterval", "0") ;
+		bad.getProps().setProperty("lb.failThreshold", "2") ;
+		
+		MultiMachinesDatabaseServiceImpl ds = createService(new ServiceConfig[]{good, bad}) ;
+		assertEquals(0, ds.getProbeInterval()) ;
+		assertNull(bad.getProps().getProperty("lb.failThreshold")) ;
+		
+		for(int i = 0 ; i < 10 ; i++){
+			Connection conn = ds.getConnection() ;
+			assertTrue(conn.getMetaData().getURL().indexOf("lbtest1") != -1) ;
+			conn.close() ;
+		}
+		
+		//the bad one is ejected.
+		assertEquals(1, ds.getHealthyCount()) ;
+		
+		ds.probe() ;
+		assertEquals(1, ds.getHealthyCount()) ;
+		
+		ds.shutdown() ;
+	}
+	
+	public void testReadmit() throws Exception{
+		ServiceConfig good = createConfig("good", "jdbc:h2:mem:lbtest1", 100) ;
+		ServiceConfig flaky = createConfig("flaky", "jdbc:h2:mem:lbtest2", 100) ;
+		flaky.getProps().setProperty("pool", SwitchableDataSourceProvider.class.getName()) ;
+		flaky.getProps().setProperty("lb.probeInterval", "0") ;
+		flaky.getProps().setProperty("lb.failThreshold", "1") ;
+		flaky.getProps().setProperty("lb.probeSQL", "select 1") ;
+		
+		SwitchableDataSourceProvider.down = true ;
+		
+		try{
+			MultiMachinesDatabaseServiceImpl ds = createService(new ServiceConfig[]{good, flaky}) ;
+			
+			ds.getConnection().close() ;
+			ds.getConnection().close() ;
+			assertEquals(1, ds.getHealthyCount()) ;
+			
+			SwitchableDataSourceProvider.down = false ;
+			ds.probe() ;
+			assertEquals(2, ds.getHealthyCount()) ;
+			
+			boolean hitFlaky = false ;
+			for(int i = 0 ; i < 4 ; i++){
+				Connection conn = ds.getConnection() ;
+				hitFlaky |= conn.getMetaData().getURL().indexOf("lbtest2") != -1 ;
+				conn.close() ;
+			}
+			assertTrue(hitFlaky) ;
+			
+			ds.shutdown() ;
+		}finally{
+			SwitchableDataSourceProvider.down = false ;
+		}
+	}
+	
+	public void testReadmitWithoutProbing() throws Exception{
+		ServiceConfig flaky = createConfig("flaky", "jdbc:h2:mem:lbtest2", 100) ;
+		flaky.getProps().setProperty("pool", SwitchableDataSourceProvider.class.getName()) ;
+		flaky.getProps().setProperty("lb.probeInterval", "0") ;
+		flaky.getProps().setProperty("lb.failThreshold", "1") ;
+		
+		SwitchableDataSourceProvider.down = true ;
+		
+		try{
+			MultiMachinesDatabaseServiceImpl ds = createService(new ServiceConfig[]{flaky}) ;
+			
+			try{
+				ds.getConnection() ;
+				fail("the database is down.") ;
+			}catch(SQLException e){
+				//ok
+			}
+			assertEquals(0, ds.getHealthyCount()) ;
+			assertNotNull(ds.getDataSource()) ;
+			
+			//no probe thread, the ejected machine is tried by the request.
+			SwitchableDataSourceProvider.down = false ;
+			ds.getConnection().close() ;
+			assertEquals(1, ds.getHealthyCount()) ;
+			
+			ds.shutdown() ;
+		}finally{
+			SwitchableDataSourceProvider.down = false ;
+		}
+	}
+	
+	public void testLeastActive() throws Exception{
+		ServiceConfig db1 = createConfig("db1", "jdbc:h2:mem:lbtest1", 100) ;
+		ServiceConfig db2 = createConfig("db2", "jdbc:h2:mem:lbtest2", 100) ;
+		db1.getProps().setProperty("lb.policy", "leastActive") ;
+		db1.getProps().setProperty("lb.probeInterval", "0") ;
+		
+		MultiMachinesDatabaseServiceImpl ds = createService(new ServiceConfig[]{db1, db2}) ;
+		assertEquals(MultiMachinesDatabaseServiceImpl.POLICY_LEAST_ACTIVE, ds.getPolicy()) ;
+		
+		for(int i = 0 ; i < 5 ; i++){
+			Connection c1 = ds.getConnection() ;
+			Connection c2 = ds.getConnection() ;
+			
+			//the busy machine is skipped.
+			assertFalse(getURL(c1).equals(getURL(c2))) ;
+			
+			c1.close() ;
+			//closing twice doesn't break the counting.
+			c1.close() ;
+			
+			//the machine of c1 is idle now.
+			Connection c3 = ds.getConnection() ;
+			assertFalse(getURL(c2).equals(getURL(c3))) ;
+			
+			c2.close() ;
+			c3.close() ;
+		}
+		
+		ds.shutdown() ;
+	}
+	
+	private String getURL(Connection conn) throws Exception{
+		return conn.getMetaData().getURL() ;
+	}
+	
+	public static class SwitchableDataSourceProvider extends NoPooledDataSourceProvider{
+		static volatile boolean down ;
+		
+		private NoPooledDataSourceProvider badProvider = new NoPooledDataSourceProvider() ;
+		
+		public void configure(Properties props, int maxLoad) {
+			super.configure(props, maxLoad) ;
+			
+			Properties badProps = new Properties() ;
+			badProps.putAll(props) ;
+			badProps.setProperty("jdbcUrl", "jdbc:nosuchdb:lbtest") ;
+			badProvider.configure(badProps, maxLoad) ;
+		}
+
+		public DataSource getDataSource() {
+			return down ? badProvider.getDataSource() : super.getDataSource() ;
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.guzz.Service;
+import org.guzz.service.ServiceInfo;
+import org.guzz.service.core.impl.LoopbackRPCProxy.EchoService;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestRPCServiceImpl extends TestCase {
+	
+	public void testDispatch() throws Throwable{
+		RPCServiceImpl rpc = LoopbackRPCProxy.createRPCService() ;
+		EchoService echo = (EchoService) rpc.createService() ;
+		
+		assertEquals(5, echo.add(2, 3)) ;
+		assertEquals("guzz", echo.echo("guzz")) ;
+		assertEquals("abab", echo.echo("ab", 2)) ;
+		
+		//methods of the Service interface are passed to the RPCServiceImpl.
+		ServiceInfo info = new ServiceInfo("rpcTest", "rpcTestConfig", RPCServiceImpl.class) ;
+		((Service) echo).setServiceInfo(info) ;
+		assertSame(info, rpc.getServiceInfo()) ;
+		assertFalse(((Service) echo).isAvailable()) ;
+		
+		//resolving the method on invocation gives the same results.
+		Method m = EchoService.class.getMethod("echo", new Class[]{String.class, int.class}) ;
+		assertEquals("xxx", rpc.intercept(echo, m, new Object[]{"x", new Integer(3)}, null)) ;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.core.impl;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.velocity.VelocityContext;
+import org.guzz.test.DBBasedTestCase;
+
+/**
+ * 
+ * The parsed templates must render exactly what evaluating the raw templates renders.
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestVelocityTemplatedSQLService extends DBBasedTestCase {
+	
+	public void testSameOutputAsEvaluate() throws Exception{
+		VelocityTemplatedSQLService service = (VelocityTemplatedSQLService) ((TemplatedSQLServiceProxy) gf.getService("guzzTemplatedSQL")).getServiceImpl() ;
+		List paramsList = createParamsList() ;
+		
+		//templates registered in guzz.xml
+		Iterator i = service.getTemplateIds().iterator() ;
+		int count = 0 ;
+		while(i.hasNext()){
+			String id = (String) i.next() ;
+			String source = new String(service.getTemplateSource(id), "UTF-8") ;
+			
+			for(int k = 0 ; k < paramsList.size() ; k++){
+				Map params = (Map) paramsList.get(k) ;
+				
+				assertEquals(evaluate(service, source, params), service.renderById(id, params)) ;
+			}
+			
+			count++ ;
+		}
+		assertTrue(count >= 2) ;
+		
+		//templated sqls built from statements, as in TestDynamicSQL and the dynamic sql file.
+		String[] sources = new String[]{
+			"select count(*) as m_count  #if(${isVip}) , @vip #end  	from @@user  #notEmpty($nothingAtAll) test tag  #end   #if(${isVip}) group by @vip having @vip=:isVip #end ",
+			"select count(*) as m_count\n\t#if(${isVip}) , @vip #end\n\tfrom @@user\n\n#notEmpty($nothingAtAll) test tag  #end\n\n#if(${isVip})\n group by @vip having @vip=:isVip\n#end\n",
+			"select * from @@commentMap #isEmpty($userName) where 1=1 #end #notEmpty($userName) where @userName = :userName #end"
+		} ;
+		
+		for(int n = 0 ; n < sources.length ; n++){
+			for(int k = 0 ; k < paramsList.size() ; k++){
+				Map params = (Map) paramsList.get(k) ;
+				
+				assertEquals(evaluate(service, sources[n], params), service.renderStatement(sources[n], params)) ;
+				//rendered from the cache
+				assertEquals(evaluate(service, sources[n], params), service.renderStatement(sources[n], params)) ;
+			}
+		}
+	}
+	
+	protected String evaluate(VelocityTemplatedSQLService service, String source, Map params){
+		StringWriter w = new StringWriter() ;
+		service.ve.evaluate(new VelocityContext(params), w, source, source) ;
+		
+		return w.toString() ;
+	}
+	
+	protected List createParamsList(){
+		List list = new ArrayList() ;
+		list.add(new HashMap()) ;
+		
+		HashMap params = new HashMap() ;
+		params.put("userName", "lucy") ;
+		params.put("isVip", Boolean.TRUE) ;
+		params.put("id", new Integer(10)) ;
+		list.add(params) ;
+		
+		params = new HashMap() ;
+		params.put("userName", "") ;
+		params.put("isVip", Boolean.FALSE) ;
+		params.put("nothingAtAll", "something") ;
+		list.add(params) ;
+		
+		return list ;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.db.impl;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.connection.TestHeartbeatReplicationLagProbe;
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.ServiceInfo;
+import org.guzz.service.core.impl.MultiMachinesDatabaseServiceImpl;
+import org.guzz.service.core.impl.SingleMachineDatabaseServiceImpl;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestReplicationLagMonitor extends TestCase {
+	
+	protected ServiceConfig createConfig(String id, String jdbcUrl){
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setUniqueIdentifer(id) ;
+		sc.setMaxLoad(100) ;
+		
+		Properties props = new Properties() ;
+		props.setProperty("pool", "nopool") ;
+		props.setProperty("driverClass", "org.h2.Driver") ;
+		props.setProperty("jdbcUrl", jdbcUrl) ;
+		props.setProperty("user", "sa") ;
+		props.setProperty("password", "") ;
+		props.setProperty("lb.probeInterval", "0") ;
+		sc.setProps(props) ;
+		
+		return sc ;
+	}
+	
+	public void testMeasureEachSlave() throws Exception{
+		SingleMachineDatabaseServiceImpl master = TestHeartbeatReplicationLagProbe.createDatabaseService("jdbc:h2:mem:lagmaster;DB_CLOSE_DELAY=-1") ;
+		SingleMachineDatabaseServiceImpl staleSlave = TestHeartbeatReplicationLagProbe.createDatabaseService("jdbc:h2:mem:lagslave;DB_CLOSE_DELAY=-1") ;
+		
+		TestHeartbeatReplicationLagProbe.execute(master, "drop table if exists guzz_heartbeat") ;
+		TestHeartbeatReplicationLagProbe.execute(master, "create table guzz_heartbeat(id int not null primary key, beat_time bigint not null)") ;
+		TestHeartbeatReplicationLagProbe.execute(staleSlave, "drop table if exists guzz_heartbeat") ;
+		TestHeartbeatReplicationLagProbe.execute(staleSlave, "create table guzz_heartbeat(id int not null primary key, beat_time bigint not null)") ;
+		TestHeartbeatReplicationLagProbe.execute(staleSlave, "insert into guzz_heartbeat(id, beat_time) values(1, " + (System.currentTimeMillis() - 60000) + ")") ;
+		
+		//the fresh slave reads the master itself.
+		MultiMachinesDatabaseServiceImpl slaves = new MultiMachinesDatabaseServiceImpl() ;
+		slaves.setServiceInfo(new ServiceInfo("lagSlaves", "lagSlaves", MultiMachinesDatabaseServiceImpl.class)) ;
+		slaves.configure(new ServiceConfig[]{
+				createConfig("fresh", "jdbc:h2:mem:lagmaster;DB_CLOSE_DELAY=-1"), 
+				createConfig("stale", "jdbc:h2:mem:lagslave;DB_CLOSE_DELAY=-1")}) ;
+		
+		PhysicsDBGroup group = new PhysicsDBGroup() ;
+		group.setGroupName("lag") ;
+		group.setMasterDB(master) ;
+		group.setSlaveDB(slaves) ;
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		Properties props = new Properties() ;
+		props.setProperty(ReplicationLagMonitorImpl.CONFIG_DB_GROUPS, "lag") ;
+		sc.setProps(props) ;
+		
+		ReplicationLagMonitorImpl monitor = new ReplicationLagMonitorImpl() ;
+		monitor.configure(new ServiceConfig[]{sc}) ;
+		
+		assertEquals(-1, slaves.getMachineLatency("stale")) ;
+		
+		monitor.measureMachines(group, slaves) ;
+		
+		assertTrue(slaves.getMachineLatency("fresh") < 1000) ;
+		assertTrue(slaves.getMachineLatency("stale") >= 60000) ;
+		
+		//the stale slave is not hidden by the fresh one.
+		assertTrue(group.getLatency() >= 60000) ;
+		
+		//unknown if a healthy slave can't be measured.
+		TestHeartbeatReplicationLagProbe.execute(staleSlave, "drop table guzz_heartbeat") ;
+		monitor.measureMachines(group, slaves) ;
+		assertEquals(-1, slaves.getMachineLatency("stale")) ;
+		assertEquals(-1, group.getLatency()) ;
+		
+		slaves.shutdown() ;
+		master.shutdown() ;
+		staleSlave.shutdown() ;
+	}
+
+}
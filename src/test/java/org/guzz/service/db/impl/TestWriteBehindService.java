@@ -0,0 +1,359 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.db.impl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.guzz.exception.DaoException;
+import org.guzz.orm.rdms.Table;
+import org.guzz.service.ServiceConfig;
+import org.guzz.test.Book;
+import org.guzz.test.DBBasedTestCase;
+import org.guzz.test.User;
+import org.guzz.transaction.ReadonlyTranSession;
+import org.guzz.util.stat.WriteBehindMetricsMBean;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestWriteBehindService extends DBBasedTestCase {
+	
+	protected WriteBehindServiceImpl service ;
+
+	protected void prepareEnv() throws Exception{
+		for(int i = 1 ; i < 20 ; i++){
+			executeUpdate(getDefaultConn(), "insert into TB_USER values(" + i + ", 'name " + i + "', 'psw " + i + "', " + ((i%2==0)?1:0) + ", " + i + ", " + getDateFunction() + ")") ;		
+		}
+	}
+	
+	protected WriteBehindServiceImpl newService(String flushInterval, String flushSize, String maxPendingRows){
+		return startService(new WriteBehindServiceImpl(), flushInterval, flushSize, maxPendingRows) ;
+	}
+	
+	protected WriteBehindServiceImpl startService(WriteBehindServiceImpl s, String flushInterval, String flushSize, String maxPendingRows){
+		s.setGuzzContext(gf) ;
+		
+		Properties props = new Properties() ;
+		props.setProperty("flushInterval", flushInterval) ;
+		props.setProperty("flushSize", flushSize) ;
+		props.setProperty("maxPendingRows", maxPendingRows) ;
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setProps(props) ;
+		
+		s.configure(new ServiceConfig[]{sc}) ;
+		s.startup() ;
+		
+		return s ;
+	}
+	
+	protected void tearDown() throws Exception {
+		if(service != null){
+			service.shutdown() ;
+		}
+		
+		super.tearDown() ;
+	}
+	
+	protected User loadUser(int id){
+		ReadonlyTranSession read = tm.openNoDelayReadonlyTran() ;
+		
+		try{
+			return (User) read.findObjectByPK(User.class, id) ;
+		}finally{
+			read.close() ;
+		}
+	}
+	
+	public void testCoalescing() throws Exception{
+		service = newService("3600000", "1000", "1000") ;
+		
+		User user = loadUser(1) ;
+		User user2 = loadUser(2) ;
+		
+		for(int i = 0 ; i < 10 ; i++){
+			user.setFavCount(new Integer(100 + i)) ;
+			service.update(user) ;
+		}
+		
+		user2.setUserName("write behind 2") ;
+		service.update(user2) ;
+		
+		WriteBehindMetricsMBean metrics = service.getMetrics() ;
+		assertEquals(11, metrics.getQueuedUpdates()) ;
+		assertEquals(9, metrics.getCoalescedUpdates()) ;
+		assertEquals(2, metrics.getPendingRows()) ;
+		assertEquals(9.0 / 11, metrics.getCoalescingRatio(), 0.0001) ;
+		
+		//not written yet.
+		assertEquals(new Integer(1), loadUser(1).getFavCount()) ;
+		
+		service.flush() ;
+		
+		assertEquals(new Integer(109), loadUser(1).getFavCount()) ;
+		assertEquals("write behind 2", loadUser(2).getUserName()) ;
+		assertEquals(0, metrics.getPendingRows()) ;
+		assertEquals(2, metrics.getWrittenRows()) ;
+		assertEquals(1, metrics.getFlushCount()) ;
+		assertTrue(metrics.getFlushLatencyMaxMicros() > 0) ;
+	}
+	
+	public void testMergeChangedProps() throws Exception{
+		service = newService("3600000", "1000", "1000") ;
+		
+		ReadonlyTranSession read = tm.openDelayReadTran() ;
+		Book b = (Book) read.findObjectByPK(Book.class, 1) ;
+		
+		b.setTitle("write behind title") ;
+		service.update(b) ;
+		
+		b.setISDN("write behind isdn") ;
+		service.update(b) ;
+		read.close() ;
+		
+		//not in the changed properties, should be kept.
+		executeUpdate(H2Conn, "update TB_BOOK set DESCRIPTION='changed by others' where id=1") ;
+		
+		assertEquals(1, service.getMetrics().getPendingRows()) ;
+		service.flush() ;
+		
+		read = tm.openNoDelayReadonlyTran() ;
+		b = (Book) read.findObjectByPK(Book.class, 1) ;
+		assertEquals("write behind title", b.getTitle()) ;
+		assertEquals("write behind isdn", b.getISDN()) ;
+		assertEquals("changed by others", b.getContent()) ;
+		read.close() ;
+	}
+	
+	public void testFlushBySize() throws Exception{
+		service = newService("3600000", "5", "1000") ;
+		
+		for(int i = 1 ; i <= 5 ; i++){
+			User user = loadUser(i) ;
+			user.setFavCount(new Integer(-i)) ;
+			service.update(user) ;
+		}
+		
+		for(int i = 0 ; i < 100 && service.getMetrics().getWrittenRows() < 5 ; i++){
+			Thread.sleep(20) ;
+		}
+		
+		assertEquals(5, service.getMetrics().getWrittenRows()) ;
+		assertEquals(new Integer(-5), loadUser(5).getFavCount()) ;
+	}
+	
+	public void testFullBufferRunsInCaller() throws Exception{
+		service = newService("3600000", "1000", "3") ;
+		
+		for(int i = 1 ; i <= 7 ; i++){
+			User user = loadUser(i) ;
+			user.setFavCount(new Integer(-i)) ;
+			service.update(user) ;
+		}
+		
+		//flushed in the caller thread when the 4th and the 7th rows arrived.
+		WriteBehindMetricsMBean metrics = service.getMetrics() ;
+		assertEquals(6, metrics.getWrittenRows()) ;
+		assertEquals(1, metrics.getPendingRows()) ;
+		assertEquals(0, metrics.getDroppedUpdates()) ;
+		assertEquals(new Integer(-6), loadUser(6).getFavCount()) ;
+	}
+	
+	public void testFlushOnShutdown() throws Exception{
+		service = newService("3600000", "1000", "1000") ;
+		
+		User user = loadUser(3) ;
+		user.setUserName("written on shutdown") ;
+		service.update(user) ;
+		
+		service.shutdown() ;
+		service = null ;
+		
+		assertEquals("written on shutdown", loadUser(3).getUserName()) ;
+	}
+	
+	public void testFailedFlush() throws Exception{
+		final FailingWriteBehindService s = new FailingWriteBehindService() ;
+		service = startService(s, "3600000", "1000", "3") ;
+		WriteBehindMetricsMBean metrics = service.getMetrics() ;
+		
+		ReadonlyTranSession read = tm.openDelayReadTran() ;
+		final Book b = (Book) read.findObjectByPK(Book.class, 1) ;
+		read.close() ;
+		
+		b.setTitle("failed title") ;
+		b.setISDN("failed isdn") ;
+		s.update(b) ;
+		
+		for(int i = 1 ; i <= 2 ; i++){
+			User user = loadUser(i) ;
+			user.setFavCount(new Integer(100 + i)) ;
+			s.update(user) ;
+		}
+		
+		//updates buffered during the failed flush: a newer title of the book, and a new row.
+		final User user3 = loadUser(3) ;
+		s.duringWrite = new Runnable(){
+			public void run() {
+				b.setTitle("newer title") ;
+				s.update(b) ;
+				
+				user3.setFavCount(new Integer(103)) ;
+				s.update(user3) ;
+			}
+		} ;
+		
+		s.flush() ;
+		
+		//the book is merged into the newer row, user1 fills the last room, and user2 is dropped.
+		assertEquals(3, metrics.getFailedRows()) ;
+		assertEquals(3, metrics.getPendingRows()) ;
+		assertEquals(1, metrics.getDroppedUpdates()) ;
+		
+		//the buffer is full, and flushes are backing off. new rows are dropped instead of flushing in the caller.
+		User user4 = loadUser(4) ;
+		user4.setFavCount(new Integer(104)) ;
+		s.update(user4) ;
+		assertEquals(2, metrics.getDroppedUpdates()) ;
+		assertEquals(3, metrics.getFailedRows()) ;
+		
+		s.failing = false ;
+		s.flush() ;
+		
+		assertEquals(0, metrics.getPendingRows()) ;
+		assertEquals(3, metrics.getWrittenRows()) ;
+		assertEquals(new Integer(101), loadUser(1).getFavCount()) ;
+		assertEquals(new Integer(2), loadUser(2).getFavCount()) ;
+		assertEquals(new Integer(103), loadUser(3).getFavCount()) ;
+		assertEquals(new Integer(4), loadUser(4).getFavCount()) ;
+		
+		read = tm.openNoDelayReadonlyTran() ;
+		Book b2 = (Book) read.findObjectByPK(Book.class, 1) ;
+		assertEquals("newer title", b2.getTitle()) ;
+		assertEquals("failed isdn", b2.getISDN()) ;
+		read.close() ;
+		
+		//rows left at the shutdown are reported.
+		s.failing = true ;
+		s.update(user4) ;
+		s.shutdown() ;
+		service = null ;
+		
+		assertEquals(1, metrics.getPendingRows()) ;
+	}
+	
+	public void testBadRowIsolated() throws Exception{
+		FailingWriteBehindService s = new FailingWriteBehindService() ;
+		s.failing = false ;
+		s.badPk = new Integer(2) ;
+		service = startService(s, "3600000", "1000", "1000") ;
+		WriteBehindMetricsMBean metrics = service.getMetrics() ;
+		
+		ReadonlyTranSession read = tm.openDelayReadTran() ;
+		Book b = (Book) read.findObjectByPK(Book.class, 1) ;
+		read.close() ;
+		
+		b.setTitle("isolated title") ;
+		s.update(b) ;
+		
+		for(int i = 1 ; i <= 3 ; i++){
+			User user = loadUser(i) ;
+			user.setFavCount(new Integer(200 + i)) ;
+			s.update(user) ;
+		}
+		
+		//the bad row doesn't block the other rows of its group, or the other groups.
+		s.flush() ;
+		
+		assertEquals(3, metrics.getWrittenRows()) ;
+		assertEquals(1, metrics.getFailedRows()) ;
+		assertEquals(1, metrics.getPendingRows()) ;
+		assertEquals(new Integer(201), loadUser(1).getFavCount()) ;
+		assertEquals(new Integer(2), loadUser(2).getFavCount()) ;
+		assertEquals(new Integer(203), loadUser(3).getFavCount()) ;
+		
+		read = tm.openNoDelayReadonlyTran() ;
+		assertEquals("isolated title", ((Book) read.findObjectByPK(Book.class, 1)).getTitle()) ;
+		read.close() ;
+		
+		//other rows are written, so it's not a failed flush to back off.
+		assertFalse(s.isBackingOff()) ;
+		
+		//dropped at the 3rd failure.
+		s.flush() ;
+		assertEquals(1, metrics.getPendingRows()) ;
+		assertEquals(0, metrics.getDroppedUpdates()) ;
+		
+		s.flush() ;
+		assertEquals(0, metrics.getPendingRows()) ;
+		assertEquals(1, metrics.getDroppedUpdates()) ;
+		assertEquals(3, metrics.getFailedRows()) ;
+		assertEquals(new Integer(2), loadUser(2).getFavCount()) ;
+	}
+	
+	public void testPKOnlyUpdateIgnored() throws Exception{
+		service = startService(new WriteBehindServiceImpl(){
+			protected String[] getPropsToUpdate(Object domainObject, Table table) {
+				return new String[]{table.getPKPropName()} ;
+			}
+		}, "3600000", "1000", "1000") ;
+		
+		service.update(loadUser(1)) ;
+		
+		assertEquals(0, service.getMetrics().getQueuedUpdates()) ;
+		assertEquals(0, service.getMetrics().getPendingRows()) ;
+	}
+	
+	/**
+	 * Fails to write the rows while failing is set, or the rows containing the badPk.
+	 */
+	static class FailingWriteBehindService extends WriteBehindServiceImpl {
+		boolean failing = true ;
+		
+		Object badPk ;
+		
+		/**run once in the next write, before the failure.*/
+		Runnable duringWrite ;
+
+		protected void writeRows(Collection rows) {
+			if(duringWrite != null){
+				Runnable r = duringWrite ;
+				duringWrite = null ;
+				r.run() ;
+			}
+			
+			if(failing){
+				throw new DaoException("database is down.") ;
+			}
+			
+			Iterator i = rows.iterator() ;
+			while(i.hasNext()){
+				if(((PendingRow) i.next()).key.pk.equals(badPk)){
+					throw new DaoException("bad row:" + badPk) ;
+				}
+			}
+			
+			super.writeRows(rows) ;
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.service.log.impl;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.Date;
+import java.util.Properties;
+
+import org.guzz.Guzz;
+import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.service.ServiceConfig;
+import org.guzz.test.Comment;
+import org.guzz.test.DBBasedTestCase;
+import org.guzz.test.User;
+import org.guzz.util.StringUtil;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestDBLogServiceImpl extends DBBasedTestCase {
+	protected Connection H2CrossStitchConn = null ;
+	
+	protected void prepareEnv() throws Exception {
+		super.prepareEnv();
+		
+		this.H2CrossStitchConn = ((PhysicsDBGroup) this.gf.getDBGroup("cargoDB.cargo2")).getMasterDB().getDataSource().getConnection() ;
+		
+		executeUpdate(H2CrossStitchConn, "drop table if exists TB_COMMENT2") ;
+		String sql = "create table TB_COMMENT(id int not null primary key ,userId int(11), userName varchar(64), DESCRIPTION text, createdTime TIMESTAMP)" ;
+		executeUpdateNoException(H2CrossStitchConn, StringUtil.replaceString(sql, "TB_COMMENT", "TB_COMMENT2")) ;
+	}
+
+	protected void tearDown() throws Exception {
+		Guzz.setTableCondition(null) ;
+		this.H2CrossStitchConn.close() ;
+		
+		super.tearDown();
+	}
+	
+	protected DBLogServiceImpl newService(boolean multiRowInsert){
+		DBLogServiceImpl s = new DBLogServiceImpl() ;
+		s.setGuzzContext(gf) ;
+		
+		Properties props = new Properties() ;
+		props.setProperty("commitSize", "1000") ;
+		props.setProperty("multiRowInsert", String.valueOf(multiRowInsert)) ;
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setProps(props) ;
+		s.configure(new ServiceConfig[]{sc}) ;
+		
+		//drive the queue from the test thread instead of starting the thread.
+		s.updateThread = s.new DBLogThread(1000) ;
+		
+		return s ;
+	}
+	
+	protected Comment newComment(int userId){
+		Comment c = new Comment() ;
+		c.setUserId(userId) ;
+		c.setUserName("user " + userId) ;
+		c.setContent("comment of user " + userId) ;
+		c.setCreatedTime(new Date()) ;
+		
+		return c ;
+	}
+	
+	protected int count(Connection conn, String sql) throws Exception{
+		ResultSet rs = executeQuery(conn, sql) ;
+		rs.next() ;
+		int count = rs.getInt(1) ;
+		rs.close() ;
+		
+		return count ;
+	}
+	
+	protected void assertMixedLogs(boolean multiRowInsert) throws Exception{
+		DBLogServiceImpl s = newService(multiRowInsert) ;
+		int oldUsers = count(H2Conn, "select count(*) from TB_USER") ;
+		
+		for(int i = 1 ; i <= 40 ; i++){
+			//even users go to TB_COMMENT1 of the default db, odd ones to TB_COMMENT2 of cargoDB.cargo2.
+			if(i % 3 == 0){
+				Guzz.setTableCondition(new User(i)) ;
+				s.log(newComment(i)) ;
+				Guzz.setTableCondition(null) ;
+			}else{
+				s.log(newComment(i), new User(i)) ;
+			}
+			
+			//a business without shadow tables in between.
+			User u = new User() ;
+			u.setUserName("log " + i) ;
+			u.setCreatedTime(new Date()) ;
+			s.log(u) ;
+		}
+		
+		assertTrue(s.updateThread.doWithTheQueue()) ;
+		assertFalse(s.updateThread.doWithTheQueue()) ;
+		
+		assertEquals(20, count(H2Conn, "select count(*) from TB_COMMENT1")) ;
+		assertEquals(0, count(H2Conn, "select count(*) from TB_COMMENT1 where mod(userId, 2) = 1")) ;
+		assertEquals(20, count(H2CrossStitchConn, "select count(*) from TB_COMMENT2")) ;
+		assertEquals(0, count(H2CrossStitchConn, "select count(*) from TB_COMMENT2 where mod(userId, 2) = 0")) ;
+		assertEquals(0, count(H2CrossStitchConn, "select count(*) from TB_COMMENT2 where userName <> concat('user ', userId)")) ;
+		assertEquals(oldUsers + 40, count(H2Conn, "select count(*) from TB_USER")) ;
+	}
+	
+	public void testMixedBusinessesAndTableConditions() throws Exception{
+		assertMixedLogs(false) ;
+	}
+	
+	public void testMixedBusinessesAndTableConditionsMultiRow() throws Exception{
+		assertMixedLogs(true) ;
+	}
+
+}
@@ -5,6 +5,7 @@ package org.guzz.test;
 
 import org.guzz.connection.AbstractVirtualDBView;
 import org.guzz.exception.GuzzException;
+import org.guzz.orm.TableConditionEnumerable;
 
 /**
  * 
@@ -12,7 +13,7 @@ import org.guzz.exception.GuzzException;
  * 
  * @author liukaixuan(liukaixuan@gmail.com)
  */
-public class CommentVirtualDBView extends AbstractVirtualDBView {
+public class CommentVirtualDBView extends AbstractVirtualDBView implements TableConditionEnumerable {
 
 	public String getPhysicsDBGroupName(Object tableCondition) {
 		//强制要求必须设置表分切条件，避免编程时疏忽。
@@ -31,5 +32,9 @@ public class CommentVirtualDBView extends AbstractVirtualDBView {
 			return "cargoDB.cargo2" ;
 		}
 	}
+	
+	public Object[] getAllTableConditions() {
+		return new Object[]{new User(2), new User(1)} ;
+	}
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.sql.Connection;
+
+import junit.framework.TestCase;
+
+import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.connection.TestHeartbeatReplicationLagProbe;
+import org.guzz.service.core.impl.SingleMachineDatabaseServiceImpl;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestDelayReadConnectionFetcher extends TestCase {
+	
+	public void testMaxLatency() throws Exception{
+		SingleMachineDatabaseServiceImpl master = TestHeartbeatReplicationLagProbe.createDatabaseService("jdbc:h2:mem:fetchmaster;DB_CLOSE_DELAY=-1") ;
+		SingleMachineDatabaseServiceImpl slave = TestHeartbeatReplicationLagProbe.createDatabaseService("jdbc:h2:mem:fetchslave;DB_CLOSE_DELAY=-1") ;
+		
+		PhysicsDBGroup group = new PhysicsDBGroup() ;
+		group.setGroupName("lag") ;
+		group.setMasterDB(master) ;
+		group.setSlaveDB(slave) ;
+		
+		ReadonlyConnectionFetcher noLimit = new ReadonlyConnectionFetcher(true, -1) ;
+		ReadonlyConnectionFetcher bounded = new ReadonlyConnectionFetcher(true, 5000) ;
+		ReadonlyConnectionFetcher noDelay = new ReadonlyConnectionFetcher(false, -1) ;
+		
+		assertEquals("fetchslave", getDB(noLimit.getConnection(group))) ;
+		assertEquals("fetchmaster", getDB(noDelay.getConnection(group))) ;
+		
+		//lag unknown
+		assertEquals("fetchmaster", getDB(bounded.getConnection(group))) ;
+		
+		group.updateLatency(100) ;
+		assertEquals("fetchslave", getDB(bounded.getConnection(group))) ;
+		
+		group.updateLatency(10000) ;
+		assertEquals("fetchmaster", getDB(bounded.getConnection(group))) ;
+		assertEquals("fetchslave", getDB(noLimit.getConnection(group))) ;
+		
+		master.shutdown() ;
+		slave.shutdown() ;
+	}
+	
+	private String getDB(Connection conn) throws Exception{
+		try{
+			String url = conn.getMetaData().getURL() ;
+			
+			return url.substring("jdbc:h2:mem:".length(), url.indexOf(';') > 0 ? url.indexOf(';') : url.length()) ;
+		}finally{
+			conn.close() ;
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+import org.guzz.connection.ConnectionFetcher;
+import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.connection.StatementCacheStats;
+import org.guzz.exception.DaoException;
+import org.guzz.util.CloseUtil;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestPreparedStatementCache extends TestCase {
+	
+	private Connection conn ;
+	
+	protected void setUp() throws Exception {
+		Class.forName("org.h2.Driver") ;
+		conn = DriverManager.getConnection("jdbc:h2:mem:pstmcache", "sa", "") ;
+	}
+
+	protected void tearDown() throws Exception {
+		CloseUtil.close(conn) ;
+	}
+	
+	public void testReuseAndEvict() throws Exception{
+		StatementCacheStats stats = new StatementCacheStats() ;
+		PreparedStatementCache cache = new PreparedStatementCache(conn, 2, stats) ;
+		
+		PreparedStatement p1 = cache.prepareStatement("select ?") ;
+		p1.setInt(1, 5) ;
+		cache.release(p1) ;
+		
+		PreparedStatement p2 = cache.prepareStatement("select ?") ;
+		assertSame(p1, p2) ;
+		assertEquals(1, stats.getHits()) ;
+		assertEquals(1, stats.getMisses()) ;
+		
+		//parameters are cleared on release.
+		try{
+			p2.executeQuery() ;
+			fail("parameters should be cleared.") ;
+		}catch(SQLException e){
+		}
+		
+		//checked out statements are never shared.
+		PreparedStatement p3 = cache.prepareStatement("select ?") ;
+		assertNotSame(p2, p3) ;
+		cache.release(p2) ;
+		cache.release(p3) ;
+		assertEquals(1, cache.size()) ;
+		assertClosed(p2) ;
+		
+		PreparedStatement a = cache.prepareStatement("select 1") ;
+		PreparedStatement b = cache.prepareStatement("select 2") ;
+		cache.release(a) ;
+		cache.release(b) ;
+		
+		//"select ?" is the least recently used.
+		assertEquals(2, cache.size()) ;
+		assertEquals(1, stats.getEvictions()) ;
+		assertClosed(p3) ;
+		
+		PreparedStatement borrowed = cache.prepareStatement("select 1") ;
+		assertSame(a, borrowed) ;
+		
+		cache.close() ;
+		assertClosed(a) ;
+		assertClosed(b) ;
+		assertEquals(0, cache.size()) ;
+	}
+	
+	public void testResultSetTypeInKey() throws Exception{
+		PreparedStatementCache cache = new PreparedStatementCache(conn, 10, new StatementCacheStats()) ;
+		
+		PreparedStatement p1 = cache.prepareStatement("select 1") ;
+		cache.release(p1) ;
+		PreparedStatement p2 = cache.prepareStatement("select 1", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY) ;
+		
+		assertNotSame(p1, p2) ;
+		cache.close() ;
+	}
+	
+	public void testConnectionsGroup() throws Exception{
+		PhysicsDBGroup fdb = new PhysicsDBGroup() ;
+		fdb.setGroupName("cached") ;
+		fdb.setStatementCacheSize(5) ;
+		
+		ConnectionsGroup group = new ConnectionsGroup(new ConnectionFetcher(){
+			public Connection getConnection(PhysicsDBGroup dbGroup) {
+				try {
+					return DriverManager.getConnection("jdbc:h2:mem:pstmcache", "sa", "") ;
+				} catch (SQLException e) {
+					throw new DaoException(e) ;
+				}
+			}
+		}) ;
+		
+		for(int i = 0 ; i < 3 ; i++){
+			PreparedStatement pstm = group.prepareStatement(fdb, "select ?") ;
+			pstm.setInt(1, i) ;
+			ResultSet rs = pstm.executeQuery() ;
+			rs.next() ;
+			assertEquals(i, rs.getInt(1)) ;
+			
+			CloseUtil.close(rs) ;
+			group.releaseStatement(fdb, pstm) ;
+		}
+		
+		assertEquals(2, fdb.getStatementCacheStats().getHits()) ;
+		assertEquals(1, fdb.getStatementCacheStats().getMisses()) ;
+		
+		PreparedStatement last = group.prepareStatement(fdb, "select 1") ;
+		group.releaseStatement(fdb, last) ;
+		group.close() ;
+		assertClosed(last) ;
+		
+		//cache disabled: statements are closed on release.
+		PhysicsDBGroup nocache = new PhysicsDBGroup() ;
+		nocache.setGroupName("nocache") ;
+		
+		PreparedStatement pstm = group.prepareStatement(nocache, "select 1") ;
+		group.releaseStatement(nocache, pstm) ;
+		assertClosed(pstm) ;
+		assertEquals(0, nocache.getStatementCacheStats().getMisses()) ;
+		group.close() ;
+	}
+	
+	protected void assertClosed(PreparedStatement pstm){
+		try {
+			pstm.clearParameters() ;
+			fail("statement should be closed.") ;
+		} catch (SQLException e) {
+		}
+	}
+
+}
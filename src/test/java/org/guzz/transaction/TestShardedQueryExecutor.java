@@ -0,0 +1,181 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.transaction;
+
+import java.sql.Connection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.guzz.Guzz;
+import org.guzz.connection.PhysicsDBGroup;
+import org.guzz.exception.DaoException;
+import org.guzz.orm.se.SearchExpression;
+import org.guzz.orm.se.Terms;
+import org.guzz.orm.sql.CompiledSQL;
+import org.guzz.test.Comment;
+import org.guzz.test.DBBasedTestCase;
+import org.guzz.test.User;
+import org.guzz.util.StringUtil;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestShardedQueryExecutor extends DBBasedTestCase {
+	protected Connection H2CrossStitchConn = null ;
+	
+	protected ShardedQueryExecutor executor ;
+	
+	protected void prepareEnv() throws Exception {
+		super.prepareEnv();
+		
+		this.H2CrossStitchConn = ((PhysicsDBGroup) this.gf.getDBGroup("cargoDB.cargo2")).getMasterDB().getDataSource().getConnection() ;
+		
+		executeUpdate(H2CrossStitchConn, "drop table if exists TB_COMMENT2") ;
+		String sql = "create table TB_COMMENT(id int not null primary key ,userId int(11), userName varchar(64), DESCRIPTION text, createdTime TIMESTAMP)" ;
+    	executeUpdateNoException(H2CrossStitchConn, StringUtil.replaceString(sql, "TB_COMMENT", "TB_COMMENT2")) ;
+    	
+    	//users with odd ids write to TB_COMMENT2 in cargo2, others write to TB_COMMENT1 in default.
+    	WriteTranSession session = tm.openRWTran(true) ;
+		
+		for(int i = 1 ; i <= 100 ; i++){
+			Comment c = new Comment() ;
+			c.setContent("my content") ;
+			c.setCreatedTime(new Date()) ;
+			c.setUserName(i % 2 == 0 ? "lucy" : "lily") ;
+			c.setUserId(i) ;
+			
+			Guzz.setTableCondition(new User(i)) ;
+			session.insert(c) ;
+		}
+		
+		session.close() ;
+		Guzz.setTableCondition(null) ;
+		
+		executor = new ShardedQueryExecutor(this.gf, 2) ;
+	}
+
+	protected void tearDown() throws Exception {
+		executor.shutdown() ;
+		super.tearDown();
+		
+		this.H2CrossStitchConn.close() ;
+	}
+	
+	public void testListWithOrderBy() throws Exception{
+		SearchExpression se = SearchExpression.forClass(Comment.class, 2, 10) ;
+		se.and(Terms.bigger("userId", 10)) ;
+		se.setOrderBy("userId desc") ;
+		
+		List comments = executor.list(se, null) ;
+		assertEquals(10, comments.size()) ;
+		
+		for(int i = 0 ; i < 10 ; i++){
+			assertEquals(90 - i, ((Comment) comments.get(i)).getUserId()) ;
+		}
+		
+		se = SearchExpression.forClass(Comment.class, 1, 15) ;
+		se.setSkipCount(3) ;
+		se.setOrderBy("userName asc, userId asc") ;
+		
+		comments = executor.list(se, new Object[]{new User(1), new User(2)}) ;
+		assertEquals(15, comments.size()) ;
+		
+		//lily: 1, 3, 5, ...
+		for(int i = 0 ; i < 15 ; i++){
+			assertEquals("lily", ((Comment) comments.get(i)).getUserName()) ;
+			assertEquals(7 + 2 * i, ((Comment) comments.get(i)).getUserId()) ;
+		}
+		
+		//the last page.
+		se = SearchExpression.forClass(Comment.class, 10, 11) ;
+		se.setOrderBy("userId asc") ;
+		comments = executor.list(se, null) ;
+		assertEquals(1, comments.size()) ;
+		assertEquals(100, ((Comment) comments.get(0)).getUserId()) ;
+	}
+	
+	public void testListWithoutOrderBy() throws Exception{
+		SearchExpression se = SearchExpression.forClass(Comment.class, 3, 20) ;
+		
+		//shard of user 2 first, then user 1.
+		List comments = executor.list(se, new Object[]{new User(2), new User(1)}) ;
+		assertEquals(20, comments.size()) ;
+		
+		for(int i = 0 ; i < 10 ; i++){
+			assertEquals("lucy", ((Comment) comments.get(i)).getUserName()) ;
+		}
+		for(int i = 10 ; i < 20 ; i++){
+			assertEquals("lily", ((Comment) comments.get(i)).getUserName()) ;
+		}
+	}
+	
+	public void testCompiledSQL() throws Exception{
+		String sql = "select * from @@comment where userId <= :userId order by userId desc" ;
+		CompiledSQL cs = tm.getCompiledSQLBuilder().buildCompiledSQL(Comment.class, sql) ;
+		cs.addParamPropMapping("userId", "userId") ;
+		
+		HashMap params = new HashMap() ;
+		params.put("userId", new Integer(20)) ;
+		
+		List comments = executor.list(cs, params, new Object[]{new User(1), new User(2)}, "userId desc", 1, 5) ;
+		assertEquals(5, comments.size()) ;
+		assertEquals(20, ((Comment) comments.get(0)).getUserId()) ;
+		assertEquals(16, ((Comment) comments.get(4)).getUserId()) ;
+	}
+	
+	public void testCount() throws Exception{
+		SearchExpression se = SearchExpression.forClass(Comment.class) ;
+		assertEquals(100, executor.count(se, null)) ;
+		
+		se.and(Terms.eq("userName", "lily")) ;
+		assertEquals(50, executor.count(se, null)) ;
+		assertEquals(50, executor.count(se, new Object[]{new User(1)})) ;
+		assertEquals(0, executor.count(se, new Object[]{new User(2)})) ;
+	}
+	
+	public void testFailPolicy() throws Exception{
+		Callable[] tasks = new Callable[]{
+				new Callable(){
+					public Object call() throws Exception {
+						return "ok" ;
+					}
+				},
+				executor.new ShardTask(new User(3)){
+					protected Object query(ReadonlyTranSession session) {
+						throw new DaoException("shard down.") ;
+					}
+				}
+		} ;
+		
+		try{
+			executor.execute(tasks) ;
+			fail("fail fast.") ;
+		}catch(DaoException e){
+		}
+		
+		executor.setFailPolicy(ShardedQueryExecutor.BEST_EFFORT) ;
+		List results = executor.execute(tasks) ;
+		assertEquals(1, results.size()) ;
+		assertEquals("ok", results.get(0)) ;
+	}
+
+}
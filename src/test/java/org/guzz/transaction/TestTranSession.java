@@ -21,6 +21,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.guzz.jdbc.JDBCTemplate;
 import org.guzz.orm.se.SearchExpression;
@@ -76,6 +78,60 @@ public class TestTranSession extends DBBasedTestCase{
 		ts.close() ;
 	}
 	
+	public void testIterate() throws SQLException, Exception{
+		for(int i = 5 ; i <= 300 ; i++){
+			executeUpdate(getDefaultConn(), "insert into TB_ARTICLE values(" + i + ", 'title " + i + "', 'content " + i + "', now())") ;
+		}
+		
+		ReadonlyTranSession ts = gf.getTransactionManager().openDelayReadTran() ;
+		
+		try{
+			//pagination is ignored.
+			SearchExpression se = SearchExpression.forClass(Article.class, 1, 20) ;
+			se.setOrderBy("id asc") ;
+			
+			ResultCursor c = ts.iterate(se, 50) ;
+			int id = 0 ;
+			while(c.hasNext()){
+				Article a = (Article) c.next() ;
+				assertEquals(a.getId(), ++id) ;
+				assertEquals(a.getTitle(), "title " + id) ;
+			}
+			assertEquals(id, 300) ;
+			assertEquals(c.getRowCount(), 300) ;
+			
+			//closed after exhausted
+			assertFalse(c.hasNext()) ;
+			try{
+				c.next() ;
+				fail("no more rows.") ;
+			}catch(NoSuchElementException e){
+			}
+			c.close() ;
+			
+			//close before exhausted, with a result class.
+			CompiledSQL cs = tm.getCompiledSQLBuilder().buildCompiledSQL("article", "select @id, @title from @@article where @id > :id order by @id asc") ;
+			cs.setResultClass(java.util.HashMap.class) ;
+			
+			c = ts.iterate(cs.bind("id", 297), 2) ;
+			Map row = (Map) c.next() ;
+			assertEquals(row.get("id"), new Integer(298)) ;
+			c.close() ;
+			assertFalse(c.hasNext()) ;
+			
+			//the session still works.
+			assertEquals(ts.count(SearchExpression.forClass(Article.class)), 300) ;
+			
+			//empty query
+			se = SearchExpression.forClass(Article.class) ;
+			se.and(Terms.in("id", new java.util.ArrayList())) ;
+			c = ts.iterate(se, 10) ;
+			assertFalse(c.hasNext()) ;
+		}finally{
+			ts.close() ;
+		}
+	}
+	
 	public void testReadDBCell00() throws SQLException, Exception{
 		ReadonlyTranSession ts = gf.getTransactionManager().openDelayReadTran() ;
 		
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.javabean;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.guzz.exception.ORMException;
+import org.guzz.test.User;
+
+/**
+ *
+ *
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestCglibBeanWrapper extends TestCase {
+
+	public void testReadWrite(){
+		CglibBeanWrapper bw = new CglibBeanWrapper(User.class) ;
+		assertTrue(bw.isAccessorGenerated()) ;
+
+		User user = new User() ;
+		Date now = new Date() ;
+
+		bw.setValue(user, "id", new Integer(5)) ;
+		bw.setValue(user, "userName", "lucy") ;
+		bw.setValue(user, "vip", Boolean.TRUE) ;
+		bw.setValue(user, "favCount", new Integer(12)) ;
+		bw.setValue(user, bw.getPropertyIndex("createdTime"), now) ;
+
+		assertEquals(5, user.getId()) ;
+		assertEquals("lucy", user.getUserName()) ;
+		assertTrue(user.isVip()) ;
+		assertEquals(new Integer(12), user.getFavCount()) ;
+		assertSame(now, user.getCreatedTime()) ;
+
+		assertEquals(new Integer(5), bw.getValue(user, "id")) ;
+		assertEquals("lucy", bw.getValue(user, bw.getPropertyIndex("userName"))) ;
+		assertEquals(Boolean.TRUE, bw.getValue(user, "vip")) ;
+		assertEquals(User.class, bw.getValue(user, "class")) ;
+
+		bw.setValue(user, "favCount", null) ;
+		assertNull(user.getFavCount()) ;
+	}
+
+	public void testSameAsReflection(){
+		JavaBeanWrapper reflection = new JavaBeanWrapper(User.class) ;
+		CglibBeanWrapper bw = new CglibBeanWrapper(User.class) ;
+
+		User user = new User(3) ;
+		user.setPassword("psw") ;
+		user.setFavCount(new Integer(7)) ;
+
+		String[] props = new String[]{"id", "userName", "password", "vip", "favCount", "createdTime"} ;
+		for(int i = 0 ; i < props.length ; i++){
+			assertEquals(reflection.getPropertyIndex(props[i]), bw.getPropertyIndex(props[i])) ;
+			assertEquals(reflection.getValue(user, props[i]), bw.getValue(user, props[i])) ;
+		}
+
+		assertEquals(-1, bw.getPropertyIndex("notExsitedProp")) ;
+	}
+
+	public void testErrors(){
+		CglibBeanWrapper bw = new CglibBeanWrapper(User.class) ;
+		User user = new User() ;
+
+		try{
+			bw.setValue(user, "id", null) ;
+			fail("null cann't be set to primitive property.") ;
+		}catch(ORMException e){
+		}
+
+		try{
+			bw.setValue(user, "userName", new Integer(1)) ;
+			fail("wrong type.") ;
+		}catch(ORMException e){
+		}
+
+		try{
+			bw.setValue(user, "class", User.class) ;
+			fail("property not writable.") ;
+		}catch(ORMException e){
+		}
+
+		try{
+			bw.getValue(user, "notExsitedProp") ;
+			fail("property not found.") ;
+		}catch(ORMException e){
+		}
+	}
+
+	public void testNotPublicClass(){
+		CglibBeanWrapper bw = new CglibBeanWrapper(PrivateBean.class) ;
+		assertFalse(bw.isAccessorGenerated()) ;
+
+		PrivateBean bean = new PrivateBean() ;
+		bw.setValue(bean, "name", "guzz") ;
+		assertEquals("guzz", bw.getValue(bean, "name")) ;
+	}
+
+	static class PrivateBean{
+		private String name ;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+}
@@ -16,6 +16,8 @@
  */
 package org.guzz.util.lb;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.guzz.util.lb.LBRound;
 
 import junit.framework.TestCase;
@@ -70,5 +72,38 @@ public class TestRound extends TestCase{
 			assertEquals(r.getCard(), 2) ;
 		}
 	}
+	
+	public void testConcurrentCards() throws Exception{
+		final LBRound r = new LBRound() ;
+		
+		r.addToPool(new Integer(1), 300) ;
+		r.addToPool(new Integer(2), 100) ;
+		
+		r.applyNewPool() ;
+		assertEquals(4, r.getRoundSize()) ;
+		
+		final AtomicInteger ones = new AtomicInteger() ;
+		Thread[] ts = new Thread[4] ;
+		
+		for(int i = 0 ; i < ts.length ; i++){
+			ts[i] = new Thread(){
+				public void run(){
+					for(int k = 0 ; k < 10000 ; k++){
+						if(new Integer(1).equals(r.getCard())){
+							ones.incrementAndGet() ;
+						}
+					}
+				}
+			} ;
+			ts[i].start() ;
+		}
+		
+		for(int i = 0 ; i < ts.length ; i++){
+			ts[i].join() ;
+		}
+		
+		//every slot is handed out exactly once in each round.
+		assertEquals(30000, ones.get()) ;
+	}
 
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.stat;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.guzz.service.ServiceConfig;
+import org.guzz.service.core.impl.DebugServiceImpl;
+
+/**
+ * 
+ * 
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestSQLMetrics extends TestCase {
+	
+	public void testHistogram(){
+		LatencyHistogram h = new LatencyHistogram() ;
+		assertEquals(0, h.getValueAtPercentile(99)) ;
+		
+		for(int i = 1 ; i <= 1000 ; i++){
+			h.record(i) ;
+		}
+		
+		assertEquals(1000, h.getTotalCount()) ;
+		assertEquals(1000, h.getMaxMicros()) ;
+		assertEquals(500, h.getMeanMicros()) ;
+		
+		assertValueNear(500, h.getValueAtPercentile(50)) ;
+		assertValueNear(990, h.getValueAtPercentile(99)) ;
+		assertEquals(1000, h.getValueAtPercentile(99.9)) ;
+		assertEquals(1000, h.getValueAtPercentile(100)) ;
+		assertEquals(1, h.getValueAtPercentile(0)) ;
+		
+		//small values are exact.
+		h.reset() ;
+		h.record(3) ;
+		h.record(7) ;
+		assertEquals(3, h.getValueAtPercentile(50)) ;
+		assertEquals(7, h.getValueAtPercentile(99)) ;
+		
+		//huge values go to the last bucket.
+		h.record(Long.MAX_VALUE) ;
+		assertEquals(Long.MAX_VALUE, h.getMaxMicros()) ;
+		assertTrue(h.getValueAtPercentile(100) > 0) ;
+	}
+	
+	public void testBuckets(){
+		int last = -1 ;
+		
+		for(long v = 0 ; v < 100000 ; v++){
+			int index = LatencyHistogram.indexOf(v) ;
+			
+			assertTrue(index >= last) ;
+			assertTrue(index < LatencyHistogram.BUCKETS) ;
+			assertTrue(v <= LatencyHistogram.highestValueOf(index)) ;
+			//relative error is less than 1/16
+			assertTrue(LatencyHistogram.highestValueOf(index) - v <= v / 16) ;
+			
+			last = index ;
+		}
+	}
+	
+	protected void assertValueNear(long expected, long value){
+		assertTrue("expected:" + expected + ", value:" + value, value >= expected && value <= expected + expected / 16) ;
+	}
+	
+	public void testStatementsAndSlowSQLs(){
+		SQLMetrics m = new SQLMetrics(2, 5000000L, 2) ;
+		
+		m.record("select a from t", null, 1000000L, -1, false) ;
+		m.record("select a from t", null, 3000000L, -1, false) ;
+		m.record("update a set b = ? where c = ?", new String[]{"b", "c"}, 6000000L, 3, false) ;
+		m.record("update a set b = ? where c = ?", null, 1000000L, -1, true) ;
+		
+		//too many statements
+		m.record("select b from t", null, 9000000L, -1, false) ;
+		m.record("select c from t", null, 1000L, -1, false) ;
+		
+		assertEquals(2, m.getStatementCount()) ;
+		assertEquals(6, m.getExecutionCount()) ;
+		assertEquals(1, m.getErrorCount()) ;
+		assertEquals(2, m.getSlowCount()) ;
+		
+		SQLMetrics.StatementSnapshot s = m.getStatementSnapshot("update a set b = ? where c = ?") ;
+		assertEquals(2, s.getCount()) ;
+		assertEquals(1, s.getErrors()) ;
+		assertEquals(3, s.getRows()) ;
+		assertEquals(7000, s.getTotalMicros()) ;
+		assertEquals(6000, s.getMaxMicros()) ;
+		
+		List list = m.getStatementSnapshots() ;
+		assertEquals(3, list.size()) ;
+		assertEquals(SQLMetrics.OTHER_STATEMENTS, ((SQLMetrics.StatementSnapshot) list.get(0)).getSql()) ;
+		assertEquals(2, ((SQLMetrics.StatementSnapshot) list.get(0)).getCount()) ;
+		assertEquals("select a from t", ((SQLMetrics.StatementSnapshot) list.get(2)).getSql()) ;
+		
+		//newest first, values are not kept.
+		List slows = m.getSlowSQLs() ;
+		assertEquals(2, slows.size()) ;
+		assertEquals("select b from t", ((SQLMetrics.SlowSQL) slows.get(0)).getSql()) ;
+		SQLMetrics.SlowSQL slow = (SQLMetrics.SlowSQL) slows.get(1) ;
+		assertEquals(6000000L, slow.getNanoTime()) ;
+		assertTrue(slow.toString().indexOf("params:[b=?, c=?]") > 0) ;
+		
+		//the ring keeps the latest ones.
+		m.record("select a from t", null, 8000000L, -1, false) ;
+		slows = m.getSlowSQLs() ;
+		assertEquals(2, slows.size()) ;
+		assertEquals("select a from t", ((SQLMetrics.SlowSQL) slows.get(0)).getSql()) ;
+		assertEquals("select b from t", ((SQLMetrics.SlowSQL) slows.get(1)).getSql()) ;
+		assertEquals(2, m.listTopStatements(2).length) ;
+		
+		m.reset() ;
+		assertEquals(0, m.getExecutionCount()) ;
+		assertEquals(0, m.getSlowSQLs().size()) ;
+	}
+	
+	public void testNormalize(){
+		String sql = "select * from TB_COMMENT2 t1 where t1.id = ? and userName = :userName" ;
+		assertSame(sql, SQLMetrics.normalize(sql)) ;
+		
+		assertEquals("select * from TB_USER where pk = ? and userName = ? and fav > -? limit ?, ?", 
+				SQLMetrics.normalize("select * from TB_USER where pk = 12 and userName = 'it''s' and fav > -1.5 limit 20, 10")) ;
+		assertEquals("update TB_USER set userName = ? where pk in (?,?) and flag = ?", 
+				SQLMetrics.normalize("update TB_USER set userName = '' where pk in (1,2) and flag = 0x1F")) ;
+		assertEquals("select ?", SQLMetrics.normalize("select 'unclosed")) ;
+		
+		//executions differing only in the values are one statement.
+		SQLMetrics m = new SQLMetrics(2, 5000000L, 2) ;
+		for(int i = 0 ; i < 10 ; i++){
+			m.record("select * from TB_USER where pk = " + i, null, 9000000L, -1, false) ;
+		}
+		
+		assertEquals(1, m.getStatementCount()) ;
+		assertEquals(10, m.getStatementSnapshot("select * from TB_USER where pk = 100").getCount()) ;
+		
+		//values are not kept in the slow sqls.
+		assertEquals("select * from TB_USER where pk = ?", ((SQLMetrics.SlowSQL) m.getSlowSQLs().get(0)).getSql()) ;
+	}
+	
+	public void testDebugServiceAndMBean() throws Exception{
+		Properties props = new Properties() ;
+		props.setProperty("sqlMetrics", "true") ;
+		props.setProperty("slowSQLThresholdInMillSeconds", "10") ;
+		props.setProperty("sqlMetricsMBeanName", "org.guzz:type=SQLMetrics,name=TestSQLMetrics") ;
+		
+		ServiceConfig sc = new ServiceConfig() ;
+		sc.setProps(props) ;
+		
+		DebugServiceImpl ds = new DebugServiceImpl() ;
+		ds.configure(new ServiceConfig[]{sc}) ;
+		
+		try{
+			//metrics don't print sqls.
+			assertFalse(ds.isLogSQL()) ;
+			assertTrue(ds.isMetricsEnabled()) ;
+			assertTrue(ds.isMeasureTime()) ;
+			
+			ds.logSQL("select * from TB_USER", 20000000L) ;
+			ds.logSQL("select * from TB_USER", new Object[]{"secret"}, 1000L) ;
+			ds.logBatch("insert into TB_USER values(?)", 5, 1000L) ;
+			ds.logSQLError("select * from TB_USER", 1000L) ;
+			
+			SQLMetrics m = ds.getSQLMetrics() ;
+			assertEquals(3, m.getStatementSnapshot("select * from TB_USER").getCount()) ;
+			assertEquals(1, m.getStatementSnapshot("select * from TB_USER").getErrors()) ;
+			assertEquals(5, m.getStatementSnapshot("insert into TB_USER values(?)").getRows()) ;
+			assertEquals(1, m.getSlowSQLs().size()) ;
+			
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer() ;
+			ObjectName name = new ObjectName("org.guzz:type=SQLMetrics,name=TestSQLMetrics") ;
+			assertEquals(new Long(4), server.getAttribute(name, "ExecutionCount")) ;
+			assertEquals(1, ((String[]) server.invoke(name, "listSlowSQLs", new Object[0], new String[0])).length) ;
+			
+			ds.shutdown() ;
+			assertFalse(server.isRegistered(name)) ;
+			assertNull(ds.getSQLMetrics()) ;
+			assertFalse(ds.isMetricsEnabled()) ;
+		}finally{
+			ds.shutdown() ;
+		}
+	}
+
+}
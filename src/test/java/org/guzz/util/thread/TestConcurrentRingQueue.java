@@ -0,0 +1,124 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.thread;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ *
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestConcurrentRingQueue extends TestCase {
+
+	public void testOfferPoll(){
+		ConcurrentRingQueue q = new ConcurrentRingQueue(3) ;
+		assertEquals(4, q.getCapacity()) ;
+		assertTrue(q.isEmpty()) ;
+		assertNull(q.poll()) ;
+
+		for(int round = 0 ; round < 3 ; round++){
+			for(int i = 0 ; i < 4 ; i++){
+				assertTrue(q.offer(new Integer(i))) ;
+			}
+
+			assertFalse(q.offer(new Integer(5))) ;
+			assertEquals(4, q.size()) ;
+
+			for(int i = 0 ; i < 4 ; i++){
+				assertEquals(new Integer(i), q.poll()) ;
+			}
+
+			assertNull(q.poll()) ;
+			assertEquals(0, q.size()) ;
+		}
+	}
+
+	public void testDrainTo(){
+		ConcurrentRingQueue q = new ConcurrentRingQueue(16) ;
+		for(int i = 0 ; i < 10 ; i++){
+			q.offer(new Integer(i)) ;
+		}
+
+		Object[] batch = new Object[4] ;
+		assertEquals(4, q.drainTo(batch, 100)) ;
+		assertEquals(new Integer(3), batch[3]) ;
+		assertEquals(2, q.drainTo(batch, 2)) ;
+		assertEquals(new Integer(5), batch[1]) ;
+		assertEquals(4, q.drainTo(batch, 4)) ;
+		assertEquals(0, q.drainTo(batch, 4)) ;
+	}
+
+	public void testMultiProducers() throws Exception{
+		final ConcurrentRingQueue q = new ConcurrentRingQueue(1024) ;
+		final int producers = 4 ;
+		final int perProducer = 50000 ;
+		final CountDownLatch done = new CountDownLatch(producers) ;
+
+		for(int p = 0 ; p < producers ; p++){
+			final int base = p * perProducer ;
+
+			new Thread(){
+				public void run(){
+					for(int i = 0 ; i < perProducer ; i++){
+						Integer value = new Integer(base + i) ;
+
+						while(!q.offer(value)){
+							Thread.yield() ;
+						}
+					}
+
+					done.countDown() ;
+				}
+			}.start() ;
+		}
+
+		boolean[] seen = new boolean[producers * perProducer] ;
+		int[] lastOfProducer = new int[producers] ;
+		for(int p = 0 ; p < producers ; p++){
+			lastOfProducer[p] = -1 ;
+		}
+
+		int received = 0 ;
+		while(received < seen.length){
+			Integer value = (Integer) q.poll() ;
+
+			if(value == null){
+				Thread.yield() ;
+				continue ;
+			}
+
+			int v = value.intValue() ;
+			assertFalse("duplicated:" + v, seen[v]) ;
+			seen[v] = true ;
+
+			//FIFO per producer
+			int p = v / perProducer ;
+			assertTrue(lastOfProducer[p] < v) ;
+			lastOfProducer[p] = v ;
+
+			received++ ;
+		}
+
+		done.await() ;
+		assertNull(q.poll()) ;
+	}
+
+}
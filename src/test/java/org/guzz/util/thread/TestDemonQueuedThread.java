@@ -0,0 +1,158 @@
+/*
+ * Copyright 2008-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.guzz.util.thread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ *
+ *
+ * @author liukaixuan(liukaixuan@gmail.com)
+ */
+public class TestDemonQueuedThread extends TestCase {
+
+	public void testDropOldest(){
+		DemonQueuedThread t = new DemonQueuedThread("test", 4) ;
+
+		for(int i = 0 ; i < 6 ; i++){
+			assertTrue(t.addToQueue(new Integer(i))) ;
+		}
+
+		assertEquals(6, t.getEnqueuedCount()) ;
+		assertEquals(2, t.getDroppedCount()) ;
+		assertEquals(4, t.getQueueDepth()) ;
+
+		Object[] batch = new Object[10] ;
+		assertEquals(4, t.drainTo(batch)) ;
+		assertEquals(new Integer(2), batch[0]) ;
+		assertEquals(new Integer(5), batch[3]) ;
+		assertEquals(4, t.getDrainedCount()) ;
+		assertEquals(0, t.getQueueDepth()) ;
+	}
+
+	public void testDropNewest(){
+		DemonQueuedThread t = new DemonQueuedThread("test", 4) ;
+		t.setFullQueuePolicy(DemonQueuedThread.POLICY_DROP_NEWEST) ;
+
+		for(int i = 0 ; i < 6 ; i++){
+			assertEquals(i < 4, t.addToQueue(new Integer(i))) ;
+		}
+
+		assertEquals(4, t.getEnqueuedCount()) ;
+		assertEquals(2, t.getDroppedCount()) ;
+
+		Object[] batch = new Object[10] ;
+		assertEquals(4, t.drainTo(batch)) ;
+		assertEquals(new Integer(0), batch[0]) ;
+		assertEquals(new Integer(3), batch[3]) ;
+	}
+
+	public void testCallerRuns(){
+		final List processed = new ArrayList() ;
+
+		DemonQueuedThread t = new DemonQueuedThread("test", 2){
+			protected void processInCaller(Object obj) {
+				processed.add(obj) ;
+			}
+			
+			protected boolean supportsCallerRuns() {
+				return true ;
+			}
+		} ;
+		t.setFullQueuePolicy(DemonQueuedThread.toFullQueuePolicy("callerRuns", DemonQueuedThread.POLICY_BLOCK)) ;
+
+		for(int i = 0 ; i < 3 ; i++){
+			t.addToQueue(new Integer(i)) ;
+		}
+
+		assertEquals(1, processed.size()) ;
+		assertEquals(new Integer(2), processed.get(0)) ;
+		assertEquals(2, t.getQueueDepth()) ;
+		assertEquals(0, t.getDroppedCount()) ;
+	}
+
+	public void testCallerRunsNotSupported(){
+		DemonQueuedThread t = new DemonQueuedThread("test", 2) ;
+		assertFalse(t.supportsCallerRuns()) ;
+
+		try{
+			t.setFullQueuePolicy(DemonQueuedThread.POLICY_CALLER_RUNS) ;
+			fail("callerRuns should be rejected.") ;
+		}catch(IllegalArgumentException e){
+			//ok
+		}
+
+		assertFalse(DemonQueuedThread.POLICY_CALLER_RUNS == t.getFullQueuePolicy()) ;
+		
+		//processInCaller alone doesn't declare the support.
+		t = new DemonQueuedThread("test", 2){
+			protected void processInCaller(Object obj) {
+			}
+		} ;
+		
+		try{
+			t.setFullQueuePolicy(DemonQueuedThread.POLICY_CALLER_RUNS) ;
+			fail("callerRuns should be rejected.") ;
+		}catch(IllegalArgumentException e){
+			//ok
+		}
+	}
+
+	public void testBlock() throws Exception{
+		final List processed = Collections.synchronizedList(new ArrayList()) ;
+
+		DemonQueuedThread t = new DemonQueuedThread("test", 2){
+			protected boolean doWithTheQueue() throws Exception {
+				Object[] batch = new Object[1] ;
+				int count = drainTo(batch) ;
+
+				for(int i = 0 ; i < count ; i++){
+					processed.add(batch[i]) ;
+				}
+
+				return count > 0 ;
+			}
+		} ;
+		t.setFullQueuePolicy(DemonQueuedThread.POLICY_BLOCK) ;
+		t.setMillSecondsToSleep(10) ;
+		t.start() ;
+
+		for(int i = 0 ; i < 100 ; i++){
+			assertTrue(t.addToQueue(new Integer(i))) ;
+		}
+
+		for(int i = 0 ; i < 100 && processed.size() < 100 ; i++){
+			Thread.sleep(10) ;
+		}
+
+		t.shutdown() ;
+
+		assertEquals(100, t.getDrainedCount()) ;
+		assertEquals(0, t.getDroppedCount()) ;
+		assertEquals(100, processed.size()) ;
+
+		for(int i = 0 ; i < 100 ; i++){
+			assertEquals(new Integer(i), processed.get(i)) ;
+		}
+	}
+
+}